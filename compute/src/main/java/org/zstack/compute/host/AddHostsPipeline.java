@@ -0,0 +1,376 @@
+package org.zstack.compute.host;
+
+import org.springframework.beans.factory.annotation.Autowire;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Configurable;
+import org.zstack.core.Platform;
+import org.zstack.core.asyncbatch.While;
+import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.cloudbus.CloudBusCallBack;
+import org.zstack.core.componentloader.PluginRegistry;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.Q;
+import org.zstack.core.workflow.FlowChainBuilder;
+import org.zstack.header.cluster.ClusterVO;
+import org.zstack.header.cluster.ClusterVO_;
+import org.zstack.header.core.Completion;
+import org.zstack.header.core.NoErrorCompletion;
+import org.zstack.header.core.progress.TaskProgressRange;
+import org.zstack.header.core.workflow.*;
+import org.zstack.header.errorcode.ErrorCode;
+import org.zstack.header.errorcode.OperationFailureException;
+import org.zstack.header.host.*;
+import org.zstack.header.message.MessageReply;
+import org.zstack.tag.TagManager;
+import org.zstack.utils.CollectionUtils;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.zstack.core.Platform.argerr;
+import static org.zstack.core.Platform.operr;
+import static org.zstack.core.progress.ProgressReportService.*;
+
+/**
+ * Adds a batch of hosts stage by stage instead of running the add host flow host by host:
+ *
+ * 1. validate the hosts and create them with one batch insert per hypervisor type
+ * 2. call HostAddExtensionPoint.beforeAddHost() of one extension for all hosts before the next extension
+ * 3. connect the hosts, host.add.parallelismDegree hosts at a time
+ * 4. check the os versions against one host per cluster and call afterAddHost() as in stage 2
+ *
+ * A host failing in a stage is removed as a single add does, and skips the later stages; the
+ * other hosts go on. If a stage throws, all hosts created by the batch are removed.
+ *
+ * Each host is still deployed by its own ansible run when connecting, and the extensions are
+ * called host by host within a stage, HostAddExtensionPoint takes one host at a time.
+ */
+@Configurable(preConstruction = true, autowire = Autowire.BY_TYPE)
+class AddHostsPipeline {
+    private static final CLogger logger = Utils.getLogger(AddHostsPipeline.class);
+
+    @Autowired
+    private DatabaseFacade dbf;
+    @Autowired
+    private CloudBus bus;
+    @Autowired
+    private PluginRegistry pluginRgty;
+    @Autowired
+    private TagManager tagMgr;
+    @Autowired
+    private HostManager hostMgr;
+
+    private static final TaskProgressRange CREATE_STAGE = new TaskProgressRange(0, 5);
+    private static final TaskProgressRange BEFORE_ADD_STAGE = new TaskProgressRange(5, 15);
+    private static final TaskProgressRange CONNECT_STAGE = new TaskProgressRange(15, 90);
+    private static final TaskProgressRange AFTER_ADD_STAGE = new TaskProgressRange(90, 100);
+
+    private static class HostTask {
+        final AddHostMsg msg;
+        HypervisorFactory factory;
+        HostVO vo;
+        HostInventory inv;
+        ErrorCode error;
+
+        HostTask(AddHostMsg msg) {
+            this.msg = msg;
+        }
+    }
+
+    private final List<HostTask> tasks;
+    private final TaskProgressRange parentStage = getTaskStage();
+
+    AddHostsPipeline(List<AddHostMsg> msgs) {
+        tasks = msgs.stream().map(HostTask::new).collect(Collectors.toList());
+    }
+
+    private List<HostTask> aliveTasks() {
+        return tasks.stream().filter(t -> t.error == null).collect(Collectors.toList());
+    }
+
+    private int getParallelismDegree() {
+        return HostGlobalConfig.ADD_HOST_PARALLELISM_DEGREE.value(Integer.class);
+    }
+
+    void run(Completion completion) {
+        FlowChain chain = FlowChainBuilder.newSimpleFlowChain();
+        chain.setName(String.format("add-%s-hosts", tasks.size()));
+        chain.then(new NoRollbackFlow() {
+            String __name__ = "create-hosts";
+
+            @Override
+            public void run(FlowTrigger trigger, Map data) {
+                markTaskStage(parentStage, CREATE_STAGE);
+                taskProgress("create %s hosts", tasks.size());
+                createHosts();
+                trigger.next();
+            }
+        }).then(new NoRollbackFlow() {
+            String __name__ = "call-before-add-host-extension";
+
+            @Override
+            public void run(FlowTrigger trigger, Map data) {
+                markTaskStage(parentStage, BEFORE_ADD_STAGE);
+                callExtensions(true, new NoErrorCompletion(trigger) {
+                    @Override
+                    public void done() {
+                        trigger.next();
+                    }
+                });
+            }
+        }).then(new NoRollbackFlow() {
+            String __name__ = "connect-hosts";
+
+            @Override
+            public void run(FlowTrigger trigger, Map data) {
+                TaskProgressRange stage = markTaskStage(parentStage, CONNECT_STAGE);
+                taskProgress("connect %s hosts", aliveTasks().size());
+                connectHosts(stage, new NoErrorCompletion(trigger) {
+                    @Override
+                    public void done() {
+                        trigger.next();
+                    }
+                });
+            }
+        }).then(new NoRollbackFlow() {
+            String __name__ = "check-host-os-version";
+
+            @Override
+            public void run(FlowTrigger trigger, Map data) {
+                markTaskStage(parentStage, AFTER_ADD_STAGE);
+                checkOsVersions();
+                trigger.next();
+            }
+        }).then(new NoRollbackFlow() {
+            String __name__ = "call-after-add-host-extension";
+
+            @Override
+            public void run(FlowTrigger trigger, Map data) {
+                callExtensions(false, new NoErrorCompletion(trigger) {
+                    @Override
+                    public void done() {
+                        trigger.next();
+                    }
+                });
+            }
+        }).done(new FlowDoneHandler(completion) {
+            @Override
+            public void handle(Map data) {
+                tasks.stream().filter(t -> t.error != null && t.vo != null).forEach(t -> cleanupFailedHost(t));
+                reportProgress(parentStage.getEnd().toString());
+                completion.success();
+            }
+        }).error(new FlowErrorHandler(completion) {
+            @Override
+            public void handle(ErrorCode errCode, Map data) {
+                CollectionUtils.safeForEach(tasks.stream().filter(t -> t.vo != null).collect(Collectors.toList()), t -> {
+                    fail(t, errCode);
+                    cleanupFailedHost(t);
+                });
+                completion.fail(errCode);
+            }
+        }).start();
+    }
+
+    void fillReply(AddHostsReply reply) {
+        for (HostTask t : tasks) {
+            if (t.error != null) {
+                reply.getErrors().put(t.msg.getManagementIp(), t.error);
+            } else {
+                reply.getInventories().add(t.factory.getHostInventory(t.vo.getUuid()));
+            }
+        }
+    }
+
+    private void fail(HostTask t, ErrorCode err) {
+        if (t.error == null) {
+            t.error = err;
+        }
+    }
+
+    private void createHosts() {
+        Set<String> ips = new HashSet<>();
+        tasks.forEach(t -> {
+            if (!ips.add(t.msg.getManagementIp())) {
+                fail(t, argerr("duplicate managementIp[%s] in the hosts to add", t.msg.getManagementIp()));
+            }
+        });
+
+        if (!ips.isEmpty()) {
+            List<String> existingIps = Q.New(HostVO.class).select(HostVO_.managementIp)
+                    .in(HostVO_.managementIp, ips)
+                    .listValues();
+            tasks.stream().filter(t -> existingIps.contains(t.msg.getManagementIp()))
+                    .forEach(t -> fail(t, argerr("there has been a host having managementIp[%s]", t.msg.getManagementIp())));
+        }
+
+        Set<String> clusterUuids = aliveTasks().stream().map(t -> t.msg.getClusterUuid()).collect(Collectors.toSet());
+        Map<String, ClusterVO> clusters = new HashMap<>();
+        if (!clusterUuids.isEmpty()) {
+            List<ClusterVO> vos = Q.New(ClusterVO.class).in(ClusterVO_.uuid, clusterUuids).list();
+            vos.forEach(c -> clusters.put(c.getUuid(), c));
+        }
+
+        Map<String, List<HostTask>> byHypervisor = new HashMap<>();
+        for (HostTask t : aliveTasks()) {
+            ClusterVO cluster = clusters.get(t.msg.getClusterUuid());
+            if (cluster == null) {
+                fail(t, argerr("cluster[uuid:%s] is not existing", t.msg.getClusterUuid()));
+                continue;
+            }
+
+            HostVO hvo = new HostVO();
+            hvo.setUuid(t.msg.getResourceUuid() != null ? t.msg.getResourceUuid() : Platform.getUuid());
+            hvo.setClusterUuid(cluster.getUuid());
+            hvo.setZoneUuid(cluster.getZoneUuid());
+            hvo.setName(t.msg.getName());
+            hvo.setDescription(t.msg.getDescription());
+            hvo.setHypervisorType(cluster.getHypervisorType());
+            hvo.setManagementIp(t.msg.getManagementIp());
+            hvo.setStatus(HostStatus.Connecting);
+            hvo.setState(HostState.Enabled);
+            t.vo = hvo;
+            byHypervisor.computeIfAbsent(cluster.getHypervisorType(), k -> new ArrayList<>()).add(t);
+        }
+
+        byHypervisor.forEach((type, typeTasks) -> {
+            HypervisorFactory factory = hostMgr.getHypervisorFactory(HypervisorType.valueOf(type));
+            List<HostVO> created;
+            try {
+                created = factory.createHosts(typeTasks.stream().map(t -> t.vo).collect(Collectors.toList()),
+                        typeTasks.stream().map(t -> t.msg).collect(Collectors.toList()));
+            } catch (OperationFailureException e) {
+                typeTasks.forEach(t -> {
+                    t.vo = null;
+                    fail(t, e.getErrorCode());
+                });
+                return;
+            }
+
+            Map<String, HostVO> createdByUuid = created.stream().collect(Collectors.toMap(HostVO::getUuid, vo -> vo));
+            for (HostTask t : typeTasks) {
+                t.factory = factory;
+                t.vo = createdByUuid.get(t.vo.getUuid());
+                t.inv = HostInventory.valueOf(t.vo);
+                tagMgr.createTags(t.msg.getSystemTags(), t.msg.getUserTags(), t.vo.getUuid(), HostVO.class.getSimpleName());
+            }
+        });
+    }
+
+    private void callExtensions(boolean beforeAdd, NoErrorCompletion completion) {
+        List<HostAddExtensionPoint> exts = pluginRgty.getExtensionList(HostAddExtensionPoint.class);
+        new While<>(exts).each((ext, extCompletion) -> new While<>(aliveTasks()).step((t, hostCompletion) -> {
+            Completion c = new Completion(hostCompletion) {
+                @Override
+                public void success() {
+                    hostCompletion.done();
+                }
+
+                @Override
+                public void fail(ErrorCode errorCode) {
+                    AddHostsPipeline.this.fail(t, errorCode);
+                    hostCompletion.done();
+                }
+            };
+
+            if (beforeAdd) {
+                ext.beforeAddHost(t.inv, c);
+            } else {
+                ext.afterAddHost(t.inv, c);
+            }
+        }, getParallelismDegree()).run(new NoErrorCompletion(extCompletion) {
+            @Override
+            public void done() {
+                extCompletion.done();
+            }
+        })).run(completion);
+    }
+
+    private void connectHosts(TaskProgressRange stage, NoErrorCompletion completion) {
+        List<HostTask> toConnect = aliveTasks();
+        int[] connected = {0};
+
+        new While<>(toConnect).step((t, whileCompletion) -> {
+            ConnectHostMsg msg = new ConnectHostMsg(t.vo.getUuid());
+            msg.setNewAdd(true);
+            msg.setStartPingTaskOnFailure(false);
+            bus.makeTargetServiceIdByResourceUuid(msg, HostConstant.SERVICE_ID, t.vo.getUuid());
+            bus.send(msg, new CloudBusCallBack(whileCompletion) {
+                @Override
+                public void run(MessageReply reply) {
+                    if (!reply.isSuccess()) {
+                        AddHostsPipeline.this.fail(t, reply.getError());
+                    }
+
+                    int percent;
+                    synchronized (connected) {
+                        percent = stage.getStart() + (stage.getEnd() - stage.getStart()) * ++connected[0] / toConnect.size();
+                    }
+                    reportProgress(String.valueOf(percent));
+                    whileCompletion.done();
+                }
+            });
+        }, getParallelismDegree()).run(completion);
+    }
+
+    private String getOsVersion(String hostUuid) {
+        String distro = HostSystemTags.OS_DISTRIBUTION.getTokenByResourceUuid(hostUuid, HostSystemTags.OS_DISTRIBUTION_TOKEN);
+        String release = HostSystemTags.OS_RELEASE.getTokenByResourceUuid(hostUuid, HostSystemTags.OS_RELEASE_TOKEN);
+        String version = HostSystemTags.OS_VERSION.getTokenByResourceUuid(hostUuid, HostSystemTags.OS_VERSION_TOKEN);
+        if (distro == null || release == null || version == null) {
+            return null;
+        }
+
+        return String.format("%s;%s;%s", distro, release, version);
+    }
+
+    private void checkOsVersions() {
+        List<String> batchHostUuids = tasks.stream().filter(t -> t.vo != null).map(t -> t.vo.getUuid()).collect(Collectors.toList());
+        // the os version of a cluster is the one of a host added before, or the first host of the batch
+        Map<String, String> clusterVersions = new HashMap<>();
+
+        for (HostTask t : aliveTasks()) {
+            String mineVersion = getOsVersion(t.vo.getUuid());
+            if (mineVersion == null) {
+                fail(t, operr("after connecting, host[name:%s, ip:%s] returns a null os version", t.vo.getName(), t.vo.getManagementIp()));
+                continue;
+            }
+
+            String clusterUuid = t.vo.getClusterUuid();
+            String currentVersion = clusterVersions.computeIfAbsent(clusterUuid, k -> {
+                String otherHostUuid = Q.New(HostVO.class).select(HostVO_.uuid)
+                        .eq(HostVO_.clusterUuid, clusterUuid)
+                        .notIn(HostVO_.uuid, batchHostUuids)
+                        .notEq(HostVO_.status, HostStatus.Connecting)
+                        .limit(1)
+                        .findValue();
+                String version = otherHostUuid == null ? null : getOsVersion(otherHostUuid);
+                return version != null ? version : mineVersion;
+            });
+
+            if (!mineVersion.equals(currentVersion)) {
+                fail(t, operr("cluster[uuid:%s] already has host with os version[%s], but new added host[name:%s ip:%s] has host os version[%s]",
+                        clusterUuid, currentVersion, t.vo.getName(), t.vo.getManagementIp(), mineVersion));
+            }
+        }
+    }
+
+    private void cleanupFailedHost(HostTask t) {
+        logger.warn(String.format("failed to add host[name:%s, ip:%s], %s", t.vo.getName(), t.vo.getManagementIp(), t.error));
+
+        // delete host totally through the database, so other tables
+        // refer to the host table will clean up themselves
+        HostVO nvo = dbf.reload(t.vo);
+        if (nvo == null) {
+            return;
+        }
+
+        dbf.remove(nvo);
+        dbf.eoCleanup(HostVO.class, nvo.getUuid());
+        HostInventory inv = HostInventory.valueOf(nvo);
+        CollectionUtils.safeForEach(pluginRgty.getExtensionList(FailToAddHostExtensionPoint.class),
+                ext -> ext.failedToAddHost(inv, t.msg));
+    }
+}
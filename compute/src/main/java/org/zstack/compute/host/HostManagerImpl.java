@@ -206,6 +206,8 @@ public class HostManagerImpl extends AbstractService implements HostManager, Man
             passThrough((HostMessage) msg);
         } else if (msg instanceof AddHostMsg){
             handle((AddHostMsg) msg);
+        } else if (msg instanceof AddHostsMsg) {
+            handle((AddHostsMsg) msg);
         } else if (msg instanceof GetHostTaskMsg) {
             handle((GetHostTaskMsg) msg);
         } else if (msg instanceof CancelHostTasksMsg) {
@@ -484,6 +486,83 @@ public class HostManagerImpl extends AbstractService implements HostManager, Man
         });
     }
 
+    private void handle(final AddHostsMsg msg) {
+        thdf.chainSubmit(new ChainTask(msg) {
+            @Override
+            public String getSyncSignature() {
+                return "batch-add-host";
+            }
+
+            @Override
+            public void run(SyncTaskChain chain) {
+                // hold the queue of every management ip like a single add does; taking them in
+                // order keeps two batches sharing ips from deadlocking, the later one still waits
+                List<String> ips = msg.getHosts().stream().map(AddHostMsg::getManagementIp)
+                        .distinct().sorted().collect(Collectors.toList());
+                List<SyncTaskChain> ipChains = new ArrayList<>();
+                holdAddHostQueues(ips.iterator(), ipChains, () -> {
+                    AddHostsReply reply = new AddHostsReply();
+                    AddHostsPipeline pipeline = new AddHostsPipeline(msg.getHosts());
+                    pipeline.run(new Completion(msg) {
+                        @Override
+                        public void success() {
+                            pipeline.fillReply(reply);
+                            done();
+                        }
+
+                        @Override
+                        public void fail(ErrorCode errorCode) {
+                            reply.setError(errorCode);
+                            done();
+                        }
+
+                        private void done() {
+                            bus.reply(msg, reply);
+                            ipChains.forEach(SyncTaskChain::next);
+                            chain.next();
+                        }
+                    });
+                });
+            }
+
+            @Override
+            public String getName() {
+                return String.format("add-%s-hosts", msg.getHosts().size());
+            }
+
+            @Override
+            protected int getSyncLevel() {
+                return ThreadGlobalProperty.MAX_THREAD_NUM / 5;
+            }
+        });
+    }
+
+    private void holdAddHostQueues(Iterator<String> ips, List<SyncTaskChain> held, Runnable then) {
+        if (!ips.hasNext()) {
+            then.run();
+            return;
+        }
+
+        String ip = ips.next();
+        thdf.chainSubmit(new ChainTask(null) {
+            @Override
+            public String getSyncSignature() {
+                return String.format("add-host-%s", ip);
+            }
+
+            @Override
+            public void run(SyncTaskChain chain) {
+                held.add(chain);
+                holdAddHostQueues(ips, held, then);
+            }
+
+            @Override
+            public String getName() {
+                return getSyncSignature();
+            }
+        });
+    }
+
     @Deferred
     private void handle(final APIAddHostMsg msg) {
         final APIAddHostEvent evt = new APIAddHostEvent(msg.getId());
@@ -25,12 +25,12 @@ public class DeleteVmGC extends EventBasedGarbageCollector {
 
     @Override
     protected void setup() {
-        onEvent(HostCanonicalEvents.HOST_DELETED_PATH, (tokens, data) -> {
+        onEvent(HostCanonicalEvents.HOST_DELETED_PATH, hostUuid, (tokens, data) -> {
             HostCanonicalEvents.HostDeletedData d = (HostCanonicalEvents.HostDeletedData) data;
             return hostUuid.equals(d.getHostUuid());
         });
 
-        onEvent(HostCanonicalEvents.HOST_STATUS_CHANGED_PATH, (tokens, data) -> {
+        onEvent(HostCanonicalEvents.HOST_STATUS_CHANGED_PATH, hostUuid, (tokens, data) -> {
             HostCanonicalEvents.HostStatusChangedData d = (HostCanonicalEvents.HostStatusChangedData) data;
             return d.getHostUuid().equals(hostUuid) && d.getNewStatus().equals(HostStatus.Connected.toString());
         });
@@ -94,17 +94,17 @@ public class StopVmGC extends EventBasedGarbageCollector {
 
     @Override
     protected void setup() {
-        onEvent(HostCanonicalEvents.HOST_STATUS_CHANGED_PATH, (tokens, data) -> {
+        onEvent(HostCanonicalEvents.HOST_STATUS_CHANGED_PATH, hostUuid, (tokens, data) -> {
             HostCanonicalEvents.HostStatusChangedData d = (HostCanonicalEvents.HostStatusChangedData) data;
             return d.getHostUuid().equals(hostUuid) && d.getNewStatus().equals(HostStatus.Connected.toString());
         });
 
-        onEvent(HostCanonicalEvents.HOST_DELETED_PATH, ((tokens, data) -> {
+        onEvent(HostCanonicalEvents.HOST_DELETED_PATH, hostUuid, ((tokens, data) -> {
             HostCanonicalEvents.HostDeletedData d = (HostCanonicalEvents.HostDeletedData) data;
             return hostUuid.equals(d.getHostUuid());
         }));
 
-        onEvent(VmCanonicalEvents.VM_FULL_STATE_CHANGED_PATH, ((tokens, data) -> {
+        onEvent(VmCanonicalEvents.VM_FULL_STATE_CHANGED_PATH, inventory.getUuid(), ((tokens, data) -> {
             VmCanonicalEvents.VmStateChangedData d = (VmCanonicalEvents.VmStateChangedData) data;
             return d.getVmUuid().equals(inventory.getUuid()) && d.getNewState().equals(VmInstanceState.Destroyed.toString());
         }));
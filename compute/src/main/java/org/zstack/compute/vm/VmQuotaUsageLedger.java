@@ -0,0 +1,118 @@
+package org.zstack.compute.vm;
+
+import org.zstack.core.db.SQL;
+import org.zstack.header.vm.VmInstanceState;
+import org.zstack.header.vm.VmInstanceVO;
+import org.zstack.header.vm.VmInstanceVO_;
+import org.zstack.header.volume.VolumeStatus;
+import org.zstack.header.volume.VolumeType;
+import org.zstack.header.volume.VolumeVO;
+import org.zstack.header.volume.VolumeVO_;
+import org.zstack.identity.QuotaUsageLedger;
+
+import javax.persistence.Tuple;
+import java.util.*;
+
+import static org.zstack.utils.CollectionDSL.list;
+
+/**
+ * Usages of the VM and volume quotas of accounts, contributed by each VM and volume the same
+ * way VmQuotaUtil counts them in the database.
+ */
+public class VmQuotaUsageLedger extends QuotaUsageLedger {
+    private static final List<VmInstanceState> NOT_RUNNING_STATES = list(VmInstanceState.Stopped,
+            VmInstanceState.Destroying, VmInstanceState.Destroyed, VmInstanceState.Created);
+    // the metamodel is populated with the entity manager, the field names are taken at the first use
+    private Set<String> usageFields;
+
+    @Override
+    protected List<Class> getResourceTypes() {
+        return list(VmInstanceVO.class, VolumeVO.class);
+    }
+
+    private static Map<String, Long> vmUsages(VmInstanceState state, String hostUuid, String lastHostUuid, long cpuNum, long memorySize) {
+        Map<String, Long> usages = new HashMap<>();
+        if (!(state == VmInstanceState.Starting && hostUuid == null) && !NOT_RUNNING_STATES.contains(state)) {
+            addUsage(usages, VmQuotaConstant.VM_RUNNING_NUM, 1);
+            addUsage(usages, VmQuotaConstant.VM_RUNNING_CPU_NUM, cpuNum);
+            addUsage(usages, VmQuotaConstant.VM_RUNNING_MEMORY_SIZE, memorySize);
+        }
+
+        if (!(hostUuid == null && lastHostUuid == null) && state != VmInstanceState.Destroyed) {
+            addUsage(usages, VmQuotaConstant.VM_TOTAL_NUM, 1);
+        }
+
+        return usages;
+    }
+
+    private static Map<String, Long> volumeUsages(VolumeType type, VolumeStatus status, long size) {
+        Map<String, Long> usages = new HashMap<>();
+        addUsage(usages, VmQuotaConstant.VOLUME_SIZE, size);
+        if (type == VolumeType.Data && status != VolumeStatus.Deleted) {
+            addUsage(usages, VmQuotaConstant.DATA_VOLUME_NUM, 1);
+        }
+
+        return usages;
+    }
+
+    @Override
+    protected Set<String> getUsageFields() {
+        if (usageFields == null) {
+            usageFields = new HashSet<>(list(VmInstanceVO_.state.getName(), VmInstanceVO_.hostUuid.getName(),
+                    VmInstanceVO_.lastHostUuid.getName(), VmInstanceVO_.cpuNum.getName(), VmInstanceVO_.memorySize.getName(),
+                    VolumeVO_.type.getName(), VolumeVO_.status.getName(), VolumeVO_.size.getName()));
+        }
+
+        return usageFields;
+    }
+
+    @Override
+    protected Map<String, Long> calculateUsages(Object entity) {
+        if (entity instanceof VmInstanceVO) {
+            VmInstanceVO vm = (VmInstanceVO) entity;
+            return vmUsages(vm.getState(), vm.getHostUuid(), vm.getLastHostUuid(), vm.getCpuNum(), vm.getMemorySize());
+        }
+
+        VolumeVO vol = (VolumeVO) entity;
+        return volumeUsages(vol.getType(), vol.getStatus(), vol.getSize());
+    }
+
+    private static void putVmUsages(Map<String, Map<String, Long>> ret, List<Tuple> ts) {
+        for (Tuple t : ts) {
+            ret.put(t.get(0, String.class), vmUsages(t.get(1, VmInstanceState.class), t.get(2, String.class),
+                    t.get(3, String.class), t.get(4, Integer.class), t.get(5, Long.class)));
+        }
+    }
+
+    private static void putVolumeUsages(Map<String, Map<String, Long>> ret, List<Tuple> ts) {
+        for (Tuple t : ts) {
+            ret.put(t.get(0, String.class), volumeUsages(t.get(1, VolumeType.class), t.get(2, VolumeStatus.class),
+                    t.get(3, Long.class)));
+        }
+    }
+
+    @Override
+    protected Map<String, Map<String, Long>> loadUsages(String accountUuid) {
+        Map<String, Map<String, Long>> ret = new HashMap<>();
+
+        putVmUsages(ret, SQL.New("select vm.uuid, vm.state, vm.hostUuid, vm.lastHostUuid, vm.cpuNum, vm.memorySize" +
+                " from VmInstanceVO vm, AccountResourceRefVO ref" +
+                " where vm.uuid = ref.resourceUuid" +
+                " and ref.accountUuid = :auuid" +
+                " and ref.resourceType = :rtype", Tuple.class)
+                .param("auuid", accountUuid)
+                .param("rtype", VmInstanceVO.class.getSimpleName())
+                .list());
+
+        putVolumeUsages(ret, SQL.New("select vol.uuid, vol.type, vol.status, vol.size" +
+                " from VolumeVO vol, AccountResourceRefVO ref" +
+                " where vol.uuid = ref.resourceUuid" +
+                " and ref.accountUuid = :auuid" +
+                " and ref.resourceType = :rtype", Tuple.class)
+                .param("auuid", accountUuid)
+                .param("rtype", VolumeVO.class.getSimpleName())
+                .list());
+
+        return ret;
+    }
+}
@@ -15,6 +15,7 @@ import org.zstack.header.volume.VolumeVO_;
 
 import javax.persistence.Tuple;
 import javax.persistence.TypedQuery;
+import java.util.Map;
 
 import static org.zstack.utils.CollectionDSL.list;
 
@@ -25,6 +26,8 @@ import static org.zstack.utils.CollectionDSL.list;
 public class VmQuotaUtil {
     @Autowired
     private DatabaseFacade dbf;
+    @Autowired
+    private VmQuotaUsageLedger ledger;
 
     public class VmQuota {
         public long totalVmNum;
@@ -35,6 +38,10 @@ public class VmQuotaUtil {
 
     @Transactional(readOnly = true)
     public long getUsedDataVolumeCount(String accountUuid) {
+        if (ledger.isEnabled()) {
+            return ledger.getAccountUsage(accountUuid, VmQuotaConstant.DATA_VOLUME_NUM);
+        }
+
         String sql = "select count(vol)" +
                 " from VolumeVO vol, AccountResourceRefVO ref " +
                 " where vol.type = :vtype" +
@@ -54,6 +61,10 @@ public class VmQuotaUtil {
 
     @Transactional(readOnly = true)
     public long getUsedAllVolumeSize(String accountUuid) {
+        if (ledger.isEnabled()) {
+            return ledger.getAccountUsage(accountUuid, VmQuotaConstant.VOLUME_SIZE);
+        }
+
         String sql = "select sum(vol.size)" +
                 " from VolumeVO vol, AccountResourceRefVO ref" +
                 " where ref.resourceUuid = vol.uuid" +
@@ -70,6 +81,16 @@ public class VmQuotaUtil {
     @Transactional(readOnly = true)
     public VmQuota getUsedVmCpuMemory(String accountUUid, String excludeVmUuid) {
         VmQuota quota = new VmQuota();
+        if (ledger.isEnabled()) {
+            // the excluded vm is only excluded from the running usages
+            Map<String, Long> running = ledger.getAccountUsages(accountUUid, excludeVmUuid);
+            quota.runningVmNum = running.getOrDefault(VmQuotaConstant.VM_RUNNING_NUM, 0L);
+            quota.runningVmCpuNum = running.getOrDefault(VmQuotaConstant.VM_RUNNING_CPU_NUM, 0L);
+            quota.runningVmMemorySize = running.getOrDefault(VmQuotaConstant.VM_RUNNING_MEMORY_SIZE, 0L);
+            quota.totalVmNum = ledger.getAccountUsage(accountUUid, VmQuotaConstant.VM_TOTAL_NUM);
+            return quota;
+        }
+
         // get running info
         String sql = "select count(vm), sum(vm.cpuNum), sum(vm.memorySize)" +
                 " from VmInstanceVO vm, AccountResourceRefVO ref" +
@@ -203,11 +203,15 @@ public abstract class AbstractConsoleProxyBackend implements ConsoleBackend, Com
         return ret.isEmpty() ? null : ret.get(0);
     }
 
-    @Override
-    public void deleteConsoleSession(SessionInventory session, final NoErrorCompletion completion) {
+    protected List<ConsoleProxyVO> getConsoleProxiesOfSession(SessionInventory session) {
         SimpleQuery<ConsoleProxyVO> q = dbf.createQuery(ConsoleProxyVO.class);
         q.add(ConsoleProxyVO_.token, Op.LIKE, session.getUuid() + "%");
-        List<ConsoleProxyVO> vos = q.list();
+        return q.list();
+    }
+
+    @Override
+    public void deleteConsoleSession(SessionInventory session, final NoErrorCompletion completion) {
+        List<ConsoleProxyVO> vos = getConsoleProxiesOfSession(session);
 
         if (vos.isEmpty()) {
             completion.done();
@@ -13,6 +13,9 @@ public class ConsoleGlobalConfig {
     @GlobalConfigValidation(numberGreaterThan = 0)
     public static GlobalConfig PROXY_IDLE_TIMEOUT = new GlobalConfig(CATEGORY, "proxy.idleTimeout");
 
+    @GlobalConfigValidation(numberGreaterThan = -1)
+    public static GlobalConfig CONNECTION_IDLE_TIMEOUT = new GlobalConfig(CATEGORY, "proxy.connection.idleTimeout");
+
     @GlobalConfigValidation(numberGreaterThan = 1)
     public static GlobalConfig PING_INTERVAL = new GlobalConfig(CATEGORY, "agent.ping.interval");
 
@@ -13,4 +13,8 @@ public class ConsoleGlobalProperty {
     public static String AGENT_PACKAGE_NAME;
     @GlobalProperty(name="MN.network.", defaultValue = "")
     public static List<String> MN_NETWORKS;
+    @GlobalProperty(name="ConsoleProxy.embedded", defaultValue = "false")
+    public static boolean EMBEDDED_PROXY;
+    @GlobalProperty(name="ConsoleProxy.embedded.bufferSize", defaultValue = "65536")
+    public static int EMBEDDED_PROXY_BUFFER_SIZE;
 }
@@ -0,0 +1,117 @@
+package org.zstack.console;
+
+import java.util.*;
+
+/**
+ * Targets of the consoles granted through the embedded console proxy, by token.
+ *
+ * A token expires after its timeout, counted in ticks of a hashed timing wheel: the token is put
+ * in the slot its timeout ends in, with the number of full turns of the wheel left, so adding,
+ * removing and expiring a token cost the same however many tokens there are.
+ */
+public class ConsoleProxyTokenTable {
+    static final int WHEEL_SIZE = 512;
+
+    public static class Target {
+        final String token;
+        final String sessionUuid;
+        final String vmUuid;
+        final String hostname;
+        final int port;
+
+        private int slot;
+        private long rounds;
+
+        public Target(String token, String sessionUuid, String vmUuid, String hostname, int port) {
+            this.token = token;
+            this.sessionUuid = sessionUuid;
+            this.vmUuid = vmUuid;
+            this.hostname = hostname;
+            this.port = port;
+        }
+    }
+
+    private final Map<String, Target> targets = new HashMap<>();
+    private final Map<String, Set<String>> sessionTokens = new HashMap<>();
+    private final List<Set<String>> wheel = new ArrayList<>(WHEEL_SIZE);
+    private int cursor;
+
+    ConsoleProxyTokenTable() {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new HashSet<>());
+        }
+    }
+
+    /**
+     * @param timeoutTicks ticks before the token expires, at least one
+     */
+    synchronized void put(Target target, long timeoutTicks) {
+        remove(target.token);
+
+        long ticks = Math.max(timeoutTicks, 1);
+        target.slot = (int) ((cursor + ticks) % WHEEL_SIZE);
+        target.rounds = (ticks - 1) / WHEEL_SIZE;
+        wheel.get(target.slot).add(target.token);
+        targets.put(target.token, target);
+
+        if (target.sessionUuid != null) {
+            sessionTokens.computeIfAbsent(target.sessionUuid, k -> new HashSet<>()).add(target.token);
+        }
+    }
+
+    synchronized Target get(String token) {
+        return targets.get(token);
+    }
+
+    synchronized Target remove(String token) {
+        Target target = targets.remove(token);
+        if (target == null) {
+            return null;
+        }
+
+        wheel.get(target.slot).remove(token);
+        if (target.sessionUuid != null) {
+            Set<String> tokens = sessionTokens.get(target.sessionUuid);
+            tokens.remove(token);
+            if (tokens.isEmpty()) {
+                sessionTokens.remove(target.sessionUuid);
+            }
+        }
+
+        return target;
+    }
+
+    /**
+     * @return tokens granted to the session, or null if the session has none in the table
+     */
+    synchronized Set<String> getSessionTokens(String sessionUuid) {
+        Set<String> tokens = sessionTokens.get(sessionUuid);
+        return tokens == null ? null : new HashSet<>(tokens);
+    }
+
+    synchronized int size() {
+        return targets.size();
+    }
+
+    /**
+     * moves the wheel one tick forward
+     *
+     * @return targets expired in this tick
+     */
+    synchronized List<Target> tick() {
+        cursor = (cursor + 1) % WHEEL_SIZE;
+
+        List<Target> expired = new ArrayList<>();
+        for (String token : new ArrayList<>(wheel.get(cursor))) {
+            Target target = targets.get(token);
+            if (target.rounds > 0) {
+                target.rounds--;
+                continue;
+            }
+
+            expired.add(remove(token));
+        }
+
+        return expired;
+    }
+}
@@ -0,0 +1,82 @@
+package org.zstack.console;
+
+import org.springframework.beans.factory.annotation.Autowire;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Configurable;
+import org.zstack.header.console.ConsoleHypervisorBackend;
+import org.zstack.header.console.ConsoleProxy;
+import org.zstack.header.console.ConsoleProxyInventory;
+import org.zstack.header.console.ConsoleProxyVO;
+import org.zstack.header.core.Completion;
+import org.zstack.header.core.ReturnValueCompletion;
+import org.zstack.header.errorcode.ErrorCode;
+import org.zstack.header.host.HypervisorType;
+import org.zstack.header.identity.SessionInventory;
+import org.zstack.header.vm.VmInstanceInventory;
+
+import java.net.URI;
+
+import static org.zstack.core.Platform.operr;
+
+/**
+ * Console proxy served by the EmbeddedConsoleProxyServer of this management node, granting a
+ * console only puts its token in the in-memory token table of the server.
+ */
+@Configurable(preConstruction = true, autowire = Autowire.BY_TYPE)
+public class EmbeddedConsoleProxy implements ConsoleProxy {
+    private ConsoleProxyInventory self;
+
+    @Autowired
+    private ConsoleManager consoleMgr;
+
+    private final EmbeddedConsoleProxyServer server;
+
+    EmbeddedConsoleProxy(ConsoleProxyVO vo, EmbeddedConsoleProxyServer server) {
+        self = ConsoleProxyInventory.valueOf(vo);
+        this.server = server;
+    }
+
+    EmbeddedConsoleProxy(ConsoleProxyInventory inv, EmbeddedConsoleProxyServer server) {
+        self = inv;
+        this.server = server;
+    }
+
+    @Override
+    public void establishProxy(SessionInventory session, VmInstanceInventory vm, ReturnValueCompletion<ConsoleProxyInventory> completion) {
+        ConsoleHypervisorBackend bkd = consoleMgr.getHypervisorConsoleBackend(HypervisorType.valueOf(vm.getHypervisorType()));
+        bkd.generateConsoleUrl(vm, new ReturnValueCompletion<URI>(completion) {
+            @Override
+            public void success(URI uri) {
+                if (uri.getHost() == null || uri.getPort() < 0) {
+                    completion.fail(operr("establish VNC: unexpected uri: %s", uri.toString()));
+                    return;
+                }
+
+                server.getTokens().put(new ConsoleProxyTokenTable.Target(self.getToken(), session.getUuid(),
+                        vm.getUuid(), uri.getHost(), uri.getPort()),
+                        ConsoleGlobalConfig.VNC_TOKEN_TIMEOUT.value(Long.class));
+
+                self.setTargetHostname(uri.getHost());
+                self.setTargetPort(uri.getPort());
+                self.setProxyPort(server.getPort());
+                completion.success(self);
+            }
+
+            @Override
+            public void fail(ErrorCode errorCode) {
+                completion.fail(errorCode);
+            }
+        });
+    }
+
+    @Override
+    public void checkAvailability(ReturnValueCompletion<Boolean> completion) {
+        completion.success(server.isRunning() && server.getTokens().get(self.getToken()) != null);
+    }
+
+    @Override
+    public void deleteProxy(VmInstanceInventory vm, Completion completion) {
+        server.revoke(self.getToken());
+        completion.success();
+    }
+}
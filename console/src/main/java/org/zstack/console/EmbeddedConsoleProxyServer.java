@@ -0,0 +1,677 @@
+package org.zstack.console;
+
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A WebSocket to VNC/SPICE relay running in the management node, replacing the console proxy
+ * agent when ConsoleGlobalProperty.EMBEDDED_PROXY is on.
+ *
+ * All connections are served by one selector thread with non-blocking channels. Each connection
+ * owns two direct buffers of ConsoleGlobalProperty.EMBEDDED_PROXY_BUFFER_SIZE bytes, one for each
+ * direction, and stops reading a side while the other side hasn't taken what was read, so a
+ * connection never holds more than the two buffers:
+ * - frames from the client are unmasked in place and their payloads written to the target from
+ *   the buffer they were read into;
+ * - data from the target is read after room left for a frame header, the header is written in
+ *   front of it and the frame is written to the client from the same buffer.
+ *
+ * Clients connect with the token of a granted console in the query string, which is looked up in
+ * the in-memory ConsoleProxyTokenTable instead of the database. The target of the token is resolved
+ * by the resolver given, never by the selector thread.
+ *
+ * A connection not relaying HANDSHAKE_TIMEOUT after accepted is closed; a relaying connection
+ * is only closed for idleness when an idle timeout is set.
+ */
+public class EmbeddedConsoleProxyServer {
+    private static final CLogger logger = Utils.getLogger(EmbeddedConsoleProxyServer.class);
+
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    // the longest header of an unmasked frame from the server
+    private static final int FRAME_HEADER_RESERVE = 10;
+    private static final int MAX_HANDSHAKE_SIZE = 8192;
+    private static final long HANDSHAKE_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    private static final int OPCODE_CONTINUATION = 0x0;
+    private static final int OPCODE_TEXT = 0x1;
+    private static final int OPCODE_BINARY = 0x2;
+    private static final int OPCODE_CLOSE = 0x8;
+
+    private final ConsoleProxyTokenTable tokens = new ConsoleProxyTokenTable();
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Set<Connection> connections = new HashSet<>();
+    private final Deque<ByteBuffer> freeBuffers = new ArrayDeque<>();
+    private final int bufferSize;
+    private final Executor resolver;
+
+    private Selector selector;
+    private ServerSocketChannel server;
+    private Thread thread;
+    private volatile boolean running;
+    private volatile long idleTimeoutMillis;
+
+    EmbeddedConsoleProxyServer(int bufferSize, Executor resolver) {
+        this.bufferSize = Math.max(bufferSize, MAX_HANDSHAKE_SIZE);
+        this.resolver = resolver;
+    }
+
+    synchronized void start(String hostname, int port) throws IOException {
+        if (running) {
+            return;
+        }
+
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.configureBlocking(false);
+        server.bind(new InetSocketAddress(hostname, port));
+        server.register(selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        thread = new Thread(this::loop, "embedded-console-proxy");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info(String.format("embedded console proxy is listening on %s:%s", hostname, getPort()));
+    }
+
+    synchronized void stop() {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    ConsoleProxyTokenTable getTokens() {
+        return tokens;
+    }
+
+    /**
+     * @param seconds 0 never closes a relaying connection for idleness
+     */
+    void setIdleTimeout(long seconds) {
+        idleTimeoutMillis = TimeUnit.SECONDS.toMillis(seconds);
+    }
+
+    /**
+     * removes the token and closes the connections using it
+     */
+    void revoke(String token) {
+        tokens.remove(token);
+        runInSelectorThread(() -> new ArrayList<>(connections).stream()
+                .filter(c -> token.equals(c.token))
+                .forEach(Connection::close));
+    }
+
+    private void runInSelectorThread(Runnable task) {
+        tasks.add(task);
+        Selector s = selector;
+        if (s != null) {
+            s.wakeup();
+        }
+    }
+
+    private void loop() {
+        long nextTick = System.currentTimeMillis() + 1000;
+
+        while (running) {
+            try {
+                selector.select(1000);
+
+                for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    handle(key);
+                }
+
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+
+                long now = System.currentTimeMillis();
+                if (now >= nextTick) {
+                    nextTick = now + 1000;
+                    expire(now);
+                }
+            } catch (Throwable t) {
+                logger.warn("unhandled exception in the embedded console proxy", t);
+            }
+        }
+
+        new ArrayList<>(connections).forEach(Connection::close);
+        closeQuietly(server);
+        closeQuietly(selector);
+        logger.info("embedded console proxy stopped");
+    }
+
+    private void expire(long now) {
+        tokens.tick().forEach(t -> logger.debug(String.format("console token for vm[uuid:%s] expired", t.vmUuid)));
+
+        long idleTimeout = idleTimeoutMillis;
+        new ArrayList<>(connections).forEach(c -> {
+            if (!c.relaying && now - c.acceptedAt > HANDSHAKE_TIMEOUT) {
+                logger.debug("close console connection not relaying in time");
+                c.close();
+            } else if (c.relaying && idleTimeout > 0 && now - c.lastActive > idleTimeout) {
+                logger.debug(String.format("close idle console connection to %s:%s", c.targetHostname, c.targetPort));
+                c.close();
+            }
+        });
+    }
+
+    private void handle(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+
+        Connection c = (Connection) key.attachment();
+        try {
+            c.handle(key);
+        } catch (IOException e) {
+            logger.debug(String.format("console connection to %s:%s closed, %s", c.targetHostname, c.targetPort, e.getMessage()));
+            c.close();
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel client = server.accept();
+            if (client == null) {
+                return;
+            }
+
+            client.configureBlocking(false);
+            client.socket().setTcpNoDelay(true);
+            Connection c = new Connection(client);
+            c.clientKey = client.register(selector, SelectionKey.OP_READ, c);
+            connections.add(c);
+        } catch (IOException e) {
+            logger.warn("failed to accept a console connection", e);
+        }
+    }
+
+    private ByteBuffer allocate() {
+        ByteBuffer buf = freeBuffers.poll();
+        if (buf == null) {
+            buf = ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        buf.clear();
+        return buf;
+    }
+
+    private static void closeQuietly(java.io.Closeable c) {
+        if (c == null) {
+            return;
+        }
+
+        try {
+            c.close();
+        } catch (IOException ignored) {
+            // closing anyway
+        }
+    }
+
+    private static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((key + WEBSOCKET_GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int indexOfHeaderEnd(ByteBuffer buf) {
+        for (int i = buf.position(); i + 3 < buf.limit(); i++) {
+            if (buf.get(i) == '\r' && buf.get(i + 1) == '\n' && buf.get(i + 2) == '\r' && buf.get(i + 3) == '\n') {
+                return i + 4;
+            }
+        }
+
+        return -1;
+    }
+
+    private static String getTokenFromRequestTarget(String target) {
+        int q = target.indexOf('?');
+        if (q < 0) {
+            return null;
+        }
+
+        for (String param : target.substring(q + 1).split("&")) {
+            int eq = param.indexOf('=');
+            if (eq > 0 && param.substring(0, eq).equals("token")) {
+                try {
+                    return URLDecoder.decode(param.substring(eq + 1), StandardCharsets.UTF_8.name());
+                } catch (IOException e) {
+                    return null;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private class Connection {
+        final SocketChannel client;
+        SocketChannel target;
+        SelectionKey clientKey;
+        SelectionKey targetKey;
+
+        String token;
+        String targetHostname;
+        int targetPort;
+        boolean binaryProtocol;
+        final long acceptedAt = System.currentTimeMillis();
+        long lastActive = acceptedAt;
+        boolean resolving;
+        boolean relaying;
+        boolean closed;
+
+        // data from the client, always ready to be consumed, i.e. flipped
+        ByteBuffer up;
+        // data to the client, a handshake response or a frame, while being written
+        ByteBuffer down;
+
+        // payload of the current frame from the client not received yet
+        long upPayloadRemaining;
+        boolean upDataFrame;
+        final byte[] upMask = new byte[4];
+        int upMaskIndex;
+        ByteBuffer upPending;
+        ByteBuffer downPending;
+
+        Connection(SocketChannel client) {
+            this.client = client;
+            up = allocate();
+            up.flip();
+            down = allocate();
+        }
+
+        void handle(SelectionKey key) throws IOException {
+            lastActive = System.currentTimeMillis();
+
+            if (key == clientKey) {
+                if (key.isWritable()) {
+                    flushDown();
+                }
+                if (!closed && key.isReadable()) {
+                    readClient();
+                }
+            } else if (key.isConnectable()) {
+                targetConnected();
+            } else {
+                if (key.isWritable()) {
+                    flushUp();
+                }
+                if (!closed && key.isReadable()) {
+                    readTarget();
+                }
+            }
+
+            updateInterestOps();
+        }
+
+        /**
+         * a side is read only when the other side has taken all read from it
+         */
+        private void updateInterestOps() {
+            if (closed) {
+                return;
+            }
+
+            int clientOps = 0;
+            if ((target == null && !resolving) || (relaying && upPending == null)) {
+                clientOps |= SelectionKey.OP_READ;
+            }
+            if (downPending != null) {
+                clientOps |= SelectionKey.OP_WRITE;
+            }
+            clientKey.interestOps(clientOps);
+
+            if (targetKey == null) {
+                return;
+            }
+
+            int targetOps = 0;
+            if (!relaying) {
+                targetOps |= SelectionKey.OP_CONNECT;
+            } else {
+                if (downPending == null) {
+                    targetOps |= SelectionKey.OP_READ;
+                }
+                if (upPending != null) {
+                    targetOps |= SelectionKey.OP_WRITE;
+                }
+            }
+            targetKey.interestOps(targetOps);
+        }
+
+        private void readClient() throws IOException {
+            up.compact();
+            int n = client.read(up);
+            up.flip();
+            if (n < 0) {
+                close();
+                return;
+            }
+
+            if (relaying) {
+                relayUp();
+            } else if (target == null && !resolving) {
+                handshake();
+            }
+        }
+
+        private void handshake() throws IOException {
+            int end = indexOfHeaderEnd(up);
+            if (end < 0) {
+                if (up.remaining() >= MAX_HANDSHAKE_SIZE) {
+                    reject("431 Request Header Fields Too Large");
+                }
+                return;
+            }
+
+            byte[] raw = new byte[end - up.position()];
+            up.get(raw);
+            String[] lines = new String(raw, StandardCharsets.ISO_8859_1).split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            Map<String, String> headers = new HashMap<>();
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon > 0) {
+                    headers.put(lines[i].substring(0, colon).trim().toLowerCase(), lines[i].substring(colon + 1).trim());
+                }
+            }
+
+            String key = headers.get("sec-websocket-key");
+            if (requestLine.length < 2 || !"GET".equals(requestLine[0]) || key == null
+                    || !"websocket".equalsIgnoreCase(headers.get("upgrade"))) {
+                reject("400 Bad Request");
+                return;
+            }
+
+            token = getTokenFromRequestTarget(requestLine[1]);
+            ConsoleProxyTokenTable.Target t = token == null ? null : tokens.get(token);
+            if (t == null) {
+                reject("403 Forbidden");
+                return;
+            }
+
+            String protocols = headers.get("sec-websocket-protocol");
+            binaryProtocol = protocols != null && Arrays.stream(protocols.split(",")).anyMatch(p -> p.trim().equals("binary"));
+
+            StringBuilder rsp = new StringBuilder("HTTP/1.1 101 Switching Protocols\r\n")
+                    .append("Upgrade: websocket\r\n")
+                    .append("Connection: Upgrade\r\n")
+                    .append("Sec-WebSocket-Accept: ").append(acceptKey(key)).append("\r\n");
+            if (binaryProtocol) {
+                rsp.append("Sec-WebSocket-Protocol: binary\r\n");
+            }
+            rsp.append("\r\n");
+            down.clear();
+            down.put(rsp.toString().getBytes(StandardCharsets.ISO_8859_1));
+            down.flip();
+
+            targetHostname = t.hostname;
+            targetPort = t.port;
+            // frames from the client are read after the target is connected
+            resolving = true;
+            resolver.execute(() -> {
+                InetSocketAddress address = new InetSocketAddress(targetHostname, targetPort);
+                runInSelectorThread(() -> connectTarget(address));
+            });
+        }
+
+        private void connectTarget(InetSocketAddress address) {
+            resolving = false;
+            if (closed) {
+                return;
+            }
+
+            try {
+                if (address.isUnresolved()) {
+                    throw new IOException(String.format("cannot resolve %s", targetHostname));
+                }
+
+                target = SocketChannel.open();
+                target.configureBlocking(false);
+                target.socket().setTcpNoDelay(true);
+                targetKey = target.register(selector, 0, this);
+                if (target.connect(address)) {
+                    startRelay();
+                }
+
+                updateInterestOps();
+            } catch (IOException e) {
+                logger.debug(String.format("failed to connect console target %s:%s, %s", targetHostname, targetPort, e.getMessage()));
+                close();
+            }
+        }
+
+        private void reject(String status) throws IOException {
+            logger.debug(String.format("reject console connection from %s, %s", client.getRemoteAddress(), status));
+            down.clear();
+            down.put(String.format("HTTP/1.1 %s\r\nConnection: close\r\nContent-Length: 0\r\n\r\n", status)
+                    .getBytes(StandardCharsets.ISO_8859_1));
+            down.flip();
+            client.write(down);
+            close();
+        }
+
+        private void targetConnected() throws IOException {
+            target.finishConnect();
+            startRelay();
+        }
+
+        private void startRelay() throws IOException {
+            relaying = true;
+            logger.debug(String.format("relay console connection from %s to %s:%s", client.getRemoteAddress(), targetHostname, targetPort));
+
+            // the handshake response is sent as if it were a frame from the target
+            downPending = down;
+            flushDown();
+            if (closed) {
+                return;
+            }
+
+            relayUp();
+        }
+
+        /**
+         * relays frames from the client in the up buffer to the target, until the buffer runs out
+         * or the target can't take more
+         */
+        private void relayUp() throws IOException {
+            while (!closed) {
+                if (upPayloadRemaining == 0) {
+                    if (!readFrameHeader()) {
+                        break;
+                    }
+                    continue;
+                }
+
+                int n = (int) Math.min(up.remaining(), upPayloadRemaining);
+                if (n == 0) {
+                    break;
+                }
+
+                int start = up.position();
+                for (int i = start; i < start + n; i++) {
+                    up.put(i, (byte) (up.get(i) ^ upMask[upMaskIndex]));
+                    upMaskIndex = (upMaskIndex + 1) & 3;
+                }
+
+                upPayloadRemaining -= n;
+                up.position(start + n);
+                if (!upDataFrame) {
+                    continue;
+                }
+
+                ByteBuffer payload = up.duplicate();
+                payload.position(start).limit(start + n);
+                target.write(payload);
+                if (payload.hasRemaining()) {
+                    // the target is slow, the client is read again when the payload is taken
+                    upPending = payload;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return false if the buffer doesn't hold a whole frame header yet
+         */
+        private boolean readFrameHeader() {
+            int pos = up.position();
+            if (up.remaining() < 2) {
+                return false;
+            }
+
+            int b0 = up.get(pos) & 0xff;
+            int b1 = up.get(pos + 1) & 0xff;
+            int opcode = b0 & 0x0f;
+            int len = b1 & 0x7f;
+            boolean masked = (b1 & 0x80) != 0;
+
+            int headerLen = 2 + (len == 126 ? 2 : len == 127 ? 8 : 0) + (masked ? 4 : 0);
+            if (up.remaining() < headerLen) {
+                return false;
+            }
+
+            long payloadLen;
+            if (len == 126) {
+                payloadLen = up.getShort(pos + 2) & 0xffff;
+            } else if (len == 127) {
+                payloadLen = up.getLong(pos + 2);
+            } else {
+                payloadLen = len;
+            }
+
+            if (masked) {
+                for (int i = 0; i < 4; i++) {
+                    upMask[i] = up.get(pos + headerLen - 4 + i);
+                }
+            } else {
+                Arrays.fill(upMask, (byte) 0);
+            }
+
+            up.position(pos + headerLen);
+            upMaskIndex = 0;
+            upPayloadRemaining = payloadLen;
+
+            if (opcode == OPCODE_CLOSE) {
+                close();
+                return false;
+            }
+
+            if (opcode == OPCODE_TEXT && !binaryProtocol) {
+                logger.warn("text frames are not supported by the embedded console proxy, use the binary sub-protocol");
+                close();
+                return false;
+            }
+
+            // pings and pongs are dropped, noVNC and spice-html5 don't rely on them
+            upDataFrame = opcode == OPCODE_BINARY || opcode == OPCODE_CONTINUATION || opcode == OPCODE_TEXT;
+            return true;
+        }
+
+        private void flushUp() throws IOException {
+            target.write(upPending);
+            if (upPending.hasRemaining()) {
+                return;
+            }
+
+            upPending = null;
+            relayUp();
+        }
+
+        private void readTarget() throws IOException {
+            down.clear();
+            down.position(FRAME_HEADER_RESERVE);
+            int n = target.read(down);
+            if (n < 0) {
+                close();
+                return;
+            }
+            if (n == 0) {
+                return;
+            }
+
+            int headerLen = n < 126 ? 2 : n <= 0xffff ? 4 : 10;
+            int start = FRAME_HEADER_RESERVE - headerLen;
+            down.put(start, (byte) (0x80 | OPCODE_BINARY));
+            if (headerLen == 2) {
+                down.put(start + 1, (byte) n);
+            } else if (headerLen == 4) {
+                down.put(start + 1, (byte) 126);
+                down.putShort(start + 2, (short) n);
+            } else {
+                down.put(start + 1, (byte) 127);
+                down.putLong(start + 2, n);
+            }
+
+            down.limit(FRAME_HEADER_RESERVE + n);
+            down.position(start);
+            downPending = down;
+            flushDown();
+        }
+
+        private void flushDown() throws IOException {
+            client.write(downPending);
+            if (!downPending.hasRemaining()) {
+                // otherwise the client is slow, the target is read again when the frame is taken
+                downPending = null;
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            connections.remove(this);
+            closeQuietly(client);
+            closeQuietly(target);
+
+            // keep the buffers for new connections, there are no more than the peak connections need
+            freeBuffers.push(up);
+            freeBuffers.push(down);
+            up = null;
+            down = null;
+        }
+    }
+}
@@ -11,12 +11,14 @@ import org.zstack.core.ansible.SshFileMd5Checker;
 import org.zstack.core.cloudbus.CloudBusCallBack;
 import org.zstack.core.cloudbus.CloudBusListCallBack;
 import org.zstack.core.cloudbus.MessageSafe;
+import org.zstack.core.db.Q;
 import org.zstack.core.db.SimpleQuery;
 import org.zstack.core.defer.Defer;
 import org.zstack.core.defer.Deferred;
 import org.zstack.core.thread.AsyncThread;
 import org.zstack.core.thread.ChainTask;
 import org.zstack.core.thread.SyncTaskChain;
+import org.zstack.core.thread.Task;
 import org.zstack.core.thread.ThreadFacade;
 import org.zstack.core.workflow.FlowChainBuilder;
 import org.zstack.core.workflow.ShareFlow;
@@ -45,6 +47,7 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.zstack.core.Platform.argerr;
 import static org.zstack.core.Platform.operr;
@@ -60,6 +63,7 @@ public class ManagementServerConsoleProxyBackend extends AbstractConsoleProxyBac
     private int agentPort = 7758;
     private String agentPackageName = ConsoleGlobalProperty.AGENT_PACKAGE_NAME;
     private boolean connected = false;
+    private EmbeddedConsoleProxyServer embeddedProxy;
 
     public static ConsoleProxyAgentType type = new ConsoleProxyAgentType(ConsoleConstants.MANAGEMENT_SERVER_CONSOLE_PROXY_TYPE);
 
@@ -80,6 +84,10 @@ public class ManagementServerConsoleProxyBackend extends AbstractConsoleProxyBac
     }
 
     protected ConsoleProxy getConsoleProxy(VmInstanceInventory vm, ConsoleProxyVO vo) {
+        if (embeddedProxy != null) {
+            return new EmbeddedConsoleProxy(vo, embeddedProxy);
+        }
+
         return new ConsoleProxyBase(vo, getAgentPort());
     }
 
@@ -93,9 +101,62 @@ public class ManagementServerConsoleProxyBackend extends AbstractConsoleProxyBac
         inv.setAgentType(getConsoleBackendType());
         inv.setToken(session.getUuid() + "_" + vm.getUuid());
         inv.setVmInstanceUuid(vm.getUuid());
+        if (embeddedProxy != null) {
+            return new EmbeddedConsoleProxy(inv, embeddedProxy);
+        }
+
         return new ConsoleProxyBase(inv, getAgentPort());
     }
 
+    @Override
+    protected List<ConsoleProxyVO> getConsoleProxiesOfSession(SessionInventory session) {
+        Set<String> tokens = embeddedProxy == null ? null : embeddedProxy.getTokens().getSessionTokens(session.getUuid());
+        if (tokens == null) {
+            return super.getConsoleProxiesOfSession(session);
+        }
+
+        return Q.New(ConsoleProxyVO.class).in(ConsoleProxyVO_.token, tokens).list();
+    }
+
+    private ConsoleProxyAgentVO findOrCreateAgent(String description) {
+        ConsoleProxyAgentVO vo = dbf.findByUuid(Platform.getManagementServerId(), ConsoleProxyAgentVO.class);
+        if (vo == null) {
+            vo = new ConsoleProxyAgentVO();
+            vo.setManagementIp(Platform.getManagementServerIp());
+            vo.setUuid(Platform.getManagementServerId());
+            vo.setConsoleProxyOverriddenIp(CoreGlobalProperty.CONSOLE_PROXY_OVERRIDDEN_IP);
+            vo.setState(ConsoleProxyAgentState.Enabled);
+            vo.setStatus(ConsoleProxyAgentStatus.Connecting);
+            vo.setDescription(description);
+            vo.setType(ConsoleConstants.MANAGEMENT_SERVER_CONSOLE_PROXY_TYPE);
+            vo = dbf.persistAndRefresh(vo);
+        }
+
+        return vo;
+    }
+
+    private synchronized void connectEmbeddedProxy(Completion completion) {
+        ConsoleProxyAgentVO vo = findOrCreateAgent(String.format("Console proxy embedded in the management node[uuid:%s]",
+                Platform.getManagementServerId()));
+
+        try {
+            embeddedProxy.setIdleTimeout(ConsoleGlobalConfig.CONNECTION_IDLE_TIMEOUT.value(Long.class));
+            embeddedProxy.start("0.0.0.0", CoreGlobalProperty.CONSOLE_PROXY_PORT);
+        } catch (IOException e) {
+            vo.setStatus(ConsoleProxyAgentStatus.Disconnected);
+            dbf.update(vo);
+            connected = false;
+            completion.fail(operr("failed to start the embedded console proxy on port %s, %s",
+                    CoreGlobalProperty.CONSOLE_PROXY_PORT, e.getMessage()));
+            return;
+        }
+
+        vo.setStatus(ConsoleProxyAgentStatus.Connected);
+        dbf.update(vo);
+        connected = true;
+        completion.success();
+    }
+
     private void setupPublicKey() {
         File pubKeyFile = PathUtil.findFileOnClassPath(AnsibleConstant.RSA_PUBLIC_KEY);
         String script = PathUtil.findFileOnClassPath(AnsibleConstant.IMPORT_PUBLIC_KEY_SCRIPT_PATH, true).getAbsolutePath();
@@ -106,6 +167,11 @@ public class ManagementServerConsoleProxyBackend extends AbstractConsoleProxyBac
     }
 
     protected void doConnectAgent(final Completion completion) {
+        if (embeddedProxy != null) {
+            connectEmbeddedProxy(completion);
+            return;
+        }
+
         thdf.chainSubmit(new ChainTask(completion) {
             @Override
             public String getSyncSignature() {
@@ -115,20 +181,8 @@ public class ManagementServerConsoleProxyBackend extends AbstractConsoleProxyBac
             @Override
             @Deferred
             public void run(final SyncTaskChain chain) {
-                ConsoleProxyAgentVO vo = dbf.findByUuid(Platform.getManagementServerId(), ConsoleProxyAgentVO.class);
-                if (vo == null) {
-                    vo = new ConsoleProxyAgentVO();
-                    vo.setManagementIp(Platform.getManagementServerIp());
-                    vo.setUuid(Platform.getManagementServerId());
-                    vo.setConsoleProxyOverriddenIp(CoreGlobalProperty.CONSOLE_PROXY_OVERRIDDEN_IP);
-                    vo.setState(ConsoleProxyAgentState.Enabled);
-                    vo.setStatus(ConsoleProxyAgentStatus.Connecting);
-                    vo.setDescription(String.format("Console proxy agent running on the management node[uuid:%s]", Platform.getManagementServerId()));
-                    vo.setType(ConsoleConstants.MANAGEMENT_SERVER_CONSOLE_PROXY_TYPE);
-                    vo = dbf.persistAndRefresh(vo);
-                }
-
-                final ConsoleProxyAgentVO finalVo = vo;
+                final ConsoleProxyAgentVO finalVo = findOrCreateAgent(String.format(
+                        "Console proxy agent running on the management node[uuid:%s]", Platform.getManagementServerId()));
                 Defer.guard(new Runnable() {
                     @Override
                     public void run() {
@@ -281,6 +335,14 @@ public class ManagementServerConsoleProxyBackend extends AbstractConsoleProxyBac
     }
 
     private void handle(PingConsoleProxyAgentMsg msg) {
+        if (embeddedProxy != null) {
+            PingConsoleProxyAgentReply reply = new PingConsoleProxyAgentReply();
+            reply.setConnected(embeddedProxy.isRunning());
+            reply.setDoReconnect(!embeddedProxy.isRunning());
+            bus.reply(msg, reply);
+            return;
+        }
+
         ConsoleProxyCommands.PingCmd cmd = new ConsoleProxyCommands.PingCmd();
         String url = URLBuilder.buildHttpUrl("127.0.0.1", agentPort, ConsoleConstants.CONSOLE_PROXY_PING_PATH);
         ConsoleProxyAgentVO vo = dbf.findByUuid(Platform.getManagementServerId(), ConsoleProxyAgentVO.class);
@@ -322,7 +384,7 @@ public class ManagementServerConsoleProxyBackend extends AbstractConsoleProxyBac
 
         // Currently this message only do some local shell operations in management node,
         // so we skip it during unit test.
-        if (CoreGlobalProperty.UNIT_TEST_ON) {
+        if (CoreGlobalProperty.UNIT_TEST_ON && embeddedProxy == null) {
             bus.reply(msg, reply);
             return;
         }
@@ -542,10 +604,48 @@ public class ManagementServerConsoleProxyBackend extends AbstractConsoleProxyBac
 
     @Override
     public boolean start() {
+        if (ConsoleGlobalProperty.EMBEDDED_PROXY) {
+            if (CoreGlobalProperty.CONSOLE_PROXY_CERT_FILE != null && !CoreGlobalProperty.CONSOLE_PROXY_CERT_FILE.isEmpty()) {
+                logger.warn("the embedded console proxy doesn't serve TLS, use the console proxy agent" +
+                        " because consoleProxyCertFile is set");
+            } else {
+                enableEmbeddedProxy();
+            }
+        }
+
         tracker.track(Platform.getManagementServerId());
         return super.start();
     }
 
+    private void enableEmbeddedProxy() {
+        // resolving the target of a console may block, keep it off the selector thread of the proxy
+        embeddedProxy = new EmbeddedConsoleProxyServer(ConsoleGlobalProperty.EMBEDDED_PROXY_BUFFER_SIZE,
+                task -> thdf.submit(new Task<Void>() {
+                    @Override
+                    public Void call() {
+                        task.run();
+                        return null;
+                    }
+
+                    @Override
+                    public String getName() {
+                        return "resolve-console-target";
+                    }
+                }));
+        EmbeddedConsoleProxyServer server = embeddedProxy;
+        ConsoleGlobalConfig.CONNECTION_IDLE_TIMEOUT.installUpdateExtension(
+                (oldConfig, newConfig) -> server.setIdleTimeout(newConfig.value(Long.class)));
+    }
+
+    @Override
+    public boolean stop() {
+        if (embeddedProxy != null) {
+            embeddedProxy.stop();
+        }
+
+        return super.stop();
+    }
+
 
     public int getAgentPort() {
         return agentPort;
@@ -70,6 +70,12 @@ public class CoreGlobalProperty {
     public static boolean RECORD_TO_DB_ELABORATION;
     @GlobalProperty(name = "chain.task.qos", defaultValue = "false")
     public static boolean CHAIN_TASK_QOS;
+    @GlobalProperty(name = "chain.task.maxPendingQueueSize", defaultValue = "-1")
+    public static int CHAIN_TASK_MAX_PENDING_QUEUE_SIZE;
+    @GlobalProperty(name = "chain.task.pendingQueueOverflowPolicy", defaultValue = "Reject")
+    public static String CHAIN_TASK_PENDING_QUEUE_OVERFLOW_POLICY;
+    @GlobalProperty(name = "chain.task.pendingQueueBlockTimeoutMs", defaultValue = "60000")
+    public static long CHAIN_TASK_PENDING_QUEUE_BLOCK_TIMEOUT_MS;
     @GlobalProperty(name = "rest.api.result.max.length", defaultValue = "64000")
     public static int REST_API_RESULT_MAX_LENGTH;
 }
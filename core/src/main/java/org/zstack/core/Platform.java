@@ -304,6 +304,11 @@ public class Platform {
                     url = String.format("%s/zstack", dbUrl);
                 }
 
+                if (DatabaseGlobalProperty.REWRITE_BATCHED_STATEMENTS && !url.contains("rewriteBatchedStatements")) {
+                    // let the driver send a JDBC batch of inserts as one multi-row insert
+                    url = String.format("%s%srewriteBatchedStatements=true", url, url.contains("?") ? "&" : "?");
+                }
+
                 System.setProperty("DbFacadeDataSource.jdbcUrl", url);
                 logger.debug(String.format("default DbFacadeDataSource.jdbcUrl to DB.url [%s]", url));
             }
@@ -331,6 +336,10 @@ public class Platform {
                 System.setProperty("RESTApiDataSource.user", DatabaseGlobalProperty.DbUser);
                 logger.debug(String.format("default RESTApiDataSource.user to DB.user [%s]", DatabaseGlobalProperty.DbUser));
             }
+            if (getGlobalProperty("ReadReplicaDataSource.user") == null) {
+                System.setProperty("ReadReplicaDataSource.user", DatabaseGlobalProperty.DbUser);
+                logger.debug(String.format("default ReadReplicaDataSource.user to DB.user [%s]", DatabaseGlobalProperty.DbUser));
+            }
         }
         if (DatabaseGlobalProperty.DbPassword != null) {
             if (getGlobalProperty("DbFacadeDataSource.password") == null) {
@@ -341,6 +350,10 @@ public class Platform {
                 System.setProperty("RESTApiDataSource.password", DatabaseGlobalProperty.DbPassword);
                 logger.debug(String.format("default RESTApiDataSource.password to DB.password [%s]", DatabaseGlobalProperty.DbPassword));
             }
+            if (getGlobalProperty("ReadReplicaDataSource.password") == null) {
+                System.setProperty("ReadReplicaDataSource.password", DatabaseGlobalProperty.DbPassword);
+                logger.debug(String.format("default ReadReplicaDataSource.password to DB.password [%s]", DatabaseGlobalProperty.DbPassword));
+            }
         }
         if (DatabaseGlobalProperty.DbMaxIdleTime != null) {
             if (getGlobalProperty("DbFacadeDataSource.maxIdleTime") == null) {
@@ -2,13 +2,16 @@ package org.zstack.core;
 
 import org.zstack.core.debug.APIDebugSignalMsg;
 import org.zstack.core.debug.APIGetDebugSignalMsg;
+import org.zstack.core.debug.APIGetMessageTraceMsg;
+import org.zstack.core.debug.APIGetSQLProfileMsg;
 import org.zstack.header.identity.rbac.RBACDescription;
 
 public class RBACInfo implements RBACDescription {
     @Override
     public void permissions() {
         permissionBuilder()
-                .adminOnlyAPIs(APIDebugSignalMsg.class, APIGetDebugSignalMsg.class)
+                .adminOnlyAPIs(APIDebugSignalMsg.class, APIGetDebugSignalMsg.class, APIGetSQLProfileMsg.class,
+                        APIGetMessageTraceMsg.class)
                 .build();
     }
 
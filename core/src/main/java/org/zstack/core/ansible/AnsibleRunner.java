@@ -407,7 +407,7 @@ public class AnsibleRunner {
             logger.debug("skip restartAgent as it's unittest");
         } else {
             new Ssh().shell(script).setTimeout(60).setPrivateKey(asf.getPrivateKey()).setUsername(username).setHostname(targetIp)
-                    .setPort(sshPort).setPassword(password).runErrorByExceptionAndClose();
+                    .setPort(sshPort).setPassword(password).usePooledSession().runErrorByExceptionAndClose();
         }
         completion.success();
     }
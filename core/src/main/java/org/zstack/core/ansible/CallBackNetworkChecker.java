@@ -63,7 +63,7 @@ public class CallBackNetworkChecker implements AnsibleChecker {
         Ssh ssh = new Ssh();
         ssh.setUsername(username).setPrivateKey(privateKey)
                 .setPassword(password).setPort(port)
-                .setHostname(targetIp);
+                .setHostname(targetIp).usePooledSession();
 
         try {
             return useNcatAndNmapToTestConnection(ssh);
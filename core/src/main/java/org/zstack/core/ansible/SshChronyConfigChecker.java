@@ -27,7 +27,7 @@ public class SshChronyConfigChecker implements AnsibleChecker {
         Ssh ssh = new Ssh();
         ssh.setUsername(username).setPrivateKey(privateKey)
                 .setPassword(password).setPort(sshPort)
-                .setHostname(targetIp);
+                .setHostname(targetIp).usePooledSession();
         try {
             ssh.command("awk '/^\\s*server/{print $2}' /etc/chrony.conf");
             SshResult ret = ssh.run();
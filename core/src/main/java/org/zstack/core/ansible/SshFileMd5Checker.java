@@ -1,7 +1,6 @@
 package org.zstack.core.ansible;
 
-import org.zstack.utils.ShellResult;
-import org.zstack.utils.ShellUtils;
+import org.zstack.utils.Digest;
 import org.zstack.utils.Utils;
 import org.zstack.utils.logging.CLogger;
 import org.zstack.utils.path.PathUtil;
@@ -9,12 +8,18 @@ import org.zstack.utils.ssh.Ssh;
 import org.zstack.utils.ssh.SshResult;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  */
 public class SshFileMd5Checker implements AnsibleChecker {
     private static final CLogger logger = Utils.getLogger(SshFileMd5Checker.class);
+    private static final Pattern MD5SUM_LINE = Pattern.compile("^([0-9a-f]{32})\\s+\\*?(.+)$");
 
     private List<SrcDestPair> srcDestPairs = new ArrayList<SrcDestPair>();
     private String username;
@@ -35,36 +40,49 @@ public class SshFileMd5Checker implements AnsibleChecker {
 
     public static final String ZSTACKLIB_SRC_PATH = PathUtil.findFileOnClassPath(String.format("ansible/zstacklib/%s", AnsibleGlobalProperty.ZSTACKLIB_PACKAGE_NAME), true).getAbsolutePath();
 
+    private Ssh newSsh() {
+        return new Ssh().setUsername(username).setPrivateKey(privateKey)
+                .setPassword(password).setPort(sshPort)
+                .setHostname(targetIp).usePooledSession();
+    }
+
+    private String joinDestPaths() {
+        return srcDestPairs.stream().map(b -> b.destPath).collect(Collectors.joining(" "));
+    }
+
     @Override
     public boolean needDeploy() {
-        Ssh ssh = new Ssh();
-        ssh.setUsername(username).setPrivateKey(privateKey)
-                .setPassword(password).setPort(sshPort)
-                .setHostname(targetIp);
-        try {
-            for (SrcDestPair b : srcDestPairs) {
-                String sourceFilePath = b.srcPath;
-                String destFilePath = b.destPath;
-
-                ssh.command(String.format("echo %s | sudo -S md5sum %s 2>/dev/null", password, destFilePath));
-                SshResult ret = ssh.run();
-                if (ret.getReturnCode() != 0) {
-                    return true;
-                }
-                ssh.reset();
-
-                String destMd5 =  ret.getStdout().split(" ")[0];
-                ShellResult sret = ShellUtils.runAndReturn(String.format("md5sum %s", sourceFilePath));
-                sret.raiseExceptionIfFail();
-                String srcMd5 = sret.getStdout().split(" ")[0];
-                if (!destMd5.equals(srcMd5)) {
-                    logger.debug(String.format("file MD5 changed, src[%s, md5:%s] dest[%s, md5, %s]", sourceFilePath,
-                            srcMd5, destFilePath, destMd5));
-                    return true;
-                }
+        if (srcDestPairs.isEmpty()) {
+            return false;
+        }
+
+        // check all files in one command, md5sum prints nothing for missing files and exits with 1
+        SshResult ret = newSsh().command(String.format("echo %s | sudo -S md5sum %s 2>/dev/null", password, joinDestPaths())).runAndClose();
+        if (ret.isSshFailure() || ret.getStdout() == null) {
+            return true;
+        }
+
+        Map<String, String> destMd5s = new HashMap<>();
+        for (String line : ret.getStdout().split("\\r?\\n")) {
+            Matcher m = MD5SUM_LINE.matcher(line.trim());
+            if (m.matches()) {
+                destMd5s.put(m.group(2), m.group(1));
+            }
+        }
+
+        for (SrcDestPair b : srcDestPairs) {
+            String destMd5 = destMd5s.get(b.destPath);
+            if (destMd5 == null) {
+                logger.debug(String.format("dest file[%s] not found on %s", b.destPath, targetIp));
+                return true;
+            }
+
+            String srcMd5 = Digest.getCachedMD5(b.srcPath);
+            if (!destMd5.equals(srcMd5)) {
+                logger.debug(String.format("file MD5 changed, src[%s, md5:%s] dest[%s, md5, %s]", b.srcPath,
+                        srcMd5, b.destPath, destMd5));
+                return true;
             }
-        } finally {
-            ssh.close();
         }
 
         return false;
@@ -72,14 +90,13 @@ public class SshFileMd5Checker implements AnsibleChecker {
 
     @Override
     public void deleteDestFile() {
-        for (SrcDestPair b : srcDestPairs) {
-            String destFilePath = b.destPath;
-            Ssh ssh = new Ssh();
-            ssh.setUsername(username).setPrivateKey(privateKey)
-                    .setPassword(password).setPort(sshPort)
-                    .setHostname(targetIp).command(String.format("rm -f %s", destFilePath)).runAndClose();
-            logger.debug(String.format("delete dest file[%s]", destFilePath));
+        if (srcDestPairs.isEmpty()) {
+            return;
         }
+
+        String destFilePaths = joinDestPaths();
+        newSsh().command(String.format("rm -f %s", destFilePaths)).runAndClose();
+        logger.debug(String.format("delete dest files[%s]", destFilePaths));
     }
 
     public void addSrcDestPair(String srcFilePath, String destFilePath) {
@@ -11,8 +11,8 @@ import org.zstack.utils.ShellUtils;
 import org.zstack.utils.StringDSL.StringWrapper;
 import org.zstack.utils.Utils;
 import org.zstack.utils.logging.CLogger;
+import org.zstack.utils.ssh.Ssh;
 import org.zstack.utils.ssh.SshResult;
-import org.zstack.utils.ssh.SshShell;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -108,12 +108,9 @@ public class SshFolderMd5Checker implements AnsibleChecker {
         }
 
         String dstScript = script.format(dstFolder, password);
-        SshShell ssh = new SshShell();
-        ssh.setHostname(hostname);
-        ssh.setUsername(username);
-        ssh.setPassword(password);
-        ssh.setPort(port);
-        SshResult dstRes = ssh.runScript(dstScript);
+        SshResult dstRes = new Ssh().setHostname(hostname).setUsername(username)
+                .setPassword(password).setPort(port).usePooledSession()
+                .command(dstScript).runAndClose();
         if (dstRes.getReturnCode() == 101) {
             // dst folder doesn't existing
             return true;
@@ -33,7 +33,7 @@ public class SshYamlChecker implements AnsibleChecker {
         Ssh ssh = new Ssh();
         ssh.setUsername(username).setPrivateKey(privateKey)
                 .setPassword(password).setPort(sshPort)
-                .setHostname(targetIp);
+                .setHostname(targetIp).usePooledSession();
         try {
 
             ssh.command(String.format("grep -o '%s' %s | uniq | wc -l", getGrepArgs(), yamlFilePath));
@@ -34,7 +34,7 @@ public class SshYumRepoChecker implements AnsibleChecker {
         Ssh ssh = new Ssh();
         ssh.setUsername(username).setPrivateKey(privateKey)
                 .setPassword(password).setPort(sshPort)
-                .setHostname(targetIp);
+                .setHostname(targetIp).usePooledSession();
         try {
             ssh.command(String.format(
                     "echo %s | sudo -S sed -i '/baseurl/s/\\([0-9]\\{1,3\\}\\.\\)\\{3\\}[0-9]\\{1,3\\}:\\([0-9]\\+\\)/%s/g' /etc/yum.repos.d/{zstack,qemu-kvm-ev}-mn.repo",
@@ -16,4 +16,6 @@ public class CloudBusGlobalConfig {
     public static GlobalConfig MAX_MANAGEMENTNODE_NOTFOUND_ERROR_HANDLER_NUM = new GlobalConfig(CATEGORY, "managementNodeNotFoundHandler.maxNum");
     @GlobalConfigValidation(numberGreaterThan = 0)
     public static GlobalConfig MAX_MANAGEMENTNODE_NOTFOUND_ERROR_HANDLER_TIMEOUT = new GlobalConfig(CATEGORY, "managementNodeNotFoundHandler.timeoutInSecs");
+    @GlobalConfigValidation(inNumberRange = {0, 100})
+    public static GlobalConfig TRACE_SAMPLING_PERCENT = new GlobalConfig(CATEGORY, "trace.samplingPercent");
 }
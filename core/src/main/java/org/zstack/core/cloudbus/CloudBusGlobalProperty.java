@@ -19,6 +19,8 @@ public class CloudBusGlobalProperty {
     public static int CLOUDBUS3_MESSAGE_TRACKER_CLEANUP_INTERVAL;
     @GlobalProperty(name="CloudBus.messageLogFilterAll", defaultValue = "true")
     public static boolean MESSAGE_LOG_FILTER_ALL;
+    @GlobalProperty(name="CloudBus.traceBufferSize", defaultValue = "65536")
+    public static int TRACE_BUFFER_SIZE;
     @GlobalProperty(name="CloudBus.messageLog")
     public static String MESSAGE_LOG;
     @GlobalProperty(name="CloudBus.readAPILogOff", defaultValue = "true")
@@ -295,6 +295,7 @@ public class CloudBusImpl3 implements CloudBus, CloudBusIN {
 
             final Envelope self = this;
             final ThreadFacadeImpl.TimeoutTaskReceipt timeoutTaskReceipt = thdf.submitTimeoutTask(self::timeout, TimeUnit.MILLISECONDS, msg.getTimeout());
+            final MessageTracer.Span span = MessageTracer.onMessageSent(msg);
 
             @Override
             public void ack(MessageReply reply) {
@@ -307,6 +308,7 @@ public class CloudBusImpl3 implements CloudBus, CloudBusIN {
                 }
 
                 timeoutTaskReceipt.cancel();
+                MessageTracer.onReplyReceived(span, msg, reply);
 
                 callback.run(reply);
             }
@@ -419,6 +421,7 @@ public class CloudBusImpl3 implements CloudBus, CloudBusIN {
             callReplyPreSendingExtensions(reply, (NeedReplyMessage) request);
         }
 
+        MessageTracer.onReply(request, reply);
         doSend(reply);
     }
 
@@ -432,6 +435,7 @@ public class CloudBusImpl3 implements CloudBus, CloudBusIN {
         if (event instanceof APIEvent) {
             APIEvent aevt = (APIEvent) event;
             DebugUtils.Assert(aevt.getApiId() != null, String.format("apiId of %s cannot be null", aevt.getClass().getName()));
+            MessageTracer.onApiEventPublished(aevt);
         }
 
         callReplyPreSendingExtensions(event, null);
@@ -547,8 +551,15 @@ public class CloudBusImpl3 implements CloudBus, CloudBusIN {
                     ip, CloudBusGlobalProperty.HTTP_PORT, HTTP_BASE_URL) : String.format("http://%s:%s/%s/%s",
                     ip, CloudBusGlobalProperty.HTTP_PORT, CloudBusGlobalProperty.HTTP_CONTEXT_PATH, HTTP_BASE_URL);
 
+            MessageTracer.Span span = MessageTracer.onRemoteSend(msg);
+            long start = MessageTracer.currentTimeMicros();
             HttpHeaders headers = new HttpHeaders();
             HttpEntity<String> req = new HttpEntity<>(CloudBusGson.toJson(msg), headers);
+            if (span != null) {
+                span.hop(MessageTracer.HOP_SERIALIZE, ip, start);
+                start = MessageTracer.currentTimeMicros();
+            }
+
             try {
                 ResponseEntity<String> rsp = new Retry<ResponseEntity<String>>() {
                     {
@@ -562,6 +573,10 @@ public class CloudBusImpl3 implements CloudBus, CloudBusIN {
                     }
                 }.run();
 
+                if (span != null) {
+                    span.hop(MessageTracer.HOP_REMOTE, ip, start);
+                }
+
                 if (!rsp.getStatusCode().is2xxSuccessful()) {
                     replyErrorIfNeeded(operr("HTTP ERROR, status code: %s, body: %s", rsp.getStatusCode(), rsp.getBody()));
                 }
@@ -655,6 +670,7 @@ public class CloudBusImpl3 implements CloudBus, CloudBusIN {
 
         if (msg instanceof APIMessage) {
             ThreadContext.put(Constants.THREAD_CONTEXT_API, msg.getId());
+            ThreadContext.put(Constants.THREAD_CONTEXT_API_NAME, msg.getClass().getName());
             ThreadContext.put(Constants.THREAD_CONTEXT_TASK_NAME, msg.getClass().getName());
         } else {
             Map<String, String> ctx = msg.getHeaderEntry(THREAD_CONTEXT);
@@ -708,6 +724,7 @@ public class CloudBusImpl3 implements CloudBus, CloudBusIN {
                         logger.trace(String.format("[msg received]: %s", dumpMessage(msg)));
                     }
 
+                    long queuedAt = MessageTracer.currentTimeMicros();
                     SyncTask<Void> task = new SyncTask<Void>() {
                         @Override
                         public String getSyncSignature() {
@@ -728,6 +745,11 @@ public class CloudBusImpl3 implements CloudBus, CloudBusIN {
                         public Void call() {
                             setThreadLoggingContext(msg);
 
+                            MessageTracer.Span span = MessageTracer.onMessageReceived(msg);
+                            if (span != null) {
+                                span.hop(MessageTracer.HOP_QUEUE, serv.getId(), queuedAt);
+                            }
+
                             try {
                                 beforeDeliverMessage(msg);
 
@@ -742,6 +764,10 @@ public class CloudBusImpl3 implements CloudBus, CloudBusIN {
                                 }
                             }
 
+                            if (span != null) {
+                                span.hop(MessageTracer.HOP_HANDLE, serv.getId(), span.getStartMicros());
+                            }
+
                             return null;
                         }
                     };
@@ -23,6 +23,7 @@ public class CloudBusJMX implements Component, BeforeSendMessageInterceptor,
         BeforeDeliveryMessageInterceptor, BeforePublishEventInterceptor, CloudBusMXBean {
     private Map<String, MessageStatistic> statistics = new HashMap<>();
     private static final CLogger logger = Utils.getLogger(CloudBusJMX.class);
+    private static final int RECENT_TRACE_NUM = 100;
 
     @Autowired
     private CloudBus bus;
@@ -60,6 +61,10 @@ public class CloudBusJMX implements Component, BeforeSendMessageInterceptor,
             }
         });
 
+        MessageTracer.setSamplingPercent(CloudBusGlobalConfig.TRACE_SAMPLING_PERCENT.value(Integer.class));
+        CloudBusGlobalConfig.TRACE_SAMPLING_PERCENT.installUpdateExtension((oldConfig, newConfig) ->
+                MessageTracer.setSamplingPercent(newConfig.value(Integer.class)));
+
         jmxf.registerBean("CloudBus", this);
 
         return true;
@@ -147,6 +152,16 @@ public class CloudBusJMX implements Component, BeforeSendMessageInterceptor,
         return statistics;
     }
 
+    @Override
+    public List<String> getRecentTraces() {
+        return MessageTracer.getRecentTraceIds(RECENT_TRACE_NUM);
+    }
+
+    @Override
+    public List<TraceSpan> getMessageTrace(String apiId) {
+        return MessageTracer.getTrace(apiId);
+    }
+
     @Override
     public List<WaitingReplyMessageStatistic> getWaitingReplyMessageStatistic() {
         List<WaitingReplyMessageStatistic> ret = new ArrayList<WaitingReplyMessageStatistic>();
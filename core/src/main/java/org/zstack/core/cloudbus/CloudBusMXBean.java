@@ -11,4 +11,8 @@ public interface CloudBusMXBean {
     List<WaitingReplyMessageStatistic> getWaitingReplyMessageStatistic();
 
     WaitingMessageSummaryStatistic getWaitingReplyMessageSummaryStatistic();
+
+    List<String> getRecentTraces();
+
+    List<TraceSpan> getMessageTrace(String apiId);
 }
@@ -0,0 +1,277 @@
+package org.zstack.core.cloudbus;
+
+import org.apache.logging.log4j.ThreadContext;
+import org.zstack.core.Platform;
+import org.zstack.header.Constants;
+import org.zstack.header.message.APIEvent;
+import org.zstack.header.message.APIMessage;
+import org.zstack.header.message.Event;
+import org.zstack.header.message.Message;
+import org.zstack.header.message.MessageReply;
+import org.zstack.utils.data.OverwritingRingBuffer;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * A sampling tracer breaking down where the time of an API goes. An API is traced by the
+ * percentage of cloudBus.trace.samplingPercent, decided by its id so all management nodes
+ * agree; the id of a traced API is the trace id.
+ *
+ * The trace id and the current span id live in ThreadContext, so they go with the messages,
+ * chain tasks and completions the API issues the same way the API id does. Every message,
+ * chain task and agent HTTP call of a traced API is a span, its hops (queueing, handling,
+ * serialization, the remote hop, the reply ...) are recorded in a lock free ring buffer of
+ * CloudBus.traceBufferSize entries, the oldest are overwritten. A management node only holds
+ * the hops happening on it.
+ */
+public class MessageTracer {
+    public static final String SPAN_TYPE_MESSAGE = "message";
+    public static final String SPAN_TYPE_CHAIN_TASK = "chainTask";
+    public static final String SPAN_TYPE_HTTP_CALL = "httpCall";
+
+    // from a service receiving a message to its thread picking the message up
+    public static final String HOP_QUEUE = "queue";
+    // the synchronous part of handleMessage()
+    public static final String HOP_HANDLE = "handle";
+    // from a service receiving a message to it replying
+    public static final String HOP_PROCESS = "process";
+    public static final String HOP_SERIALIZE = "serialize";
+    // the HTTP post to another management node
+    public static final String HOP_REMOTE = "remote";
+    // from a service replying to the sender getting the reply
+    public static final String HOP_REPLY = "reply";
+    // from the sender sending a message to it getting the reply
+    public static final String HOP_ROUND_TRIP = "roundTrip";
+    public static final String HOP_PENDING = "pending";
+    public static final String HOP_RUN = "run";
+    public static final String HOP_AGENT_CALL = "agentCall";
+
+    private static final String HEADER_TRACE_ID = "trace-id";
+    private static final String HEADER_RECEIVED_AT = "trace-received-at";
+    private static final String HEADER_REPLIED_AT = "trace-replied-at";
+    private static final String THREAD_CONTEXT_API_RECEIVED_AT = "trace-api-received-at";
+
+    // a wall clock in microseconds that doesn't go backwards in this process
+    private static final long baseMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    private static final long baseNanos = System.nanoTime();
+
+    private static volatile int samplingPercent;
+    private static final OverwritingRingBuffer<Record> records = new OverwritingRingBuffer<>(CloudBusGlobalProperty.TRACE_BUFFER_SIZE);
+
+    public static class Span {
+        private final String traceId;
+        private final String spanId;
+        private final String parentSpanId;
+        private final String type;
+        private final String name;
+        private final long startMicros = currentTimeMicros();
+
+        private Span(String traceId, String spanId, String parentSpanId, String type, String name) {
+            this.traceId = traceId;
+            this.spanId = spanId;
+            this.parentSpanId = parentSpanId;
+            this.type = type;
+            this.name = name;
+        }
+
+        /**
+         * records a hop from startMicros to now
+         */
+        public void hop(String hop, String location, long startMicros) {
+            records.add(new Record(this, hop, location, startMicros, Math.max(0, currentTimeMicros() - startMicros)));
+        }
+
+        public long getStartMicros() {
+            return startMicros;
+        }
+    }
+
+    private static class Record {
+        final Span span;
+        final String hop;
+        final String location;
+        final long startMicros;
+        final long durationMicros;
+
+        Record(Span span, String hop, String location, long startMicros, long durationMicros) {
+            this.span = span;
+            this.hop = hop;
+            this.location = location;
+            this.startMicros = startMicros;
+            this.durationMicros = durationMicros;
+        }
+    }
+
+    public static long currentTimeMicros() {
+        return baseMicros + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - baseNanos);
+    }
+
+    public static void setSamplingPercent(int samplingPercent) {
+        MessageTracer.samplingPercent = samplingPercent;
+    }
+
+    public static int getSamplingPercent() {
+        return samplingPercent;
+    }
+
+    static boolean isSampled(String apiId) {
+        int percent = samplingPercent;
+        return percent > 0 && Math.floorMod(apiId.hashCode(), 100) < percent;
+    }
+
+    private static Span childOfCurrentSpan(String spanId, String type, String name) {
+        String traceId = ThreadContext.get(Constants.THREAD_CONTEXT_TRACE_ID);
+        if (traceId == null) {
+            return null;
+        }
+
+        return new Span(traceId, spanId, ThreadContext.get(Constants.THREAD_CONTEXT_SPAN_ID), type, name);
+    }
+
+    /**
+     * called by a service picking up a message after the thread context of the message is set,
+     * the message becomes the current span
+     *
+     * @return null if the message isn't traced
+     */
+    static Span onMessageReceived(Message msg) {
+        if (msg instanceof APIMessage) {
+            if (!isSampled(msg.getId())) {
+                return null;
+            }
+
+            ThreadContext.put(Constants.THREAD_CONTEXT_TRACE_ID, msg.getId());
+            ThreadContext.put(THREAD_CONTEXT_API_RECEIVED_AT, String.valueOf(currentTimeMicros()));
+        }
+
+        Span span = childOfCurrentSpan(msg.getId(), SPAN_TYPE_MESSAGE, msg.getClass().getName());
+        if (span == null) {
+            return null;
+        }
+
+        ThreadContext.put(Constants.THREAD_CONTEXT_SPAN_ID, span.spanId);
+        msg.putHeaderEntry(HEADER_TRACE_ID, span.traceId);
+        msg.putHeaderEntry(HEADER_RECEIVED_AT, String.valueOf(span.startMicros));
+        return span;
+    }
+
+    /**
+     * called by a sender waiting for the reply of the message
+     */
+    static Span onMessageSent(Message msg) {
+        return childOfCurrentSpan(msg.getId(), SPAN_TYPE_MESSAGE, msg.getClass().getName());
+    }
+
+    static void onReplyReceived(Span span, Message msg, MessageReply reply) {
+        if (span == null) {
+            return;
+        }
+
+        String repliedAt = reply.getHeaderEntry(HEADER_REPLIED_AT);
+        if (repliedAt != null) {
+            span.hop(HOP_REPLY, msg.getServiceId(), Long.parseLong(repliedAt));
+        }
+        span.hop(HOP_ROUND_TRIP, msg.getServiceId(), span.startMicros);
+    }
+
+    static void onReply(Message request, MessageReply reply) {
+        String traceId = request.getHeaderEntry(HEADER_TRACE_ID);
+        String receivedAt = request.getHeaderEntry(HEADER_RECEIVED_AT);
+        if (traceId == null || receivedAt == null) {
+            return;
+        }
+
+        new Span(traceId, request.getId(), null, SPAN_TYPE_MESSAGE, request.getClass().getName())
+                .hop(HOP_PROCESS, request.getServiceId(), Long.parseLong(receivedAt));
+        reply.putHeaderEntry(HEADER_REPLIED_AT, String.valueOf(currentTimeMicros()));
+    }
+
+    static void onApiEventPublished(APIEvent evt) {
+        String traceId = ThreadContext.get(Constants.THREAD_CONTEXT_TRACE_ID);
+        String receivedAt = ThreadContext.get(THREAD_CONTEXT_API_RECEIVED_AT);
+        if (traceId == null || receivedAt == null || !traceId.equals(evt.getApiId())) {
+            return;
+        }
+
+        // the task name is of the chain task publishing the event, the API is named after its message class
+        new Span(traceId, traceId, null, SPAN_TYPE_MESSAGE, ThreadContext.get(Constants.THREAD_CONTEXT_API_NAME))
+                .hop(HOP_PROCESS, evt.getClass().getName(), Long.parseLong(receivedAt));
+    }
+
+    /**
+     * called before a message is posted to another management node
+     */
+    static Span onRemoteSend(Message msg) {
+        String traceId = ThreadContext.get(Constants.THREAD_CONTEXT_TRACE_ID);
+        if (traceId == null || msg instanceof Event) {
+            return null;
+        }
+
+        // messages are posted in chain tasks, the current span is the chain task rather than the
+        // parent of the message. The hops of a reply belong to the request
+        String spanId = msg instanceof MessageReply ? msg.getHeaderEntry(CloudBus.HEADER_CORRELATION_ID) : msg.getId();
+        return new Span(traceId, spanId, null, SPAN_TYPE_MESSAGE, msg instanceof MessageReply ? null : msg.getClass().getName());
+    }
+
+    /**
+     * called when a chain task leaves the pending queue, the chain task becomes the current span
+     * of its thread context
+     *
+     * @param threadContext the thread context of the task
+     */
+    public static Span onChainTaskStart(Map<String, String> threadContext, String name, String syncSignature, long pendingSinceMillis) {
+        String traceId = threadContext == null ? null : threadContext.get(Constants.THREAD_CONTEXT_TRACE_ID);
+        if (traceId == null) {
+            return null;
+        }
+
+        Span span = new Span(traceId, Platform.getUuid(), threadContext.get(Constants.THREAD_CONTEXT_SPAN_ID), SPAN_TYPE_CHAIN_TASK, name);
+        long pendingSince = TimeUnit.MILLISECONDS.toMicros(pendingSinceMillis);
+        records.add(new Record(span, HOP_PENDING, syncSignature, pendingSince, Math.max(0, span.startMicros - pendingSince)));
+        threadContext.put(Constants.THREAD_CONTEXT_SPAN_ID, span.spanId);
+        return span;
+    }
+
+    public static Span onHttpCall(String taskUuid, String url) {
+        return childOfCurrentSpan(taskUuid, SPAN_TYPE_HTTP_CALL, url);
+    }
+
+    /**
+     * @return the spans of the trace recorded on this management node, sorted by start time
+     */
+    public static List<TraceSpan> getTrace(String traceId) {
+        Map<String, List<Record>> spans = new LinkedHashMap<>();
+        records.collect(r -> r.span.traceId.equals(traceId))
+                .forEach(r -> spans.computeIfAbsent(r.span.spanId, k -> new ArrayList<>()).add(r));
+
+        List<TraceSpan> ret = new ArrayList<>();
+        spans.forEach((spanId, rs) -> {
+            rs.sort(Comparator.comparingLong(r -> r.startMicros));
+            Span span = rs.stream().filter(r -> r.span.parentSpanId != null).map(r -> r.span).findFirst().orElse(rs.get(0).span);
+            String name = rs.stream().map(r -> r.span.name).filter(Objects::nonNull).findFirst().orElse(null);
+            ret.add(new TraceSpan(traceId, spanId, span.parentSpanId, span.type, name, rs.get(0).startMicros,
+                    rs.stream().map(r -> new TraceHop(r.hop, r.location, r.startMicros, r.durationMicros)).collect(Collectors.toList())));
+        });
+
+        ret.sort(Comparator.comparingLong(TraceSpan::getStartTimeMicros));
+        return ret;
+    }
+
+    /**
+     * @return the ids of the latest traces, the latest first
+     */
+    public static List<String> getRecentTraceIds(int num) {
+        List<Record> rs = records.collect(r -> true);
+        Set<String> ids = new LinkedHashSet<>();
+        for (int i = rs.size() - 1; i >= 0 && ids.size() < num; i--) {
+            ids.add(rs.get(i).span.traceId);
+        }
+        return new ArrayList<>(ids);
+    }
+
+    public static void reset() {
+        records.clear();
+    }
+}
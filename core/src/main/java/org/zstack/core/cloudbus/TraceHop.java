@@ -0,0 +1,39 @@
+package org.zstack.core.cloudbus;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A timed step of a traced span, e.g. the time a message waits in the queue of its service.
+ * location is where the step happens: the service id, the sync signature of a chain task,
+ * the IP of a management node or the URL of an agent.
+ */
+public class TraceHop {
+    private String hop;
+    private String location;
+    private long startTimeMicros;
+    private long durationMicros;
+
+    @ConstructorProperties({"hop", "location", "startTimeMicros", "durationMicros"})
+    public TraceHop(String hop, String location, long startTimeMicros, long durationMicros) {
+        this.hop = hop;
+        this.location = location;
+        this.startTimeMicros = startTimeMicros;
+        this.durationMicros = durationMicros;
+    }
+
+    public String getHop() {
+        return hop;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public long getStartTimeMicros() {
+        return startTimeMicros;
+    }
+
+    public long getDurationMicros() {
+        return durationMicros;
+    }
+}
@@ -0,0 +1,57 @@
+package org.zstack.core.cloudbus;
+
+import java.beans.ConstructorProperties;
+import java.util.List;
+
+/**
+ * A message, chain task or agent HTTP call of a traced API, reported by MessageTracer.
+ * parentSpanId is the span that issued it, null for the API itself.
+ */
+public class TraceSpan {
+    private String traceId;
+    private String spanId;
+    private String parentSpanId;
+    private String type;
+    private String name;
+    private long startTimeMicros;
+    private List<TraceHop> hops;
+
+    @ConstructorProperties({"traceId", "spanId", "parentSpanId", "type", "name", "startTimeMicros", "hops"})
+    public TraceSpan(String traceId, String spanId, String parentSpanId, String type, String name, long startTimeMicros, List<TraceHop> hops) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.type = type;
+        this.name = name;
+        this.startTimeMicros = startTimeMicros;
+        this.hops = hops;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    public String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getStartTimeMicros() {
+        return startTimeMicros;
+    }
+
+    public List<TraceHop> getHops() {
+        return hops;
+    }
+}
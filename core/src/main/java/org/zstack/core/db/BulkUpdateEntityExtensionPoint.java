@@ -0,0 +1,16 @@
+package org.zstack.core.db;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * called after SQL.New(entityClass).set(...).update() updated entities in bulk, which doesn't
+ * fire entity life cycle callbacks. entityIds are the primary keys named by eq() or in()
+ * conditions of the update, null if the conditions don't name them; updatedFields are the
+ * names of the fields set by the update.
+ */
+public interface BulkUpdateEntityExtensionPoint {
+    List<Class> getEntityClassForBulkUpdateEntityExtension();
+
+    void postBulkUpdate(Collection entityIds, Class entityClass, Collection<String> updatedFields);
+}
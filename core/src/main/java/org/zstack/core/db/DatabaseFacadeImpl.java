@@ -57,6 +57,7 @@ public class DatabaseFacadeImpl implements DatabaseFacade, Component {
     private List<SoftDeleteEntityExtensionPoint> softDeleteForAllExtensions = new ArrayList<SoftDeleteEntityExtensionPoint>();
     private Map<Class, List<HardDeleteEntityExtensionPoint>> hardDeleteExtensions = new HashMap<Class, List<HardDeleteEntityExtensionPoint>>();
     private List<HardDeleteEntityExtensionPoint> hardDeleteForAllExtensions = new ArrayList<HardDeleteEntityExtensionPoint>();
+    private Map<Class, List<BulkUpdateEntityExtensionPoint>> bulkUpdateExtensions = new HashMap<>();
     private Map<Class, EntityInfo> entityInfoMap = new HashMap<Class, EntityInfo>();
     private String dbVersion;
 
@@ -67,7 +68,7 @@ public class DatabaseFacadeImpl implements DatabaseFacade, Component {
         Field eoSoftDeleteColumn;
         Class eoClass;
         Class voClass;
-        Map<EntityEvent, EntityLifeCycleCallback> listeners = new HashMap<EntityEvent, EntityLifeCycleCallback>();
+        Map<EntityEvent, List<EntityLifeCycleCallback>> listeners = new HashMap<>();
 
         EntityInfo(Class voClazz) {
             voClass = voClazz;
@@ -395,12 +396,34 @@ public class DatabaseFacadeImpl implements DatabaseFacade, Component {
 
         @Transactional(propagation = Propagation.REQUIRES_NEW)
         void removeCollection(Collection entities) {
+            // removals are flushed in JDBC batches, hard deletion extensions are
+            // fired once per flush instead of once per entity
+            List hardDeletedIds = new ArrayList();
+            int count = 0;
             for (Object entity : entities) {
                 if (!entity.getClass().isAnnotationPresent(EO.class)) {
-                    hardDelete(entity);
+                    entity = getEntityManager().merge(entity);
+                    getEntityManager().remove(entity);
+                    hardDeletedIds.add(getVOPrimaryKeyValue(entity));
                 } else {
                     softDelete(entity);
                 }
+
+                if (++count % DatabaseGlobalProperty.JDBC_BATCH_SIZE == 0) {
+                    flushHardDeleted(hardDeletedIds);
+                }
+            }
+
+            flushHardDeleted(hardDeletedIds);
+        }
+
+        private void flushHardDeleted(List ids) {
+            getEntityManager().flush();
+            getEntityManager().clear();
+
+            if (!ids.isEmpty()) {
+                fireHardDeleteExtension(new ArrayList(ids));
+                ids.clear();
             }
         }
 
@@ -437,13 +460,13 @@ public class DatabaseFacadeImpl implements DatabaseFacade, Component {
         }
 
         void installLifeCycleCallback(EntityEvent evt, EntityLifeCycleCallback l) {
-            listeners.put(evt, l);
+            listeners.computeIfAbsent(evt, k -> new ArrayList<>()).add(l);
         }
 
         void fireLifeCycleEvent(EntityEvent evt, Object o) {
-            EntityLifeCycleCallback cb = listeners.get(evt);
-            if (cb != null) {
-                cb.entityLifeCycleEvent(evt, o);
+            List<EntityLifeCycleCallback> cbs = listeners.get(evt);
+            if (cbs != null) {
+                cbs.forEach(cb -> cb.entityLifeCycleEvent(evt, o));
             }
         }
     }
@@ -465,6 +488,11 @@ public class DatabaseFacadeImpl implements DatabaseFacade, Component {
         return persist(entity, false);
     }
 
+    List<BulkUpdateEntityExtensionPoint> getBulkUpdateExtensions(Class clz) {
+        List<BulkUpdateEntityExtensionPoint> exts = bulkUpdateExtensions.get(clz);
+        return exts == null ? Collections.emptyList() : exts;
+    }
+
     EntityInfo getEntityInfo(Class clz) {
         EntityInfo info = entityInfoMap.get(clz);
         DebugUtils.Assert(info != null, String.format("cannot find entity info for %s", clz.getName()));
@@ -644,8 +672,21 @@ public class DatabaseFacadeImpl implements DatabaseFacade, Component {
 
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     private void doUpdateCollection(Collection entities) {
+        int count = 0;
         for (Object e : entities) {
             getEntityManager().merge(e);
+            flushInBatch(++count);
+        }
+    }
+
+    /**
+     * flush every DB.jdbcBatchSize entities so that each flush goes to the database as one JDBC batch,
+     * and clear the persistence context to keep dirty checking of a large collection linear
+     */
+    private void flushInBatch(int count) {
+        if (count % DatabaseGlobalProperty.JDBC_BATCH_SIZE == 0) {
+            getEntityManager().flush();
+            getEntityManager().clear();
         }
     }
 
@@ -699,9 +740,15 @@ public class DatabaseFacadeImpl implements DatabaseFacade, Component {
     @Override
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void persistCollection(Collection entities) {
+        Set<Class> classes = new HashSet<>();
+        int count = 0;
         for (Object e : entities) {
-            this.entityForTranscationCallback(Operation.PERSIST, e.getClass());
+            if (classes.add(e.getClass())) {
+                this.entityForTranscationCallback(Operation.PERSIST, e.getClass());
+            }
+
             this.getEntityManager().persist(e);
+            flushInBatch(++count);
         }
     }
 
@@ -838,6 +885,12 @@ public class DatabaseFacadeImpl implements DatabaseFacade, Component {
                 exts.add(ext);
             }
         }
+
+        for (BulkUpdateEntityExtensionPoint ext : pluginRgty.getExtensionList(BulkUpdateEntityExtensionPoint.class)) {
+            for (Class clazz : ext.getEntityClassForBulkUpdateEntityExtension()) {
+                bulkUpdateExtensions.computeIfAbsent(clazz, k -> new ArrayList<>()).add(ext);
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,15 @@
+package org.zstack.core.db;
+
+import org.zstack.core.config.GlobalConfig;
+import org.zstack.core.config.GlobalConfigDefinition;
+import org.zstack.core.config.GlobalConfigValidation;
+
+@GlobalConfigDefinition
+public class DatabaseGlobalConfig {
+    public static final String CATEGORY = "database";
+
+    @GlobalConfigValidation
+    public static GlobalConfig PROFILER_ENABLED = new GlobalConfig(CATEGORY, "profiler.enabled");
+    @GlobalConfigValidation(numberGreaterThan = -1)
+    public static GlobalConfig PROFILER_SLOW_TRANSACTION_THRESHOLD = new GlobalConfig(CATEGORY, "profiler.slowTransactionThreshold");
+}
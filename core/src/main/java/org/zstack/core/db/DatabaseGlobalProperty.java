@@ -21,4 +21,16 @@ public class DatabaseGlobalProperty {
     public static String DbMaxIdleTime;
     @GlobalProperty(name="DB.glock.waitTimeout", defaultValue = "28800")
     public static Long GLockWaitTimeout;
+    @GlobalProperty(name="DB.jdbcBatchSize", defaultValue = "50")
+    public static int JDBC_BATCH_SIZE;
+    @GlobalProperty(name="DB.rewriteBatchedStatements", defaultValue = "true")
+    public static boolean REWRITE_BATCHED_STATEMENTS;
+    @GlobalProperty(name="DB.orderBatchedStatements", defaultValue = "true")
+    public static boolean ORDER_BATCHED_STATEMENTS;
+    @GlobalProperty(name="ReadReplicaDataSource.jdbcUrl")
+    public static String readReplicaJdbcUrl;
+    @GlobalProperty(name="DB.readReplica.maxLagSeconds", defaultValue = "5")
+    public static long readReplicaMaxLagSeconds;
+    @GlobalProperty(name="DB.readReplica.lagCheckInterval", defaultValue = "5")
+    public static long readReplicaLagCheckInterval;
 }
@@ -0,0 +1,49 @@
+package org.zstack.core.db;
+
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import javax.sql.DataSource;
+
+/**
+ * Reports the begin and the end of physical transactions to SQLProfiler, a transaction joining
+ * an existing one doesn't begin a new transaction.
+ *
+ * The JDBC connection of a transaction is bound to the data source it comes from. A transaction
+ * started in ReadReplicaRouter.readOnly() gets its connection from the read replica, binding it
+ * to the primary data source would hand the replica connection to JdbcTemplate users of the
+ * primary data source.
+ */
+public class ProfilingJpaTransactionManager extends JpaTransactionManager {
+    private DataSource replicaDataSource;
+
+    @Override
+    public DataSource getDataSource() {
+        // the routing of a thread doesn't change until its transaction completes, so the
+        // connection is bound and unbound with the same key
+        if (replicaDataSource != null && ReadReplicaRoutingDataSource.isRoutedToReplica()) {
+            return replicaDataSource;
+        }
+
+        return super.getDataSource();
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        super.doBegin(transaction, definition);
+        SQLProfiler.beginTransaction(transaction);
+    }
+
+    @Override
+    protected void doCleanupAfterCompletion(Object transaction) {
+        try {
+            SQLProfiler.endTransaction(transaction);
+        } finally {
+            super.doCleanupAfterCompletion(transaction);
+        }
+    }
+
+    public void setReplicaDataSource(DataSource replicaDataSource) {
+        this.replicaDataSource = replicaDataSource;
+    }
+}
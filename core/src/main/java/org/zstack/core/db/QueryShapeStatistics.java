@@ -0,0 +1,147 @@
+package org.zstack.core.db;
+
+import org.zstack.core.debug.DebugManager;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Execution counters and latency histograms of queries issued by Q, SQL and UpdateQuery,
+ * keyed by the JPQL of the query shape. Parameters are not part of the key, so all
+ * executions of the same shape are accounted together.
+ */
+public class QueryShapeStatistics {
+    private static final CLogger logger = Utils.getLogger(QueryShapeStatistics.class);
+
+    public static final String DUMP_QUERY_SHAPE_STATISTICS_SIGNAL = "DumpQueryShapeStatistics";
+
+    // upper bounds of histogram buckets in milliseconds, the last bucket is for anything slower
+    public static final long[] LATENCY_BUCKETS_MS = {1, 5, 10, 50, 100, 500, 1000};
+
+    private static final int MAX_SHAPES = 10000;
+    private static final int DUMP_TOP = 50;
+
+    private static final Map<String, Shape> shapes = new ConcurrentHashMap<>();
+
+    static {
+        DebugManager.registerDebugSignalHandler(DUMP_QUERY_SHAPE_STATISTICS_SIGNAL, QueryShapeStatistics::dump);
+    }
+
+    public static class Shape {
+        private final String jpql;
+        private final AtomicLong count = new AtomicLong(0);
+        private final AtomicLong totalNanos = new AtomicLong(0);
+        private final AtomicLong maxNanos = new AtomicLong(0);
+        private final AtomicLongArray histogram = new AtomicLongArray(LATENCY_BUCKETS_MS.length + 1);
+
+        Shape(String jpql) {
+            this.jpql = jpql;
+        }
+
+        void record(long nanos) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+
+            long ms = TimeUnit.NANOSECONDS.toMillis(nanos);
+            int i = 0;
+            while (i < LATENCY_BUCKETS_MS.length && ms >= LATENCY_BUCKETS_MS[i]) {
+                i++;
+            }
+            histogram.incrementAndGet(i);
+        }
+
+        public String getJpql() {
+            return jpql;
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.get();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        public long[] getHistogram() {
+            long[] ret = new long[histogram.length()];
+            for (int i = 0; i < ret.length; i++) {
+                ret[i] = histogram.get(i);
+            }
+            return ret;
+        }
+
+        @Override
+        public String toString() {
+            long c = getCount();
+            return String.format("count: %s, total: %sms, avg: %sus, max: %sms, histogram%s: %s, jpql: %s",
+                    c, TimeUnit.NANOSECONDS.toMillis(getTotalNanos()), c == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(getTotalNanos() / c),
+                    TimeUnit.NANOSECONDS.toMillis(getMaxNanos()), Arrays.toString(LATENCY_BUCKETS_MS), Arrays.toString(getHistogram()), jpql);
+        }
+    }
+
+    private static final Shape overflow = new Shape("<shapes not tracked because the limit is reached>");
+
+    static Shape getShape(String jpql) {
+        Shape s = shapes.get(jpql);
+        if (s != null) {
+            return s;
+        }
+
+        if (shapes.size() >= MAX_SHAPES) {
+            return overflow;
+        }
+
+        return shapes.computeIfAbsent(jpql, Shape::new);
+    }
+
+    static <T> T measure(Shape shape, Supplier<T> query) {
+        SQLProfiler.Query profiled = SQLProfiler.beginQuery();
+        long start = System.nanoTime();
+        T ret = null;
+        try {
+            ret = query.get();
+            return ret;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            shape.record(nanos);
+            SQLProfiler.endQuery(profiled, nanos, ret);
+        }
+    }
+
+    static <T> T measure(String jpql, Supplier<T> query) {
+        return measure(getShape(jpql), query);
+    }
+
+    /**
+     * @return the shapes sorted by the total execution time, the most expensive first
+     */
+    public static List<Shape> getTopShapes(int num) {
+        return shapes.values().stream()
+                .sorted(Comparator.comparingLong(Shape::getTotalNanos).reversed())
+                .limit(num)
+                .collect(Collectors.toList());
+    }
+
+    public static void reset() {
+        shapes.clear();
+    }
+
+    private static void dump() {
+        StringBuilder sb = new StringBuilder("\n================= BEGIN QUERY SHAPE STATISTICS =================\n");
+        getTopShapes(DUMP_TOP).forEach(s -> sb.append(s).append("\n"));
+        sb.append("================= END QUERY SHAPE STATISTICS =================");
+        logger.debug(sb.toString());
+    }
+}
@@ -0,0 +1,279 @@
+package org.zstack.core.db;
+
+import com.mchange.v2.c3p0.PooledDataSource;
+import org.hibernate.JDBCException;
+import org.hibernate.exception.JDBCConnectionException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.zstack.core.debug.DebugManager;
+import org.zstack.core.debug.DebugSignalHandler;
+import org.zstack.core.thread.PeriodicTask;
+import org.zstack.core.thread.ThreadFacade;
+import org.zstack.header.Component;
+import org.zstack.utils.Utils;
+import org.zstack.utils.gson.JSONObjectUtil;
+import org.zstack.utils.logging.CLogger;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Routes read-only queries to the read replica configured by ReadReplicaDataSource.jdbcUrl.
+ *
+ * A query runs on the primary database when:
+ * 1. no replica is configured
+ * 2. the replication lag exceeds DB.readReplica.maxLagSeconds or the replica is unreachable
+ * 3. the caller is in a transaction, which may have uncommitted writes the replica can't see
+ *
+ * Queries failing on the replica for SQL errors are retried on the primary database, a connection
+ * failure also marks the replica unavailable until the next lag check succeeds.
+ */
+public class ReadReplicaRouter implements Component, DebugSignalHandler {
+    private static final CLogger logger = Utils.getLogger(ReadReplicaRouter.class);
+
+    public static final String DUMP_POOL_STATISTICS_SIGNAL = "DumpDataSourcePoolStatistics";
+
+    @Autowired
+    private ThreadFacade thdf;
+
+    private DataSource primaryDataSource;
+    private DataSource extraDataSource;
+    private DataSource replicaDataSource;
+
+    private volatile boolean replicaHealthy;
+    private volatile long replicationLag = -1;
+    private final AtomicLong replicaQueries = new AtomicLong(0);
+    private final AtomicLong primaryQueries = new AtomicLong(0);
+    private final AtomicLong replicaFailures = new AtomicLong(0);
+    private Future<Void> lagChecker;
+
+    public ReadReplicaRouter() {
+        DebugManager.registerDebugSignalHandler(DUMP_POOL_STATISTICS_SIGNAL, this);
+    }
+
+    public boolean isReplicaEnabled() {
+        return DatabaseGlobalProperty.readReplicaJdbcUrl != null && !DatabaseGlobalProperty.readReplicaJdbcUrl.isEmpty();
+    }
+
+    private boolean canUseReplica() {
+        return isReplicaEnabled() && replicaHealthy && !ReadReplicaRoutingDataSource.isRoutedToReplica()
+                && !TransactionSynchronizationManager.isActualTransactionActive();
+    }
+
+    public void readOnly(SQLBatch batch) {
+        readOnly(() -> {
+            batch.execute();
+            return null;
+        });
+    }
+
+    /**
+     * run the queries in the supplier on the read replica if possible. The supplier must
+     * start its own transaction(e.g. by SQLBatch), and must not write the database
+     */
+    public <T> T readOnly(Supplier<T> supplier) {
+        if (!canUseReplica()) {
+            primaryQueries.incrementAndGet();
+            return supplier.get();
+        }
+
+        ReadReplicaRoutingDataSource.routeToReplica();
+        try {
+            T ret = supplier.get();
+            replicaQueries.incrementAndGet();
+            return ret;
+        } catch (RuntimeException e) {
+            if (!isSQLFailure(e)) {
+                throw e;
+            }
+
+            replicaFailures.incrementAndGet();
+            if (isConnectionFailure(e)) {
+                replicaHealthy = false;
+                logger.warn(String.format("unable to run queries on the read replica, fall back to the primary database until" +
+                        " the replica recovers, %s", e.getMessage()));
+            } else {
+                // e.g. the schema of the replica is behind, run the queries on the primary database this time
+                logger.warn(String.format("failed to run queries on the read replica, retry them on the primary database, %s",
+                        e.getMessage()));
+            }
+        } finally {
+            ReadReplicaRoutingDataSource.routeToPrimary();
+        }
+
+        primaryQueries.incrementAndGet();
+        return supplier.get();
+    }
+
+    private static boolean isConnectionFailure(Throwable t) {
+        for (; t != null; t = t.getCause()) {
+            if (t instanceof CannotCreateTransactionException || t instanceof DataAccessResourceFailureException
+                    || t instanceof JDBCConnectionException || t instanceof SQLTransientConnectionException
+                    || t instanceof SQLNonTransientConnectionException) {
+                return true;
+            }
+
+            // SQL state class 08 is connection exception
+            if (t instanceof SQLException && ((SQLException) t).getSQLState() != null
+                    && ((SQLException) t).getSQLState().startsWith("08")) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isSQLFailure(Throwable t) {
+        if (isConnectionFailure(t)) {
+            return true;
+        }
+
+        for (; t != null; t = t.getCause()) {
+            if (t instanceof SQLException || t instanceof JDBCException) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void checkReplicationLag() {
+        long lag;
+        try (Connection conn = replicaDataSource.getConnection();
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SHOW SLAVE STATUS")) {
+            if (!rs.next()) {
+                // not a slave of MySQL replication(e.g. a galera node), consider it in sync
+                lag = 0;
+            } else {
+                lag = rs.getLong("Seconds_Behind_Master");
+                // null means the replication is stopped
+                lag = rs.wasNull() ? -1 : lag;
+            }
+        } catch (SQLException e) {
+            logger.warn(String.format("unable to check the replication lag of the read replica, %s", e.getMessage()));
+            lag = -1;
+        }
+
+        boolean healthy = lag >= 0 && lag <= DatabaseGlobalProperty.readReplicaMaxLagSeconds;
+        if (healthy != replicaHealthy) {
+            logger.info(String.format("the read replica becomes %s[replication lag: %s seconds], read-only queries are routed to the %s",
+                    healthy ? "available" : "unavailable", lag, healthy ? "replica" : "primary database"));
+        }
+
+        replicationLag = lag;
+        replicaHealthy = healthy;
+    }
+
+    public long getReplicationLag() {
+        return replicationLag;
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("replicaEnabled", isReplicaEnabled());
+        ret.put("replicaHealthy", replicaHealthy);
+        ret.put("replicationLag", replicationLag);
+        ret.put("replicaQueries", replicaQueries.get());
+        ret.put("primaryQueries", primaryQueries.get());
+        ret.put("replicaFailures", replicaFailures.get());
+        ret.put("primaryPool", getPoolStatistics(primaryDataSource));
+        ret.put("extraPool", getPoolStatistics(extraDataSource));
+        if (isReplicaEnabled()) {
+            ret.put("replicaPool", getPoolStatistics(replicaDataSource));
+        }
+        return ret;
+    }
+
+    private Map<String, Object> getPoolStatistics(DataSource ds) {
+        Map<String, Object> ret = new LinkedHashMap<>();
+        if (!(ds instanceof PooledDataSource)) {
+            return ret;
+        }
+
+        PooledDataSource pds = (PooledDataSource) ds;
+        try {
+            ret.put("connections", pds.getNumConnectionsDefaultUser());
+            ret.put("busyConnections", pds.getNumBusyConnectionsDefaultUser());
+            ret.put("idleConnections", pds.getNumIdleConnectionsDefaultUser());
+            ret.put("threadsAwaitingCheckout", pds.getNumThreadsAwaitingCheckoutDefaultUser());
+            ret.put("failedCheckouts", pds.getNumFailedCheckoutsDefaultUser());
+        } catch (SQLException e) {
+            ret.put("error", e.getMessage());
+        }
+
+        return ret;
+    }
+
+    @Override
+    public void handleDebugSignal() {
+        logger.debug(String.format("\n================= BEGIN DATA SOURCE STATISTICS =================\n%s\n================= END DATA SOURCE STATISTICS =================",
+                JSONObjectUtil.toJsonString(getStatistics())));
+    }
+
+    @Override
+    public boolean start() {
+        if (!isReplicaEnabled()) {
+            return true;
+        }
+
+        checkReplicationLag();
+        lagChecker = thdf.submitPeriodicTask(new PeriodicTask() {
+            @Override
+            public TimeUnit getTimeUnit() {
+                return TimeUnit.SECONDS;
+            }
+
+            @Override
+            public long getInterval() {
+                return DatabaseGlobalProperty.readReplicaLagCheckInterval;
+            }
+
+            @Override
+            public String getName() {
+                return "check-read-replica-replication-lag";
+            }
+
+            @Override
+            public void run() {
+                checkReplicationLag();
+            }
+        });
+
+        return true;
+    }
+
+    @Override
+    public boolean stop() {
+        if (lagChecker != null) {
+            lagChecker.cancel(true);
+        }
+
+        return true;
+    }
+
+    public void setPrimaryDataSource(DataSource primaryDataSource) {
+        this.primaryDataSource = primaryDataSource;
+    }
+
+    public void setExtraDataSource(DataSource extraDataSource) {
+        this.extraDataSource = extraDataSource;
+    }
+
+    public void setReplicaDataSource(DataSource replicaDataSource) {
+        this.replicaDataSource = replicaDataSource;
+    }
+}
@@ -0,0 +1,32 @@
+package org.zstack.core.db;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * The data source of the JPA entity manager factory. Connections are taken from the
+ * primary data source unless the current thread is running a read-only query routed
+ * by ReadReplicaRouter
+ */
+public class ReadReplicaRoutingDataSource extends AbstractRoutingDataSource {
+    public static final String PRIMARY = "primary";
+    public static final String REPLICA = "replica";
+
+    private static final ThreadLocal<Boolean> onReplica = new ThreadLocal<>();
+
+    static void routeToReplica() {
+        onReplica.set(true);
+    }
+
+    static void routeToPrimary() {
+        onReplica.remove();
+    }
+
+    static boolean isRoutedToReplica() {
+        return Boolean.TRUE.equals(onReplica.get());
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return isRoutedToReplica() ? REPLICA : PRIMARY;
+    }
+}
@@ -84,7 +84,7 @@ public class SQL {
     @Transactional(readOnly = true)
     private List transactionalList() {
         rebuildQueryInTransaction();
-        return query.getResultList();
+        return QueryShapeStatistics.measure(sql, () -> query.getResultList());
     }
 
     public <T> List<T> list()  {
@@ -94,7 +94,7 @@ public class SQL {
     @Transactional(readOnly = true)
     private <K> K transactionalFind() {
         rebuildQueryInTransaction();
-        List lst = query.getResultList();
+        List lst = QueryShapeStatistics.measure(sql, () -> query.getResultList());
         return lst.isEmpty() ? null : (K) lst.get(0);
     }
 
@@ -121,7 +121,7 @@ public class SQL {
     @Transactional
     private int transactionalExecute() {
         rebuildQueryInTransaction();
-        int ret = query.executeUpdate();
+        int ret = QueryShapeStatistics.measure(sql, () -> query.executeUpdate());
         dbf.getEntityManager().flush();
         return ret;
     }
@@ -135,7 +135,7 @@ public class SQL {
         int times = (int) (total / max) + (total % max != 0 ? 1 : 0);
         for (int i=0; i<times; i++) {
             rebuildQueryInTransaction();
-            consumer.accept(query.getResultList());
+            consumer.accept(QueryShapeStatistics.measure(sql, () -> query.getResultList()));
             first += max;
         }
     }
@@ -163,7 +163,7 @@ public class SQL {
         }
 
         rebuildQueryInTransaction();
-        consumer.accept(query.getResultList(), new PaginateCompletion() {
+        consumer.accept(QueryShapeStatistics.measure(sql, () -> query.getResultList()), new PaginateCompletion() {
             @Override
             public void done() {
                 if (!skipIncreaseOffset) {
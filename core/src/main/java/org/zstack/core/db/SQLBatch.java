@@ -7,6 +7,7 @@ import org.springframework.transaction.annotation.Transactional;
 import org.zstack.header.exception.CloudRuntimeException;
 
 import java.lang.reflect.Field;
+import java.util.Collection;
 
 /**
  * Created by xing5 on 2017/3/4.
@@ -25,6 +26,26 @@ public abstract class SQLBatch {
         return databaseFacade.getEntityManager().merge(k);
     }
 
+    /**
+     * persist entities and flush them at once, hibernate groups the inserts by entity
+     * and sends them in JDBC batches of DB.jdbcBatchSize
+     */
+    protected void persistCollection(Collection entities) {
+        for (Object e : entities) {
+            databaseFacade.getEntityManager().persist(e);
+        }
+
+        flush();
+    }
+
+    protected void mergeCollection(Collection entities) {
+        for (Object e : entities) {
+            databaseFacade.getEntityManager().merge(e);
+        }
+
+        flush();
+    }
+
     protected void remove(Object k) {
         Field f = EntityMetadata.getPrimaryKeyField(k.getClass());
         try {
@@ -0,0 +1,107 @@
+package org.zstack.core.db;
+
+import java.beans.ConstructorProperties;
+import java.util.Arrays;
+
+/**
+ * SQL statistics of a call site and API reported by SQLProfiler. queryLatencyHistogram[i]
+ * counts the queries faster than queryLatencyBucketsMs[i] and not faster than the previous
+ * bucket, the last bucket is for anything slower.
+ */
+public class SQLCallSiteStatistic {
+    private String callSite;
+    private String api;
+    private long statements;
+    private long queries;
+    private long rows;
+    private long totalQueryTimeMs;
+    private long maxQueryTimeMs;
+    private long[] queryLatencyBucketsMs;
+    private long[] queryLatencyHistogram;
+    private long transactions;
+    private long totalTransactionTimeMs;
+    private long maxTransactionTimeMs;
+    private long slowTransactions;
+
+    @ConstructorProperties({"callSite", "api", "statements", "queries", "rows", "totalQueryTimeMs", "maxQueryTimeMs",
+            "queryLatencyBucketsMs", "queryLatencyHistogram", "transactions", "totalTransactionTimeMs", "maxTransactionTimeMs",
+            "slowTransactions"})
+    public SQLCallSiteStatistic(String callSite, String api, long statements, long queries, long rows, long totalQueryTimeMs, long maxQueryTimeMs,
+                                long[] queryLatencyBucketsMs, long[] queryLatencyHistogram, long transactions, long totalTransactionTimeMs,
+                                long maxTransactionTimeMs, long slowTransactions) {
+        this.callSite = callSite;
+        this.api = api;
+        this.statements = statements;
+        this.queries = queries;
+        this.rows = rows;
+        this.totalQueryTimeMs = totalQueryTimeMs;
+        this.maxQueryTimeMs = maxQueryTimeMs;
+        this.queryLatencyBucketsMs = queryLatencyBucketsMs;
+        this.queryLatencyHistogram = queryLatencyHistogram;
+        this.transactions = transactions;
+        this.totalTransactionTimeMs = totalTransactionTimeMs;
+        this.maxTransactionTimeMs = maxTransactionTimeMs;
+        this.slowTransactions = slowTransactions;
+    }
+
+    public String getCallSite() {
+        return callSite;
+    }
+
+    public String getApi() {
+        return api;
+    }
+
+    public long getStatements() {
+        return statements;
+    }
+
+    public long getQueries() {
+        return queries;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getTotalQueryTimeMs() {
+        return totalQueryTimeMs;
+    }
+
+    public long getMaxQueryTimeMs() {
+        return maxQueryTimeMs;
+    }
+
+    public long[] getQueryLatencyBucketsMs() {
+        return queryLatencyBucketsMs;
+    }
+
+    public long[] getQueryLatencyHistogram() {
+        return queryLatencyHistogram;
+    }
+
+    public long getTransactions() {
+        return transactions;
+    }
+
+    public long getTotalTransactionTimeMs() {
+        return totalTransactionTimeMs;
+    }
+
+    public long getMaxTransactionTimeMs() {
+        return maxTransactionTimeMs;
+    }
+
+    public long getSlowTransactions() {
+        return slowTransactions;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("statements: %s, queries: %s, rows: %s, query time: %sms, max: %sms, histogram%s: %s, " +
+                        "transactions: %s, transaction time: %sms, max: %sms, slow: %s, api: %s, call site: %s",
+                statements, queries, rows, totalQueryTimeMs, maxQueryTimeMs, Arrays.toString(queryLatencyBucketsMs),
+                Arrays.toString(queryLatencyHistogram), transactions, totalTransactionTimeMs, maxTransactionTimeMs,
+                slowTransactions, api, callSite);
+    }
+}
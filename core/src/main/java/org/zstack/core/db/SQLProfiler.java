@@ -0,0 +1,358 @@
+package org.zstack.core.db;
+
+import org.apache.logging.log4j.ThreadContext;
+import org.zstack.core.debug.DebugManager;
+import org.zstack.header.Constants;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+
+/**
+ * An opt-in profiler attributing SQL statements, query rows and latencies, and transactions
+ * to the code location issuing them and the API of the calling thread, turned on by the
+ * global config database.profiler.enabled.
+ *
+ * The call site is the first frame of the stack out of the database layer, Hibernate, Spring
+ * and the JDK, so a query of Q, SQL or SQLBatch is accounted to the code using them. Statements
+ * are reported by SQLStatementCounter, query latencies and rows by QueryShapeStatistics and
+ * transactions by ProfilingJpaTransactionManager; the time a transaction is open is the time
+ * it holds its connection. Transactions longer than database.profiler.slowTransactionThreshold
+ * are logged with their statements.
+ */
+public class SQLProfiler {
+    private static final CLogger logger = Utils.getLogger(SQLProfiler.class);
+
+    public static final String DUMP_SQL_PROFILE_SIGNAL = "DumpSQLProfile";
+
+    public static final String SORT_BY_STATEMENTS = "statements";
+    public static final String SORT_BY_QUERY_TIME = "queryTime";
+    public static final String SORT_BY_TRANSACTION_TIME = "transactionTime";
+
+    private static final int MAX_CALL_SITES = 5000;
+    private static final int MAX_STATEMENTS_OF_TRANSACTION = 100;
+    private static final int MAX_STATEMENT_LENGTH = 1000;
+    private static final int DUMP_TOP = 50;
+    private static final String NO_API = "none";
+    private static final String UNKNOWN_API = "unknown";
+
+    // frames of these packages are the database layer itself, the call site is the first frame out of them
+    private static final String[] SKIPPED_PACKAGES = {
+            "org.zstack.core.db.",
+            "org.zstack.core.aspect.",
+            "org.hibernate.",
+            "org.springframework.",
+            "org.aspectj.",
+            "org.codehaus.groovy.",
+            "groovy.",
+            "java.",
+            "javax.",
+            "sun.",
+            "com.sun.",
+            "com.mysql.",
+            "com.mchange.",
+    };
+
+    private static volatile boolean enabled;
+    private static volatile long slowTransactionThresholdMs = 1000;
+
+    private static final Map<String, CallSite> callSites = new ConcurrentHashMap<>();
+    private static final AtomicLong slowTransactions = new AtomicLong(0);
+    // the call site of the query running on the thread, its statements are accounted to it without walking the stack again
+    private static final ThreadLocal<CallSite> currentQuery = new ThreadLocal<>();
+    private static final ThreadLocal<Deque<Transaction>> transactions = ThreadLocal.withInitial(ArrayDeque::new);
+
+    static {
+        DebugManager.registerDebugSignalHandler(DUMP_SQL_PROFILE_SIGNAL, SQLProfiler::dump);
+    }
+
+    static class CallSite {
+        private final String location;
+        private final String api;
+        private final AtomicLong statements = new AtomicLong(0);
+        private final AtomicLong queries = new AtomicLong(0);
+        private final AtomicLong rows = new AtomicLong(0);
+        private final AtomicLong queryNanos = new AtomicLong(0);
+        private final AtomicLong maxQueryNanos = new AtomicLong(0);
+        private final AtomicLongArray queryHistogram = new AtomicLongArray(QueryShapeStatistics.LATENCY_BUCKETS_MS.length + 1);
+        private final AtomicLong transactions = new AtomicLong(0);
+        private final AtomicLong transactionNanos = new AtomicLong(0);
+        private final AtomicLong maxTransactionNanos = new AtomicLong(0);
+        private final AtomicLong slowTransactions = new AtomicLong(0);
+
+        CallSite(String location, String api) {
+            this.location = location;
+            this.api = api;
+        }
+
+        void recordQuery(long nanos, long rowNum) {
+            queries.incrementAndGet();
+            rows.addAndGet(rowNum);
+            queryNanos.addAndGet(nanos);
+            maxQueryNanos.accumulateAndGet(nanos, Math::max);
+
+            long ms = TimeUnit.NANOSECONDS.toMillis(nanos);
+            int i = 0;
+            while (i < QueryShapeStatistics.LATENCY_BUCKETS_MS.length && ms >= QueryShapeStatistics.LATENCY_BUCKETS_MS[i]) {
+                i++;
+            }
+            queryHistogram.incrementAndGet(i);
+        }
+
+        void recordTransaction(long nanos, boolean slow) {
+            transactions.incrementAndGet();
+            transactionNanos.addAndGet(nanos);
+            maxTransactionNanos.accumulateAndGet(nanos, Math::max);
+            if (slow) {
+                slowTransactions.incrementAndGet();
+            }
+        }
+
+        long getStatements() {
+            return statements.get();
+        }
+
+        long getQueryNanos() {
+            return queryNanos.get();
+        }
+
+        long getTransactionNanos() {
+            return transactionNanos.get();
+        }
+
+        SQLCallSiteStatistic toStatistic() {
+            long[] histogram = new long[queryHistogram.length()];
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = queryHistogram.get(i);
+            }
+
+            return new SQLCallSiteStatistic(
+                    location,
+                    api,
+                    statements.get(),
+                    queries.get(),
+                    rows.get(),
+                    TimeUnit.NANOSECONDS.toMillis(queryNanos.get()),
+                    TimeUnit.NANOSECONDS.toMillis(maxQueryNanos.get()),
+                    QueryShapeStatistics.LATENCY_BUCKETS_MS.clone(),
+                    histogram,
+                    transactions.get(),
+                    TimeUnit.NANOSECONDS.toMillis(transactionNanos.get()),
+                    TimeUnit.NANOSECONDS.toMillis(maxTransactionNanos.get()),
+                    slowTransactions.get()
+            );
+        }
+    }
+
+    private static class Transaction {
+        final Object transaction;
+        final CallSite site;
+        final long start = System.nanoTime();
+        long statementNum;
+        final List<String> statements = new ArrayList<>();
+
+        Transaction(Object transaction, CallSite site) {
+            this.transaction = transaction;
+            this.site = site;
+        }
+    }
+
+    static class Query {
+        final CallSite site;
+        final CallSite previous;
+
+        Query(CallSite site, CallSite previous) {
+            this.site = site;
+            this.previous = previous;
+        }
+    }
+
+    private static final CallSite overflow = new CallSite("<call sites not tracked because the limit is reached>", NO_API);
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        SQLProfiler.enabled = enabled;
+    }
+
+    public static void setSlowTransactionThresholdMs(long slowTransactionThresholdMs) {
+        SQLProfiler.slowTransactionThresholdMs = slowTransactionThresholdMs;
+    }
+
+    private static String findCallSite() {
+        for (StackTraceElement e : new Throwable().getStackTrace()) {
+            String clz = e.getClassName();
+            if (clz.contains("$AjcClosure") || Arrays.stream(SKIPPED_PACKAGES).anyMatch(clz::startsWith)) {
+                continue;
+            }
+
+            // the body of a method woven by AspectJ is moved to method_aroundBodyN
+            String method = e.getMethodName();
+            int i = method.indexOf("_aroundBody");
+            if (i > 0) {
+                method = method.substring(0, i);
+            }
+            return String.format("%s.%s:%s", clz, method, e.getLineNumber());
+        }
+
+        return "<unknown>";
+    }
+
+    private static CallSite getCallSite() {
+        // the task name changes with the chain tasks and progress of the API, the API is its message class
+        String api = NO_API;
+        if (ThreadContext.containsKey(Constants.THREAD_CONTEXT_API)) {
+            api = ThreadContext.get(Constants.THREAD_CONTEXT_API_NAME);
+            if (api == null) {
+                api = UNKNOWN_API;
+            }
+        }
+
+        String location = findCallSite();
+        String key = location + " " + api;
+        CallSite s = callSites.get(key);
+        if (s != null) {
+            return s;
+        }
+
+        if (callSites.size() >= MAX_CALL_SITES) {
+            return overflow;
+        }
+
+        final String finalApi = api;
+        return callSites.computeIfAbsent(key, k -> new CallSite(location, finalApi));
+    }
+
+    static void onStatement(String sql) {
+        if (!enabled) {
+            return;
+        }
+
+        CallSite site = currentQuery.get();
+        if (site == null) {
+            site = getCallSite();
+        }
+        site.statements.incrementAndGet();
+
+        Transaction tx = transactions.get().peek();
+        if (tx != null) {
+            tx.statementNum++;
+            if (tx.statements.size() < MAX_STATEMENTS_OF_TRANSACTION) {
+                tx.statements.add(sql.length() > MAX_STATEMENT_LENGTH ? sql.substring(0, MAX_STATEMENT_LENGTH) + "..." : sql);
+            }
+        }
+    }
+
+    /**
+     * @return the query to pass to endQuery(), null if the profiler is off
+     */
+    static Query beginQuery() {
+        if (!enabled) {
+            return null;
+        }
+
+        Query query = new Query(getCallSite(), currentQuery.get());
+        currentQuery.set(query.site);
+        return query;
+    }
+
+    static void endQuery(Query query, long nanos, Object result) {
+        if (query == null) {
+            return;
+        }
+
+        if (query.previous == null) {
+            currentQuery.remove();
+        } else {
+            currentQuery.set(query.previous);
+        }
+
+        long rows = 0;
+        if (result instanceof Collection) {
+            rows = ((Collection) result).size();
+        } else if (result instanceof Number) {
+            rows = ((Number) result).longValue();
+        }
+        query.site.recordQuery(nanos, rows);
+    }
+
+    static void beginTransaction(Object transaction) {
+        if (!enabled) {
+            return;
+        }
+
+        transactions.get().push(new Transaction(transaction, getCallSite()));
+    }
+
+    static void endTransaction(Object transaction) {
+        Deque<Transaction> stack = transactions.get();
+        Transaction tx = stack.peek();
+        // the transaction may begin before the profiler is turned on
+        if (tx == null || tx.transaction != transaction) {
+            return;
+        }
+        stack.pop();
+
+        long nanos = System.nanoTime() - tx.start;
+        boolean slow = TimeUnit.NANOSECONDS.toMillis(nanos) >= slowTransactionThresholdMs;
+        tx.site.recordTransaction(nanos, slow);
+        if (!slow) {
+            return;
+        }
+
+        slowTransactions.incrementAndGet();
+        StringBuilder sb = new StringBuilder(String.format("slow transaction of %s[api: %s] held the connection for %sms, %s statements:",
+                tx.site.location, tx.site.api, TimeUnit.NANOSECONDS.toMillis(nanos), tx.statementNum));
+        tx.statements.forEach(s -> sb.append("\n").append(s));
+        if (tx.statementNum > tx.statements.size()) {
+            sb.append(String.format("\n... %s more", tx.statementNum - tx.statements.size()));
+        }
+        logger.warn(sb.toString());
+    }
+
+    /**
+     * @param sortBy one of SORT_BY_STATEMENTS, SORT_BY_QUERY_TIME and SORT_BY_TRANSACTION_TIME
+     * @return the call sites sorted by the field, the most expensive first
+     */
+    public static List<SQLCallSiteStatistic> getTopCallSites(int num, String sortBy) {
+        Comparator<CallSite> comparator;
+        if (SORT_BY_STATEMENTS.equals(sortBy)) {
+            comparator = Comparator.comparingLong(CallSite::getStatements);
+        } else if (SORT_BY_TRANSACTION_TIME.equals(sortBy)) {
+            comparator = Comparator.comparingLong(CallSite::getTransactionNanos);
+        } else {
+            comparator = Comparator.comparingLong(CallSite::getQueryNanos);
+        }
+
+        return callSites.values().stream()
+                .sorted(comparator.reversed())
+                .limit(num)
+                .map(CallSite::toStatistic)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the number of slow transactions since the process started
+     */
+    public static long getSlowTransactions() {
+        return slowTransactions.get();
+    }
+
+    public static void reset() {
+        callSites.clear();
+    }
+
+    private static void dump() {
+        StringBuilder sb = new StringBuilder("\n================= BEGIN SQL PROFILE =================\n");
+        getTopCallSites(DUMP_TOP, SORT_BY_QUERY_TIME).forEach(s -> sb.append(s).append("\n"));
+        sb.append("================= END SQL PROFILE =================");
+        logger.debug(sb.toString());
+    }
+}
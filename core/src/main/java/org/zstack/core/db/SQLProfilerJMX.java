@@ -0,0 +1,68 @@
+package org.zstack.core.db;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.zstack.core.jmx.JmxFacade;
+import org.zstack.header.Component;
+
+import javax.management.MXBean;
+import java.util.List;
+
+/**
+ * Applies the profiler global configs to SQLProfiler and exposes the top call sites through JMX
+ */
+@MXBean
+public class SQLProfilerJMX implements Component, SQLProfilerMXBean {
+    private static final int TOP = 50;
+
+    @Autowired
+    private JmxFacade jmxf;
+
+    @Override
+    public boolean start() {
+        SQLProfiler.setEnabled(DatabaseGlobalConfig.PROFILER_ENABLED.value(Boolean.class));
+        SQLProfiler.setSlowTransactionThresholdMs(DatabaseGlobalConfig.PROFILER_SLOW_TRANSACTION_THRESHOLD.value(Long.class));
+
+        DatabaseGlobalConfig.PROFILER_ENABLED.installUpdateExtension((oldConfig, newConfig) ->
+                SQLProfiler.setEnabled(newConfig.value(Boolean.class)));
+        DatabaseGlobalConfig.PROFILER_SLOW_TRANSACTION_THRESHOLD.installUpdateExtension((oldConfig, newConfig) ->
+                SQLProfiler.setSlowTransactionThresholdMs(newConfig.value(Long.class)));
+
+        jmxf.registerBean("SQLProfiler", this);
+        return true;
+    }
+
+    @Override
+    public boolean stop() {
+        return true;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return SQLProfiler.isEnabled();
+    }
+
+    @Override
+    public long getSlowTransactions() {
+        return SQLProfiler.getSlowTransactions();
+    }
+
+    @Override
+    public List<SQLCallSiteStatistic> getTopCallSitesByStatements() {
+        return SQLProfiler.getTopCallSites(TOP, SQLProfiler.SORT_BY_STATEMENTS);
+    }
+
+    @Override
+    public List<SQLCallSiteStatistic> getTopCallSitesByQueryTime() {
+        return SQLProfiler.getTopCallSites(TOP, SQLProfiler.SORT_BY_QUERY_TIME);
+    }
+
+    @Override
+    public List<SQLCallSiteStatistic> getTopCallSitesByTransactionTime() {
+        return SQLProfiler.getTopCallSites(TOP, SQLProfiler.SORT_BY_TRANSACTION_TIME);
+    }
+
+    @Override
+    public void reset() {
+        SQLProfiler.reset();
+    }
+}
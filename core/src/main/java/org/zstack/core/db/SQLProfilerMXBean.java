@@ -0,0 +1,19 @@
+package org.zstack.core.db;
+
+import java.util.List;
+
+/**
+ */
+public interface SQLProfilerMXBean {
+    boolean isEnabled();
+
+    long getSlowTransactions();
+
+    List<SQLCallSiteStatistic> getTopCallSitesByStatements();
+
+    List<SQLCallSiteStatistic> getTopCallSitesByQueryTime();
+
+    List<SQLCallSiteStatistic> getTopCallSitesByTransactionTime();
+
+    void reset();
+}
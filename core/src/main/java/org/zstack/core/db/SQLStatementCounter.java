@@ -0,0 +1,167 @@
+package org.zstack.core.db;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.zstack.core.debug.DebugManager;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Counts SQL statements issued by Hibernate on behalf of a named operation, e.g. a query API
+ * and the materialization of its inventories. Hibernate passes every statement it prepares,
+ * including the secondary selects loading eager collections, to this inspector, which is
+ * registered as hibernate.session_factory.statement_inspector.
+ *
+ * Statements are counted for the calling thread only, nested operations are also counted
+ * in the enclosing operation. All statements of the process are also counted in a total,
+ * whatever operation issues them.
+ */
+public class SQLStatementCounter implements StatementInspector {
+    private static final CLogger logger = Utils.getLogger(SQLStatementCounter.class);
+
+    public static final String DUMP_SQL_STATEMENT_COUNTERS_SIGNAL = "DumpSQLStatementCounters";
+
+    private static final int MAX_COUNTERS = 2000;
+    private static final int DUMP_TOP = 50;
+
+    private static final ThreadLocal<long[]> current = new ThreadLocal<>();
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final AtomicLong totalStatements = new AtomicLong(0);
+
+    static {
+        DebugManager.registerDebugSignalHandler(DUMP_SQL_STATEMENT_COUNTERS_SIGNAL, SQLStatementCounter::dump);
+    }
+
+    public static class Counter {
+        private final String name;
+        private final AtomicLong operations = new AtomicLong(0);
+        private final AtomicLong statements = new AtomicLong(0);
+        private final AtomicLong maxStatements = new AtomicLong(0);
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        void record(long num) {
+            operations.incrementAndGet();
+            statements.addAndGet(num);
+            maxStatements.accumulateAndGet(num, Math::max);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getOperations() {
+            return operations.get();
+        }
+
+        public long getStatements() {
+            return statements.get();
+        }
+
+        public long getMaxStatements() {
+            return maxStatements.get();
+        }
+
+        @Override
+        public String toString() {
+            long ops = getOperations();
+            return String.format("operations: %s, statements: %s, avg: %s, max: %s, name: %s",
+                    ops, getStatements(), ops == 0 ? 0 : getStatements() / ops, getMaxStatements(), name);
+        }
+    }
+
+    @Override
+    public String inspect(String sql) {
+        totalStatements.incrementAndGet();
+        SQLProfiler.onStatement(sql);
+
+        long[] c = current.get();
+        if (c != null) {
+            c[0]++;
+        }
+
+        return sql;
+    }
+
+    /**
+     * run the operation and record the number of SQL statements it issues in the counter of the name
+     */
+    public static <T> T count(String name, Supplier<T> operation) {
+        long[] outer = current.get();
+        long[] c = new long[1];
+        current.set(c);
+        try {
+            return operation.get();
+        } finally {
+            if (outer != null) {
+                outer[0] += c[0];
+                current.set(outer);
+            } else {
+                current.remove();
+            }
+
+            getCounter(name).record(c[0]);
+
+            if (logger.isTraceEnabled()) {
+                logger.trace(String.format("%s issued %s SQL statements", name, c[0]));
+            }
+        }
+    }
+
+    private static Counter getCounter(String name) {
+        Counter counter = counters.get(name);
+        if (counter != null) {
+            return counter;
+        }
+
+        if (counters.size() >= MAX_COUNTERS) {
+            return counters.computeIfAbsent("<operations not tracked because the limit is reached>", Counter::new);
+        }
+
+        return counters.computeIfAbsent(name, Counter::new);
+    }
+
+    /**
+     * @return the counter of the name, null if no operation of the name has run
+     */
+    public static Counter findCounter(String name) {
+        return counters.get(name);
+    }
+
+    /**
+     * @return the counters sorted by the number of statements, the most expensive first
+     */
+    public static List<Counter> getTopCounters(int num) {
+        return counters.values().stream()
+                .sorted(Comparator.comparingLong(Counter::getStatements).reversed())
+                .limit(num)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the number of SQL statements issued by the process since it started
+     */
+    public static long getTotalStatements() {
+        return totalStatements.get();
+    }
+
+    public static void reset() {
+        counters.clear();
+    }
+
+    private static void dump() {
+        StringBuilder sb = new StringBuilder("\n================= BEGIN SQL STATEMENT COUNTERS =================\n");
+        getTopCounters(DUMP_TOP).forEach(c -> sb.append(c).append("\n"));
+        sb.append("================= END SQL STATEMENT COUNTERS =================");
+        logger.debug(sb.toString());
+    }
+}
@@ -1,5 +1,6 @@
 package org.zstack.core.db;
 
+import org.apache.commons.lang.StringUtils;
 import org.springframework.beans.factory.annotation.Autowire;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Configurable;
@@ -9,29 +10,23 @@ import org.springframework.transaction.annotation.Transactional;
 import org.zstack.utils.logging.CLogger;
 import org.zstack.utils.logging.CLoggerImpl;
 
+import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.Query;
 import javax.persistence.Tuple;
-import javax.persistence.TypedQuery;
-import javax.persistence.criteria.*;
 import javax.persistence.metamodel.SingularAttribute;
-import java.lang.reflect.Array;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 @Configurable(preConstruction=true,autowire=Autowire.BY_TYPE,dependencyCheck=true)
 public class SimpleQueryImpl<T> implements SimpleQuery<T> {
     private static final CLogger _logger = CLoggerImpl.getLogger(SimpleQueryImpl.class);
     private final Class<T> _entityClass;
-    private Root<T> _root;
     private List<AttrInfo> _selects = new ArrayList<AttrInfo>();
     private List<Condition> _conditions = new ArrayList<Condition>();
     private List<OrderInfo> orderInfos = new ArrayList<OrderInfo>();
     private SingularAttribute groupByInfo = null;
-    private List<Path> _paths = new ArrayList<Path>();
-    private CriteriaQuery _query;
-    private final CriteriaBuilder _builder;
     private Integer limit;
     private Integer start;
 
@@ -73,7 +68,6 @@ public class SimpleQueryImpl<T> implements SimpleQuery<T> {
 
     SimpleQueryImpl(Class<T> vo) {
         _entityClass = vo;
-        _builder = _dbf.getCriteriaBuilder();
     }
 
     @Override
@@ -96,105 +90,169 @@ public class SimpleQueryImpl<T> implements SimpleQuery<T> {
         return this;
     }
     
-    private Order[] orderClause() {
-        ArrayList<Order> orders = new ArrayList<Order>(orderInfos.size());
-        Order[] orderArr = (Order[]) Array.newInstance(Order.class, orderInfos.size());
-        
-        for (OrderInfo info : orderInfos) {
-            if (info.od == Od.ASC) {
-                orders.add(_builder.asc(_root.get(info.attr)));
-            } else if (info.od == Od.DESC) {
-                orders.add(_builder.desc(_root.get(info.attr)));
+    enum Kind {
+        ENTITY,
+        VALUE,
+        TUPLE,
+        COUNT
+    }
+
+    /**
+     * a query shape compiled to JPQL, parameters of conditions are named by the
+     * indexes of the conditions
+     */
+    static class CompiledShape {
+        final String jpql;
+        final Class resultClass;
+
+        CompiledShape(String jpql, Class resultClass) {
+            this.jpql = jpql;
+            this.resultClass = resultClass;
+        }
+    }
+
+    private static final int MAX_CACHED_SHAPES = 10000;
+    private static final Map<String, CompiledShape> shapeCache = new ConcurrentHashMap<>();
+
+    private String shapeKey(Kind kind) {
+        StringBuilder sb = new StringBuilder(kind.name()).append('|').append(_entityClass.getName());
+        if (kind == Kind.VALUE || kind == Kind.TUPLE) {
+            for (AttrInfo info : _selects) {
+                sb.append('|').append(info._attr.getName());
             }
         }
-        
-        return orders.toArray(orderArr);
+
+        sb.append("|W");
+        for (Condition con : _conditions) {
+            sb.append('|').append(con._attr.getName()).append(':').append(con._op.name());
+        }
+
+        if (kind != Kind.COUNT) {
+            if (groupByInfo != null) {
+                sb.append("|G|").append(groupByInfo.getName());
+            }
+
+            sb.append("|O");
+            for (OrderInfo info : orderInfos) {
+                sb.append('|').append(info.attr.getName()).append(':').append(info.od.name());
+            }
+        }
+
+        return sb.toString();
     }
-    
-    private CriteriaQuery groupByClause(CriteriaQuery q) {
-        assert _root != null : "You just set root before call groupby clause";
-        if (groupByInfo != null) {
-            q.groupBy(_root.get(groupByInfo));
+
+    private CompiledShape compileShape(Kind kind) {
+        StringBuilder sb = new StringBuilder("SELECT ");
+        Class resultClass = null;
+        if (kind == Kind.COUNT) {
+            sb.append("count(vo)");
+        } else if (kind == Kind.ENTITY) {
+            sb.append("vo");
+            resultClass = _entityClass;
+        } else {
+            List<String> selects = new ArrayList<>();
+            for (AttrInfo info : _selects) {
+                selects.add(String.format("vo.%s", info._attr.getName()));
+            }
+            sb.append(StringUtils.join(selects, ", "));
+            resultClass = kind == Kind.TUPLE ? Tuple.class : null;
         }
-        return q;
+
+        sb.append(String.format(" FROM %s vo", _entityClass.getSimpleName()));
+
+        if (!_conditions.isEmpty()) {
+            List<String> conds = new ArrayList<>();
+            for (int i = 0; i < _conditions.size(); i++) {
+                Condition con = _conditions.get(i);
+                Op op = con._op;
+                if (op == Op.NULL || op == Op.NOT_NULL) {
+                    conds.add(String.format("vo.%s %s", con._attr.getName(), op));
+                } else if (op == Op.IN || op == Op.NOT_IN) {
+                    conds.add(String.format("vo.%s %s (:p%s)", con._attr.getName(), op, i));
+                } else {
+                    conds.add(String.format("vo.%s %s :p%s", con._attr.getName(), op, i));
+                }
+            }
+            sb.append(" WHERE ").append(StringUtils.join(conds, " AND "));
+        }
+
+        if (kind != Kind.COUNT) {
+            if (groupByInfo != null) {
+                sb.append(String.format(" GROUP BY vo.%s", groupByInfo.getName()));
+            }
+
+            if (!orderInfos.isEmpty()) {
+                List<String> orders = new ArrayList<>();
+                for (OrderInfo info : orderInfos) {
+                    orders.add(String.format("vo.%s %s", info.attr.getName(), info.od));
+                }
+                sb.append(" ORDER BY ").append(StringUtils.join(orders, ", "));
+            }
+        }
+
+        return new CompiledShape(sb.toString(), resultClass);
     }
-    
-    private Predicate[] whereClause() {
-        List<Predicate> preds = new ArrayList<Predicate>(_conditions.size());
-        for (Condition con : _conditions) {
+
+    private CompiledShape getCompiledShape(Kind kind) {
+        String key = shapeKey(kind);
+        CompiledShape shape = shapeCache.get(key);
+        if (shape != null) {
+            return shape;
+        }
+
+        shape = compileShape(kind);
+        if (shapeCache.size() < MAX_CACHED_SHAPES) {
+            shapeCache.putIfAbsent(key, shape);
+        }
+
+        return shape;
+    }
+
+    private void bindParameters(Query q) {
+        for (int i = 0; i < _conditions.size(); i++) {
+            Condition con = _conditions.get(i);
             Op op = con._op;
-            Path p = _root.get(con._attr);
             Object[] vals = con._val;
-            if (op == Op.EQ) {
-                assert vals.length == 1 : String.format("Op.EQ needs one value, but %s given", vals.length);
-                preds.add(_builder.equal(p, vals[0]));
-            } else if (op == Op.NOT_EQ) {
-                assert vals.length == 1 : String.format("Op.NOT_EQ needs one value, but %s given", vals.length);
-                preds.add(_builder.notEqual(p, vals[0]));
-            } else if (op == Op.NOT_NULL) {
-                preds.add(_builder.isNotNull(p));
-            } else if (op == Op.IN) {
-                //preds.add(_builder.in(p.in(vals)));
-                assert vals.length !=0 : String.format("Op.IN needs more than one value, but %s given", vals.length);
-                preds.add(p.in(vals));
-            } else if (op == Op.NOT_IN) {
-                assert vals.length !=0 : String.format("Op.NOT_IN needs more than one value, but %s given", vals.length);
-                preds.add(_builder.not(p.in(vals)));
-            } else if (op == Op.NULL) {
-                preds.add(_builder.isNull(p)); 
-            } else if (op == Op.LIKE) {
-                assert vals.length == 1 : String.format("Op.LIKE needs one value, but %s given", vals.length);
-                preds.add(_builder.like(p, (String)vals[0]));
-            } else if (op == Op.NOT_LIKE) {
-                assert vals.length == 1 : String.format("Op.NOTLIKE needs one value, but %s given", vals.length);
-                preds.add(_builder.notLike(p, (String)vals[0]));
-            } else if (op == Op.GT) {
-                assert vals.length == 1 : String.format("Op.GT needs one value, but %s given", vals.length);
-                preds.add(_builder.greaterThan(p, (Comparable)vals[0]));
-            } else if (op == Op.LT) {
-                assert vals.length == 1 : String.format("Op.LT needs one value, but %s given", vals.length);
-                preds.add(_builder.lessThan(p, (Comparable)vals[0]));
-            } else if (op == Op.GTE) {
-                assert vals.length == 1 : String.format("Op.GT_EQ needs one value, but %s given", vals.length);
-                preds.add(_builder.greaterThanOrEqualTo(p, (Comparable)vals[0]));
-            } else if (op == Op.LTE) {
-                assert vals.length == 1 : String.format("Op.LT_EQ needs one value, but %s given", vals.length);
-                preds.add(_builder.lessThanOrEqualTo(p, (Comparable)vals[0]));
+            if (op == Op.NULL || op == Op.NOT_NULL) {
+                continue;
+            }
+
+            if (op == Op.IN || op == Op.NOT_IN) {
+                assert vals.length != 0 : String.format("Op.%s needs more than one value, but %s given", op.name(), vals.length);
+                q.setParameter("p" + i, Arrays.asList(vals));
             } else {
-                assert(false) : op.toString() + " has not been supported";
+                assert vals.length == 1 : String.format("Op.%s needs one value, but %s given", op.name(), vals.length);
+                q.setParameter("p" + i, vals[0]);
             }
         }
-        
-        Predicate[] predArray = (Predicate[]) Array.newInstance(Predicate.class, preds.size());
-        return preds.toArray(predArray);
     }
 
-    private void done() {
-        if (_selects.size() == 0) {
-            _query = _builder.createQuery(_entityClass);
-        } else if (_selects.size() == 1) {
-           Class<?> selectType = _selects.get(0)._javaType;
-           _query = _builder.createQuery(selectType);
-        } else {
-           _query = _builder.createTupleQuery(); 
+    private Query createQuery(CompiledShape shape) {
+        EntityManager em = _dbf.getEntityManager();
+        Query q = shape.resultClass == null ? em.createQuery(shape.jpql) : em.createQuery(shape.jpql, shape.resultClass);
+        bindParameters(q);
+        return q;
+    }
+
+    private <K> K execute(Kind kind, boolean withLimit, boolean withStart, Function<Query, K> func) {
+        CompiledShape shape = getCompiledShape(kind);
+        Query q = createQuery(shape);
+        if (withLimit && limit != null) {
+            q.setMaxResults(limit);
         }
-        
-        _root = _query.from(_entityClass);
-        
-        if (_selects.size() == 0) {
-        } else if (_selects.size() == 1) {
-            Path p = _root.get(_selects.get(0)._attr);
-            _query.select(p);
-        } else {
-            for (AttrInfo info : _selects) {
-               _paths.add(_root.get(info._attr)); 
-            }
-            _query.multiselect(_paths);
+        if (withStart && start != null) {
+            q.setFirstResult(start);
         }
 
-        _query.where(whereClause());
-        _query.orderBy(orderClause());
-        groupByClause(_query);
+        return QueryShapeStatistics.measure(shape.jpql, () -> func.apply(q));
+    }
+
+    private static <K> K singleResult(Query q) {
+        try {
+            return (K) q.getSingleResult();
+        } catch (NoResultException | EmptyResultDataAccessException e) {
+            return null;
+        }
     }
 
     @Override
@@ -206,23 +264,7 @@ public class SimpleQueryImpl<T> implements SimpleQuery<T> {
     @Transactional
     T _find() {
         assert _selects.size() == 0 : "find() for entity doesn't need any parameter in Query.Select(), you have put some parameter in Query.select(..), either removing these parameters or using findValue() or findTuple()";
-        done();
-
-        T vo = null;
-        try {
-            Query q = _dbf.getEntityManager().createQuery(_query);
-            if (limit != null) {
-                q.setMaxResults(limit);
-            }
-            vo = (T)q.getSingleResult();
-        } catch (NoResultException e) {
-        } catch (EmptyResultDataAccessException e) {
-        }
-        if (vo != null) {
-            return vo;
-        } else {
-            return null;
-        }
+        return execute(Kind.ENTITY, true, false, SimpleQueryImpl::singleResult);
     }
 
     @Transactional(readOnly=true, propagation=Propagation.REQUIRES_NEW)
@@ -234,20 +276,7 @@ public class SimpleQueryImpl<T> implements SimpleQuery<T> {
     @Transactional
     <K> List<K> _list() {
         assert _selects.size() == 0 : "list() for entities doesn't need any parameter in Query.Select(), you have put some parameter in Query.select(..), either removing these parameters or using listValue() or listTuple()";
-        done();
-        Query q = _dbf.getEntityManager().createQuery(_query);
-        if (limit != null) {
-            q.setMaxResults(limit);
-        }
-        if (start != null) {
-            q.setFirstResult(start);
-        }
-        List<T> vos = q.getResultList();
-        List<K> ros = new ArrayList<K>(vos.size());
-        for (T vo : vos) {
-           ros.add((K) vo);
-        }
-        return ros;
+        return execute(Kind.ENTITY, true, true, q -> new ArrayList<K>(q.getResultList()));
     }
 
     @Override
@@ -259,22 +288,7 @@ public class SimpleQueryImpl<T> implements SimpleQuery<T> {
     @Transactional
     <K> K _findValue() {
         assert _selects.size() == 1 : String.format("findValue() only need one parameter in Query.Select(), you have put %s parameter in Query.select(..), either correcting the parameter or using find() or findTuple()", _selects.size());
-        done();
-        K value = null;
-        try {
-            Query q = _dbf.getEntityManager().createQuery(_query);
-            if (limit != null) {
-                q.setMaxResults(limit);
-            }
-            if (start != null) {
-                q.setFirstResult(start);
-            }
-            value = (K)q.getSingleResult();
-        } catch (NoResultException e) {
-        } catch (EmptyResultDataAccessException e) {
-        }
-        
-        return value;
+        return execute(Kind.VALUE, true, true, SimpleQueryImpl::singleResult);
     }
 
     @Override
@@ -286,16 +300,7 @@ public class SimpleQueryImpl<T> implements SimpleQuery<T> {
     @Transactional
     <K> List<K> _listValue() {
         assert _selects.size() == 1 : String.format("listValue() only need one parameter in Query.Select(), you have put %s parameter in Query.select(..), either correcting the parameter or using list() or listTuple()", _selects.size());
-        done();
-        Query q = _dbf.getEntityManager().createQuery(_query);
-        if (limit != null) {
-            q.setMaxResults(limit);
-        }
-        if (start != null) {
-            q.setFirstResult(start);
-        }
-        List<K> vals = q.getResultList();
-        return vals;
+        return execute(Kind.VALUE, true, true, q -> (List<K>) q.getResultList());
     }
 
     @Override
@@ -307,18 +312,7 @@ public class SimpleQueryImpl<T> implements SimpleQuery<T> {
     @Transactional
     Tuple _findTuple() {
         assert _selects.size() > 1 : String.format("findTuple() needs more than one parameter in Query.Select(), you have put %s parameter in Query.select(..), either correcting the parameter or using find() or findValue()", _selects.size());
-        done();
-        Tuple ret = null;
-        try {
-            Query q = _dbf.getEntityManager().createQuery(_query);
-            if (limit != null) {
-                q.setMaxResults(limit);
-            }
-            ret = (Tuple)q.getSingleResult();
-        } catch (NoResultException e) {
-        } catch (EmptyResultDataAccessException e) {
-        }
-        return ret;
+        return execute(Kind.TUPLE, true, false, SimpleQueryImpl::singleResult);
     }
 
     @Override
@@ -330,16 +324,7 @@ public class SimpleQueryImpl<T> implements SimpleQuery<T> {
     @Transactional
     List<Tuple> _listTuple() {
         assert _selects.size() > 1 : String.format("listTuple() needs more than one parameter in Query.Select(), you have put %s parameter in Query.select(..), either correcting the parameter or using list() or listValue()", _selects.size());
-        done();
-        Query q = _dbf.getEntityManager().createQuery(_query);
-        if (limit != null) {
-            q.setMaxResults(limit);
-        }
-        if (start != null) {
-            q.setFirstResult(start);
-        }
-        List<Tuple> rets =  q.getResultList();
-        return rets;
+        return execute(Kind.TUPLE, true, true, q -> (List<Tuple>) q.getResultList());
     }
 
     @Override
@@ -351,11 +336,7 @@ public class SimpleQueryImpl<T> implements SimpleQuery<T> {
     @Transactional
     Long _count() {
         assert _selects.size() == 0 : "count() for entity doesn't need any parameter in Query.Select(), you have put some parameter in Query.select(..), either removing these parameters or using findValue() or findTuple()";
-        _query = _builder.createQuery(Long.class);
-        _root = _query.from(_entityClass);
-        _query.select(_builder.count(_root));
-        _query.where(whereClause());
-        return (Long) _dbf.getEntityManager().createQuery(_query).getSingleResult();
+        return execute(Kind.COUNT, false, false, q -> (Long) q.getSingleResult());
     }
 
     @Override
@@ -384,13 +365,10 @@ public class SimpleQueryImpl<T> implements SimpleQuery<T> {
     @Transactional
     boolean _isExists() {
         assert _selects.size() == 0 : "isExists() for entity doesn't need any parameter in Query.Select(), you have put some parameter in Query.select(..), either removing these parameters or using findValue() or findTuple()";
-        _query = _builder.createQuery(Long.class);
-        _root = _query.from(_entityClass);
-        _query.select(_builder.count(_root));
-        _query.where(whereClause());
-        TypedQuery<Long> tq = _dbf.getEntityManager().createQuery(_query);
-        tq.setMaxResults(1);
-        long count = tq.getSingleResult();
+        long count = execute(Kind.COUNT, false, false, q -> {
+            q.setMaxResults(1);
+            return (Long) q.getSingleResult();
+        });
         return count >= 1;
     }
 
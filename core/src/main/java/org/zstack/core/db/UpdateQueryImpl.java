@@ -15,6 +15,7 @@ import org.zstack.utils.logging.CLogger;
 import javax.persistence.Query;
 import javax.persistence.metamodel.SingularAttribute;
 import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * Created by xing5 on 2016/6/29.
@@ -27,8 +28,10 @@ public class UpdateQueryImpl implements UpdateQuery {
     private DatabaseFacadeImpl dbf;
 
     private Class entityClass;
-    private Map<SingularAttribute, Object> setValues = new HashMap<>();
-    private Map<SingularAttribute, List<Cond>> andConditions = new HashMap<>();
+    // keep the order of setters and conditions so the same shape always produces the same JPQL,
+    // which hits the query plan cache of hibernate
+    private Map<SingularAttribute, Object> setValues = new LinkedHashMap<>();
+    private Map<SingularAttribute, List<Cond>> andConditions = new LinkedHashMap<>();
 
     private class Cond {
         SingularAttribute attr;
@@ -208,7 +211,7 @@ public class UpdateQueryImpl implements UpdateQuery {
             fillConditions(q);
         }
 
-        int ret = q.executeUpdate();
+        int ret = QueryShapeStatistics.measure(sql, q::executeUpdate);
         dbf.getEntityManager().flush();
         return ret;
     }
@@ -245,7 +248,7 @@ public class UpdateQueryImpl implements UpdateQuery {
             fillConditions(q);
         }
 
-        List ids = q.getResultList();
+        List ids = QueryShapeStatistics.measure(sql, q::getResultList);
         if (ids.isEmpty()) {
             return;
         }
@@ -253,6 +256,32 @@ public class UpdateQueryImpl implements UpdateQuery {
         info.removeByPrimaryKeys(ids);
     }
 
+    /**
+     * @return the primary keys the conditions pin the entities to, or null if they don't
+     */
+    private Collection namedPrimaryKeys() {
+        EntityInfo info = dbf.getEntityInfo(entityClass);
+        if (info.hasCompositePrimaryKey()) {
+            return null;
+        }
+
+        for (Map.Entry<SingularAttribute, List<Cond>> e : andConditions.entrySet()) {
+            if (!e.getKey().getName().equals(info.voPrimaryKeyField.getName())) {
+                continue;
+            }
+
+            for (Cond cond : e.getValue()) {
+                if (cond.op == Op.EQ) {
+                    return Collections.singletonList(cond.val);
+                } else if (cond.op == Op.IN) {
+                    return (Collection) cond.val;
+                }
+            }
+        }
+
+        return null;
+    }
+
     @Override
     @DeadlockAutoRestart
     public void update() {
@@ -290,7 +319,16 @@ public class UpdateQueryImpl implements UpdateQuery {
             fillConditions(q);
         }
 
-        q.executeUpdate();
+        QueryShapeStatistics.measure(sql, q::executeUpdate);
         dbf.getEntityManager().flush();
+
+        // the bulk update doesn't fire entity life cycle callbacks, tell extensions interested in
+        // the entities which ones are updated if the conditions name them
+        List<BulkUpdateEntityExtensionPoint> exts = dbf.getBulkUpdateExtensions(entityClass);
+        if (!exts.isEmpty()) {
+            Collection ids = namedPrimaryKeys();
+            List<String> fields = setValues.keySet().stream().map(SingularAttribute::getName).collect(Collectors.toList());
+            exts.forEach(ext -> ext.postBulkUpdate(ids, entityClass, fields));
+        }
     }
 }
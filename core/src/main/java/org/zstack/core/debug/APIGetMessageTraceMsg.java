@@ -0,0 +1,29 @@
+package org.zstack.core.debug;
+
+import org.springframework.http.HttpMethod;
+import org.zstack.header.message.APIParam;
+import org.zstack.header.message.APISyncCallMessage;
+import org.zstack.header.rest.RestRequest;
+
+@RestRequest(
+        path = "/debug/message-traces/{traceId}",
+        method = HttpMethod.GET,
+        responseClass = APIGetMessageTraceReply.class)
+public class APIGetMessageTraceMsg extends APISyncCallMessage {
+    @APIParam
+    private String traceId;
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public void setTraceId(String traceId) {
+        this.traceId = traceId;
+    }
+
+    public static APIGetMessageTraceMsg __example__() {
+        APIGetMessageTraceMsg msg = new APIGetMessageTraceMsg();
+        msg.setTraceId(uuid());
+        return msg;
+    }
+}
@@ -0,0 +1,61 @@
+package org.zstack.core.debug
+
+import org.zstack.core.debug.APIGetMessageTraceReply
+
+doc {
+    title "GetMessageTrace"
+
+    category "debug"
+
+    desc """获取一个API的消息追踪，包括其所有子消息、链式任务和Agent HTTP调用在本管理节点上各环节（排队、处理、序列化、远程传输、回复等）的耗时。按全局配置cloudBus.trace.samplingPercent的比例采样API"""
+
+    rest {
+        request {
+			url "GET /v1/debug/message-traces/{traceId}"
+
+			header (Authorization: 'OAuth the-session-uuid')
+
+            clz APIGetMessageTraceMsg.class
+
+            desc """"""
+            
+			params {
+
+				column {
+					name "traceId"
+					enclosedIn ""
+					desc "追踪ID，即被追踪API的ID"
+					location "url"
+					type "String"
+					optional false
+					since "3.10.0"
+					
+				}
+				column {
+					name "systemTags"
+					enclosedIn ""
+					desc ""
+					location "query"
+					type "List"
+					optional true
+					since "3.10.0"
+					
+				}
+				column {
+					name "userTags"
+					enclosedIn ""
+					desc ""
+					location "query"
+					type "List"
+					optional true
+					since "3.10.0"
+					
+				}
+			}
+        }
+
+        response {
+            clz APIGetMessageTraceReply.class
+        }
+    }
+}
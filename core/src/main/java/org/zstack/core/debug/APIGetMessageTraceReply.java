@@ -0,0 +1,54 @@
+package org.zstack.core.debug;
+
+import org.zstack.core.cloudbus.MessageTracer;
+import org.zstack.core.cloudbus.TraceHop;
+import org.zstack.core.cloudbus.TraceSpan;
+import org.zstack.header.message.APIReply;
+import org.zstack.header.rest.RestResponse;
+
+import java.util.Arrays;
+import java.util.List;
+
+@RestResponse(fieldsTo = {"all"})
+public class APIGetMessageTraceReply extends APIReply {
+    private int samplingPercent;
+    private List<TraceSpan> spans;
+
+    public int getSamplingPercent() {
+        return samplingPercent;
+    }
+
+    public void setSamplingPercent(int samplingPercent) {
+        this.samplingPercent = samplingPercent;
+    }
+
+    public List<TraceSpan> getSpans() {
+        return spans;
+    }
+
+    public void setSpans(List<TraceSpan> spans) {
+        this.spans = spans;
+    }
+
+    public static APIGetMessageTraceReply __example__() {
+        APIGetMessageTraceReply reply = new APIGetMessageTraceReply();
+        String apiId = uuid();
+        String msgId = uuid();
+        long now = 1577836800000000L;
+        reply.setSamplingPercent(10);
+        reply.setSpans(Arrays.asList(
+                new TraceSpan(apiId, apiId, null, MessageTracer.SPAN_TYPE_MESSAGE, "org.zstack.header.vm.APIStartVmInstanceMsg", now, Arrays.asList(
+                        new TraceHop(MessageTracer.HOP_QUEUE, "api.portal", now, 120),
+                        new TraceHop(MessageTracer.HOP_HANDLE, "api.portal", now + 120, 800),
+                        new TraceHop(MessageTracer.HOP_PROCESS, "org.zstack.header.vm.APIStartVmInstanceEvent", now + 1000, 2300000)
+                )),
+                new TraceSpan(apiId, msgId, apiId, MessageTracer.SPAN_TYPE_MESSAGE, "org.zstack.header.vm.StartVmInstanceMsg", now + 2000, Arrays.asList(
+                        new TraceHop(MessageTracer.HOP_QUEUE, "vmInstance", now + 2000, 300),
+                        new TraceHop(MessageTracer.HOP_PROCESS, "vmInstance", now + 2300, 2200000),
+                        new TraceHop(MessageTracer.HOP_REPLY, "vmInstance", now + 2202300, 150),
+                        new TraceHop(MessageTracer.HOP_ROUND_TRIP, "vmInstance", now + 2000, 2200450)
+                ))
+        ));
+        return reply;
+    }
+}
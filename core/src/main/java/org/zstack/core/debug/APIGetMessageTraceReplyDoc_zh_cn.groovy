@@ -0,0 +1,29 @@
+package org.zstack.core.debug
+
+import org.zstack.header.errorcode.ErrorCode
+
+doc {
+
+	title "消息追踪"
+
+	ref {
+		name "error"
+		path "org.zstack.core.debug.APIGetMessageTraceReply.error"
+		desc "错误码，若不为null，则表示操作失败, 操作成功时该字段为null",false
+		type "ErrorCode"
+		since "0.6"
+		clz ErrorCode.class
+	}
+	field {
+		name "samplingPercent"
+		desc "API采样百分比，0表示关闭追踪"
+		type "int"
+		since "3.10.0"
+	}
+	field {
+		name "spans"
+		desc "追踪到的消息、链式任务和HTTP调用，按开始时间排序"
+		type "List"
+		since "3.10.0"
+	}
+}
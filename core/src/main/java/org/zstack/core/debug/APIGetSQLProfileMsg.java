@@ -0,0 +1,42 @@
+package org.zstack.core.debug;
+
+import org.springframework.http.HttpMethod;
+import org.zstack.core.db.SQLProfiler;
+import org.zstack.header.message.APIParam;
+import org.zstack.header.message.APISyncCallMessage;
+import org.zstack.header.rest.RestRequest;
+
+@RestRequest(
+        path = "/debug/sql-profile",
+        method = HttpMethod.GET,
+        responseClass = APIGetSQLProfileReply.class)
+public class APIGetSQLProfileMsg extends APISyncCallMessage {
+    @APIParam(numberRange = {1, 1000}, required = false)
+    private Integer limit = 50;
+
+    @APIParam(validValues = {SQLProfiler.SORT_BY_STATEMENTS, SQLProfiler.SORT_BY_QUERY_TIME, SQLProfiler.SORT_BY_TRANSACTION_TIME}, required = false)
+    private String sortBy = SQLProfiler.SORT_BY_QUERY_TIME;
+
+    public Integer getLimit() {
+        return limit;
+    }
+
+    public void setLimit(Integer limit) {
+        this.limit = limit;
+    }
+
+    public String getSortBy() {
+        return sortBy;
+    }
+
+    public void setSortBy(String sortBy) {
+        this.sortBy = sortBy;
+    }
+
+    public static APIGetSQLProfileMsg __example__() {
+        APIGetSQLProfileMsg msg = new APIGetSQLProfileMsg();
+        msg.setLimit(10);
+        msg.setSortBy(SQLProfiler.SORT_BY_STATEMENTS);
+        return msg;
+    }
+}
@@ -0,0 +1,71 @@
+package org.zstack.core.debug
+
+import org.zstack.core.debug.APIGetSQLProfileReply
+
+doc {
+    title "GetSQLProfile"
+
+    category "debug"
+
+    desc """获取SQL性能剖析结果，按调用位置和API统计SQL语句数、查询行数、查询延迟和事务占用连接的时间，需打开全局配置database.profiler.enabled"""
+
+    rest {
+        request {
+			url "GET /v1/debug/sql-profile"
+
+			header (Authorization: 'OAuth the-session-uuid')
+
+            clz APIGetSQLProfileMsg.class
+
+            desc """"""
+            
+			params {
+
+				column {
+					name "limit"
+					enclosedIn ""
+					desc "返回的调用位置数量，默认50"
+					location "query"
+					type "Integer"
+					optional true
+					since "3.10.0"
+					
+				}
+				column {
+					name "sortBy"
+					enclosedIn ""
+					desc "排序字段，默认queryTime"
+					location "query"
+					type "String"
+					optional true
+					since "3.10.0"
+					values ("statements","queryTime","transactionTime")
+				}
+				column {
+					name "systemTags"
+					enclosedIn ""
+					desc ""
+					location "query"
+					type "List"
+					optional true
+					since "3.10.0"
+					
+				}
+				column {
+					name "userTags"
+					enclosedIn ""
+					desc ""
+					location "query"
+					type "List"
+					optional true
+					since "3.10.0"
+					
+				}
+			}
+        }
+
+        response {
+            clz APIGetSQLProfileReply.class
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.zstack.core.debug;
+
+import org.zstack.core.db.QueryShapeStatistics;
+import org.zstack.core.db.SQLCallSiteStatistic;
+import org.zstack.header.message.APIReply;
+import org.zstack.header.rest.RestResponse;
+
+import java.util.Arrays;
+import java.util.List;
+
+@RestResponse(fieldsTo = {"all"})
+public class APIGetSQLProfileReply extends APIReply {
+    private boolean enabled;
+    private long slowTransactions;
+    private List<SQLCallSiteStatistic> callSites;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getSlowTransactions() {
+        return slowTransactions;
+    }
+
+    public void setSlowTransactions(long slowTransactions) {
+        this.slowTransactions = slowTransactions;
+    }
+
+    public List<SQLCallSiteStatistic> getCallSites() {
+        return callSites;
+    }
+
+    public void setCallSites(List<SQLCallSiteStatistic> callSites) {
+        this.callSites = callSites;
+    }
+
+    public static APIGetSQLProfileReply __example__() {
+        APIGetSQLProfileReply reply = new APIGetSQLProfileReply();
+        reply.setEnabled(true);
+        reply.setSlowTransactions(1);
+        reply.setCallSites(Arrays.asList(new SQLCallSiteStatistic(
+                "org.zstack.compute.vm.VmInstanceBase.changeVmStateInDb:412",
+                "org.zstack.header.vm.APIStartVmInstanceMsg",
+                30, 20, 25, 40, 5,
+                QueryShapeStatistics.LATENCY_BUCKETS_MS,
+                new long[]{12, 6, 2, 0, 0, 0, 0, 0},
+                4, 1200, 1100, 1
+        )));
+        return reply;
+    }
+}
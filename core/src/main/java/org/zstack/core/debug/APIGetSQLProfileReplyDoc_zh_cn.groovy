@@ -0,0 +1,35 @@
+package org.zstack.core.debug
+
+import org.zstack.header.errorcode.ErrorCode
+
+doc {
+
+	title "SQL性能剖析结果"
+
+	ref {
+		name "error"
+		path "org.zstack.core.debug.APIGetSQLProfileReply.error"
+		desc "错误码，若不为null，则表示操作失败, 操作成功时该字段为null",false
+		type "ErrorCode"
+		since "0.6"
+		clz ErrorCode.class
+	}
+	field {
+		name "enabled"
+		desc "是否打开了SQL性能剖析"
+		type "boolean"
+		since "3.10.0"
+	}
+	field {
+		name "slowTransactions"
+		desc "慢事务数量"
+		type "long"
+		since "3.10.0"
+	}
+	field {
+		name "callSites"
+		desc "调用位置的统计"
+		type "List"
+		since "3.10.0"
+	}
+}
@@ -3,6 +3,8 @@ package org.zstack.core.debug;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.zstack.core.cloudbus.CloudBus;
 import org.zstack.core.cloudbus.MessageSafe;
+import org.zstack.core.cloudbus.MessageTracer;
+import org.zstack.core.db.SQLProfiler;
 import org.zstack.header.AbstractService;
 import org.zstack.header.message.Message;
 
@@ -33,9 +35,28 @@ public class DebugManagerImpl extends AbstractService implements DebugManager {
             handle((APIDebugSignalMsg)msg);
         } else if (msg instanceof APIGetDebugSignalMsg) {
             handle((APIGetDebugSignalMsg) msg);
+        } else if (msg instanceof APIGetSQLProfileMsg) {
+            handle((APIGetSQLProfileMsg) msg);
+        } else if (msg instanceof APIGetMessageTraceMsg) {
+            handle((APIGetMessageTraceMsg) msg);
         }
     }
 
+    private void handle(APIGetMessageTraceMsg msg) {
+        APIGetMessageTraceReply reply = new APIGetMessageTraceReply();
+        reply.setSamplingPercent(MessageTracer.getSamplingPercent());
+        reply.setSpans(MessageTracer.getTrace(msg.getTraceId()));
+        bus.reply(msg, reply);
+    }
+
+    private void handle(APIGetSQLProfileMsg msg) {
+        APIGetSQLProfileReply reply = new APIGetSQLProfileReply();
+        reply.setEnabled(SQLProfiler.isEnabled());
+        reply.setSlowTransactions(SQLProfiler.getSlowTransactions());
+        reply.setCallSites(SQLProfiler.getTopCallSites(msg.getLimit(), msg.getSortBy()));
+        bus.reply(msg, reply);
+    }
+
     private void handle(APIGetDebugSignalMsg msg) {
         APIGetDebugSignalReply reply = new APIGetDebugSignalReply();
         reply.setSignals(getDebugSignals());
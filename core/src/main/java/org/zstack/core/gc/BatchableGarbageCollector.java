@@ -0,0 +1,31 @@
+package org.zstack.core.gc;
+
+import java.util.List;
+
+/**
+ * Implemented by event based GC jobs that can be coalesced. When an event triggers
+ * several jobs of the same class having the same batch key, the GC scheduler calls
+ * triggerNowInBatch() on one of them with all the jobs instead of calling triggerNow()
+ * on each of them.
+ */
+public interface BatchableGarbageCollector {
+    class GCBatchItem<T extends GarbageCollector> {
+        public final T gc;
+        public final GCCompletion completion;
+
+        GCBatchItem(T gc, GCCompletion completion) {
+            this.gc = gc;
+            this.completion = completion;
+        }
+    }
+
+    /**
+     * @return the key jobs are merged by, null means the job doesn't join any batch
+     */
+    String getBatchKey();
+
+    /**
+     * the completion of every item must be called exactly once
+     */
+    void triggerNowInBatch(List<GCBatchItem> items);
+}
@@ -1,11 +1,9 @@
 package org.zstack.core.gc;
 
-import org.zstack.core.cloudbus.EventCallback;
-import org.zstack.core.thread.AsyncThread;
 import org.zstack.utils.DebugUtils;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by xing5 on 2017/3/3.
@@ -35,54 +33,61 @@ public abstract class EventBasedGarbageCollector extends GarbageCollector {
         return true;
     }
 
-    private Map<String, EventCallback> eventCallbacks = new HashMap<>();
+    static class EventTrigger {
+        final EventBasedGarbageCollector gc;
+        final String path;
+        final String resourceUuid;
+        final Trigger trigger;
+
+        EventTrigger(EventBasedGarbageCollector gc, String path, String resourceUuid, Trigger trigger) {
+            this.gc = gc;
+            this.path = path;
+            this.resourceUuid = resourceUuid;
+            this.trigger = trigger;
+        }
+    }
+
+    private List<EventTrigger> eventTriggers = new ArrayList<>();
 
     protected void onEvent(String path, Trigger c) {
-        eventCallbacks.put(path, new EventCallback() {
-            @Override
-            @AsyncThread
-            protected void run(Map tokens, Object data) {
-                GarbageCollectorVO vo = dbf.findByUuid(uuid, GarbageCollectorVO.class);
-
-                if (vo == null) {
-                    logger.warn(String.format("[GC] cannot find a job[name:%s, id:%s], assume it's deleted", NAME, uuid));
-                    cancel();
-                    return;
-                }
-
-                if (!c.trigger(tokens, data)) {
-                    // don't trigger it
-                    return;
-                }
-
-                if (!lock()) {
-                    logger.debug(String.format("[GC] the job[name:%s, id:%s] is being executed by another trigger," +
-                            "skip this event[%s]", NAME, uuid, path));
-                    return;
-                }
-
-                logger.debug(String.format("[GC] the job[name:%s, id:%s] is triggered by an event[%s]", NAME, uuid, path));
-
-                vo.setStatus(GCStatus.Processing);
-                dbf.update(vo);
-                runTrigger();
+        onEvent(path, null, c);
+    }
+
+    /**
+     * install a trigger only interested in events about the resource, the GC scheduler
+     * indexes the trigger by (path, resourceUuid) so an event about another resource
+     * won't evaluate it at all
+     */
+    protected void onEvent(String path, String resourceUuid, Trigger c) {
+        eventTriggers.add(new EventTrigger(this, path, resourceUuid, c));
+    }
+
+    /**
+     * the target the job works on, jobs of the same target are run by the GC scheduler
+     * with bounded concurrency. By default it's the first resource the triggers are indexed by
+     */
+    protected String getTriggerTargetUuid() {
+        for (EventTrigger t : eventTriggers) {
+            if (t.resourceUuid != null) {
+                return t.resourceUuid;
             }
-        });
+        }
+
+        return uuid;
     }
 
     protected abstract void setup();
 
     private void installTriggers() {
+        eventTriggers.clear();
         setup();
-        DebugUtils.Assert(!eventCallbacks.isEmpty(), String.format("%s[%s] doesn't call onEvent() in the setup() to install any triggers",
+        DebugUtils.Assert(!eventTriggers.isEmpty(), String.format("%s[%s] doesn't call onEvent() in the setup() to install any triggers",
                 NAME, getClass()));
 
-        for (Map.Entry<String, EventCallback> e : eventCallbacks.entrySet()) {
-            evtf.on(e.getKey(), e.getValue());
-        }
-
+        gcMgr.installEventTriggers(eventTriggers);
 
-        canceller = () -> eventCallbacks.values().forEach((it) -> evtf.off(it));
+        List<EventTrigger> installed = new ArrayList<>(eventTriggers);
+        canceller = () -> gcMgr.uninstallEventTriggers(installed);
     }
 
     public final void submit() {
@@ -13,4 +13,7 @@ public class GCGlobalConfig {
 
     @GlobalConfigValidation(numberGreaterThan = 1)
     public static GlobalConfig SCAN_ORPHAN_JOB_INTERVAL = new GlobalConfig(CATEGORY, "orphanJobScanInterval");
+
+    @GlobalConfigValidation(numberGreaterThan = 0)
+    public static GlobalConfig MAX_CONCURRENT_JOBS_PER_TARGET = new GlobalConfig(CATEGORY, "maxConcurrentJobsPerTarget");
 }
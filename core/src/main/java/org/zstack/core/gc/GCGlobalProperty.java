@@ -1,5 +1,6 @@
 package org.zstack.core.gc;
 
+import org.zstack.core.GlobalProperty;
 import org.zstack.core.GlobalPropertyDefinition;
 
 /**
@@ -7,4 +8,6 @@ import org.zstack.core.GlobalPropertyDefinition;
  */
 @GlobalPropertyDefinition
 public class GCGlobalProperty {
+    @GlobalProperty(name = "GC.bulkLoadSize", defaultValue = "1000")
+    public static int BULK_LOAD_SIZE;
 }
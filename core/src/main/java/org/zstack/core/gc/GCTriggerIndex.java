@@ -0,0 +1,62 @@
+package org.zstack.core.gc;
+
+import org.zstack.core.gc.EventBasedGarbageCollector.EventTrigger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the event triggers of one event path. Triggers installed with a resource uuid
+ * are only matched by events about that resource, triggers without a resource uuid are
+ * matched by every event of the path.
+ */
+class GCTriggerIndex {
+    private final Map<String, Set<EventTrigger>> byResource = new ConcurrentHashMap<>();
+    private final Set<EventTrigger> wildcards = ConcurrentHashMap.newKeySet();
+
+    void add(EventTrigger t) {
+        if (t.resourceUuid == null) {
+            wildcards.add(t);
+        } else {
+            byResource.computeIfAbsent(t.resourceUuid, k -> ConcurrentHashMap.newKeySet()).add(t);
+        }
+    }
+
+    void remove(EventTrigger t) {
+        if (t.resourceUuid == null) {
+            wildcards.remove(t);
+            return;
+        }
+
+        byResource.computeIfPresent(t.resourceUuid, (k, set) -> {
+            set.remove(t);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    /**
+     * @param resourceUuid the resource the event is about, null if unknown
+     */
+    List<EventTrigger> match(String resourceUuid) {
+        List<EventTrigger> ret = new ArrayList<>(wildcards);
+        if (resourceUuid == null) {
+            byResource.values().forEach(ret::addAll);
+            return ret;
+        }
+
+        Collection<EventTrigger> ts = byResource.get(resourceUuid);
+        if (ts != null) {
+            ret.addAll(ts);
+        }
+
+        return ret;
+    }
+
+    int size() {
+        return wildcards.size() + byResource.values().stream().mapToInt(Set::size).sum();
+    }
+}
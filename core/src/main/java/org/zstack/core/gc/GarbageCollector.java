@@ -12,6 +12,8 @@ import org.zstack.core.db.Q;
 import org.zstack.core.db.SQL;
 import org.zstack.core.errorcode.ErrorFacade;
 import org.zstack.core.thread.SyncThread;
+import org.zstack.core.thread.ThreadFacade;
+import org.zstack.header.core.NoErrorCompletion;
 import org.zstack.header.errorcode.ErrorCode;
 import org.zstack.header.exception.CloudRuntimeException;
 import org.zstack.utils.FieldUtils;
@@ -43,6 +45,8 @@ public abstract class GarbageCollector {
     @Autowired
     protected EventFacade evtf;
     @Autowired
+    protected ThreadFacade thdf;
+    @Autowired
     GarbageCollectorManagerImpl gcMgr;
 
     Runnable canceller;
@@ -187,30 +191,64 @@ public abstract class GarbageCollector {
 
     @SyncThread(level = 50)
     void runTrigger() {
+        doRunTrigger(null);
+    }
+
+    // called by the GC scheduler, the done is called once the job succeeds, fails or cancels
+    void runTrigger(NoErrorCompletion done) {
+        doRunTrigger(done);
+    }
+
+    GCCompletion makeCompletion(NoErrorCompletion done) {
         GarbageCollector self = this;
-        EXECUTED_TIMES++;
+        AtomicBoolean called = new AtomicBoolean(false);
 
-        try {
-            triggerNow(new GCCompletion(null) {
-                @Override
-                public void cancel() {
+        return new GCCompletion(null) {
+            private void notifyDone() {
+                if (done != null && called.compareAndSet(false, true)) {
+                    done.done();
+                }
+            }
+
+            @Override
+            public void cancel() {
+                try {
                     self.cancel();
+                } finally {
+                    notifyDone();
                 }
+            }
 
-                @Override
-                public void success() {
+            @Override
+            public void success() {
+                try {
                     self.success();
+                } finally {
+                    notifyDone();
                 }
+            }
 
-                @Override
-                public void fail(ErrorCode errorCode) {
+            @Override
+            public void fail(ErrorCode errorCode) {
+                try {
                     self.fail(errorCode);
+                } finally {
+                    notifyDone();
                 }
-            });
+            }
+        };
+    }
+
+    private void doRunTrigger(NoErrorCompletion done) {
+        EXECUTED_TIMES++;
+
+        GCCompletion completion = makeCompletion(done);
+        try {
+            triggerNow(completion);
         } catch (Throwable t) {
             logger.warn(String.format("[GC] unhandled exception happened when" +
                     " running a GC job[name:%s, id:%s]", NAME, uuid), t);
-            fail(inerr(t.getMessage()));
+            completion.fail(inerr(t.getMessage()));
         }
     }
 
@@ -1,7 +1,15 @@
 package org.zstack.core.gc;
 
+import java.util.function.Function;
+
 /**
  * Created by xing5 on 2017/3/1.
  */
 public interface GarbageCollectorManager {
+    /**
+     * tell the GC scheduler how to get the resource uuid from the data of an event, so
+     * triggers installed by EventBasedGarbageCollector.onEvent(path, resourceUuid, trigger)
+     * can be looked up by the resource instead of being evaluated one by one
+     */
+    void registerTriggerResourceResolver(String path, Function<Object, String> resolver);
 }
@@ -1,35 +1,52 @@
 package org.zstack.core.gc;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import com.google.common.collect.Lists;
 import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.cloudbus.EventCallback;
+import org.zstack.core.cloudbus.EventFacade;
 import org.zstack.core.cloudbus.MessageSafe;
 import org.zstack.core.cloudbus.ResourceDestinationMaker;
 import org.zstack.core.config.GlobalConfig;
 import org.zstack.core.config.GlobalConfigUpdateExtensionPoint;
 import org.zstack.core.db.DatabaseFacade;
 import org.zstack.core.db.Q;
+import org.zstack.core.db.SQL;
 import org.zstack.core.errorcode.ErrorFacade;
+import org.zstack.core.gc.BatchableGarbageCollector.GCBatchItem;
+import org.zstack.core.gc.EventBasedGarbageCollector.EventTrigger;
+import org.zstack.core.thread.AsyncThread;
 import org.zstack.core.thread.ChainTask;
 import org.zstack.core.thread.PeriodicTask;
 import org.zstack.core.thread.SyncTaskChain;
 import org.zstack.core.thread.ThreadFacade;
 import org.zstack.header.AbstractService;
 import org.zstack.header.Component;
+import org.zstack.header.core.NoErrorCompletion;
+import org.zstack.header.errorcode.ErrorCode;
 import org.zstack.header.errorcode.OperationFailureException;
 import org.zstack.header.exception.CloudRuntimeException;
+import org.zstack.header.host.HostCanonicalEvents;
 import org.zstack.header.managementnode.ManagementNodeReadyExtensionPoint;
 import org.zstack.header.message.APIMessage;
 import org.zstack.header.message.Message;
 import org.zstack.header.message.MessageReply;
+import org.zstack.header.storage.primary.PrimaryStorageCanonicalEvent;
+import org.zstack.header.vm.VmCanonicalEvents;
 import org.zstack.utils.DebugUtils;
 import org.zstack.utils.Utils;
 import org.zstack.utils.logging.CLogger;
 
-import java.util.List;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import static org.zstack.core.Platform.inerr;
 import static org.zstack.core.Platform.operr;
 
 /**
@@ -49,11 +66,258 @@ public class GarbageCollectorManagerImpl extends AbstractService
     private DatabaseFacade dbf;
     @Autowired
     private ErrorFacade errf;
+    @Autowired
+    private EventFacade evtf;
 
     private Future<Void> scanOrphanJobsTask;
 
     private ConcurrentHashMap<String, GarbageCollector> managedGarbageCollectors = new ConcurrentHashMap<>();
 
+    // event path -> triggers of event based GC jobs, one event callback is installed per path
+    // for all jobs instead of one callback per job
+    private final ConcurrentHashMap<String, GCTriggerIndex> triggerIndexes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Function<Object, String>> triggerResourceResolvers = new ConcurrentHashMap<>();
+
+    {
+        registerTriggerResourceResolver(HostCanonicalEvents.HOST_STATUS_CHANGED_PATH,
+                data -> ((HostCanonicalEvents.HostStatusChangedData) data).getHostUuid());
+        registerTriggerResourceResolver(HostCanonicalEvents.HOST_DELETED_PATH,
+                data -> ((HostCanonicalEvents.HostDeletedData) data).getHostUuid());
+        registerTriggerResourceResolver(VmCanonicalEvents.VM_FULL_STATE_CHANGED_PATH,
+                data -> ((VmCanonicalEvents.VmStateChangedData) data).getVmUuid());
+        registerTriggerResourceResolver(PrimaryStorageCanonicalEvent.PRIMARY_STORAGE_DELETED_PATH,
+                data -> ((PrimaryStorageCanonicalEvent.PrimaryStorageDeletedData) data).getPrimaryStorageUuid());
+    }
+
+    @Override
+    public void registerTriggerResourceResolver(String path, Function<Object, String> resolver) {
+        Function<Object, String> old = triggerResourceResolvers.put(path, resolver);
+        if (old != null) {
+            logger.warn(String.format("[GC] the trigger resource resolver of the event path[%s] is replaced", path));
+        }
+    }
+
+    void installEventTriggers(List<EventTrigger> triggers) {
+        triggers.forEach(t -> triggerIndexes.computeIfAbsent(t.path, this::installEventCallback).add(t));
+    }
+
+    void uninstallEventTriggers(List<EventTrigger> triggers) {
+        triggers.forEach(t -> {
+            GCTriggerIndex index = triggerIndexes.get(t.path);
+            if (index != null) {
+                index.remove(t);
+            }
+        });
+    }
+
+    private GCTriggerIndex installEventCallback(String path) {
+        evtf.on(path, new EventCallback() {
+            @Override
+            @AsyncThread
+            protected void run(Map tokens, Object data) {
+                scheduleTriggeredJobs(path, tokens, data);
+            }
+        });
+
+        return new GCTriggerIndex();
+    }
+
+    private String resolveTriggerResource(String path, Object data) {
+        Function<Object, String> resolver = triggerResourceResolvers.get(path);
+        if (resolver == null || data == null) {
+            return null;
+        }
+
+        try {
+            return resolver.apply(data);
+        } catch (Throwable t) {
+            logger.warn(String.format("[GC] unable to resolve the resource of the event[%s], evaluate all triggers", path), t);
+            return null;
+        }
+    }
+
+    private void scheduleTriggeredJobs(String path, Map tokens, Object data) {
+        GCTriggerIndex index = triggerIndexes.get(path);
+        if (index == null) {
+            return;
+        }
+
+        Map<String, EventBasedGarbageCollector> triggered = new LinkedHashMap<>();
+        for (EventTrigger t : index.match(resolveTriggerResource(path, data))) {
+            EventBasedGarbageCollector gc = t.gc;
+            if (triggered.containsKey(gc.uuid)) {
+                continue;
+            }
+
+            boolean fire;
+            try {
+                fire = t.trigger.trigger(tokens, data);
+            } catch (Throwable th) {
+                logger.warn(String.format("[GC] unhandled exception happened when evaluating the trigger of" +
+                        " the job[name:%s, id:%s] for the event[%s]", gc.NAME, gc.uuid, path), th);
+                continue;
+            }
+
+            if (!fire) {
+                continue;
+            }
+
+            if (!gc.lock()) {
+                logger.debug(String.format("[GC] the job[name:%s, id:%s] is being executed by another trigger," +
+                        "skip this event[%s]", gc.NAME, gc.uuid, path));
+                continue;
+            }
+
+            logger.debug(String.format("[GC] the job[name:%s, id:%s] is triggered by an event[%s]", gc.NAME, gc.uuid, path));
+            triggered.put(gc.uuid, gc);
+        }
+
+        if (triggered.isEmpty()) {
+            return;
+        }
+
+        dispatchTriggeredJobs(markTriggeredJobsProcessing(triggered));
+    }
+
+    private List<EventBasedGarbageCollector> markTriggeredJobsProcessing(Map<String, EventBasedGarbageCollector> triggered) {
+        List<EventBasedGarbageCollector> ret = new ArrayList<>();
+
+        for (List<String> uuids : Lists.partition(new ArrayList<>(triggered.keySet()), GCGlobalProperty.BULK_LOAD_SIZE)) {
+            Set<String> existing = new HashSet<>(Q.New(GarbageCollectorVO.class)
+                    .select(GarbageCollectorVO_.uuid)
+                    .in(GarbageCollectorVO_.uuid, uuids)
+                    .listValues());
+
+            for (String uuid : uuids) {
+                EventBasedGarbageCollector gc = triggered.get(uuid);
+                if (existing.contains(uuid)) {
+                    ret.add(gc);
+                    continue;
+                }
+
+                logger.warn(String.format("[GC] cannot find a job[name:%s, id:%s], assume it's deleted", gc.NAME, uuid));
+                gc.cancel();
+            }
+
+            if (!existing.isEmpty()) {
+                SQL.New(GarbageCollectorVO.class)
+                        .in(GarbageCollectorVO_.uuid, existing)
+                        .set(GarbageCollectorVO_.status, GCStatus.Processing)
+                        .update();
+            }
+        }
+
+        return ret;
+    }
+
+    private void dispatchTriggeredJobs(List<EventBasedGarbageCollector> jobs) {
+        // target uuid -> batch key -> jobs
+        Map<String, Map<String, List<EventBasedGarbageCollector>>> batches = new LinkedHashMap<>();
+        for (EventBasedGarbageCollector gc : jobs) {
+            String batchKey = gc instanceof BatchableGarbageCollector ? ((BatchableGarbageCollector) gc).getBatchKey() : null;
+            batchKey = batchKey == null ? gc.uuid : String.format("%s-%s", gc.getClass().getName(), batchKey);
+
+            batches.computeIfAbsent(gc.getTriggerTargetUuid(), k -> new LinkedHashMap<>())
+                    .computeIfAbsent(batchKey, k -> new ArrayList<>())
+                    .add(gc);
+        }
+
+        batches.forEach((targetUuid, jobsOfTarget) -> jobsOfTarget.values().forEach(batch -> submitBatch(targetUuid, batch)));
+    }
+
+    private void submitBatch(String targetUuid, List<EventBasedGarbageCollector> batch) {
+        thdf.chainSubmit(new ChainTask(null) {
+            @Override
+            public String getSyncSignature() {
+                return String.format("gc-jobs-on-target-%s", targetUuid);
+            }
+
+            @Override
+            protected int getSyncLevel() {
+                return GCGlobalConfig.MAX_CONCURRENT_JOBS_PER_TARGET.value(Integer.class);
+            }
+
+            @Override
+            public void run(SyncTaskChain chain) {
+                runBatch(batch, new NoErrorCompletion(chain) {
+                    @Override
+                    public void done() {
+                        chain.next();
+                    }
+                });
+            }
+
+            @Override
+            public String getName() {
+                return String.format("run-%s-gc-jobs-on-target-%s", batch.size(), targetUuid);
+            }
+        });
+    }
+
+    private void runBatch(List<EventBasedGarbageCollector> batch, NoErrorCompletion completion) {
+        if (batch.size() == 1) {
+            batch.get(0).runTrigger(completion);
+            return;
+        }
+
+        AtomicInteger count = new AtomicInteger(batch.size());
+        NoErrorCompletion itemDone = new NoErrorCompletion(completion) {
+            @Override
+            public void done() {
+                if (count.decrementAndGet() == 0) {
+                    completion.done();
+                }
+            }
+        };
+
+        List<GCBatchItem> items = batch.stream().map(gc -> {
+            gc.EXECUTED_TIMES++;
+            return new GCBatchItem<>(gc, once(gc.makeCompletion(itemDone)));
+        }).collect(Collectors.toList());
+
+        BatchableGarbageCollector leader = (BatchableGarbageCollector) batch.get(0);
+        logger.debug(String.format("[GC] run %s jobs[name:%s, batch key:%s] in a batch",
+                items.size(), batch.get(0).NAME, leader.getBatchKey()));
+
+        try {
+            leader.triggerNowInBatch(items);
+        } catch (Throwable t) {
+            logger.warn(String.format("[GC] unhandled exception happened when running %s" +
+                    " GC jobs[name:%s] in a batch", items.size(), batch.get(0).NAME), t);
+            // items completed before the exception ignore it
+            items.forEach(it -> it.completion.fail(inerr(t.getMessage())));
+        }
+    }
+
+    /**
+     * @return a completion passing on only the first call
+     */
+    private static GCCompletion once(GCCompletion completion) {
+        AtomicBoolean called = new AtomicBoolean(false);
+        return new GCCompletion(null) {
+            @Override
+            public void cancel() {
+                if (called.compareAndSet(false, true)) {
+                    completion.cancel();
+                }
+            }
+
+            @Override
+            public void success() {
+                if (called.compareAndSet(false, true)) {
+                    completion.success();
+                }
+            }
+
+            @Override
+            public void fail(ErrorCode errorCode) {
+                if (called.compareAndSet(false, true)) {
+                    completion.fail(errorCode);
+                }
+            }
+        };
+    }
+
     private void startScanOrphanJobs() {
         if (scanOrphanJobsTask != null) {
             scanOrphanJobsTask.cancel(true);
@@ -1,9 +1,8 @@
 package org.zstack.core.gc;
 
+import org.zstack.core.thread.ThreadFacadeImpl.TimeoutTaskReceipt;
 import org.zstack.header.errorcode.ErrorCode;
 
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -15,7 +14,7 @@ public abstract class TimeBasedGarbageCollector extends GarbageCollector {
     @GC
     public volatile TimeUnit NEXT_TIME_UNIT;
 
-    private TimerTask currentTimer;
+    private TimeoutTaskReceipt currentTimer;
 
     public TimeBasedGarbageCollector() {
         canceller = () -> {};
@@ -25,14 +24,9 @@ public abstract class TimeBasedGarbageCollector extends GarbageCollector {
         logger.debug(String.format("[GC] schedule a GC job[name:%s, id:%s] to run after %s %s",
                 NAME, uuid, NEXT_TIME, NEXT_TIME_UNIT));
 
-        currentTimer = new TimerTask() {
-            @Override
-            public void run() {
-                runTrigger();
-            }
-        };
-
-        new Timer().schedule(currentTimer, NEXT_TIME_UNIT.toMillis(NEXT_TIME));
+        // share the timer pool of the ThreadFacade instead of creating a timer thread per job,
+        // there may be tens of thousands of pending jobs after a host outage
+        currentTimer = thdf.submitTimeoutTask(this::runTrigger, NEXT_TIME_UNIT, NEXT_TIME);
     }
 
     @Override
@@ -17,4 +17,6 @@ public class ProgressGlobalConfig {
     public static GlobalConfig PROGRESS_TTL = new GlobalConfig(CATEGORY, "progress.ttl");
     @GlobalConfigValidation(numberGreaterThan = 1)
     public static GlobalConfig CLEANUP_THREAD_INTERVAL = new GlobalConfig(CATEGORY, "progress.cleanupThreadInterval");
+    @GlobalConfigValidation(numberGreaterThan = 0)
+    public static GlobalConfig FLUSH_INTERVAL = new GlobalConfig(CATEGORY, "progress.flushInterval");
 }
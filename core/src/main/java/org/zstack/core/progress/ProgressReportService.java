@@ -65,9 +65,40 @@ public class ProgressReportService extends AbstractService implements Management
     private int DELETE_DELAY = 300;
 
     private Future<Void> cleanupThread;
+    private Future<Void> flushThread;
 
     private static Map<String, ParallelTaskStage> parallelTaskStage = new ConcurrentHashMap<>();
 
+    private static final TaskProgressAggregator aggregator = new TaskProgressAggregator();
+
+    private void startFlushThread() {
+        if (flushThread != null) {
+            flushThread.cancel(true);
+        }
+
+        flushThread = thdf.submitPeriodicTask(new PeriodicTask() {
+            @Override
+            public TimeUnit getTimeUnit() {
+                return TimeUnit.MILLISECONDS;
+            }
+
+            @Override
+            public long getInterval() {
+                return ProgressGlobalConfig.FLUSH_INTERVAL.value(Long.class);
+            }
+
+            @Override
+            public String getName() {
+                return "progress-flush-thread";
+            }
+
+            @Override
+            public void run() {
+                aggregator.flushAll();
+            }
+        });
+    }
+
     private void startCleanupThread() {
         if (cleanupThread != null) {
             cleanupThread.cancel(true);
@@ -92,21 +123,26 @@ public class ProgressReportService extends AbstractService implements Management
 
             @Override
             public void run() {
-                new SQLBatch() {
-                    @Override
-                    protected void scripts() {
-                        Query query = dbf.getEntityManager().createNativeQuery("select unix_timestamp()");
-                        Long current = ((BigInteger) query.getSingleResult()).longValue() * 1000;
-                        sql(TaskProgressVO.class).notNull(TaskProgressVO_.timeToDelete)
-                                .lte(TaskProgressVO_.timeToDelete, current).hardDelete();
-                        sql("delete from TaskProgressVO vo where vo.time + :ttl <= UNIX_TIMESTAMP() * 1000")
-                                .param("ttl", TimeUnit.SECONDS.toMillis(ProgressGlobalConfig.PROGRESS_TTL.value(Long.class))).execute();
-                    }
-                }.execute();
+                aggregator.evict(ProgressGlobalConfig.PROGRESS_TTL.value(Long.class), TimeUnit.SECONDS);
             }
         });
     }
 
+    // records left by APIs this node doesn't have in memory, e.g. reported before it restarted
+    private void cleanupStaleProgress() {
+        new SQLBatch() {
+            @Override
+            protected void scripts() {
+                Query query = dbf.getEntityManager().createNativeQuery("select unix_timestamp()");
+                Long current = ((BigInteger) query.getSingleResult()).longValue() * 1000;
+                sql(TaskProgressVO.class).notNull(TaskProgressVO_.timeToDelete)
+                        .lte(TaskProgressVO_.timeToDelete, current).hardDelete();
+                sql("delete from TaskProgressVO vo where vo.time + :ttl <= UNIX_TIMESTAMP() * 1000")
+                        .param("ttl", TimeUnit.SECONDS.toMillis(ProgressGlobalConfig.PROGRESS_TTL.value(Long.class))).execute();
+            }
+        }.execute();
+    }
+
     public void setDELETE_DELAY(int DELETE_DELAY) {
         DebugUtils.Assert(DELETE_DELAY > 0, "DELETE_DELAY must be greater than 0");
         this.DELETE_DELAY = DELETE_DELAY;
@@ -159,6 +195,14 @@ public class ProgressReportService extends AbstractService implements Management
             }
         });
 
+        ProgressGlobalConfig.FLUSH_INTERVAL.installUpdateExtension(new GlobalConfigUpdateExtensionPoint() {
+            @Override
+            public void updateGlobalConfig(GlobalConfig oldConfig, GlobalConfig newConfig) {
+                startFlushThread();
+            }
+        });
+
+        startFlushThread();
         startCleanupThread();
 
         return true;
@@ -166,7 +210,9 @@ public class ProgressReportService extends AbstractService implements Management
 
     @Transactional
     public void cleanTaskProgress(String apiId) {
-        if (apiId == null) {
+        // only APIs reported to this node have records to mark, they are evicted from the memory
+        // after the delay, the records are kept marked for other nodes reading them
+        if (apiId == null || !aggregator.complete(apiId, DELETE_DELAY, TimeUnit.SECONDS)) {
             return;
         }
 
@@ -178,11 +224,20 @@ public class ProgressReportService extends AbstractService implements Management
 
     @Override
     public boolean stop() {
+        if (flushThread != null) {
+            flushThread.cancel(true);
+        }
+        if (cleanupThread != null) {
+            cleanupThread.cancel(true);
+        }
+
+        aggregator.flushAll();
         return true;
     }
 
     @Override
     public void managementNodeReady() {
+        cleanupStaleProgress();
     }
 
     @Override
@@ -220,9 +275,7 @@ public class ProgressReportService extends AbstractService implements Management
         return inv;
     }
 
-    @Transactional
-    private List<TaskProgressInventory> getAllProgress(String apiId) {
-        List<TaskProgressVO> vos = Q.New(TaskProgressVO.class).eq(TaskProgressVO_.apiId, apiId).list();
+    private List<TaskProgressInventory> getAllProgress(List<TaskProgressVO> vos) {
         if (vos.isEmpty()) {
             return new ArrayList<>();
         }
@@ -256,9 +309,37 @@ public class ProgressReportService extends AbstractService implements Management
         return invs;
     }
 
+    private static TaskProgressVO findLatest(List<TaskProgressVO> vos, String taskUuid) {
+        TaskProgressVO latest = null;
+        for (TaskProgressVO vo : vos) {
+            if (taskUuid != null && !taskUuid.equals(vo.getTaskUuid())) {
+                continue;
+            }
+
+            if (latest == null || vo.getTime() >= latest.getTime()) {
+                latest = vo;
+            }
+        }
+
+        return latest;
+    }
+
     private void handle(final APIGetTaskProgressMsg msg) {
         APIGetTaskProgressReply reply = new APIGetTaskProgressReply();
 
+        List<TaskProgressVO> entries = aggregator.getEntries(msg.getApiId());
+        if (entries != null) {
+            if (msg.isAll()) {
+                reply.setInventories(getAllProgress(entries));
+            } else {
+                reply.setInventories(getLastProgress(entries));
+            }
+
+            bus.reply(msg, reply);
+            return;
+        }
+
+        // the API doesn't report to this node
         new SQLBatch() {
             @Override
             protected void scripts() {
@@ -313,13 +394,34 @@ public class ProgressReportService extends AbstractService implements Management
             }
 
             private void replyAllProgress() {
-                reply.setInventories(getAllProgress(msg.getApiId()));
+                reply.setInventories(getAllProgress(Q.New(TaskProgressVO.class).eq(TaskProgressVO_.apiId, msg.getApiId()).list()));
             }
         }.execute();
 
         bus.reply(msg, reply);
     }
 
+    private List<TaskProgressInventory> getLastProgress(List<TaskProgressVO> entries) {
+        TaskProgressVO vo = findLatest(entries, null);
+        if (vo == null) {
+            return new ArrayList<>();
+        }
+
+        List<TaskProgressInventory> invs = new ArrayList<>();
+        invs.add(inventory(vo));
+        while (vo.getParentUuid() != null) {
+            vo = findLatest(entries, vo.getParentUuid());
+            if (vo == null) {
+                break;
+            }
+
+            invs.add(inventory(vo));
+        }
+
+        Collections.reverse(invs);
+        return invs;
+    }
+
     private void handleLocalMessage(Message msg) {
         bus.dealWithUnknownMessage(msg);
     }
@@ -377,7 +479,7 @@ public class ProgressReportService extends AbstractService implements Management
         vo.setManagementUuid(Platform.getManagementServerId());
         vo.setTaskName(ThreadContext.get(Constants.THREAD_CONTEXT_TASK_NAME));
 
-        Platform.getComponentLoader().getComponent(DatabaseFacade.class).persist(vo);
+        aggregator.report(vo);
 
         // use content as the subtask name
         ThreadContext.put(Constants.THREAD_CONTEXT_TASK_NAME, vo.getContent());
@@ -411,7 +513,7 @@ public class ProgressReportService extends AbstractService implements Management
             logger.trace(String.format("report progress is : %s", vo.getContent()));
         }
 
-        Platform.getComponentLoader().getComponent(DatabaseFacade.class).persist(vo);
+        aggregator.report(vo);
     }
 
     private static void taskProgress(TaskType type, String fmt, Object...args) {
@@ -486,6 +588,8 @@ public class ProgressReportService extends AbstractService implements Management
             @Override
             @Deferred
             public boolean run() {
+                aggregator.flush(apiId);
+
                 // get current progress
                 Tuple res = SQL.New("SELECT content, timeToDelete FROM TaskProgressVO" +
                         " WHERE apiId = :apiId" +
@@ -0,0 +1,196 @@
+package org.zstack.core.progress;
+
+import org.zstack.core.Platform;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.SQL;
+import org.zstack.header.core.progress.TaskProgressVO;
+import org.zstack.header.core.progress.TaskProgressVO_;
+import org.zstack.header.core.progress.TaskType;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Progress of the APIs reporting to this management node, by API id.
+ *
+ * Reports are merged in memory, a progress report repeating the last one of its task only
+ * refreshes its time, and queries about the APIs known here are answered from the memory.
+ * New entries are written to TaskProgressVO in batches every progress.flushInterval
+ * milliseconds, so every distinct progress a task reported is kept; a final progress writes
+ * the entries of its API right away, and so does the completion of the API.
+ *
+ * An API is evicted, and its records deleted, the given delay after it completes or
+ * progress.ttl seconds after its last report.
+ */
+class TaskProgressAggregator {
+    private static final CLogger logger = Utils.getLogger(TaskProgressAggregator.class);
+
+    private static class ApiProgress {
+        final String apiId;
+        // entries in report order
+        final List<TaskProgressVO> entries = new ArrayList<>();
+        final Map<String, TaskProgressVO> lastEntryOfTask = new HashMap<>();
+        // entries not written yet
+        final List<TaskProgressVO> pending = new ArrayList<>();
+        long lastReportTime;
+        Long timeToDelete;
+
+        ApiProgress(String apiId) {
+            this.apiId = apiId;
+        }
+    }
+
+    private final Map<String, ApiProgress> apis = new ConcurrentHashMap<>();
+    private final Set<String> dirtyApis = ConcurrentHashMap.newKeySet();
+
+    private static boolean isFinal(TaskProgressVO vo) {
+        if (vo.getType() != TaskType.Progress) {
+            return false;
+        }
+
+        try {
+            return Double.parseDouble(vo.getContent()) >= 100;
+        } catch (NumberFormatException | NullPointerException e) {
+            return false;
+        }
+    }
+
+    void report(TaskProgressVO vo) {
+        ApiProgress api = apis.computeIfAbsent(vo.getApiId(), ApiProgress::new);
+        synchronized (api) {
+            api.lastReportTime = vo.getTime();
+
+            TaskProgressVO last = api.lastEntryOfTask.get(vo.getTaskUuid());
+            if (vo.getType() == TaskType.Progress && last != null && last.getType() == TaskType.Progress
+                    && Objects.equals(last.getContent(), vo.getContent())
+                    && Objects.equals(last.getParentUuid(), vo.getParentUuid())) {
+                last.setTime(vo.getTime());
+                return;
+            }
+
+            api.entries.add(vo);
+            api.lastEntryOfTask.put(vo.getTaskUuid(), vo);
+            api.pending.add(vo);
+        }
+
+        if (isFinal(vo)) {
+            flush(api);
+        } else {
+            dirtyApis.add(api.apiId);
+        }
+    }
+
+    /**
+     * @return a copy of the entries of the API in report order, or null if the API is not known here
+     */
+    List<TaskProgressVO> getEntries(String apiId) {
+        ApiProgress api = apis.get(apiId);
+        if (api == null) {
+            return null;
+        }
+
+        synchronized (api) {
+            return new ArrayList<>(api.entries);
+        }
+    }
+
+    /**
+     * writes the pending entries of the API, and returns whether the API is known here
+     */
+    boolean flush(String apiId) {
+        ApiProgress api = apis.get(apiId);
+        if (api == null) {
+            return false;
+        }
+
+        flush(api);
+        return true;
+    }
+
+    void flushAll() {
+        List<ApiProgress> toFlush = new ArrayList<>();
+        for (Iterator<String> it = dirtyApis.iterator(); it.hasNext(); ) {
+            ApiProgress api = apis.get(it.next());
+            it.remove();
+            if (api != null) {
+                toFlush.add(api);
+            }
+        }
+
+        persist(toFlush);
+    }
+
+    private void flush(ApiProgress api) {
+        dirtyApis.remove(api.apiId);
+        persist(Collections.singletonList(api));
+    }
+
+    private void persist(List<ApiProgress> toFlush) {
+        List<TaskProgressVO> vos = new ArrayList<>();
+        for (ApiProgress api : toFlush) {
+            synchronized (api) {
+                vos.addAll(api.pending);
+                api.pending.clear();
+            }
+        }
+
+        if (vos.isEmpty()) {
+            return;
+        }
+
+        try {
+            Platform.getComponentLoader().getComponent(DatabaseFacade.class).persistCollection(vos);
+        } catch (Throwable t) {
+            logger.warn(String.format("failed to write %s task progress entries", vos.size()), t);
+        }
+    }
+
+    /**
+     * marks the API completed, it's evicted after the delay
+     *
+     * @return whether the API is known here
+     */
+    boolean complete(String apiId, long delay, TimeUnit unit) {
+        ApiProgress api = apis.get(apiId);
+        if (api == null) {
+            return false;
+        }
+
+        synchronized (api) {
+            api.timeToDelete = System.currentTimeMillis() + unit.toMillis(delay);
+        }
+        flush(api);
+        return true;
+    }
+
+    /**
+     * evicts the APIs completed for their delay, or not reported for the TTL, and deletes their records
+     */
+    void evict(long ttl, TimeUnit unit) {
+        long now = System.currentTimeMillis();
+        long ttlMillis = unit.toMillis(ttl);
+
+        List<String> evicted = new ArrayList<>();
+        apis.values().removeIf(api -> {
+            synchronized (api) {
+                if ((api.timeToDelete != null && api.timeToDelete <= now) || api.lastReportTime + ttlMillis <= now) {
+                    evicted.add(api.apiId);
+                    return true;
+                }
+
+                return false;
+            }
+        });
+
+        if (evicted.isEmpty()) {
+            return;
+        }
+
+        dirtyApis.removeAll(evicted);
+        SQL.New(TaskProgressVO.class).in(TaskProgressVO_.apiId, evicted).hardDelete();
+        logger.debug(String.format("evicted the task progress of %s APIs", evicted.size()));
+    }
+}
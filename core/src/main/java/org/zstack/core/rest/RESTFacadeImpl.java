@@ -16,6 +16,7 @@ import org.springframework.web.util.UriComponentsBuilder;
 import org.zstack.core.CoreGlobalProperty;
 import org.zstack.core.MessageCommandRecorder;
 import org.zstack.core.Platform;
+import org.zstack.core.cloudbus.MessageTracer;
 import org.zstack.core.retry.Retry;
 import org.zstack.core.retry.RetryCondition;
 import org.zstack.core.thread.AsyncThread;
@@ -299,6 +300,7 @@ public class RESTFacadeImpl implements RESTFacade {
         }
 
         HttpEntity<String> req = new HttpEntity<String>(body, requestHeaders);
+        MessageTracer.Span span = MessageTracer.onHttpCall(taskUuid, url);
 
         AsyncHttpWrapper wrapper = new AsyncHttpWrapper() {
             final AtomicBoolean called = new AtomicBoolean(false);
@@ -318,6 +320,12 @@ public class RESTFacadeImpl implements RESTFacade {
                 timeoutTaskReceipt.cancel();
             }
 
+            private void traceDone() {
+                if (span != null) {
+                    span.hop(MessageTracer.HOP_AGENT_CALL, url, span.getStartMicros());
+                }
+            }
+
             public void fail(ErrorCode err) {
                 if (!called.compareAndSet(false, true)) {
                     logger.warn(String.format("Failed callback many times, taskId=%s, currentTimeMillis=%s", taskUuid, System.currentTimeMillis()));
@@ -328,6 +336,7 @@ public class RESTFacadeImpl implements RESTFacade {
                 if (!SysErrors.TIMEOUT.toString().equals(err.getCode())) {
                     cancelTimeout();
                 }
+                traceDone();
 
                 callback.fail(err);
             }
@@ -347,6 +356,7 @@ public class RESTFacadeImpl implements RESTFacade {
 
                 wrappers.remove(taskUuid);
                 cancelTimeout();
+                traceDone();
 
                 if (logger.isTraceEnabled()) {
                     List<String> hs = responseEntity.getHeaders().get(RESTConstant.TASK_UUID);
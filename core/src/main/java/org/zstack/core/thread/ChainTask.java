@@ -1,5 +1,6 @@
 package org.zstack.core.thread;
 
+import org.zstack.core.CoreGlobalProperty;
 import org.zstack.header.PassMaskWords;
 import org.zstack.header.core.AbstractCompletion;
 import org.zstack.header.core.AsyncBackup;
@@ -33,4 +34,15 @@ public abstract class ChainTask extends AbstractCompletion implements PassMaskWo
     protected String getDeduplicateString() {
         return null;
     }
+
+    /**
+     * getMaxPendingQueueSize / getPendingQueueOverflowPolicy bound the pending queue of the sync signature,
+     * see ChainTaskOverflowPolicy for what happens when the queue is full. -1 means no limit
+     */
+    protected int getMaxPendingQueueSize() {
+        return CoreGlobalProperty.CHAIN_TASK_MAX_PENDING_QUEUE_SIZE;
+    }
+    protected ChainTaskOverflowPolicy getPendingQueueOverflowPolicy() {
+        return ChainTaskOverflowPolicy.valueOf(CoreGlobalProperty.CHAIN_TASK_PENDING_QUEUE_OVERFLOW_POLICY);
+    }
 }
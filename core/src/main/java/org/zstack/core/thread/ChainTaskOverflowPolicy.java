@@ -0,0 +1,21 @@
+package org.zstack.core.thread;
+
+/**
+ * What to do when a chain task is submitted to a queue whose pending tasks reach
+ * {@link ChainTask#getMaxPendingQueueSize()}
+ */
+public enum ChainTaskOverflowPolicy {
+    /**
+     * cancel the submitted task and call its exceedMaxPendingCallback()
+     */
+    Reject,
+    /**
+     * cancel the oldest pending task and call its exceedMaxPendingCallback(), then queue the submitted task
+     */
+    DropOldest,
+    /**
+     * block the submitter until the queue has room, or reject the task after
+     * chain.task.pendingQueueBlockTimeoutMs. Don't use it for tasks submitted by the queue's own tasks
+     */
+    Block
+}
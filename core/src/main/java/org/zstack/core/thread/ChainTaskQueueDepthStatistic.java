@@ -0,0 +1,45 @@
+package org.zstack.core.thread;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * The histogram of the pending queue depth of a chain task queue, sampled when a task is submitted.
+ * histogram[i] counts the samples in (bucketUpperBounds[i - 1], bucketUpperBounds[i]],
+ * the last bucket has no upper bound.
+ */
+public class ChainTaskQueueDepthStatistic {
+    private String syncSignature;
+    private long samples;
+    private long maxDepth;
+    private long[] bucketUpperBounds;
+    private long[] histogram;
+
+    @ConstructorProperties({"syncSignature", "samples", "maxDepth", "bucketUpperBounds", "histogram"})
+    public ChainTaskQueueDepthStatistic(String syncSignature, long samples, long maxDepth, long[] bucketUpperBounds, long[] histogram) {
+        this.syncSignature = syncSignature;
+        this.samples = samples;
+        this.maxDepth = maxDepth;
+        this.bucketUpperBounds = bucketUpperBounds;
+        this.histogram = histogram;
+    }
+
+    public String getSyncSignature() {
+        return syncSignature;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    public long getMaxDepth() {
+        return maxDepth;
+    }
+
+    public long[] getBucketUpperBounds() {
+        return bucketUpperBounds;
+    }
+
+    public long[] getHistogram() {
+        return histogram;
+    }
+}
@@ -17,6 +17,8 @@ public interface DispatchQueue {
 
     Map<String, ChainTaskStatistic> getChainTaskStatistics();
 
+    Map<String, ChainTaskQueueDepthStatistic> getChainTaskQueueDepthStatistics();
+
     boolean isChainTaskRunning(String signature);
 
     ChainInfo getChainTaskInfo(String signature);
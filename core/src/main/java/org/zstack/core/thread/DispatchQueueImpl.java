@@ -5,6 +5,7 @@ import org.springframework.beans.factory.annotation.Autowire;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Configurable;
 import org.zstack.core.CoreGlobalProperty;
+import org.zstack.core.cloudbus.MessageTracer;
 import org.zstack.core.debug.DebugManager;
 import org.zstack.core.debug.DebugSignalHandler;
 import org.zstack.header.Constants;
@@ -14,6 +15,8 @@ import org.zstack.header.core.progress.PendingTaskInfo;
 import org.zstack.header.errorcode.OperationFailureException;
 import org.zstack.utils.DebugUtils;
 import org.zstack.utils.Utils;
+import org.zstack.utils.data.ObjectIntHashMap;
+import org.zstack.utils.data.RingBufferQueue;
 import org.zstack.utils.gson.JSONObjectUtil;
 import org.zstack.utils.logging.CLogger;
 import org.zstack.utils.logging.CLoggerImpl;
@@ -37,6 +40,10 @@ class DispatchQueueImpl implements DispatchQueue, DebugSignalHandler {
     private final HashMap<String, SyncTaskQueueWrapper> syncTasks = new HashMap<String, SyncTaskQueueWrapper>();
     private final Map<String, ChainTaskQueueWrapper> chainTasks = Collections.synchronizedMap(new HashMap<>());
     private final Map<String, Set<String>> apiRunningSignature = new ConcurrentHashMap<>();
+    // guarded by chainTasks, kept after the queues drain
+    private final Map<String, QueueDepthHistogram> queueDepthHistograms = new HashMap<>();
+    private static final int MAX_QUEUE_DEPTH_HISTOGRAMS = 2000;
+    private static final String OTHER_QUEUES_SIGNATURE = "other-queues";
     private static final CLogger _logger = CLoggerImpl.getLogger(DispatchQueueImpl.class);
 
     @Override
@@ -51,18 +58,17 @@ class DispatchQueueImpl implements DispatchQueue, DebugSignalHandler {
             for (Map.Entry<String, ChainTaskQueueWrapper> e : chainTasks.entrySet()) {
                 StringBuilder tb = new StringBuilder(String.format("\nQUEUE SYNC SIGNATURE: %s", e.getKey()));
                 ChainTaskQueueWrapper w = e.getValue();
-                tb.append(String.format("\nRUNNING TASK NUMBER: %s", w.runningQueue.size()));
+                List<ChainFuture> runningTasks = w.getRunningTasks();
+                tb.append(String.format("\nRUNNING TASK NUMBER: %s", runningTasks.size()));
                 tb.append(String.format("\nPENDING TASK NUMBER: %s", w.pendingQueue.size()));
                 tb.append(String.format("\nASYNC LEVEL: %s", w.maxThreadNum));
 
                 int index = 0;
-                for (Object obj : w.runningQueue) {
-                    ChainFuture cf = (ChainFuture) obj;
+                for (ChainFuture cf : runningTasks) {
                     tb.append(TaskInfoBuilder.buildRunningTaskInfo(cf, now, index++));
                 }
 
-                for (Object obj : w.pendingQueue) {
-                    ChainFuture cf = (ChainFuture) obj;
+                for (ChainFuture cf : w.pendingQueue) {
                     tb.append(TaskInfoBuilder.buildPendingTaskInfo(cf, now, index++));
                 }
                 asyncTasks.add(tb.toString());
@@ -86,13 +92,11 @@ class DispatchQueueImpl implements DispatchQueue, DebugSignalHandler {
             }
 
             int index = 0;
-            for (Object obj : w.runningQueue) {
-                ChainFuture cf = (ChainFuture) obj;
+            for (ChainFuture cf : w.getRunningTasks()) {
                 info.addRunningTask(TaskInfoBuilder.buildRunningTaskInfo(cf, now, index++));
             }
 
-            for (Object obj : w.pendingQueue) {
-                ChainFuture cf = (ChainFuture) obj;
+            for (ChainFuture cf : w.pendingQueue) {
                 info.addPendingTask(TaskInfoBuilder.buildPendingTaskInfo(cf, now, index++));
             }
             return info;
@@ -242,6 +246,8 @@ class DispatchQueueImpl implements DispatchQueue, DebugSignalHandler {
 
         private long startPendingTimeInMills = System.currentTimeMillis();
         private Long startExecutionTimeInMills;
+        // the slot in the running queue, guarded by the running queue
+        private int runningSlot = -1;
 
         public long getStartPendingTimeInMills() {
             return startPendingTimeInMills;
@@ -314,45 +320,45 @@ class DispatchQueueImpl implements DispatchQueue, DebugSignalHandler {
     }
 
     private class ChainTaskQueueWrapper {
-        LinkedList pendingQueue = new LinkedList();
-        final Map<String, AtomicInteger> subPendingMap = new ConcurrentHashMap<>();
-        final LinkedList runningQueue = new LinkedList();
+        // guarded by chainTasks
+        final RingBufferQueue<ChainFuture> pendingQueue = new RingBufferQueue<>();
+        // guarded by itself, it's changed in and out of the chainTasks lock
+        final ObjectIntHashMap<String> subPendingMap = new ObjectIntHashMap<>();
+        final RunningTaskSlots<ChainFuture> runningQueue = new RunningTaskSlots<>();
         AtomicInteger counter = new AtomicInteger(0);
         int maxThreadNum = -1;
         String syncSignature;
+        // submitters waiting for room in the pending queue, guarded by chainTasks
+        int blockedSubmitters;
 
-        int addSubPending(String deduplicateStr) {
-            subPendingMap.compute(deduplicateStr, (k, v) -> {
-                if (v == null) {
-                    return new AtomicInteger(1);
-                } else {
-                    v.incrementAndGet();
-                    return v;
-                }
-            });
-            return subPendingMap.get(deduplicateStr).intValue();
+        List<ChainFuture> getRunningTasks() {
+            List<ChainFuture> ret;
+            synchronized (runningQueue) {
+                ret = runningQueue.toList();
+            }
+            ret.sort(Comparator.comparing(ChainFuture::getStartExecutionTimeInMills));
+            return ret;
         }
 
         void removeSubPending(String deduplicateStr, boolean removeIfZero) {
-            subPendingMap.computeIfPresent(deduplicateStr, (k, v) -> {
-                int r = v.decrementAndGet();
-                if (r < 0) {
-                    if (removeIfZero) {
-                        return null;
-                    }
+            synchronized (subPendingMap) {
+                if (!subPendingMap.containsKey(deduplicateStr)) {
+                    return;
                 }
-                return v;
-            });
+
+                int r = subPendingMap.addTo(deduplicateStr, -1);
+                if (r < 0 && removeIfZero) {
+                    subPendingMap.remove(deduplicateStr);
+                }
+            }
         }
 
         void removeSubPendingZero(String deduplicateStr) {
-            subPendingMap.computeIfPresent(deduplicateStr, (k, v) -> {
-                int r = v.intValue();
-                if (r == 0) {
-                    return null;
+            synchronized (subPendingMap) {
+                if (subPendingMap.get(deduplicateStr, -1) == 0) {
+                    subPendingMap.remove(deduplicateStr);
                 }
-                return v;
-            });
+            }
         }
 
         void warningAndRemove(ChainFuture task, int length, int queueLength) {
@@ -363,11 +369,15 @@ class DispatchQueueImpl implements DispatchQueue, DebugSignalHandler {
         boolean addTask(ChainFuture task, int length) {
             if (length != -1 && CoreGlobalProperty.CHAIN_TASK_QOS) {
                 DebugUtils.Assert(task.getTask().getDeduplicateString() != null, "deduplicate String must be set if max pending string has been set!");
-                AtomicInteger r = subPendingMap.get(task.getTask().getDeduplicateString());
-                int queueLength = addSubPending(task.getTask().getDeduplicateString());
+                boolean r;
+                int queueLength;
+                synchronized (subPendingMap) {
+                    r = subPendingMap.containsKey(task.getTask().getDeduplicateString());
+                    queueLength = subPendingMap.addTo(task.getTask().getDeduplicateString(), 1);
+                }
                 if (queueLength > length) {
                     synchronized (runningQueue) {
-                        if (length != 0 || queueLength != 1 || r != null) {
+                        if (length != 0 || queueLength != 1 || r) {
                             warningAndRemove(task, length, queueLength);
                             return false;
                         }
@@ -408,7 +418,10 @@ class DispatchQueueImpl implements DispatchQueue, DebugSignalHandler {
                     ChainFuture cf;
                     synchronized (chainTasks) {
                         // remove from pending queue and add to running queue later
-                        cf = (ChainFuture) pendingQueue.poll();
+                        cf = pendingQueue.poll();
+                        if (cf != null && blockedSubmitters > 0) {
+                            chainTasks.notifyAll();
+                        }
 
                         if (cf == null) {
                             if (counter.decrementAndGet() == 0) {
@@ -424,7 +437,7 @@ class DispatchQueueImpl implements DispatchQueue, DebugSignalHandler {
                         cf.startExecutionTimeInMills = zTimer.getCurrentTimeMillis();
                         // add to running queue
                         logger.debug(String.format("Start executing runningQueue: %s, task name: %s", syncSignature, cf.getTask().getName()));
-                        runningQueue.offer(cf);
+                        cf.runningSlot = runningQueue.add(cf);
                         Optional.ofNullable(getApiId(cf))
                                 .ifPresent(apiId -> apiRunningSignature.computeIfAbsent(apiId,
                                         k -> new HashSet<>()).add(syncSignature));
@@ -434,14 +447,21 @@ class DispatchQueueImpl implements DispatchQueue, DebugSignalHandler {
                         removeSubPending(cf.getTask().getDeduplicateString(), false);
                     }
 
+                    MessageTracer.Span span = MessageTracer.onChainTaskStart(cf.getTask().getThreadContext(),
+                            cf.getTask().getName(), syncSignature, cf.getStartPendingTimeInMills());
                     cf.run(() -> {
+                        if (span != null) {
+                            span.hop(MessageTracer.HOP_RUN, syncSignature, span.getStartMicros());
+                        }
+
                         synchronized (runningQueue) {
                             Optional.ofNullable(getApiId(cf))
                                     .ifPresent(apiId -> apiRunningSignature.computeIfPresent(apiId, (k, sigs) -> {
                                         sigs.remove(syncSignature);
                                         return sigs.isEmpty() ? null : sigs;
                                     }));
-                            runningQueue.remove(cf);
+                            runningQueue.remove(cf.runningSlot);
+                            cf.runningSlot = -1;
                             logger.debug(String.format("Finish executing runningQueue: %s, task name: %s", syncSignature, cf.getTask().getName()));
 
                             if (cf.getTask().getDeduplicateString() != null) {
@@ -494,19 +514,126 @@ class DispatchQueueImpl implements DispatchQueue, DebugSignalHandler {
         }
     }
 
+    private static class QueueDepthHistogram {
+        // 0, 1, 2, 4, ..., 2^14, and a bucket for deeper queues
+        static final long[] BUCKET_UPPER_BOUNDS = new long[16];
+
+        static {
+            for (int i = 1; i < BUCKET_UPPER_BOUNDS.length; i++) {
+                BUCKET_UPPER_BOUNDS[i] = 1L << (i - 1);
+            }
+        }
+
+        final long[] histogram = new long[BUCKET_UPPER_BOUNDS.length + 1];
+        long samples;
+        long maxDepth;
+
+        void record(int depth) {
+            int i = depth == 0 ? 0 : 1 + (32 - Integer.numberOfLeadingZeros(depth - 1));
+            histogram[Math.min(i, histogram.length - 1)]++;
+            samples++;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+    }
+
+    // called with the chainTasks lock held
+    private void recordPendingQueueDepth(String signature, int depth) {
+        QueueDepthHistogram h = queueDepthHistograms.get(signature);
+        if (h == null) {
+            // signatures like per resource ones are unbounded, count the ones after the cap together
+            String key = queueDepthHistograms.size() < MAX_QUEUE_DEPTH_HISTOGRAMS ? signature : OTHER_QUEUES_SIGNATURE;
+            h = queueDepthHistograms.computeIfAbsent(key, k -> new QueueDepthHistogram());
+        }
+
+        h.record(depth);
+    }
+
+    // called with the chainTasks lock held
+    private void dropPendingTask(ChainTaskQueueWrapper wrapper, ChainFuture cf) {
+        logger.warn(String.format("Pending queue[%s] exceeds max size, drop the oldest task: %s", wrapper.syncSignature, cf.getTask().getName()));
+        cf.cancel();
+        String deduplicateStr = cf.getTask().getDeduplicateString();
+        if (deduplicateStr != null) {
+            // as if the task started and finished
+            wrapper.removeSubPending(deduplicateStr, false);
+            wrapper.removeSubPendingZero(deduplicateStr);
+        }
+        cf.getTask().exceedMaxPendingCallback();
+    }
+
+    /**
+     * called with the chainTasks lock held when the pending queue of the task is full
+     *
+     * @return false if the task should be rejected
+     */
+    private boolean makeRoomInPendingQueue(ChainTask task, int maxQueueSize) {
+        final String signature = task.getSyncSignature();
+        ChainTaskOverflowPolicy policy = task.getPendingQueueOverflowPolicy();
+
+        if (policy == ChainTaskOverflowPolicy.DropOldest) {
+            ChainTaskQueueWrapper wrapper = chainTasks.get(signature);
+            if (wrapper == null) {
+                return false;
+            }
+
+            while (wrapper.pendingQueue.size() >= maxQueueSize && !wrapper.pendingQueue.isEmpty()) {
+                dropPendingTask(wrapper, wrapper.pendingQueue.poll());
+            }
+            return wrapper.pendingQueue.size() < maxQueueSize;
+        } else if (policy == ChainTaskOverflowPolicy.Block) {
+            long deadline = System.currentTimeMillis() + CoreGlobalProperty.CHAIN_TASK_PENDING_QUEUE_BLOCK_TIMEOUT_MS;
+            while (true) {
+                // the queue may drain and be removed while waiting
+                ChainTaskQueueWrapper wrapper = chainTasks.get(signature);
+                if (wrapper == null || wrapper.pendingQueue.size() < maxQueueSize) {
+                    return true;
+                }
+
+                long timeout = deadline - System.currentTimeMillis();
+                if (timeout <= 0) {
+                    return false;
+                }
+
+                wrapper.blockedSubmitters++;
+                try {
+                    chainTasks.wait(timeout);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                } finally {
+                    wrapper.blockedSubmitters--;
+                }
+            }
+        }
+
+        return false;
+    }
+
     private <T> Future<T> doChainSyncSubmit(final ChainTask task) {
         assert task.getSyncSignature() != null : "How can you submit a chain task without sync signature ???";
         DebugUtils.Assert(task.getSyncLevel() >= 1, "getSyncLevel() must return 1 at least ");
 
+        final int maxQueueSize = task.getMaxPendingQueueSize();
         synchronized (chainTasks) {
             final String signature = task.getSyncSignature();
             ChainTaskQueueWrapper wrapper = chainTasks.get(signature);
+            int depth = wrapper == null ? 0 : wrapper.pendingQueue.size();
+            recordPendingQueueDepth(signature, depth);
+
+            ChainFuture cf = new ChainFuture(task);
+            if (maxQueueSize != -1 && depth >= maxQueueSize && !makeRoomInPendingQueue(task, maxQueueSize)) {
+                cf.cancel();
+                logger.debug(String.format("Pending queue[%s] reaches max size %s, task name: %s, start execute callback", signature, maxQueueSize, task.getName()));
+                task.exceedMaxPendingCallback();
+                return cf;
+            }
+
+            wrapper = chainTasks.get(signature);
             if (wrapper == null) {
                 wrapper = new ChainTaskQueueWrapper();
                 chainTasks.put(signature, wrapper);
             }
 
-            ChainFuture cf = new ChainFuture(task);
             boolean succeed = wrapper.addTask(cf, task.getMaxPendingTasks());
             if (!succeed) {
                 cf.cancel();
@@ -562,6 +689,24 @@ class DispatchQueueImpl implements DispatchQueue, DebugSignalHandler {
         return ret;
     }
 
+    @Override
+    public Map<String, ChainTaskQueueDepthStatistic> getChainTaskQueueDepthStatistics() {
+        Map<String, ChainTaskQueueDepthStatistic> ret = new HashMap<>();
+        synchronized (chainTasks) {
+            for (Map.Entry<String, QueueDepthHistogram> e : queueDepthHistograms.entrySet()) {
+                QueueDepthHistogram h = e.getValue();
+                ret.put(e.getKey(), new ChainTaskQueueDepthStatistic(
+                        e.getKey(),
+                        h.samples,
+                        h.maxDepth,
+                        QueueDepthHistogram.BUCKET_UPPER_BOUNDS.clone(),
+                        h.histogram.clone()
+                ));
+            }
+        }
+        return ret;
+    }
+
     @Override
     public boolean isChainTaskRunning(String signature) {
         synchronized (chainTasks) {
@@ -0,0 +1,78 @@
+package org.zstack.core.thread;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds the running tasks of a chain task queue in array slots. Adding a task returns its
+ * slot which removes the task in O(1), freed slots are reused. Not thread safe.
+ */
+class RunningTaskSlots<E> {
+    private Object[] slots = new Object[4];
+    private int[] freeSlots = new int[4];
+    private int freeNum;
+    private int used;
+    private int size;
+
+    /**
+     * @return the slot of the element, to remove it
+     */
+    int add(E e) {
+        int slot;
+        if (freeNum > 0) {
+            slot = freeSlots[--freeNum];
+        } else {
+            if (used == slots.length) {
+                Object[] n = new Object[slots.length << 1];
+                System.arraycopy(slots, 0, n, 0, used);
+                slots = n;
+                int[] f = new int[slots.length];
+                System.arraycopy(freeSlots, 0, f, 0, freeNum);
+                freeSlots = f;
+            }
+            slot = used++;
+        }
+
+        slots[slot] = e;
+        size++;
+        return slot;
+    }
+
+    @SuppressWarnings("unchecked")
+    E remove(int slot) {
+        E e = (E) slots[slot];
+        if (e == null) {
+            return null;
+        }
+
+        slots[slot] = null;
+        freeSlots[freeNum++] = slot;
+        size--;
+
+        if (size == 0) {
+            // the queue is idle, forget the slots so a burst doesn't keep big arrays
+            if (slots.length > 4) {
+                slots = new Object[4];
+                freeSlots = new int[4];
+            }
+            freeNum = 0;
+            used = 0;
+        }
+        return e;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    List<E> toList() {
+        List<E> ret = new ArrayList<>(size);
+        for (int i = 0; i < used; i++) {
+            if (slots[i] != null) {
+                ret.add((E) slots[i]);
+            }
+        }
+        return ret;
+    }
+}
@@ -21,58 +21,12 @@ public class ThreadFacadeImpl implements ThreadFacade, ThreadFactory, RejectedEx
     private ScheduledThreadPoolExecutorExt _pool;
     private ScheduledThreadPoolExecutorExt _syncpool;  // for sync tasks
     private DispatchQueue dpq;
-    private final TimerPool timerPool = new TimerPool(5);
+    // runs timeout tasks and timer tasks
+    private TimingWheel timerWheel;
 
     @Autowired
     private JmxFacade jmxf;
 
-    private static class TimerWrapper extends Timer {
-        private int cancelledTimerTaskCount = 0;
-        private static final int PURGE_CANCELLED_TIMER_TASK_THRESHOLD = 2000;
-
-        void notifyCancel() {
-            if (cancelledTimerTaskCount++ >= PURGE_CANCELLED_TIMER_TASK_THRESHOLD) {
-                cancelledTimerTaskCount = 0;
-                this.purge();
-            }
-        }
-    }
-
-    private static class TimerPool {
-        int poolSize;
-        List<TimerWrapper> pool;
-
-        // never use a long type counter for self increment. two issues
-        // 1) Java will silently overflow a number; even a long will be overflow someday
-        // 2) big number causes extremely bad performance for mod operation
-        // instead, reset the counter when it exceeds COUNTER_RESET_THRESHOLD to maintain
-        // decent performance for mod operation.
-        int counter = 0;
-        static final int COUNTER_RESET_THRESHOLD = 1000000;
-
-        private TimerPool(int poolSize) {
-            this.poolSize = poolSize;
-            pool = new ArrayList<TimerWrapper>(poolSize);
-            for (int i = 0; i < poolSize; i++) {
-                pool.add(new TimerWrapper());
-            }
-        }
-
-        TimerWrapper getTimer() {
-            int index = ++counter % poolSize;
-            if (counter > COUNTER_RESET_THRESHOLD) {
-                counter = 0;
-            }
-            return pool.get(index);
-        }
-
-        void stop() {
-            for (TimerWrapper wrapper : pool) {
-                wrapper.cancel();
-            }
-        }
-    }
-
     @Override
     public Map<String, SyncTaskStatistic> getSyncTaskStatistics() {
         return dpq.getSyncTaskStatistics();
@@ -83,6 +37,16 @@ public class ThreadFacadeImpl implements ThreadFacade, ThreadFactory, RejectedEx
         return dpq.getChainTaskStatistics();
     }
 
+    @Override
+    public Map<String, ChainTaskQueueDepthStatistic> getChainTaskQueueDepthStatistics() {
+        return dpq.getChainTaskQueueDepthStatistics();
+    }
+
+    @Override
+    public TimerStatistic getTimerStatistic() {
+        return timerWheel.getStatistic();
+    }
+
     @Override
     public ThreadPoolStatistic getThreadPoolStatistic() {
         long completedTask = _pool.getCompletedTaskCount();
@@ -135,6 +99,7 @@ public class ThreadFacadeImpl implements ThreadFacade, ThreadFactory, RejectedEx
         _syncpool = new ScheduledThreadPoolExecutorExt(getSyncThreadNum(totalThreadNum), this, this);
         _logger.debug(String.format("create ThreadFacade with max thread number:%s", totalThreadNum));
         dpq = new DispatchQueueImpl();
+        timerWheel = new TimingWheel("zs-timer-wheel", ThreadGlobalProperty.TIMER_TICK_MS);
 
         jmxf.registerBean("ThreadFacade", this);
     }
@@ -243,9 +208,7 @@ public class ThreadFacadeImpl implements ThreadFacade, ThreadFactory, RejectedEx
 
     @Override
     public TimeoutTaskReceipt submitTimeoutTask(final Runnable task, TimeUnit unit, long delay) {
-        final TimerWrapper timer = timerPool.getTimer();
-
-        class TimerTaskWorker extends java.util.TimerTask implements TimeoutTaskReceipt {
+        class TimerTaskWorker implements Runnable {
             @Override
             @AsyncThread
             public void run() {
@@ -253,42 +216,23 @@ public class ThreadFacadeImpl implements ThreadFacade, ThreadFactory, RejectedEx
                     task.run();
                 } catch (Throwable t) {
                     _logger.warn(String.format("Unhandled exception happened when running %s", task.getClass().getName()), t);
-                } finally {
-                    this.cancel();
                 }
             }
-
-            @Override
-            public boolean cancel() {
-                boolean ret = super.cancel();
-                timer.notifyCancel();
-                return ret;
-            }
         }
 
-        TimerTaskWorker worker = new TimerTaskWorker();
-        timer.schedule(worker, unit.toMillis(delay));
-        return worker;
+        return timerWheel.schedule(new TimerTaskWorker(), delay, unit)::cancel;
     }
 
     @Override
     public Runnable submitTimerTask(final TimerTask task, TimeUnit unit, long delay) {
-        final TimerWrapper timer = timerPool.getTimer();
-        java.util.TimerTask t = new java.util.TimerTask() {
-            @Override
-            public void run() {
-                try {
-                    if (task.run()) {
-                        cancel();
-                    }
-                } catch (Throwable t) {
-                    _logger.warn(String.format("Unhandled exception happened when running %s", task.getClass().getName()), t);
-                }
+        TimingWheel.Timeout timeout = timerWheel.schedule(() -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                _logger.warn(String.format("Unhandled exception happened when running %s", task.getClass().getName()), t);
             }
-        };
-
-        timer.schedule(t, unit.toMillis(delay));
-        return t::cancel;
+        }, delay, unit);
+        return timeout::cancel;
     }
 
     @Override
@@ -299,7 +243,7 @@ public class ThreadFacadeImpl implements ThreadFacade, ThreadFactory, RejectedEx
     @Override
     public boolean stop() {
         _pool.shutdown();
-        timerPool.stop();
+        timerWheel.stop();
         return true;
     }
 
@@ -9,5 +9,9 @@ public interface ThreadFacadeMXBean {
 
     Map<String, ChainTaskStatistic> getChainTaskStatistics();
 
+    Map<String, ChainTaskQueueDepthStatistic> getChainTaskQueueDepthStatistics();
+
     ThreadPoolStatistic getThreadPoolStatistic();
+
+    TimerStatistic getTimerStatistic();
 }
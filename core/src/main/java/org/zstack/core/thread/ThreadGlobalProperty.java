@@ -9,4 +9,6 @@ import org.zstack.core.GlobalPropertyDefinition;
 public class ThreadGlobalProperty {
     @GlobalProperty(name="ThreadFacade.maxThreadNum", defaultValue = "150")
     public static int MAX_THREAD_NUM;
+    @GlobalProperty(name="ThreadFacade.timerTickMs", defaultValue = "10")
+    public static long TIMER_TICK_MS;
 }
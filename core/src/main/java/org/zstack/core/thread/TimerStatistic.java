@@ -0,0 +1,62 @@
+package org.zstack.core.thread;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Statistics of the timing wheel running timeout tasks and timer tasks, lateness is
+ * how long after its deadline a timeout is dispatched
+ */
+public class TimerStatistic {
+    private String name;
+    private long tickMs;
+    private long pendingTimers;
+    private long scheduledTimers;
+    private long cancelledTimers;
+    private long expiredTimers;
+    private long averageLatenessMs;
+    private long maxLatenessMs;
+
+    @ConstructorProperties({"name", "tickMs", "pendingTimers", "scheduledTimers", "cancelledTimers", "expiredTimers", "averageLatenessMs", "maxLatenessMs"})
+    public TimerStatistic(String name, long tickMs, long pendingTimers, long scheduledTimers, long cancelledTimers, long expiredTimers, long averageLatenessMs, long maxLatenessMs) {
+        this.name = name;
+        this.tickMs = tickMs;
+        this.pendingTimers = pendingTimers;
+        this.scheduledTimers = scheduledTimers;
+        this.cancelledTimers = cancelledTimers;
+        this.expiredTimers = expiredTimers;
+        this.averageLatenessMs = averageLatenessMs;
+        this.maxLatenessMs = maxLatenessMs;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getTickMs() {
+        return tickMs;
+    }
+
+    public long getPendingTimers() {
+        return pendingTimers;
+    }
+
+    public long getScheduledTimers() {
+        return scheduledTimers;
+    }
+
+    public long getCancelledTimers() {
+        return cancelledTimers;
+    }
+
+    public long getExpiredTimers() {
+        return expiredTimers;
+    }
+
+    public long getAverageLatenessMs() {
+        return averageLatenessMs;
+    }
+
+    public long getMaxLatenessMs() {
+        return maxLatenessMs;
+    }
+}
@@ -0,0 +1,304 @@
+package org.zstack.core.thread;
+
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A hashed hierarchical timing wheel. Timeouts are linked into the bucket of their deadline tick
+ * so scheduling and cancelling are O(1) no matter how many timeouts are pending; a level has
+ * WHEEL_SIZE buckets each covering WHEEL_SIZE buckets of the level below, the buckets of upper
+ * levels are cascaded down when the lower level wraps.
+ *
+ * A single thread advances the wheel every tick, takes the expired timeouts of the tick in one
+ * batch and runs them out of the lock; tasks that take time must hand themselves over to the
+ * thread pool.
+ */
+class TimingWheel {
+    private static final CLogger logger = Utils.getLogger(TimingWheel.class);
+
+    private static final int WHEEL_BITS = 9;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    // 4 levels of 10ms ticks cover about 21 years
+    private static final int LEVELS = 4;
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    class Timeout {
+        private final Runnable task;
+        private final long deadlineNanos;
+        private final long deadlineTick;
+        // guarded by the wheel
+        private int state = PENDING;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadlineNanos, long deadlineTick) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * @return false if the timeout has expired or been cancelled
+         */
+        boolean cancel() {
+            synchronized (TimingWheel.this) {
+                if (state != PENDING) {
+                    return false;
+                }
+
+                state = CANCELLED;
+                bucket.remove(this);
+                pendingTimeouts--;
+                cancelledTimeouts++;
+                return true;
+            }
+        }
+    }
+
+    private static class Bucket {
+        Timeout head;
+        Timeout tail;
+
+        void add(Timeout t) {
+            t.bucket = this;
+            t.prev = tail;
+            t.next = null;
+            if (tail == null) {
+                head = t;
+            } else {
+                tail.next = t;
+            }
+            tail = t;
+        }
+
+        void remove(Timeout t) {
+            if (t.prev == null) {
+                head = t.next;
+            } else {
+                t.prev.next = t.next;
+            }
+            if (t.next == null) {
+                tail = t.prev;
+            } else {
+                t.next.prev = t.prev;
+            }
+            t.bucket = null;
+            t.prev = null;
+            t.next = null;
+        }
+
+        /**
+         * empties the bucket, the timeouts are still linked by next
+         */
+        Timeout drain() {
+            Timeout ret = head;
+            head = null;
+            tail = null;
+            return ret;
+        }
+    }
+
+    private final String name;
+    private final long tickNanos;
+    private final long startNanos = System.nanoTime();
+    private final Bucket[][] wheels = new Bucket[LEVELS][WHEEL_SIZE];
+    private final Thread worker;
+
+    // guarded by this
+    private long currentTick;
+    private boolean stopped;
+    private long pendingTimeouts;
+    private long scheduledTimeouts;
+    private long cancelledTimeouts;
+    private long expiredTimeouts;
+    private long totalLatenessNanos;
+    private long maxLatenessNanos;
+
+    TimingWheel(String name, long tickMs) {
+        this.name = name;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMs));
+        for (Bucket[] wheel : wheels) {
+            for (int i = 0; i < WHEEL_SIZE; i++) {
+                wheel[i] = new Bucket();
+            }
+        }
+
+        worker = new Thread(this::work, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long deadlineNanos = System.nanoTime() + unit.toNanos(Math.max(0, delay));
+        // round up, never expire a timeout earlier than its deadline
+        long deadlineTick = (deadlineNanos - startNanos + tickNanos - 1) / tickNanos;
+
+        synchronized (this) {
+            Timeout t = new Timeout(task, deadlineNanos, deadlineTick);
+            if (stopped) {
+                t.state = CANCELLED;
+                return t;
+            }
+
+            if (pendingTimeouts == 0) {
+                // the wheel is empty, skip the idle ticks instead of advancing them one by one
+                currentTick = Math.max(currentTick, (System.nanoTime() - startNanos) / tickNanos);
+            }
+
+            place(t);
+            pendingTimeouts++;
+            scheduledTimeouts++;
+            if (pendingTimeouts == 1) {
+                // the worker is waiting for the first timeout
+                notifyAll();
+            }
+            return t;
+        }
+    }
+
+    // called with the lock held
+    private void place(Timeout t) {
+        // the ticks before currentTick have been processed, an overdue timeout expires with the next tick
+        long tick = Math.max(t.deadlineTick, currentTick);
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = level * WHEEL_BITS;
+            if ((tick >> shift) - (currentTick >> shift) < WHEEL_SIZE) {
+                wheels[level][(int) ((tick >> shift) & WHEEL_MASK)].add(t);
+                return;
+            }
+        }
+
+        // beyond the top level, park it in the farthest bucket and place it again when that's cascaded
+        int shift = (LEVELS - 1) * WHEEL_BITS;
+        wheels[LEVELS - 1][(int) (((currentTick >> shift) + WHEEL_MASK) & WHEEL_MASK)].add(t);
+    }
+
+    // called with the lock held, returns the expired timeouts of currentTick linked by next
+    private Timeout advance() {
+        for (int level = LEVELS - 1; level > 0; level--) {
+            int shift = level * WHEEL_BITS;
+            if ((currentTick & ((1L << shift) - 1)) != 0) {
+                continue;
+            }
+
+            Timeout t = wheels[level][(int) ((currentTick >> shift) & WHEEL_MASK)].drain();
+            while (t != null) {
+                Timeout next = t.next;
+                place(t);
+                t = next;
+            }
+        }
+
+        Timeout expired = wheels[0][(int) (currentTick & WHEEL_MASK)].drain();
+        for (Timeout t = expired; t != null; t = t.next) {
+            t.state = EXPIRED;
+            t.bucket = null;
+            pendingTimeouts--;
+            expiredTimeouts++;
+        }
+
+        currentTick++;
+        return expired;
+    }
+
+    private void runExpired(Timeout expired) {
+        long now = System.nanoTime();
+        long lateness = 0;
+        long maxLateness = 0;
+        for (Timeout t = expired; t != null; t = t.next) {
+            long l = Math.max(0, now - t.deadlineNanos);
+            lateness += l;
+            maxLateness = Math.max(maxLateness, l);
+        }
+
+        synchronized (this) {
+            totalLatenessNanos += lateness;
+            maxLatenessNanos = Math.max(maxLatenessNanos, maxLateness);
+        }
+
+        Timeout t = expired;
+        while (t != null) {
+            Timeout next = t.next;
+            t.next = null;
+            t.prev = null;
+            try {
+                t.task.run();
+            } catch (Throwable e) {
+                logger.warn(String.format("unhandled exception happened when running timeout task %s", t.task.getClass().getName()), e);
+            }
+            t = next;
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Timeout expired = null;
+            try {
+                synchronized (this) {
+                    if (stopped) {
+                        return;
+                    }
+
+                    if (pendingTimeouts == 0) {
+                        wait();
+                        continue;
+                    }
+
+                    long targetTick = (System.nanoTime() - startNanos) / tickNanos;
+                    if (currentTick > targetTick) {
+                        long sleepNanos = startNanos + currentTick * tickNanos - System.nanoTime();
+                        if (sleepNanos > 0) {
+                            TimeUnit.NANOSECONDS.timedWait(this, sleepNanos);
+                        }
+                        continue;
+                    }
+
+                    expired = advance();
+                }
+            } catch (InterruptedException e) {
+                if (isStopped()) {
+                    return;
+                }
+            }
+
+            if (expired != null) {
+                runExpired(expired);
+            }
+        }
+    }
+
+    private synchronized boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * stops the wheel, the pending timeouts are dropped
+     */
+    void stop() {
+        synchronized (this) {
+            stopped = true;
+            notifyAll();
+        }
+        worker.interrupt();
+    }
+
+    synchronized TimerStatistic getStatistic() {
+        return new TimerStatistic(
+                name,
+                TimeUnit.NANOSECONDS.toMillis(tickNanos),
+                pendingTimeouts,
+                scheduledTimeouts,
+                cancelledTimeouts,
+                expiredTimeouts,
+                expiredTimeouts == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalLatenessNanos / expiredTimeouts),
+                TimeUnit.NANOSECONDS.toMillis(maxLatenessNanos)
+        );
+    }
+}
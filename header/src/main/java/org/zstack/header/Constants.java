@@ -7,9 +7,13 @@ public interface Constants {
     String AGENT_HTTP_HEADER_RESOURCE_UUID = "X-Resource-UUID";
     String THREAD_CONTEXT_API = "api";
     String THREAD_CONTEXT_API_TIMEOUT = "apitimeout";
+    // the class name of the API message, set with THREAD_CONTEXT_API
+    String THREAD_CONTEXT_API_NAME = "api-name";
     String THREAD_CONTEXT_TASK_NAME = "task-name";
     String THREAD_CONTEXT_PROGRESS_ENABLED = "progress-enabled";
     String THREAD_CONTEXT_TASK_STAGE = "task-stage";
+    String THREAD_CONTEXT_TRACE_ID = "trace-id";
+    String THREAD_CONTEXT_SPAN_ID = "span-id";
 
     String CATEGORY_RESOURCE = "resource";
     String CATEGORY_METADATA = "metadata";
@@ -0,0 +1,22 @@
+package org.zstack.header.host;
+
+import org.zstack.header.message.NeedReplyMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * add a batch of hosts through the staged pipeline of the host manager,
+ * a host failing to add doesn't fail the others
+ */
+public class AddHostsMsg extends NeedReplyMessage {
+    private List<AddHostMsg> hosts = new ArrayList<>();
+
+    public List<AddHostMsg> getHosts() {
+        return hosts;
+    }
+
+    public void setHosts(List<AddHostMsg> hosts) {
+        this.hosts = hosts;
+    }
+}
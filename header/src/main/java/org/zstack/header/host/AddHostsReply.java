@@ -0,0 +1,33 @@
+package org.zstack.header.host;
+
+import org.zstack.header.errorcode.ErrorCode;
+import org.zstack.header.message.MessageReply;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class AddHostsReply extends MessageReply {
+    private List<HostInventory> inventories = new ArrayList<>();
+    /**
+     * errors of hosts failing to add, keyed by management ip
+     */
+    private Map<String, ErrorCode> errors = new HashMap<>();
+
+    public List<HostInventory> getInventories() {
+        return inventories;
+    }
+
+    public void setInventories(List<HostInventory> inventories) {
+        this.inventories = inventories;
+    }
+
+    public Map<String, ErrorCode> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(Map<String, ErrorCode> errors) {
+        this.errors = errors;
+    }
+}
@@ -1,8 +1,22 @@
 package org.zstack.header.host;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public interface HypervisorFactory {
     HostVO createHost(HostVO vo, AddHostMessage msg);
 
+    /**
+     * create the hosts of a batch add, msgs.get(i) is the message of vos.get(i)
+     */
+    default List<HostVO> createHosts(List<HostVO> vos, List<? extends AddHostMessage> msgs) {
+        List<HostVO> ret = new ArrayList<>();
+        for (int i = 0; i < vos.size(); i++) {
+            ret.add(createHost(vos.get(i), msgs.get(i)));
+        }
+        return ret;
+    }
+
     Host getHost(HostVO vo);
 
     HypervisorType getHypervisorType();
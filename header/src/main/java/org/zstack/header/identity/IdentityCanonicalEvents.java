@@ -12,6 +12,8 @@ public class IdentityCanonicalEvents {
     public static final String USER_DELETED_PATH = "/user/delete";
     public static final String ACCOUNT_LOGIN_PATH = "/account/login";
     public static final String SESSION_FORCE_LOGOUT_PATH = "/session/logout";
+    public static final String SESSION_DELETED_PATH = "/session/delete";
+    public static final String SESSION_RENEWED_PATH = "/session/renew";
 
     public static final String SESSION_FORCE_LOGOUT = "SessionForceLogout";
 
@@ -147,4 +149,48 @@ public class IdentityCanonicalEvents {
             this.userUuid = userUuid;
         }
     }
+
+    @NeedJsonSchema
+    public static class SessionDeletedData {
+        private String sessionUuid;
+        private Date date = new Date();
+
+        public String getSessionUuid() {
+            return sessionUuid;
+        }
+
+        public void setSessionUuid(String sessionUuid) {
+            this.sessionUuid = sessionUuid;
+        }
+
+        public Date getDate() {
+            return date;
+        }
+
+        public void setDate(Date date) {
+            this.date = date;
+        }
+    }
+
+    @NeedJsonSchema
+    public static class SessionRenewedData {
+        private String sessionUuid;
+        private Date expiredDate;
+
+        public String getSessionUuid() {
+            return sessionUuid;
+        }
+
+        public void setSessionUuid(String sessionUuid) {
+            this.sessionUuid = sessionUuid;
+        }
+
+        public Date getExpiredDate() {
+            return expiredDate;
+        }
+
+        public void setExpiredDate(Date expiredDate) {
+            this.expiredDate = expiredDate;
+        }
+    }
 }
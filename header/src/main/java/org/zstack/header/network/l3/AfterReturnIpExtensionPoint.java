@@ -0,0 +1,8 @@
+package org.zstack.header.network.l3;
+
+/**
+ * called after a used IP is returned to its L3 network by ReturnIpMsg
+ */
+public interface AfterReturnIpExtensionPoint {
+    void afterReturnIp(String l3NetworkUuid, String usedIpUuid);
+}
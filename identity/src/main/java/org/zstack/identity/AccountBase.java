@@ -263,6 +263,7 @@ public class AccountBase extends AbstractAccount {
     private void handle(AccountDeletionMsg msg) {
         AccountDeletionReply reply = new AccountDeletionReply();
         deleteRelatedResources();
+        QuotaUtil.evictQuotaPairs(self.getUuid());
         bus.reply(msg, reply);
     }
 
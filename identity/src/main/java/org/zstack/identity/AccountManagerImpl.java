@@ -454,7 +454,7 @@ public class AccountManagerImpl extends AbstractService implements AccountManage
 
     private void handle(APIRenewSessionMsg msg) {
         APIRenewSessionEvent evt = new APIRenewSessionEvent(msg.getId());
-        evt.setInventory(Session.renewSession(msg.getSessionUuid(), msg.getDuration()));
+        evt.setInventory(Session.renewSessionAndNotify(msg.getSessionUuid(), msg.getDuration()));
         bus.publish(evt);
     }
 
@@ -657,6 +657,7 @@ public class AccountManagerImpl extends AbstractService implements AccountManage
             collectDefaultQuota();
             configureGlobalConfig();
             updateResourceVONameOnEntityUpdate();
+            evictQuotaPairsOnQuotaChange();
 
             for (ReportApiAccountControlExtensionPoint ext : pluginRgty.getExtensionList(ReportApiAccountControlExtensionPoint.class)) {
                 List<Class> apis = ext.reportApiAccountControl();
@@ -684,6 +685,13 @@ public class AccountManagerImpl extends AbstractService implements AccountManage
         });
     }
 
+    private void evictQuotaPairsOnQuotaChange() {
+        EntityLifeCycleCallback cb = (evt, o) -> QuotaUtil.evictQuotaPairs(((QuotaVO) o).getIdentityUuid());
+        dbf.installEntityLifeCycleCallback(QuotaVO.class, EntityEvent.POST_PERSIST, cb);
+        dbf.installEntityLifeCycleCallback(QuotaVO.class, EntityEvent.POST_UPDATE, cb);
+        dbf.installEntityLifeCycleCallback(QuotaVO.class, EntityEvent.POST_REMOVE, cb);
+    }
+
     private void configureGlobalConfig() {
         String v = IdentityGlobalConfig.ACCOUNT_API_CONTROL.value();
         String[] classNames = v.split(",");
@@ -17,6 +17,8 @@ public class IdentityGlobalConfig {
     public static GlobalConfig SESSION_TIMEOUT = new GlobalConfig(CATEGORY, "session.timeout");
     @GlobalConfigValidation(numberGreaterThan = 1)
     public static GlobalConfig SESSION_CLEANUP_INTERVAL = new GlobalConfig(CATEGORY, "session.cleanup.interval");
+    @GlobalConfigValidation(numberGreaterThan = 0)
+    public static GlobalConfig SESSION_CLOCK_SYNC_INTERVAL = new GlobalConfig(CATEGORY, "session.clockSync.interval");
     @GlobalConfigValidation
     public static GlobalConfig SHOW_ALL_RESOURCE_TO_ADMIN = new GlobalConfig(CATEGORY, "admin.showAllResource");
     @GlobalConfigValidation(notEmpty = false)
@@ -46,14 +46,15 @@ public class QuotaChecker implements GlobalApiMessageInterceptor {
         if (quotas == null || quotas.size() == 0) {
             return msg;
         }
+
+        Map<String, QuotaPair> pairs = new QuotaUtil().makeQuotaPairs(msg.getSession().getAccountUuid());
         for (Quota q : quotas) {
-            check(msg, q);
+            check(msg, q, pairs);
         }
         return msg;
     }
 
-    private void check(APIMessage msg, Quota quota) {
-        Map<String, QuotaPair> pairs = new QuotaUtil().makeQuotaPairs(msg.getSession().getAccountUuid());
+    private void check(APIMessage msg, Quota quota, Map<String, QuotaPair> pairs) {
         quota.getOperator().checkQuota(msg, pairs);
         if (quota.getQuotaValidators() != null) {
             for (Quota.QuotaValidator q : quota.getQuotaValidators()) {
@@ -1,6 +1,8 @@
 package org.zstack.identity;
 
+import org.zstack.core.config.GlobalConfig;
 import org.zstack.core.config.GlobalConfigDefinition;
+import org.zstack.core.config.GlobalConfigValidation;
 
 /**
  * Created by MaJin on 2017/12/26.
@@ -8,4 +10,7 @@ import org.zstack.core.config.GlobalConfigDefinition;
 @GlobalConfigDefinition
 public class QuotaGlobalConfig {
     public static final String CATEGORY = "quota";
+
+    @GlobalConfigValidation(numberGreaterThan = 0)
+    public static GlobalConfig USAGE_LEDGER_RECONCILE_INTERVAL = new GlobalConfig(CATEGORY, "usageLedger.reconcileInterval");
 }
@@ -0,0 +1,442 @@
+package org.zstack.identity;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.zstack.core.cloudbus.ResourceDestinationMaker;
+import org.zstack.core.config.GlobalConfig;
+import org.zstack.core.config.GlobalConfigUpdateExtensionPoint;
+import org.zstack.core.db.BulkUpdateEntityExtensionPoint;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.EntityEvent;
+import org.zstack.core.db.HardDeleteEntityExtensionPoint;
+import org.zstack.core.db.SoftDeleteEntityExtensionPoint;
+import org.zstack.core.thread.PeriodicTask;
+import org.zstack.core.thread.ThreadFacade;
+import org.zstack.header.Component;
+import org.zstack.header.identity.AccountResourceRefInventory;
+import org.zstack.header.identity.AccountResourceRefVO;
+import org.zstack.header.identity.ResourceOwnerAfterChangeExtensionPoint;
+import org.zstack.header.vo.ResourceVO;
+import org.zstack.utils.BeanUtils;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import javax.persistence.Entity;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Quota usages of accounts kept in memory, so quota checks don't aggregate over all resources
+ * of an account every time.
+ *
+ * Each resource contributes usages by quota name, e.g. a running VM contributes its cpu and
+ * memory, and the usages of an account are the sum of its resources. An account is loaded from
+ * the database the first time its usages are asked for, and then kept up to date with its
+ * resources persisted, updated, deleted or changing owner on this management node. Changes are
+ * applied after their transaction commits, a rolled back change is never seen.
+ *
+ * Changes made by native SQL or by other management nodes aren't seen, so all accounts are
+ * dropped every QuotaGlobalConfig.USAGE_LEDGER_RECONCILE_INTERVAL seconds and the ledger is not
+ * used when there is more than one management node.
+ */
+public abstract class QuotaUsageLedger implements Component, SoftDeleteEntityExtensionPoint,
+        HardDeleteEntityExtensionPoint, BulkUpdateEntityExtensionPoint, ResourceOwnerAfterChangeExtensionPoint {
+    private static final CLogger logger = Utils.getLogger(QuotaUsageLedger.class);
+
+    @Autowired
+    protected DatabaseFacade dbf;
+    @Autowired
+    private ThreadFacade thdf;
+    @Autowired
+    private ResourceDestinationMaker destMaker;
+
+    private static class AccountUsage {
+        final Map<String, Long> total = new HashMap<>();
+        final Map<String, Map<String, Long>> resources = new HashMap<>();
+    }
+
+    private final Map<String, AccountUsage> accounts = new HashMap<>();
+    // resource uuid -> account uuid, for resources of loaded accounts
+    private final Map<String, String> owners = new HashMap<>();
+    // usages of resources persisted before their AccountResourceRefVO
+    private final Map<String, Map<String, Long>> unowned = new HashMap<>();
+    // counts changes of resources not known to belong to a loaded account, an account loaded
+    // across such a change may miss it and is not kept
+    private long untrackedChanges;
+    private final Map<String, Object> loadLocks = new ConcurrentHashMap<>();
+
+    private List<Class> entityClasses;
+    private Set<String> resourceTypeNames;
+    private Future<Void> reconcileTask;
+
+    /**
+     * @return base classes of the tracked resources, as in AccountResourceRefVO.resourceType
+     */
+    protected abstract List<Class> getResourceTypes();
+
+    /**
+     * @return usages by quota name that the resource entity contributes to its account
+     */
+    protected abstract Map<String, Long> calculateUsages(Object entity);
+
+    /**
+     * @return usages of all tracked resources of the account, by resource uuid
+     */
+    protected abstract Map<String, Map<String, Long>> loadUsages(String accountUuid);
+
+    /**
+     * @return names of the entity fields calculateUsages() reads, a bulk update setting none of
+     * them doesn't change usages
+     */
+    protected abstract Set<String> getUsageFields();
+
+    protected static void addUsage(Map<String, Long> usages, String name, long value) {
+        usages.merge(name, value, Long::sum);
+    }
+
+    public boolean isEnabled() {
+        if (destMaker.getManagementNodeCount() == 1) {
+            return true;
+        }
+
+        // changes made by other management nodes are not seen, start over when this one is alone again
+        reset();
+        return false;
+    }
+
+    /**
+     * @return usages by quota name of the account, without the usages of the excluded resource
+     */
+    public Map<String, Long> getAccountUsages(String accountUuid, String excludeResourceUuid) {
+        synchronized (this) {
+            AccountUsage usage = accounts.get(accountUuid);
+            if (usage != null) {
+                return usagesWithout(usage, excludeResourceUuid);
+            }
+        }
+
+        // load accounts in parallel, but each account once
+        Object lock = loadLocks.computeIfAbsent(accountUuid, k -> new Object());
+        synchronized (lock) {
+            try {
+                long changes;
+                synchronized (this) {
+                    AccountUsage usage = accounts.get(accountUuid);
+                    if (usage != null) {
+                        return usagesWithout(usage, excludeResourceUuid);
+                    }
+
+                    changes = untrackedChanges;
+                }
+
+                Map<String, Map<String, Long>> loaded = loadUsages(accountUuid);
+                AccountUsage usage = new AccountUsage();
+                loaded.forEach((resourceUuid, usages) -> set(usage, resourceUuid, usages));
+
+                synchronized (this) {
+                    if (changes == untrackedChanges) {
+                        loaded.keySet().forEach(resourceUuid -> owners.put(resourceUuid, accountUuid));
+                        accounts.put(accountUuid, usage);
+                    }
+
+                    return usagesWithout(usage, excludeResourceUuid);
+                }
+            } finally {
+                loadLocks.remove(accountUuid, lock);
+            }
+        }
+    }
+
+    private static Map<String, Long> usagesWithout(AccountUsage usage, String excludeResourceUuid) {
+        Map<String, Long> ret = new HashMap<>(usage.total);
+        Map<String, Long> excluded = excludeResourceUuid == null ? null : usage.resources.get(excludeResourceUuid);
+        if (excluded != null) {
+            excluded.forEach((name, value) -> addUsage(ret, name, -value));
+        }
+
+        return ret;
+    }
+
+    public long getAccountUsage(String accountUuid, String quotaName) {
+        return getAccountUsages(accountUuid, null).getOrDefault(quotaName, 0L);
+    }
+
+    public synchronized void reset() {
+        accounts.clear();
+        owners.clear();
+        unowned.clear();
+        untrackedChanges++;
+    }
+
+    /**
+     * runs the change after the current transaction commits, or now if there is none
+     */
+    private static void afterCommit(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                change.run();
+            }
+        });
+    }
+
+    private void set(AccountUsage usage, String resourceUuid, Map<String, Long> usages) {
+        Map<String, Long> old = usage.resources.put(resourceUuid, usages);
+        if (old != null) {
+            old.forEach((name, value) -> addUsage(usage.total, name, -value));
+        }
+
+        usages.forEach((name, value) -> addUsage(usage.total, name, value));
+    }
+
+    private Map<String, Long> detach(String resourceUuid) {
+        unowned.remove(resourceUuid);
+
+        String accountUuid = owners.remove(resourceUuid);
+        AccountUsage usage = accountUuid == null ? null : accounts.get(accountUuid);
+        if (usage == null) {
+            untrackedChanges++;
+            return null;
+        }
+
+        Map<String, Long> old = usage.resources.remove(resourceUuid);
+        if (old != null) {
+            old.forEach((name, value) -> addUsage(usage.total, name, -value));
+        }
+
+        return old;
+    }
+
+    private void drop(String accountUuid) {
+        AccountUsage usage = accounts.remove(accountUuid);
+        if (usage != null) {
+            usage.resources.keySet().forEach(owners::remove);
+        }
+    }
+
+    private void entityChanged(Object entity, boolean persisted) {
+        // the entity may change again before the commit, take its usages now
+        String resourceUuid = ((ResourceVO) entity).getUuid();
+        Map<String, Long> usages = calculateUsages(entity);
+        afterCommit(() -> applyEntityChange(resourceUuid, usages, persisted));
+    }
+
+    private synchronized void applyEntityChange(String resourceUuid, Map<String, Long> usages, boolean persisted) {
+        String accountUuid = owners.get(resourceUuid);
+        if (accountUuid != null) {
+            set(accounts.get(accountUuid), resourceUuid, usages);
+            return;
+        }
+
+        untrackedChanges++;
+        if (persisted || unowned.containsKey(resourceUuid)) {
+            unowned.put(resourceUuid, usages);
+        }
+    }
+
+    private void entitiesRemoved(Collection entityIds) {
+        List<String> uuids = ((Collection<Object>) entityIds).stream().map(Object::toString).collect(Collectors.toList());
+        afterCommit(() -> {
+            synchronized (this) {
+                uuids.forEach(this::detach);
+            }
+        });
+    }
+
+    private void refPersisted(AccountResourceRefVO ref) {
+        if (!resourceTypeNames.contains(ref.getResourceType())) {
+            return;
+        }
+
+        String resourceUuid = ref.getResourceUuid();
+        String accountUuid = ref.getAccountUuid();
+        afterCommit(() -> applyRefPersisted(resourceUuid, accountUuid));
+    }
+
+    private synchronized void applyRefPersisted(String resourceUuid, String accountUuid) {
+        untrackedChanges++;
+        Map<String, Long> usages = unowned.remove(resourceUuid);
+        AccountUsage usage = accounts.get(accountUuid);
+        if (usage == null) {
+            return;
+        }
+
+        if (usages == null) {
+            // the resource wasn't seen, load the account again when asked
+            drop(accountUuid);
+            return;
+        }
+
+        owners.put(resourceUuid, accountUuid);
+        set(usage, resourceUuid, usages);
+    }
+
+    private List<Class> getEntityClasses() {
+        if (entityClasses == null) {
+            List<Class> classes = new ArrayList<>();
+            for (Class type : getResourceTypes()) {
+                classes.add(type);
+                BeanUtils.reflections.getSubTypesOf(type).stream()
+                        .filter(clz -> clz.isAnnotationPresent(Entity.class))
+                        .forEach(classes::add);
+            }
+
+            entityClasses = classes;
+        }
+
+        return entityClasses;
+    }
+
+    @Override
+    public List<Class> getEntityClassForSoftDeleteEntityExtension() {
+        return getEntityClasses();
+    }
+
+    @Override
+    public void postSoftDelete(Collection entityIds, Class entityClass) {
+        entitiesRemoved(entityIds);
+    }
+
+    @Override
+    public List<Class> getEntityClassForHardDeleteEntityExtension() {
+        return getEntityClasses();
+    }
+
+    @Override
+    public void postHardDelete(Collection entityIds, Class entityClass) {
+        entitiesRemoved(entityIds);
+    }
+
+    @Override
+    public List<Class> getEntityClassForBulkUpdateEntityExtension() {
+        return getEntityClasses();
+    }
+
+    @Override
+    public void postBulkUpdate(Collection entityIds, Class entityClass, Collection<String> updatedFields) {
+        if (updatedFields.stream().noneMatch(getUsageFields()::contains)) {
+            return;
+        }
+
+        // the updated values are unknown, drop the accounts owning the entities so they are
+        // loaded again when asked
+        List<String> uuids = entityIds == null ? null :
+                ((Collection<Object>) entityIds).stream().map(Object::toString).collect(Collectors.toList());
+        afterCommit(() -> {
+            if (uuids == null) {
+                reset();
+                return;
+            }
+
+            synchronized (this) {
+                for (String uuid : uuids) {
+                    String accountUuid = owners.get(uuid);
+                    if (accountUuid != null) {
+                        drop(accountUuid);
+                    } else {
+                        untrackedChanges++;
+                        unowned.remove(uuid);
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void resourceOwnerAfterChange(AccountResourceRefInventory ref, String newOwnerUuid) {
+        if (!resourceTypeNames.contains(ref.getResourceType())) {
+            return;
+        }
+
+        String resourceUuid = ref.getResourceUuid();
+        afterCommit(() -> applyOwnerChange(resourceUuid, newOwnerUuid));
+    }
+
+    private synchronized void applyOwnerChange(String resourceUuid, String newOwnerUuid) {
+        untrackedChanges++;
+        Map<String, Long> usages = detach(resourceUuid);
+        AccountUsage usage = accounts.get(newOwnerUuid);
+        if (usage == null) {
+            return;
+        }
+
+        if (usages == null) {
+            // the resource isn't known, load the new owner again when asked
+            drop(newOwnerUuid);
+            return;
+        }
+
+        owners.put(resourceUuid, newOwnerUuid);
+        set(usage, resourceUuid, usages);
+    }
+
+    private synchronized void startReconcileTask() {
+        if (reconcileTask != null) {
+            reconcileTask.cancel(true);
+        }
+
+        reconcileTask = thdf.submitPeriodicTask(new PeriodicTask() {
+            @Override
+            public TimeUnit getTimeUnit() {
+                return TimeUnit.SECONDS;
+            }
+
+            @Override
+            public long getInterval() {
+                return QuotaGlobalConfig.USAGE_LEDGER_RECONCILE_INTERVAL.value(Long.class);
+            }
+
+            @Override
+            public String getName() {
+                return String.format("reconcile-%s", QuotaUsageLedger.this.getClass().getSimpleName());
+            }
+
+            @Override
+            public void run() {
+                reset();
+                logger.debug(String.format("%s is reset, usages will be reloaded from the database",
+                        QuotaUsageLedger.this.getClass().getSimpleName()));
+            }
+        });
+    }
+
+    @Override
+    public boolean start() {
+        resourceTypeNames = getResourceTypes().stream().map(Class::getSimpleName).collect(Collectors.toSet());
+
+        for (Class clz : getEntityClasses()) {
+            dbf.installEntityLifeCycleCallback(clz, EntityEvent.POST_PERSIST, (evt, o) -> entityChanged(o, true));
+            dbf.installEntityLifeCycleCallback(clz, EntityEvent.POST_UPDATE, (evt, o) -> entityChanged(o, false));
+            dbf.installEntityLifeCycleCallback(clz, EntityEvent.POST_REMOVE,
+                    (evt, o) -> entitiesRemoved(Collections.singletonList(((ResourceVO) o).getUuid())));
+        }
+        dbf.installEntityLifeCycleCallback(AccountResourceRefVO.class, EntityEvent.POST_PERSIST,
+                (evt, o) -> refPersisted((AccountResourceRefVO) o));
+
+        QuotaGlobalConfig.USAGE_LEDGER_RECONCILE_INTERVAL.installUpdateExtension(new GlobalConfigUpdateExtensionPoint() {
+            @Override
+            public void updateGlobalConfig(GlobalConfig oldConfig, GlobalConfig newConfig) {
+                startReconcileTask();
+            }
+        });
+        startReconcileTask();
+        return true;
+    }
+
+    @Override
+    public boolean stop() {
+        if (reconcileTask != null) {
+            reconcileTask.cancel(true);
+        }
+        return true;
+    }
+}
@@ -4,6 +4,9 @@ import org.springframework.beans.factory.annotation.Autowire;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Configurable;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.zstack.core.cloudbus.ResourceDestinationMaker;
 import org.zstack.core.db.DatabaseFacade;
 import org.zstack.core.db.SimpleQuery;
 import org.zstack.core.errorcode.ErrorFacade;
@@ -16,6 +19,7 @@ import javax.persistence.Tuple;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.zstack.core.Platform.err;
 
@@ -28,6 +32,13 @@ public class QuotaUtil {
     private ErrorFacade errf;
     @Autowired
     private DatabaseFacade dbf;
+    @Autowired
+    private ResourceDestinationMaker destMaker;
+
+    // quota values of accounts by quota name, evicted when QuotaVO of the account changes. An
+    // account is loaded inside computeIfAbsent(), an eviction waits for the load so a value
+    // loaded before a change can't be put back after the change evicts it
+    private static final Map<String, Map<String, Long>> quotaValues = new ConcurrentHashMap<>();
 
     public static class QuotaCompareInfo {
         public String currentAccountUuid;
@@ -66,22 +77,50 @@ public class QuotaUtil {
         }
     }
 
-    public Map<String, Quota.QuotaPair> makeQuotaPairs(String accountUuid) {
+    /**
+     * evicts the quota values of the account now and, if called in a transaction, after the
+     * transaction commits, so values loaded before the commit are not kept
+     */
+    public static void evictQuotaPairs(String accountUuid) {
+        quotaValues.remove(accountUuid);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    quotaValues.remove(accountUuid);
+                }
+            });
+        }
+    }
+
+    private Map<String, Long> loadQuotaValues(String accountUuid) {
         SimpleQuery<QuotaVO> q = dbf.createQuery(QuotaVO.class);
         q.select(QuotaVO_.name, QuotaVO_.value);
         q.add(QuotaVO_.identityType, SimpleQuery.Op.EQ, AccountVO.class.getSimpleName());
         q.add(QuotaVO_.identityUuid, SimpleQuery.Op.EQ, accountUuid);
         List<Tuple> ts = q.listTuple();
 
-        Map<String, Quota.QuotaPair> pairs = new HashMap<>();
+        Map<String, Long> values = new HashMap<>();
         for (Tuple t : ts) {
-            String name = t.get(0, String.class);
-            long value = t.get(1, Long.class);
+            values.put(t.get(0, String.class), t.get(1, Long.class));
+        }
+
+        return values;
+    }
+
+    public Map<String, Quota.QuotaPair> makeQuotaPairs(String accountUuid) {
+        // quotas may be updated by other management nodes
+        Map<String, Long> values = destMaker.getManagementNodeCount() == 1 ?
+                quotaValues.computeIfAbsent(accountUuid, this::loadQuotaValues) : loadQuotaValues(accountUuid);
+
+        Map<String, Quota.QuotaPair> pairs = new HashMap<>();
+        values.forEach((name, value) -> {
             Quota.QuotaPair p = new Quota.QuotaPair();
             p.setName(name);
             p.setValue(value);
             pairs.put(name, p);
-        }
+        });
 
         return pairs;
     }
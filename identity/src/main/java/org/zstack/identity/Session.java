@@ -40,8 +40,24 @@ public class Session implements Component {
     private EventFacade evtf;
 
     private Future<Void> expiredSessionCollector;
+    private Future<Void> sqlClockSynchronizer;
+    private Future<Void> renewalFlusher;
 
     private static Map<String, SessionInventory> sessions = new ConcurrentHashMap<>();
+    // expired dates of renewed sessions not written to the database yet
+    private static Map<String, Timestamp> pendingRenewals = new ConcurrentHashMap<>();
+    // database time minus local time, so the database time can be told without asking the database
+    private static volatile long sqlClockOffset;
+
+    private static final long RENEWAL_FLUSH_INTERVAL = 1;
+
+    private static Timestamp getCurrentSqlTime() {
+        return new Timestamp(System.currentTimeMillis() + sqlClockOffset);
+    }
+
+    private static EventFacade getEventFacade() {
+        return getComponentLoader().getComponent(EventFacade.class);
+    }
 
     public static SessionInventory login(String accountUuid, String userUuid) {
         if (IdentityGlobalConfig.ENABLE_UNIQUE_SESSION.value(Boolean.class)) {
@@ -67,12 +83,6 @@ public class Session implements Component {
         }
 
         return new SQLBatchWithReturn<SessionInventory>() {
-            @Transactional(readOnly = true)
-            private Timestamp getCurrentSqlDate() {
-                Query query = databaseFacade.getEntityManager().createNativeQuery("select current_timestamp()");
-                return (Timestamp) query.getSingleResult();
-            }
-
             @Override
             protected SessionInventory scripts() {
                 if (q(SessionVO.class).eq(SessionVO_.userUuid, userUuid).count() >= IdentityGlobalConfig.MAX_CONCURRENT_SESSION.value(Integer.class)) {
@@ -83,7 +93,7 @@ public class Session implements Component {
                 vo.setUuid(Platform.getUuid());
                 vo.setAccountUuid(accountUuid);
                 vo.setUserUuid(userUuid);
-                long expiredTime = getCurrentSqlDate().getTime() + TimeUnit.SECONDS.toMillis(IdentityGlobalConfig.SESSION_TIMEOUT.value(Long.class));
+                long expiredTime = getCurrentSqlTime().getTime() + TimeUnit.SECONDS.toMillis(IdentityGlobalConfig.SESSION_TIMEOUT.value(Long.class));
                 vo.setExpiredDate(new Timestamp(expiredTime));
                 persist(vo);
                 reload(vo);
@@ -102,30 +112,61 @@ public class Session implements Component {
             extendPeriod = IdentityGlobalConfig.SESSION_TIMEOUT.value(Long.class);
         }
 
-        Long finalExtendPeriod = extendPeriod;
-        SessionInventory session = new SQLBatchWithReturn<SessionInventory>() {
-            @Transactional(readOnly = true)
-            private Timestamp getCurrentSqlDate() {
-                Query query = databaseFacade.getEntityManager().createNativeQuery("select current_timestamp()");
-                return (Timestamp) query.getSingleResult();
-            }
+        Timestamp expiredDate = new Timestamp(TimeUnit.SECONDS.toMillis(extendPeriod) + getCurrentSqlTime().getTime());
+        SessionInventory s = getSession(uuid);
+        s.setExpiredDate(expiredDate);
+        // every API renews its session, write the expired dates to the database in batches
+        pendingRenewals.put(uuid, expiredDate);
 
-            @Override
-            protected SessionInventory scripts() {
-               Timestamp expiredDate = new Timestamp(TimeUnit.SECONDS.toMillis(finalExtendPeriod) + getCurrentSqlDate().getTime());
-               SessionInventory s = getSession(uuid);
-               s.setExpiredDate(expiredDate);
+        return s;
+    }
 
-               sql(SessionVO.class).eq(SessionVO_.uuid, uuid).set(SessionVO_.expiredDate, expiredDate).update();
+    /**
+     * Renew a session on request. Unlike the renewal of every API, other management nodes
+     * are told the new expired date at once
+     */
+    public static SessionInventory renewSessionAndNotify(String uuid, Long extendPeriod) {
+        SessionInventory s = renewSession(uuid, extendPeriod);
+
+        IdentityCanonicalEvents.SessionRenewedData data = new IdentityCanonicalEvents.SessionRenewedData();
+        data.setSessionUuid(uuid);
+        data.setExpiredDate(s.getExpiredDate());
+        getEventFacade().fire(IdentityCanonicalEvents.SESSION_RENEWED_PATH, data);
+
+        return s;
+    }
 
-               return s;
+    private static synchronized void flushRenewals() {
+        if (pendingRenewals.isEmpty()) {
+            return;
+        }
+
+        Map<String, Timestamp> renewals = new HashMap<>();
+        for (String uuid : pendingRenewals.keySet()) {
+            Timestamp expiredDate = pendingRenewals.remove(uuid);
+            if (expiredDate != null) {
+                renewals.put(uuid, expiredDate);
             }
-        }.execute();
+        }
 
-        return session;
+        try {
+            new SQLBatch() {
+                @Override
+                protected void scripts() {
+                    renewals.forEach((uuid, expiredDate) ->
+                            sql(SessionVO.class).eq(SessionVO_.uuid, uuid).set(SessionVO_.expiredDate, expiredDate).update());
+                }
+            }.execute();
+        } catch (RuntimeException e) {
+            // try again next time unless renewed again meanwhile
+            renewals.forEach(pendingRenewals::putIfAbsent);
+            throw e;
+        }
     }
 
     public static void logout(String uuid) {
+        pendingRenewals.remove(uuid);
+
         new SQLBatch() {
             @Override
             protected void scripts() {
@@ -147,24 +188,28 @@ public class Session implements Component {
                 sql(SessionVO.class).eq(SessionVO_.uuid, uuid).hardDelete();
             }
         }.execute();
+
+        IdentityCanonicalEvents.SessionDeletedData data = new IdentityCanonicalEvents.SessionDeletedData();
+        data.setSessionUuid(uuid);
+        getEventFacade().fire(IdentityCanonicalEvents.SESSION_DELETED_PATH, data);
     }
 
     /**
      * Check if session which matches specific uuid is expired.
-     * Validate the session store in cache first. if it is expired,
-     * remove it from cache. And then check the expired date in db,
-     * if it is expired, logout the session (delete db record)
+     * Validate the session store in cache first, against the database time
+     * told by the local clock. if it is expired, check the expired date in
+     * db, which may be renewed by other management nodes, if it is expired,
+     * logout the session (delete db record)
      * @param uuid uuid of a session
      * @return if session is expired, return an error code, else return null
      */
     public static ErrorCode checkSessionExpired(String uuid) {
-        return new SQLBatchWithReturn<ErrorCode>() {
-            @Transactional(readOnly = true)
-            private Timestamp getCurrentSqlDate() {
-                Query query = databaseFacade.getEntityManager().createNativeQuery("select current_timestamp()");
-                return (Timestamp) query.getSingleResult();
-            }
+        SessionInventory cached = sessions.get(uuid);
+        if (cached != null && getCurrentSqlTime().before(cached.getExpiredDate())) {
+            return null;
+        }
 
+        return new SQLBatchWithReturn<ErrorCode>() {
             @Override
             protected ErrorCode scripts() {
                 SessionInventory s = getSession(uuid);
@@ -172,7 +217,7 @@ public class Session implements Component {
                     return err(IdentityErrors.INVALID_SESSION, "Session expired");
                 }
 
-                Timestamp curr = getCurrentSqlDate();
+                Timestamp curr = getCurrentSqlTime();
                 if (curr.after(s.getExpiredDate())) {
                     if (logger.isTraceEnabled()) {
                         logger.debug(String.format("session expired[%s < %s] for account[uuid:%s] in cache", curr,
@@ -228,6 +273,9 @@ public class Session implements Component {
     @Override
     public boolean start() {
         setupGlobalConfig();
+        syncSqlClock();
+        startSyncSqlClockTask();
+        startFlushRenewalsTask();
         startCleanUpStaleSessionTask();
         setupCanonicalEvents();
         return true;
@@ -235,6 +283,66 @@ public class Session implements Component {
 
     private void setupGlobalConfig() {
         IdentityGlobalConfig.SESSION_CLEANUP_INTERVAL.installUpdateExtension((oldConfig, newConfig) -> startCleanUpStaleSessionTask());
+        IdentityGlobalConfig.SESSION_CLOCK_SYNC_INTERVAL.installUpdateExtension((oldConfig, newConfig) -> startSyncSqlClockTask());
+    }
+
+    private void syncSqlClock() {
+        long before = System.currentTimeMillis();
+        long sqlTime = dbf.getCurrentSqlTime().getTime();
+        long after = System.currentTimeMillis();
+        sqlClockOffset = sqlTime - (before + after) / 2;
+    }
+
+    private void startSyncSqlClockTask() {
+        if (sqlClockSynchronizer != null) {
+            sqlClockSynchronizer.cancel(true);
+        }
+
+        sqlClockSynchronizer = thdf.submitPeriodicTask(new PeriodicTask() {
+            @Override
+            public void run() {
+                syncSqlClock();
+            }
+
+            @Override
+            public TimeUnit getTimeUnit() {
+                return TimeUnit.SECONDS;
+            }
+
+            @Override
+            public long getInterval() {
+                return IdentityGlobalConfig.SESSION_CLOCK_SYNC_INTERVAL.value(Long.class);
+            }
+
+            @Override
+            public String getName() {
+                return "SessionSqlClockSyncThread";
+            }
+        });
+    }
+
+    private void startFlushRenewalsTask() {
+        renewalFlusher = thdf.submitPeriodicTask(new PeriodicTask() {
+            @Override
+            public void run() {
+                flushRenewals();
+            }
+
+            @Override
+            public TimeUnit getTimeUnit() {
+                return TimeUnit.SECONDS;
+            }
+
+            @Override
+            public long getInterval() {
+                return RENEWAL_FLUSH_INTERVAL;
+            }
+
+            @Override
+            public String getName() {
+                return "SessionRenewalFlushThread";
+            }
+        });
     }
 
     private void startCleanUpStaleSessionTask() {
@@ -257,14 +365,8 @@ public class Session implements Component {
                 return uuids;
             }
 
-            @Transactional(readOnly = true)
-            private Timestamp getCurrentSqlDate() {
-                Query query = dbf.getEntityManager().createNativeQuery("select current_timestamp()");
-                return (Timestamp) query.getSingleResult();
-            }
-
             private void deleteExpiredCachedSessions() {
-                Timestamp curr = getCurrentSqlDate();
+                Timestamp curr = getCurrentSqlTime();
                 List<String> staleSessionUuidInCache = sessions.entrySet().stream().filter(entry -> curr.after(entry.getValue().getExpiredDate())).map(entry -> entry.getKey()).collect(Collectors.toList());
 
                 for (String uuid : staleSessionUuidInCache) {
@@ -275,6 +377,9 @@ public class Session implements Component {
 
             @Override
             public void run() {
+                // don't delete sessions renewed but not written yet
+                flushRenewals();
+
                 List<String> uuids = deleteExpiredSessions();
                 for (String uuid : uuids) {
                     logger.debug(String.format("found session[uuid:%s] expired in DB, also remove it from cache", uuid));
@@ -308,10 +413,40 @@ public class Session implements Component {
             expiredSessionCollector.cancel(true);
         }
 
+        if (sqlClockSynchronizer != null) {
+            sqlClockSynchronizer.cancel(true);
+        }
+
+        if (renewalFlusher != null) {
+            renewalFlusher.cancel(true);
+        }
+
+        flushRenewals();
+
         return true;
     }
 
     private void setupCanonicalEvents() {
+        evtf.on(IdentityCanonicalEvents.SESSION_DELETED_PATH, new EventCallback() {
+            @Override
+            public void run(Map tokens, Object data) {
+                IdentityCanonicalEvents.SessionDeletedData d = (IdentityCanonicalEvents.SessionDeletedData) data;
+                pendingRenewals.remove(d.getSessionUuid());
+                sessions.remove(d.getSessionUuid());
+            }
+        });
+
+        evtf.on(IdentityCanonicalEvents.SESSION_RENEWED_PATH, new EventCallback() {
+            @Override
+            public void run(Map tokens, Object data) {
+                IdentityCanonicalEvents.SessionRenewedData d = (IdentityCanonicalEvents.SessionRenewedData) data;
+                SessionInventory s = sessions.get(d.getSessionUuid());
+                if (s != null && s.getExpiredDate().before(d.getExpiredDate())) {
+                    s.setExpiredDate(new Timestamp(d.getExpiredDate().getTime()));
+                }
+            }
+        });
+
         evtf.on(IdentityCanonicalEvents.ACCOUNT_DELETED_PATH, new EventCallback() {
             @Override
             public void run(Map tokens, Object data) {
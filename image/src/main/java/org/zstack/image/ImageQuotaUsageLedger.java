@@ -0,0 +1,61 @@
+package org.zstack.image;
+
+import org.zstack.core.db.SQL;
+import org.zstack.header.image.ImageVO;
+import org.zstack.header.image.ImageVO_;
+import org.zstack.identity.QuotaUsageLedger;
+
+import javax.persistence.Tuple;
+import java.util.*;
+
+import static org.zstack.utils.CollectionDSL.list;
+
+/**
+ * Usages of the image quotas of accounts, contributed by each image the same way
+ * ImageQuotaUtil counts them in the database.
+ */
+public class ImageQuotaUsageLedger extends QuotaUsageLedger {
+    @Override
+    protected List<Class> getResourceTypes() {
+        return list(ImageVO.class);
+    }
+
+    private static Map<String, Long> imageUsages(long actualSize) {
+        Map<String, Long> usages = new HashMap<>();
+        addUsage(usages, ImageQuotaConstant.IMAGE_NUM, 1);
+        addUsage(usages, ImageQuotaConstant.IMAGE_SIZE, actualSize);
+        return usages;
+    }
+
+    @Override
+    protected Set<String> getUsageFields() {
+        return Collections.singleton(ImageVO_.actualSize.getName());
+    }
+
+    @Override
+    protected Map<String, Long> calculateUsages(Object entity) {
+        return imageUsages(((ImageVO) entity).getActualSize());
+    }
+
+    private static Map<String, Map<String, Long>> toUsages(List<Tuple> ts) {
+        Map<String, Map<String, Long>> ret = new HashMap<>();
+        for (Tuple t : ts) {
+            Long actualSize = t.get(1, Long.class);
+            ret.put(t.get(0, String.class), imageUsages(actualSize == null ? 0 : actualSize));
+        }
+
+        return ret;
+    }
+
+    @Override
+    protected Map<String, Map<String, Long>> loadUsages(String accountUuid) {
+        return toUsages(SQL.New("select image.uuid, image.actualSize" +
+                " from ImageVO image, AccountResourceRefVO ref" +
+                " where image.uuid = ref.resourceUuid" +
+                " and ref.accountUuid = :auuid" +
+                " and ref.resourceType = :rtype", Tuple.class)
+                .param("auuid", accountUuid)
+                .param("rtype", ImageVO.class.getSimpleName())
+                .list());
+    }
+}
@@ -38,6 +38,8 @@ public class ImageQuotaUtil {
     private CloudBus bus;
     @Autowired
     protected RESTFacade restf;
+    @Autowired
+    private ImageQuotaUsageLedger ledger;
 
     public class ImageQuota {
         public long imageNum;
@@ -56,6 +58,10 @@ public class ImageQuotaUtil {
 
     @Transactional(readOnly = true)
     public long getUsedImageNum(String accountUuid) {
+        if (ledger.isEnabled()) {
+            return ledger.getAccountUsage(accountUuid, ImageQuotaConstant.IMAGE_NUM);
+        }
+
         String sql = "select count(image) " +
                 " from ImageVO image, AccountResourceRefVO ref " +
                 " where image.uuid = ref.resourceUuid " +
@@ -71,6 +77,10 @@ public class ImageQuotaUtil {
 
     @Transactional(readOnly = true)
     public long getUsedImageSize(String accountUuid) {
+        if (ledger.isEnabled()) {
+            return ledger.getAccountUsage(accountUuid, ImageQuotaConstant.IMAGE_SIZE);
+        }
+
         String sql = "select sum(image.actualSize) " +
                 " from ImageVO image ,AccountResourceRefVO ref " +
                 " where image.uuid = ref.resourceUuid " +
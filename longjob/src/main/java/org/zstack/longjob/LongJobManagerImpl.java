@@ -516,6 +516,7 @@ public class LongJobManagerImpl extends AbstractService implements LongJobManage
         Runnable cleanup = ThreadContextUtils.saveThreadContext();
         Defer.defer(cleanup);
         ThreadContext.put(Constants.THREAD_CONTEXT_API, vo.getApiId());
+        ThreadContext.put(Constants.THREAD_CONTEXT_API_NAME, vo.getJobName());
         ThreadContext.put(Constants.THREAD_CONTEXT_TASK_NAME, job.getClass().toString());
 
         logger.info(String.format("start to resume longjob [uuid:%s, name:%s]", vo.getUuid(), vo.getName()));
@@ -531,6 +532,7 @@ public class LongJobManagerImpl extends AbstractService implements LongJobManage
         Runnable cleanup = ThreadContextUtils.saveThreadContext();
         Defer.defer(cleanup);
         ThreadContext.put(Constants.THREAD_CONTEXT_API, vo.getApiId());
+        ThreadContext.put(Constants.THREAD_CONTEXT_API_NAME, vo.getJobName());
         ThreadContext.put(Constants.THREAD_CONTEXT_TASK_NAME, job.getClass().toString());
         job.start(vo, buildJobOverCompletion(job, vo, async));
         return vo;
@@ -221,6 +221,8 @@ public class L3BasicNetwork implements L3Network {
                 return null;
             }
         }.run();
+        CollectionUtils.safeForEach(pluginRgty.getExtensionList(AfterReturnIpExtensionPoint.class),
+                ext -> ext.afterReturnIp(msg.getL3NetworkUuid(), msg.getUsedIpUuid()));
         logger.debug(String.format("Successfully released used ip[%s]", msg.getUsedIpUuid()));
         bus.reply(msg, reply);
     }
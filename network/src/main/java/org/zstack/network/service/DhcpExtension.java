@@ -2,7 +2,6 @@ package org.zstack.network.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.zstack.core.componentloader.PluginRegistry;
-import org.zstack.core.db.Q;
 import org.zstack.core.db.SimpleQuery;
 import org.zstack.core.db.SimpleQuery.Op;
 import org.zstack.header.Component;
@@ -125,13 +124,13 @@ public class DhcpExtension extends AbstractNetworkServiceExtension implements Co
         return nic.getUsedIps().stream().map(UsedIpInventory::getL3NetworkUuid).distinct().count() == 1;
     }
 
-    private DhcpStruct getDhcpStruct(VmInstanceInventory vm, List<VmInstanceSpec.HostName> hostNames, VmNicVO nic, UsedIpVO ip, boolean isDefaultNic) {
+    private DhcpStruct getDhcpStruct(VmInstanceInventory vm, List<VmInstanceSpec.HostName> hostNames, VmNicVO nic, UsedIpVO ip, boolean isDefaultNic, DhcpStructCache cache) {
         String l3Uuid = nic.getL3NetworkUuid();
         if (ip != null) {
             l3Uuid = ip.getL3NetworkUuid();
         }
 
-        L3NetworkInventory l3 = L3NetworkInventory.valueOf(dbf.findByUuid(l3Uuid, L3NetworkVO.class));
+        L3NetworkInventory l3 = cache.getL3Network(l3Uuid);
         DhcpStruct struct = new DhcpStruct();
         struct.setVmUuid(nic.getVmInstanceUuid());
         String hostname = CollectionUtils.find(hostNames, new Function<String, HostName>() {
@@ -148,12 +147,12 @@ public class DhcpExtension extends AbstractNetworkServiceExtension implements Co
         struct.setL3Network(l3);
         struct.setDefaultL3Network(isDefaultNic);
         struct.setMac(nic.getMac());
-        struct.setMtu(new MtuGetter().getMtu(l3.getUuid()));
+        struct.setMtu(cache.getMtu(l3.getUuid()));
 
         return struct;
     }
 
-    private void setDualStackNicOfSingleL3Network(DhcpStruct struct, VmNicVO nic) {
+    private void setDualStackNicOfSingleL3Network(DhcpStruct struct, VmNicVO nic, DhcpStructCache cache) {
         struct.setIpVersion(IPv6Constants.DUAL_STACK);
         List<UsedIpVO> sortedIps = nic.getUsedIps().stream().sorted(Comparator.comparingLong(UsedIpVO::getIpVersionl)).collect(Collectors.toList());
         for (UsedIpVO ip : sortedIps) {
@@ -165,8 +164,7 @@ public class DhcpExtension extends AbstractNetworkServiceExtension implements Co
                     struct.setHostname(ip.getIp().replaceAll("\\.", "-"));
                 }
             } else {
-                List<NormalIpRangeVO> iprs = Q.New(NormalIpRangeVO.class).eq(NormalIpRangeVO_.l3NetworkUuid, ip.getL3NetworkUuid())
-                        .eq(NormalIpRangeVO_.ipVersion, ip.getIpVersion()).list();
+                List<NormalIpRangeVO> iprs = cache.getIpRanges(ip.getL3NetworkUuid(), ip.getIpVersion());
                 if (iprs.get(0).getAddressMode().equals(IPv6Constants.SLAAC)) {
                     continue;
                 }
@@ -180,7 +178,7 @@ public class DhcpExtension extends AbstractNetworkServiceExtension implements Co
         }
     }
 
-    private void setNicDhcp(DhcpStruct struct, UsedIpVO ip) {
+    private void setNicDhcp(DhcpStruct struct, UsedIpVO ip, DhcpStructCache cache) {
         if (ip.getIpVersion() == IPv6Constants.IPv4) {
             struct.setGateway(ip.getGateway());
             struct.setIp(ip.getIp());
@@ -189,8 +187,7 @@ public class DhcpExtension extends AbstractNetworkServiceExtension implements Co
                 struct.setHostname(ip.getIp().replaceAll("\\.", "-"));
             }
         } else {
-            List<NormalIpRangeVO> iprs = Q.New(NormalIpRangeVO.class).eq(NormalIpRangeVO_.l3NetworkUuid, ip.getL3NetworkUuid())
-                    .eq(NormalIpRangeVO_.ipVersion, IPv6Constants.IPv6).list();
+            List<NormalIpRangeVO> iprs = cache.getIpRanges(ip.getL3NetworkUuid(), IPv6Constants.IPv6);
             struct.setGateway6(ip.getGateway());
             struct.setIp6(ip.getIp());
             struct.setRaMode(iprs.get(0).getAddressMode());
@@ -201,28 +198,36 @@ public class DhcpExtension extends AbstractNetworkServiceExtension implements Co
     }
 
     public List<DhcpStruct> makeDhcpStruct(VmInstanceInventory vm, List<VmInstanceSpec.HostName> hostNames, List<VmNicVO> nics) {
+        return makeDhcpStruct(vm, hostNames, nics, new DhcpStructCache());
+    }
+
+    /**
+     * @param cache the L3 networks, MTUs and IP ranges looked up for the nics, it can be shared
+     *              by calls for many VMs
+     */
+    public List<DhcpStruct> makeDhcpStruct(VmInstanceInventory vm, List<VmInstanceSpec.HostName> hostNames, List<VmNicVO> nics, DhcpStructCache cache) {
         List<DhcpStruct> res = new ArrayList<>();
 
         List<VmNicVO> defaultNics = nics.stream().filter(nic -> nic.getL3NetworkUuid().equals(vm.getDefaultL3NetworkUuid())).collect(Collectors.toList());
         for (VmNicVO nic : nics) {
             boolean isDefaultNic = nic.equals(VmNicVO.findTheEarliestOne(defaultNics));
             if (isDualStackNicInSingleL3Network(VmNicInventory.valueOf(nic))) {
-                DhcpStruct struct = getDhcpStruct(vm, hostNames, nic, null, isDefaultNic);
-                setDualStackNicOfSingleL3Network(struct, nic);
+                DhcpStruct struct = getDhcpStruct(vm, hostNames, nic, null, isDefaultNic, cache);
+                setDualStackNicOfSingleL3Network(struct, nic, cache);
                 res.add(struct);
                 continue;
             }
 
             for (UsedIpVO ip : nic.getUsedIps()) {
-                NormalIpRangeVO ipr = dbf.findByUuid(ip.getIpRangeUuid(), NormalIpRangeVO.class);
+                NormalIpRangeVO ipr = cache.getIpRange(ip.getIpRangeUuid());
                 if (ipr.getIpVersion() == IPv6Constants.IPv6 &&
                         (ipr.getAddressMode().equals(IPv6Constants.SLAAC))) {
                     continue;
                 }
 
-                DhcpStruct struct = getDhcpStruct(vm, hostNames, nic, ip, isDefaultNic);
+                DhcpStruct struct = getDhcpStruct(vm, hostNames, nic, ip, isDefaultNic, cache);
                 struct.setIpVersion(ip.getIpVersion());
-                setNicDhcp(struct, ip);
+                setNicDhcp(struct, ip, cache);
                 res.add(struct);
             }
         }
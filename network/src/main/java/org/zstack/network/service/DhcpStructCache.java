@@ -0,0 +1,60 @@
+package org.zstack.network.service;
+
+import org.zstack.core.db.Q;
+import org.zstack.header.network.l3.*;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * L3 networks, MTUs and normal IP ranges looked up when making DhcpStructs. One cache lives
+ * as long as a batch of DhcpStructs is being made, so the lookups of an L3 network are done
+ * once for all nics of the batch; preload() loads L3 networks and their IP ranges of many nics
+ * in two queries.
+ */
+public class DhcpStructCache {
+    private final Map<String, L3NetworkInventory> l3Networks = new HashMap<>();
+    private final Map<String, Integer> mtus = new HashMap<>();
+    private final Map<String, NormalIpRangeVO> ipRanges = new HashMap<>();
+    private final Map<String, List<NormalIpRangeVO>> l3IpRanges = new HashMap<>();
+
+    public void preload(Collection<String> l3Uuids) {
+        List<String> uuids = l3Uuids.stream().filter(uuid -> !l3Networks.containsKey(uuid)).distinct().collect(Collectors.toList());
+        if (uuids.isEmpty()) {
+            return;
+        }
+
+        List<L3NetworkVO> l3s = Q.New(L3NetworkVO.class).in(L3NetworkVO_.uuid, uuids).list();
+        l3s.forEach(l3 -> l3Networks.put(l3.getUuid(), L3NetworkInventory.valueOf(l3)));
+
+        List<NormalIpRangeVO> iprs = Q.New(NormalIpRangeVO.class).in(NormalIpRangeVO_.l3NetworkUuid, uuids).list();
+        uuids.forEach(uuid -> l3IpRanges.put(uuid, new ArrayList<>()));
+        iprs.forEach(ipr -> {
+            ipRanges.put(ipr.getUuid(), ipr);
+            l3IpRanges.get(ipr.getL3NetworkUuid()).add(ipr);
+        });
+    }
+
+    public L3NetworkInventory getL3Network(String l3Uuid) {
+        return l3Networks.computeIfAbsent(l3Uuid, uuid -> L3NetworkInventory.valueOf(
+                (L3NetworkVO) Q.New(L3NetworkVO.class).eq(L3NetworkVO_.uuid, uuid).find()));
+    }
+
+    public Integer getMtu(String l3Uuid) {
+        return mtus.computeIfAbsent(l3Uuid, uuid -> new MtuGetter().getMtu(uuid));
+    }
+
+    public NormalIpRangeVO getIpRange(String ipRangeUuid) {
+        return ipRanges.computeIfAbsent(ipRangeUuid, uuid -> Q.New(NormalIpRangeVO.class).eq(NormalIpRangeVO_.uuid, uuid).find());
+    }
+
+    public List<NormalIpRangeVO> getIpRanges(String l3Uuid, int ipVersion) {
+        List<NormalIpRangeVO> iprs = l3IpRanges.computeIfAbsent(l3Uuid, uuid -> {
+            List<NormalIpRangeVO> vos = Q.New(NormalIpRangeVO.class).eq(NormalIpRangeVO_.l3NetworkUuid, uuid).list();
+            vos.forEach(ipr -> ipRanges.put(ipr.getUuid(), ipr));
+            return vos;
+        });
+
+        return iprs.stream().filter(ipr -> ipr.getIpVersion() == ipVersion).collect(Collectors.toList());
+    }
+}
@@ -36,4 +36,20 @@ public class CephGlobalConfig {
     @GlobalConfigDef(type = Boolean.class, defaultValue = "true")
     @GlobalConfigValidation
     public static GlobalConfig PREVENT_VM_SPLIT_BRAIN = new GlobalConfig(CATEGORY, "checkImageWatcherBeforeStartVm");
+
+    @GlobalConfigDef(type = Boolean.class, defaultValue = "true", description = "duplicate a read command to the next mon if the first mon doesn't reply in the hedgedRead.percentile percentile of recent read latencies")
+    @GlobalConfigValidation
+    public static GlobalConfig MON_HEDGED_READ = new GlobalConfig(CATEGORY, "mon.hedgedRead");
+
+    @GlobalConfigDef(type = Integer.class, defaultValue = "95", description = "the percentile of recent read latencies of mons after which a read command is duplicated to the next mon")
+    @GlobalConfigValidation(numberGreaterThan = 0, numberLessThan = 101)
+    public static GlobalConfig MON_HEDGED_READ_PERCENTILE = new GlobalConfig(CATEGORY, "mon.hedgedRead.percentile");
+
+    @GlobalConfigDef(type = Integer.class, defaultValue = "3", description = "the number of failures in a row after which a mon is tried after other mons")
+    @GlobalConfigValidation(numberGreaterThan = 0)
+    public static GlobalConfig MON_CIRCUIT_BREAKER_FAILURE_THRESHOLD = new GlobalConfig(CATEGORY, "mon.circuitBreaker.failureThreshold");
+
+    @GlobalConfigDef(type = Integer.class, defaultValue = "30", description = "how long a failing mon is tried after other mons, in seconds")
+    @GlobalConfigValidation(numberGreaterThan = 0)
+    public static GlobalConfig MON_CIRCUIT_BREAKER_OPEN_TIME = new GlobalConfig(CATEGORY, "mon.circuitBreaker.openTime");
 }
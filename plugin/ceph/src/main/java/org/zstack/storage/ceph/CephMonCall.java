@@ -0,0 +1,208 @@
+package org.zstack.storage.ceph;
+
+import org.springframework.beans.factory.annotation.Autowire;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Configurable;
+import org.zstack.core.thread.ThreadFacade;
+import org.zstack.header.core.AsyncBackup;
+import org.zstack.header.core.ReturnValueCompletion;
+import org.zstack.header.errorcode.ErrorCode;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An http call to ceph mons, the mons are tried one by one in the order given by CephMonSelector
+ * until one of them replies.
+ *
+ * For a read command, if the mon doesn't reply in the hedge delay given by CephMonSelector, the
+ * command is sent to the next mon as well and the first reply wins; at most one duplicate is
+ * sent for a call. Replies and failures of all mons are recorded to CephMonSelector.
+ */
+@Configurable(preConstruction = true, autowire = Autowire.BY_TYPE)
+public abstract class CephMonCall<M extends CephMonBase, T> {
+    private static final CLogger logger = Utils.getLogger(CephMonCall.class);
+
+    @Autowired
+    protected CephMonSelector selector;
+    @Autowired
+    protected ThreadFacade thdf;
+
+    private final AsyncBackup backup;
+    private final String path;
+    private final boolean read;
+    private final List<M> mons;
+    private final Iterator<M> it;
+    private final long hedgeDelay;
+
+    private final Set<M> pending = new HashSet<>();
+    private boolean done;
+    private boolean hedged;
+    // the first error reply the next mon is tried for
+    private M errorMon;
+    private T errorReply;
+
+    /**
+     * send the command to the mon
+     */
+    protected abstract void send(M mon, ReturnValueCompletion<T> completion);
+
+    /**
+     * @return true if the reply is an error the next mon should be tried for
+     */
+    protected abstract boolean tryNext(M mon, T reply);
+
+    /**
+     * called once with the reply that finishes the call. If all mons are tried for error replies,
+     * it's called with the first error reply
+     */
+    protected abstract void done(M mon, T reply);
+
+    protected abstract void monFailed(M mon, ErrorCode errorCode);
+
+    /**
+     * called if all mons fail without a reply
+     */
+    protected abstract void allMonsFailed();
+
+    /**
+     * @param mons the mons in the order of the caller
+     * @param keepOrder true if the caller wants the mons tried in its order
+     * @param read true if the command is an idempotent read command
+     */
+    public CephMonCall(AsyncBackup backup, String path, List<M> mons, boolean keepOrder, boolean read) {
+        this.backup = backup;
+        this.path = path;
+        this.read = read;
+        this.mons = selector.order(mons, keepOrder);
+        this.it = this.mons.iterator();
+        // a caller keeping the order wants the same mon to receive the command every time
+        this.hedgeDelay = read && !keepOrder ? selector.getHedgeDelay(this.mons) : -1;
+    }
+
+    public void call() {
+        next();
+    }
+
+    private void next() {
+        M mon;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+
+            if (!it.hasNext()) {
+                if (!pending.isEmpty()) {
+                    // wait for the replies of mons in flight
+                    return;
+                }
+
+                done = true;
+                mon = null;
+            } else {
+                mon = it.next();
+                pending.add(mon);
+            }
+        }
+
+        if (mon == null) {
+            if (errorReply != null) {
+                // the error of a mon replying is the cause rather than the mons failing after it
+                done(errorMon, errorReply);
+            } else {
+                allMonsFailed();
+            }
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        String monUuid = mon.getSelf().getUuid();
+        send(mon, new ReturnValueCompletion<T>(backup) {
+            @Override
+            public void success(T reply) {
+                selector.recordSuccess(monUuid, read ? System.currentTimeMillis() - start : -1);
+
+                synchronized (CephMonCall.this) {
+                    pending.remove(mon);
+                    if (done) {
+                        logger.debug(String.format("drop the reply of ceph mon[%s] to http call[%s], the call is done",
+                                mon.getSelf().getHostname(), path));
+                        return;
+                    }
+                }
+
+                if (tryNext(mon, reply)) {
+                    synchronized (CephMonCall.this) {
+                        if (errorReply == null) {
+                            errorMon = mon;
+                            errorReply = reply;
+                        }
+                    }
+
+                    next();
+                    return;
+                }
+
+                synchronized (CephMonCall.this) {
+                    if (done) {
+                        logger.debug(String.format("drop the reply of ceph mon[%s] to http call[%s], the call is done",
+                                mon.getSelf().getHostname(), path));
+                        return;
+                    }
+
+                    done = true;
+                }
+
+                done(mon, reply);
+            }
+
+            @Override
+            public void fail(ErrorCode errorCode) {
+                selector.recordFailure(monUuid);
+
+                synchronized (CephMonCall.this) {
+                    pending.remove(mon);
+                    if (done) {
+                        logger.debug(String.format("drop the failure of ceph mon[%s] to http call[%s], the call is done: %s",
+                                mon.getSelf().getHostname(), path, errorCode));
+                        return;
+                    }
+                }
+
+                monFailed(mon, errorCode);
+                next();
+            }
+        });
+
+        if (hedgeDelay > 0) {
+            hedge(mon);
+        }
+    }
+
+    private void hedge(M mon) {
+        synchronized (this) {
+            if (hedged || !it.hasNext()) {
+                return;
+            }
+        }
+
+        thdf.submitTimeoutTask(() -> {
+            synchronized (CephMonCall.this) {
+                if (done || hedged || !pending.contains(mon)) {
+                    return;
+                }
+
+                hedged = true;
+            }
+
+            logger.debug(String.format("ceph mon[%s] doesn't reply http call[%s] in %sms, send it to the next mon",
+                    mon.getSelf().getHostname(), path, hedgeDelay));
+            next();
+        }, TimeUnit.MILLISECONDS, hedgeDelay);
+    }
+}
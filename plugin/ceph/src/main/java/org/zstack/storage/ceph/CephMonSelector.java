@@ -0,0 +1,168 @@
+package org.zstack.storage.ceph;
+
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the health of ceph mons of primary and backup storage, and orders mons for
+ * http calls by the health.
+ *
+ * For every mon it keeps an EWMA of the latency of read commands, recent read latency
+ * samples and an EWMA of the error rate of all commands. A mon failing
+ * ceph.mon.circuitBreaker.failureThreshold calls in a row, or failing more than half of
+ * its recent calls, is put behind the other mons for ceph.mon.circuitBreaker.openTime
+ * seconds; after that one more failure puts it back.
+ *
+ * Only read commands are sampled for latency, commands like cloning or downloading take
+ * minutes and tell nothing about the mon.
+ */
+public class CephMonSelector {
+    private static final CLogger logger = Utils.getLogger(CephMonSelector.class);
+
+    private static final double EWMA_ALPHA = 0.3;
+    // smaller than EWMA_ALPHA so failures in a row are judged by the failure threshold, the error rate catches flapping mons
+    private static final double ERROR_RATE_ALPHA = 0.1;
+    private static final double ERROR_RATE_THRESHOLD = 0.5;
+    private static final int LATENCY_SAMPLES = 64;
+    // the latency of a mon not sampled for this long is stale, the mon gets a chance again
+    private static final long LATENCY_EXPIRE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final int MIN_HEDGE_SAMPLES = 10;
+    private static final long MIN_HEDGE_DELAY_MILLIS = 20;
+
+    private final Map<String, MonStats> stats = new ConcurrentHashMap<>();
+
+    private static class MonStats {
+        double latencyEwma;
+        long lastSampleTime;
+        final long[] samples = new long[LATENCY_SAMPLES];
+        int sampleCount;
+        int nextSample;
+
+        double errorRate;
+        int consecutiveFailures;
+        long openUntil;
+
+        synchronized void recordSuccess(long latencyMillis) {
+            consecutiveFailures = 0;
+            errorRate = errorRate * (1 - ERROR_RATE_ALPHA);
+
+            if (latencyMillis < 0) {
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            latencyEwma = isLatencyExpired(now) ? latencyMillis : latencyEwma * (1 - EWMA_ALPHA) + latencyMillis * EWMA_ALPHA;
+            lastSampleTime = now;
+
+            samples[nextSample] = latencyMillis;
+            nextSample = (nextSample + 1) % LATENCY_SAMPLES;
+            sampleCount = Math.min(sampleCount + 1, LATENCY_SAMPLES);
+        }
+
+        synchronized boolean recordFailure() {
+            consecutiveFailures++;
+            errorRate = errorRate * (1 - ERROR_RATE_ALPHA) + ERROR_RATE_ALPHA;
+
+            if (consecutiveFailures >= CephGlobalConfig.MON_CIRCUIT_BREAKER_FAILURE_THRESHOLD.value(Integer.class)
+                    || errorRate > ERROR_RATE_THRESHOLD) {
+                openUntil = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(
+                        CephGlobalConfig.MON_CIRCUIT_BREAKER_OPEN_TIME.value(Integer.class));
+                return true;
+            }
+
+            return false;
+        }
+
+        private boolean isLatencyExpired(long now) {
+            return sampleCount == 0 || now - lastSampleTime > LATENCY_EXPIRE_MILLIS;
+        }
+
+        synchronized boolean isOpen() {
+            return System.currentTimeMillis() < openUntil;
+        }
+
+        synchronized double getLatency() {
+            return isLatencyExpired(System.currentTimeMillis()) ? 0 : latencyEwma;
+        }
+
+        synchronized void copySamples(List<Long> to) {
+            for (int i = 0; i < sampleCount; i++) {
+                to.add(samples[i]);
+            }
+        }
+    }
+
+    private MonStats getStats(String monUuid) {
+        return stats.computeIfAbsent(monUuid, k -> new MonStats());
+    }
+
+    /**
+     * @param latencyMillis the latency of a read command, -1 for other commands
+     */
+    public void recordSuccess(String monUuid, long latencyMillis) {
+        getStats(monUuid).recordSuccess(latencyMillis);
+    }
+
+    public void recordFailure(String monUuid) {
+        if (getStats(monUuid).recordFailure()) {
+            logger.warn(String.format("ceph mon[uuid:%s] keeps failing, it's tried after other mons in %s seconds",
+                    monUuid, CephGlobalConfig.MON_CIRCUIT_BREAKER_OPEN_TIME.value(Integer.class)));
+        }
+    }
+
+    public boolean isCircuitOpen(String monUuid) {
+        MonStats s = stats.get(monUuid);
+        return s != null && s.isOpen();
+    }
+
+    public double getLatency(String monUuid) {
+        MonStats s = stats.get(monUuid);
+        return s == null ? 0 : s.getLatency();
+    }
+
+    /**
+     * @param mons the mons in the order they would be tried
+     * @param keepOrder true to keep the order of healthy mons, e.g. the caller wants the same mon for a key
+     * @return the mons ordered by health: mons with an open circuit go last, the others go
+     * by their read latency unless keepOrder is set. The sort is stable, mons not sampled
+     * yet keep the order of the caller.
+     */
+    public <M extends CephMonBase> List<M> order(List<M> mons, boolean keepOrder) {
+        List<M> ret = new ArrayList<>(mons);
+        Comparator<M> byCircuit = Comparator.comparing(m -> isCircuitOpen(m.getSelf().getUuid()));
+        ret.sort(keepOrder ? byCircuit : byCircuit.thenComparingDouble(m -> getLatency(m.getSelf().getUuid())));
+        return ret;
+    }
+
+    /**
+     * @return the delay after which a read command sent to one of the mons is duplicated to the
+     * next mon, it's the ceph.mon.hedgedRead.percentile percentile of recent read latencies of
+     * the mons; -1 if hedged reads are disabled or the mons don't have enough samples
+     */
+    public <M extends CephMonBase> long getHedgeDelay(List<M> mons) {
+        if (!CephGlobalConfig.MON_HEDGED_READ.value(Boolean.class) || mons.size() < 2) {
+            return -1;
+        }
+
+        List<Long> samples = new ArrayList<>();
+        mons.forEach(m -> {
+            MonStats s = stats.get(m.getSelf().getUuid());
+            if (s != null) {
+                s.copySamples(samples);
+            }
+        });
+
+        if (samples.size() < MIN_HEDGE_SAMPLES) {
+            return -1;
+        }
+
+        Collections.sort(samples);
+        int percentile = CephGlobalConfig.MON_HEDGED_READ_PERCENTILE.value(Integer.class);
+        int index = (int) Math.ceil(samples.size() * percentile / 100.0) - 1;
+        return Math.max(samples.get(Math.max(index, 0)), MIN_HEDGE_DELAY_MILLIS);
+    }
+}
@@ -646,6 +646,15 @@ public class CephBackupStorageBase extends BackupStorageBase {
     public static final String GET_LOCAL_FILE_SIZE = "/ceph/backupstorage/getlocalfilesize";
     public static final String CEPH_TO_CEPH_MIGRATE_IMAGE_PATH = "/ceph/backupstorage/image/migrate";
 
+    // read commands that can be sent to more than one mon at the same time
+    private static final Set<String> IDEMPOTENT_READ_PATHS = new HashSet<>(Arrays.asList(
+            GET_IMAGE_SIZE_PATH,
+            GET_LOCAL_FILE_SIZE,
+            GET_FACTS,
+            CHECK_IMAGE_METADATA_FILE_EXIST,
+            GET_IMAGES_METADATA
+    ));
+
     protected String makeImageInstallPath(String imageUuid) {
         return String.format("ceph://%s/%s", getSelf().getPoolName(), imageUuid);
     }
@@ -659,8 +668,7 @@ public class CephBackupStorageBase extends BackupStorageBase {
     }
 
     protected class HttpCaller<T extends AgentResponse> {
-        private Iterator<CephBackupStorageMonBase> it;
-        private List<ErrorCode> errorCodes = new ArrayList<ErrorCode>();
+        private List<ErrorCode> errorCodes = Collections.synchronizedList(new ArrayList<ErrorCode>());
 
         private final String path;
         private final AgentCommand cmd;
@@ -686,9 +694,9 @@ public class CephBackupStorageBase extends BackupStorageBase {
         }
 
         void call() {
-            it = prepareMons().iterator();
+            List<CephBackupStorageMonBase> mons = prepareMons();
             prepareCmd();
-            doCall();
+            doCall(mons);
         }
 
         HttpCaller<T> specifyOrder(String randomFactor) {
@@ -727,25 +735,26 @@ public class CephBackupStorageBase extends BackupStorageBase {
             return mons;
         }
 
-        private void doCall() {
-            if (!it.hasNext()) {
-                callback.fail(operr("all mons failed to execute http call[%s], errors are %s",
-                        path, JSONObjectUtil.toJsonString(errorCodes)));
-
-                return;
-            }
+        private void doCall(List<CephBackupStorageMonBase> mons) {
+            new CephMonCall<CephBackupStorageMonBase, T>(callback, path, mons, randomFactor != null, IDEMPOTENT_READ_PATHS.contains(path)) {
+                @Override
+                protected void send(CephBackupStorageMonBase base, ReturnValueCompletion<T> completion) {
+                    if (unit == null) {
+                        base.httpCall(path, cmd, retClass, completion);
+                    } else {
+                        base.httpCall(path, cmd, retClass, completion, unit, timeout);
+                    }
+                }
 
-            CephBackupStorageMonBase base = it.next();
+                @Override
+                protected boolean tryNext(CephBackupStorageMonBase base, T ret) {
+                    return !ret.success && tryNext;
+                }
 
-            ReturnValueCompletion<T> completion = new ReturnValueCompletion<T>(callback) {
                 @Override
-                public void success(T ret) {
+                protected void done(CephBackupStorageMonBase base, T ret) {
                     if (!ret.success) {
-                        if (tryNext) {
-                            doCall();
-                        } else {
-                            callback.fail(operr("operation error, because:%s", ret.error));
-                        }
+                        callback.fail(operr("operation error, because:%s", ret.error));
                         return;
                     }
 
@@ -756,19 +765,18 @@ public class CephBackupStorageBase extends BackupStorageBase {
                 }
 
                 @Override
-                public void fail(ErrorCode errorCode) {
+                protected void monFailed(CephBackupStorageMonBase base, ErrorCode errorCode) {
                     String details = String.format("[mon:%s], %s", base.getSelf().getHostname(), errorCode.getDetails());
                     errorCode.setDetails(details);
                     errorCodes.add(errorCode);
-                    doCall();
                 }
-                };
 
-            if (unit == null) {
-                base.httpCall(path, cmd, retClass, completion);
-            } else {
-                base.httpCall(path, cmd, retClass, completion, unit, timeout);
-            }
+                @Override
+                protected void allMonsFailed() {
+                    callback.fail(operr("all mons failed to execute http call[%s], errors are %s",
+                            path, JSONObjectUtil.toJsonString(errorCodes)));
+                }
+            }.call();
         }
     }
 
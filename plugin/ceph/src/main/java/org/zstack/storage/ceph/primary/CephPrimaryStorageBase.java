@@ -1070,6 +1070,17 @@ public class CephPrimaryStorageBase extends PrimaryStorageBase {
     public static final String GET_DOWNLOAD_BITS_FROM_KVM_HOST_PROGRESS_PATH = "/ceph/primarystorage/kvmhost/download/progress";
     public static final String GET_IMAGE_WATCHERS_PATH = "/ceph/primarystorage/getvolumewatchers";
 
+    // read commands that can be sent to more than one mon at the same time
+    private static final Set<String> IDEMPOTENT_READ_PATHS = new HashSet<>(Arrays.asList(
+            GET_VOLUME_SIZE_PATH,
+            GET_VOLUME_SNAPSHOT_SIZE_PATH,
+            GET_FACTS,
+            CHECK_POOL_PATH,
+            CHECK_BITS_PATH,
+            GET_VOLUME_SNAPINFOS_PATH,
+            GET_IMAGE_WATCHERS_PATH
+    ));
+
 
     private final Map<String, BackupStorageMediator> backupStorageMediators = new HashMap<String, BackupStorageMediator>();
     List<PrimaryStorageLicenseInfoFactory> licenseExts = new ArrayList<>();
@@ -2647,8 +2658,7 @@ public class CephPrimaryStorageBase extends PrimaryStorageBase {
     }
 
     protected class HttpCaller<T extends AgentResponse> {
-        private Iterator<CephPrimaryStorageMonBase> it;
-        private List<ErrorCode> errorCodes = new ArrayList<ErrorCode>();
+        private List<ErrorCode> errorCodes = Collections.synchronizedList(new ArrayList<ErrorCode>());
 
         private final String path;
         private final AgentCommand cmd;
@@ -2674,9 +2684,9 @@ public class CephPrimaryStorageBase extends PrimaryStorageBase {
         }
 
         void call() {
-            it = prepareMons().iterator();
+            List<CephPrimaryStorageMonBase> mons = prepareMons();
             prepareCmd();
-            doCall();
+            doCall(mons);
         }
 
         // specify mons order by randomFactor to ensure that the same mon receive cmd every time.
@@ -2716,27 +2726,31 @@ public class CephPrimaryStorageBase extends PrimaryStorageBase {
             return mons;
         }
 
-        private void doCall() {
-            if (!it.hasNext()) {
-                callback.fail(operr(
-                        "all mons failed to execute http call[%s], errors are %s", path, JSONObjectUtil.toJsonString(errorCodes))
-                );
+        private void doCall(List<CephPrimaryStorageMonBase> mons) {
+            new CephMonCall<CephPrimaryStorageMonBase, T>(callback, path, mons, randomFactor != null, IDEMPOTENT_READ_PATHS.contains(path)) {
+                @Override
+                protected void send(CephPrimaryStorageMonBase base, ReturnValueCompletion<T> completion) {
+                    // the command is serialized when it's sent, a duplicate sent to another mon changes monUuid later
+                    synchronized (cmd) {
+                        cmd.monUuid = base.getSelf().getUuid();
 
-                return;
-            }
+                        if (unit == null) {
+                            base.httpCall(path, cmd, retClass, completion);
+                        } else {
+                            base.httpCall(path, cmd, retClass, completion, unit, timeout);
+                        }
+                    }
+                }
 
-            CephPrimaryStorageMonBase base = it.next();
-            cmd.monUuid = base.getSelf().getUuid();
+                @Override
+                protected boolean tryNext(CephPrimaryStorageMonBase base, T ret) {
+                    return !ret.success && tryNext;
+                }
 
-            ReturnValueCompletion<T> completion = new ReturnValueCompletion<T>(callback) {
                 @Override
-                public void success(T ret) {
+                protected void done(CephPrimaryStorageMonBase base, T ret) {
                     if (!ret.success) {
-                        if (tryNext) {
-                            doCall();
-                        } else {
-                            callback.fail(operr("operation error, because:%s", ret.error));
-                        }
+                        callback.fail(operr("operation error, because:%s", ret.error));
                         return;
                     }
 
@@ -2747,19 +2761,19 @@ public class CephPrimaryStorageBase extends PrimaryStorageBase {
                 }
 
                 @Override
-                public void fail(ErrorCode errorCode) {
+                protected void monFailed(CephPrimaryStorageMonBase base, ErrorCode errorCode) {
                     logger.warn(String.format("mon[%s] failed to execute http call[%s], error is: %s",
                             base.getSelf().getHostname(), path, JSONObjectUtil.toJsonString(errorCode)));
                     errorCodes.add(errorCode);
-                    doCall();
                 }
-            };
 
-            if (unit == null) {
-                base.httpCall(path, cmd, retClass, completion);
-            } else {
-                base.httpCall(path, cmd, retClass, completion, unit, timeout);
-            }
+                @Override
+                protected void allMonsFailed() {
+                    callback.fail(operr(
+                            "all mons failed to execute http call[%s], errors are %s", path, JSONObjectUtil.toJsonString(errorCodes))
+                    );
+                }
+            }.call();
         }
     }
 
@@ -1,5 +1,6 @@
 package org.zstack.network.service.flat;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.zstack.core.gc.EventBasedGarbageCollector;
 import org.zstack.core.gc.GC;
 import org.zstack.core.gc.GCCompletion;
@@ -20,6 +21,12 @@ public class FlatDHCPDeleteNamespaceGC extends EventBasedGarbageCollector {
     public FlatDhcpBackend.DeleteNamespaceCmd command;
     @GC
     public String hostUuid;
+    // null for collectors submitted before it was recorded
+    @GC
+    public String l3NetworkUuid;
+
+    @Autowired
+    private FlatDhcpBackend dhcpBackend;
 
     @Override
     protected void triggerNow(GCCompletion completion) {
@@ -38,6 +45,7 @@ public class FlatDHCPDeleteNamespaceGC extends EventBasedGarbageCollector {
                 new ReturnValueCompletion<KvmResponseWrapper>(completion) {
                     @Override
                     public void success(KvmResponseWrapper w) {
+                        dhcpBackend.namespaceDeleted(hostUuid, l3NetworkUuid);
                         completion.success();
                     }
 
@@ -50,12 +58,12 @@ public class FlatDHCPDeleteNamespaceGC extends EventBasedGarbageCollector {
 
     @Override
     protected void setup() {
-        onEvent(HostCanonicalEvents.HOST_STATUS_CHANGED_PATH, ((tokens, data) -> {
+        onEvent(HostCanonicalEvents.HOST_STATUS_CHANGED_PATH, hostUuid, ((tokens, data) -> {
             HostCanonicalEvents.HostStatusChangedData d = (HostCanonicalEvents.HostStatusChangedData) data;
             return hostUuid.equals(d.getHostUuid()) && d.getNewStatus().equals(HostStatus.Connected.toString());
         }));
 
-        onEvent(HostCanonicalEvents.HOST_DELETED_PATH, ((tokens, data) -> {
+        onEvent(HostCanonicalEvents.HOST_DELETED_PATH, hostUuid, ((tokens, data) -> {
             HostCanonicalEvents.HostDeletedData d = (HostCanonicalEvents.HostDeletedData) data;
             return hostUuid.equals(d.getHostUuid());
         }));
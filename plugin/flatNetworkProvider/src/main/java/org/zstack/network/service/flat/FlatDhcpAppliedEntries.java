@@ -0,0 +1,104 @@
+package org.zstack.network.service.flat;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.zstack.network.service.flat.FlatDhcpBackend.DhcpInfo;
+import org.zstack.utils.gson.JSONObjectUtil;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * DHCP entries the management node has applied to the DHCP namespaces of hosts, kept as a
+ * digest per entry by host uuid, L3 network uuid and nic mac, so an apply which isn't a rebuild
+ * only sends entries the namespace doesn't have yet or has with different content.
+ *
+ * The entries of a namespace are forgotten when applying to it fails, the namespace is deleted or
+ * the host reconnects; entries are removed when they are released. Every forget starts a new
+ * generation, an apply started in an older generation doesn't record its entries, so it can't
+ * bring back what was forgotten while it was running.
+ */
+class FlatDhcpAppliedEntries {
+    // host uuid -> l3 uuid -> entry key -> digest
+    private final Map<String, Map<String, Map<String, String>>> entries = new HashMap<>();
+    private long generation;
+
+    private static String key(DhcpInfo info) {
+        return String.format("%s-%s", info.mac, info.ipVersion);
+    }
+
+    private static String digest(DhcpInfo info) {
+        return DigestUtils.md5Hex(JSONObjectUtil.toJsonString(info));
+    }
+
+    /**
+     * @return the entries not applied to the namespace yet or changed since, null if nothing
+     * is known about the namespace
+     */
+    synchronized List<DhcpInfo> getChanged(String hostUuid, String l3Uuid, List<DhcpInfo> infos) {
+        Map<String, String> applied = entries.getOrDefault(hostUuid, Collections.emptyMap()).get(l3Uuid);
+        if (applied == null) {
+            return null;
+        }
+
+        return infos.stream().filter(info -> !digest(info).equals(applied.get(key(info)))).collect(Collectors.toList());
+    }
+
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @param replace whether the entries are all entries of the namespace
+     * @param generation the generation when the apply started
+     */
+    synchronized void applied(String hostUuid, String l3Uuid, List<DhcpInfo> infos, boolean replace, long generation) {
+        if (generation != this.generation) {
+            return;
+        }
+
+        Map<String, Map<String, String>> hostEntries = entries.computeIfAbsent(hostUuid, k -> new HashMap<>());
+        if (replace) {
+            hostEntries.remove(l3Uuid);
+        }
+
+        Map<String, String> applied = hostEntries.computeIfAbsent(l3Uuid, k -> new HashMap<>());
+        infos.forEach(info -> applied.put(key(info), digest(info)));
+    }
+
+    synchronized void released(String hostUuid, List<DhcpInfo> infos) {
+        Map<String, Map<String, String>> hostEntries = entries.get(hostUuid);
+        if (hostEntries == null) {
+            return;
+        }
+
+        for (DhcpInfo info : infos) {
+            Map<String, String> applied = hostEntries.get(info.l3NetworkUuid);
+            if (applied != null) {
+                applied.remove(key(info));
+            }
+        }
+    }
+
+    synchronized void forget(String hostUuid, String l3Uuid) {
+        generation++;
+        Map<String, Map<String, String>> hostEntries = entries.get(hostUuid);
+        if (hostEntries != null) {
+            hostEntries.remove(l3Uuid);
+        }
+    }
+
+    synchronized void forgetHost(String hostUuid) {
+        generation++;
+        entries.remove(hostUuid);
+    }
+
+    synchronized void forgetL3Network(String l3Uuid) {
+        generation++;
+        entries.values().forEach(hostEntries -> hostEntries.remove(l3Uuid));
+    }
+
+    synchronized void forgetAll() {
+        generation++;
+        entries.clear();
+    }
+}
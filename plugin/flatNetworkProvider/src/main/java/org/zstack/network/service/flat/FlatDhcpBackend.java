@@ -9,6 +9,7 @@ import org.zstack.core.asyncbatch.While;
 import org.zstack.core.cloudbus.CloudBus;
 import org.zstack.core.cloudbus.CloudBusCallBack;
 import org.zstack.core.cloudbus.MessageSafe;
+import org.zstack.core.cloudbus.ResourceDestinationMaker;
 import org.zstack.core.componentloader.PluginRegistry;
 import org.zstack.core.db.*;
 import org.zstack.core.defer.Defer;
@@ -26,6 +27,8 @@ import org.zstack.header.errorcode.ErrorCode;
 import org.zstack.header.errorcode.OperationFailureException;
 import org.zstack.header.host.HostConstant;
 import org.zstack.header.host.HostErrors;
+import org.zstack.header.managementnode.ManagementNodeChangeListener;
+import org.zstack.header.managementnode.ManagementNodeInventory;
 import org.zstack.header.message.APIMessage;
 import org.zstack.header.message.Message;
 import org.zstack.header.message.MessageReply;
@@ -45,11 +48,9 @@ import org.zstack.network.service.NetworkServiceProviderLookup;
 import org.zstack.network.service.flat.IpStatisticConstants.VmType;
 import org.zstack.network.service.vip.VipVO;
 import org.zstack.tag.SystemTagCreator;
-import org.zstack.utils.CollectionUtils;
 import org.zstack.utils.DebugUtils;
 import org.zstack.utils.TagUtils;
 import org.zstack.utils.Utils;
-import org.zstack.utils.function.Function;
 import org.zstack.utils.logging.CLogger;
 import org.zstack.utils.network.IPv6Constants;
 import org.zstack.utils.network.IPv6NetworkUtils;
@@ -75,7 +76,8 @@ import static org.zstack.utils.CollectionDSL.*;
  */
 public class FlatDhcpBackend extends AbstractService implements NetworkServiceDhcpBackend, KVMHostConnectExtensionPoint,
         L3NetworkDeleteExtensionPoint, VmInstanceMigrateExtensionPoint, VmAbnormalLifeCycleExtensionPoint, IpRangeDeletionExtensionPoint,
-        BeforeStartNewCreatedVmExtensionPoint, GlobalApiMessageInterceptor, AfterAddIpRangeExtensionPoint {
+        BeforeStartNewCreatedVmExtensionPoint, GlobalApiMessageInterceptor, AfterAddIpRangeExtensionPoint, ManagementNodeChangeListener,
+        AfterReturnIpExtensionPoint {
     private static final CLogger logger = Utils.getLogger(FlatDhcpBackend.class);
 
     @Autowired
@@ -90,6 +92,11 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
     private AccountManager acntMgr;
     @Autowired
     private DhcpExtension dhcpExtension;
+    @Autowired
+    private ResourceDestinationMaker destMaker;
+
+    private final FlatDhcpAppliedEntries appliedEntries = new FlatDhcpAppliedEntries();
+    private final UsedIpCounter usedIpCounter = new UsedIpCounter();
 
     public static final String APPLY_DHCP_PATH = "/flatnetworkprovider/dhcp/apply";
     public static final String PREPARE_DHCP_PATH = "/flatnetworkprovider/dhcp/prepare";
@@ -102,53 +109,9 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
         return String.format("%s_%s", brName, l3Uuid);
     }
 
-    @Transactional(readOnly = true)
     private List<DhcpInfo> getDhcpInfoForConnectedKvmHost(KVMHostConnectedContext context) {
-        String sql = "select vm from VmInstanceVO vm where vm.hostUuid = :huuid and vm.state in (:states) and vm.type = :vtype";
-        TypedQuery<VmInstanceVO> q = dbf.getEntityManager().createQuery(sql, VmInstanceVO.class);
-        q.setParameter("huuid", context.getInventory().getUuid());
-        q.setParameter("states", list(VmInstanceState.Running, VmInstanceState.Unknown, VmInstanceState.Starting,
-                VmInstanceState.Rebooting, VmInstanceState.Resuming, VmInstanceState.Migrating, VmInstanceState.VolumeMigrating));
-        q.setParameter("vtype", VmInstanceConstant.USER_VM_TYPE);
-        List<VmInstanceVO> vmVos = q.getResultList();
-        if (vmVos.isEmpty()) {
-            return null;
-        }
-
-        List<String> vmUuids = vmVos.stream().map(VmInstanceVO::getUuid).collect(Collectors.toList());
-        sql = "select nic.uuid from VmNicVO nic, L3NetworkVO l3, NetworkServiceL3NetworkRefVO ref, NetworkServiceProviderVO provider, UsedIpVO ip" +
-                " where nic.uuid = ip.vmNicUuid and ip.l3NetworkUuid = l3.uuid" +
-                " and ref.l3NetworkUuid = l3.uuid and ref.networkServiceProviderUuid = provider.uuid " +
-                " and ref.networkServiceType = :dhcpType " +
-                " and provider.type = :ptype and nic.vmInstanceUuid in (:vmUuids) group by nic.uuid";
-
-        TypedQuery<String> nq = dbf.getEntityManager().createQuery(sql, String.class);
-        nq.setParameter("ptype", FlatNetworkServiceConstant.FLAT_NETWORK_SERVICE_TYPE_STRING);
-        nq.setParameter("dhcpType", NetworkServiceType.DHCP.toString());
-        nq.setParameter("vmUuids", vmUuids);
-        List<String> nicUuids = nq.getResultList();
-        if (nicUuids.isEmpty()) {
-            return null;
-        }
-
-        List<DhcpInfo> dhcpInfoList = new ArrayList<DhcpInfo>();
-        for (VmInstanceVO vm : vmVos) {
-            List<VmNicVO> dhcpNics = vm.getVmNics().stream().filter(nic -> nicUuids.contains(nic.getUuid())).collect(Collectors.toList());
-
-            List<VmInstanceSpec.HostName> hostNames = new ArrayList<>();
-            String hostName = VmSystemTags.HOSTNAME.getTokenByResourceUuid(vm.getUuid(), VmSystemTags.HOSTNAME_TOKEN);
-            if (hostName != null) {
-                VmInstanceSpec.HostName hostNameSpec = new VmInstanceSpec.HostName();
-                hostNameSpec.setL3NetworkUuid(vm.getDefaultL3NetworkUuid());
-                hostNameSpec.setHostname(hostName);
-                hostNames.add(hostNameSpec);
-            }
-
-            List<DhcpStruct> structs = dhcpExtension.makeDhcpStruct(VmInstanceInventory.valueOf(vm), hostNames, dhcpNics);
-            dhcpInfoList.addAll(toDhcpInfo(structs));
-        }
-
-        return dhcpInfoList;
+        String hostUuid = context.getInventory().getUuid();
+        return new FlatDhcpInfoBuilder().buildForHosts(list(hostUuid)).get(hostUuid);
     }
 
     @Override
@@ -236,55 +199,58 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
 
     private List<IpStatisticData> ipStatisticAll(APIGetL3NetworkIpStatisticMsg msg, String sortBy) {
         /*
-        select uip.ip, vip.uuid as vipUuid, vip.name as vipName, it.uuid as vmInstanceUuid, it.name as vmInstanceName, it.type, uip.createDate
-        from (select uuid, ip, IpInLong, createDate, vmNicUuid
+        select uip.ip, vip.uuid as vipUuid, vip.name as vipName, it.uuid as vmUuid, it.name as vmName, it.type, uip.createDate,
+            avm.applianceVmType [, {vip accessible}, {vm accessible}]
+        from (select uuid, ip, ipInLong, createDate, vmNicUuid
             from UsedIpVO
-            where l3NetworkUuid = '{uuid}' [and ip like '{ip}']
+            where l3NetworkUuid = :l3Uuid [and ip like :ip]
             order by {sortBy} {direction}
             limit {limit} offset {start}) uip
-                left join (select uuid, name, usedIpUuid from VipVO
-                    where l3NetworkUuid = '{l3Uuid}') vip on uip.uuid = vip.usedIpUuid
-                left join (select uuid, vmInstanceUuid from VmNicVO) nic on uip.vmNicUuid = nic.uuid
-                left join (select uuid, name, type from VmInstanceVO) it on nic.vmInstanceUuid = it.uuid
-        order by {sortBy} {direction};
+                left join VipVO vip on vip.usedIpUuid = uip.uuid and vip.l3NetworkUuid = :l3Uuid
+                left join VmNicVO nic on nic.uuid = uip.vmNicUuid
+                left join VmInstanceVO it on it.uuid = nic.vmInstanceUuid
+                left join ApplianceVmVO avm on avm.uuid = it.uuid
+        order by uip.{sortBy} {direction};
+
+        the access of a normal account to the vip and the vm of a row is checked in the query, so only the
+        resources in the page are checked
          */
         Map<String, String> dhcpMap = getExistingDhcpServerIp(msg.getL3NetworkUuid(), IPv6Constants.DUAL_STACK);
         Set<String> dhcp = dhcpMap.keySet();
+        boolean isAdmin = acntMgr.isAdmin(msg.getSession());
+        boolean byIp = StringUtils.isNotEmpty(msg.getIp());
+
         StringBuilder sqlBuilder = new StringBuilder();
-        sqlBuilder.append("select uip.ip, vip.uuid as vipUuid, vip.name as vipName, it.uuid as vmUuid, it.name as vmName, it.type, uip.createDate ")
-                .append("from (select uuid, ip, ipInLong, createDate, vmNicUuid from UsedIpVO where l3NetworkUuid = '")
-                .append(msg.getL3NetworkUuid()).append('\'');
-
-        if (StringUtils.isNotEmpty(msg.getIp())) {
-            sqlBuilder.append(" and ip like '").append(msg.getIp()).append('\'');
-        }
-
-        sqlBuilder.append(" order by ").append(sortBy).append(' ').append(msg.getSortDirection()).append(" limit ")
-                .append(msg.getLimit()).append(" offset ").append(msg.getStart()).append(") uip ")
-                .append("left join ")
-                .append("(select uuid, name, usedIpUuid from VipVO ")
-                .append("where l3NetworkUuid = '").append(msg.getL3NetworkUuid())
-                .append("') vip on uip.uuid = vip.usedIpUuid ")
-                .append("left join ")
-                .append("(select uuid, vmInstanceUuid from VmNicVO) nic on uip.vmNicUuid = nic.uuid ")
-                .append("left join ")
-                .append("(select uuid, name, type from VmInstanceVO) it on it.uuid = nic.vmInstanceUuid ")
-                .append("order by ").append(sortBy).append(' ').append(msg.getSortDirection());
+        sqlBuilder.append("select uip.ip, vip.uuid as vipUuid, vip.name as vipName, it.uuid as vmUuid, it.name as vmName, it.type, uip.createDate, ")
+                .append("avm.applianceVmType");
+        if (!isAdmin) {
+            sqlBuilder.append(", ").append(accessibleExpression("vip.uuid"))
+                    .append(", ").append(accessibleExpression("it.uuid"));
+        }
+        sqlBuilder.append(" from (select uuid, ip, ipInLong, createDate, vmNicUuid from UsedIpVO where l3NetworkUuid = :l3Uuid");
+        if (byIp) {
+            sqlBuilder.append(" and ip like :ip");
+        }
+        sqlBuilder.append(" order by ").append(sortBy).append(' ').append(msg.getSortDirection())
+                .append(" limit ").append(msg.getLimit()).append(" offset ").append(msg.getStart()).append(") uip ")
+                .append("left join VipVO vip on vip.usedIpUuid = uip.uuid and vip.l3NetworkUuid = :l3Uuid ")
+                .append("left join VmNicVO nic on nic.uuid = uip.vmNicUuid ")
+                .append("left join VmInstanceVO it on it.uuid = nic.vmInstanceUuid ")
+                .append("left join ApplianceVmVO avm on avm.uuid = it.uuid ")
+                .append("order by uip.").append(sortBy).append(' ').append(msg.getSortDirection());
 
         Query q = dbf.getEntityManager().createNativeQuery(sqlBuilder.toString());
-        List<Object[]> results = q.getResultList();
-        List<IpStatisticData> ipStatistics = new ArrayList<>();
-        List<String> vmUuids = new ArrayList<>();
-
-        boolean isAdmin = acntMgr.isAdmin(msg.getSession());
-
-        Set<String> ownedVms = new HashSet<>();
-        Set<String> ownedVips = new HashSet<>();
+        q.setParameter("l3Uuid", msg.getL3NetworkUuid());
+        if (byIp) {
+            q.setParameter("ip", msg.getIp());
+        }
         if (!isAdmin) {
-            ownedVms.addAll(acntMgr.getResourceUuidsCanAccessByAccount(msg.getSession().getAccountUuid(), VmInstanceVO.class));
-            ownedVips.addAll(acntMgr.getResourceUuidsCanAccessByAccount(msg.getSession().getAccountUuid(), VipVO.class));
+            q.setParameter("accUuid", msg.getSession().getAccountUuid());
         }
 
+        List<Object[]> results = q.getResultList();
+        List<IpStatisticData> ipStatistics = new ArrayList<>();
+
         for (Object[] result : results) {
             IpStatisticData element = new IpStatisticData();
             ipStatistics.add(element);
@@ -294,49 +260,21 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
             if (dhcp.contains(element.getIp())) {
                 resourceTypes.add(ResourceType.DHCP);
             }
-            if (isAdmin) {
+
+            boolean vipAccessible = isAdmin || isAccessible(result[8]);
+            boolean vmAccessible = isAdmin || isAccessible(result[9]);
+            if (result[1] != null && vipAccessible) {
                 element.setVipUuid((String) result[1]);
                 element.setVipName((String) result[2]);
-                element.setVmInstanceUuid((String) result[3]);
-                element.setVmInstanceName((String) result[4]);
-                element.setVmInstanceType((String) result[5]);
-                if (result[3] != null) {
-                    vmUuids.add((String) result[3]);
-                }
-                if (result[1] != null) {
-                    resourceTypes.add(ResourceType.VIP);
-                }
-            } else {
-                if (result[1] != null && ownedVips.contains(result[1])) {
-                    element.setVipUuid((String) result[1]);
-                    element.setVipName((String) result[2]);
-                    resourceTypes.add(ResourceType.VIP);
-                }
-
-                if (result[3] != null && ownedVms.contains(result[3])) {
-                    element.setVmInstanceUuid((String) result[3]);
-                    element.setVmInstanceName((String) result[4]);
-                    element.setVmInstanceType((String) result[5]);
-                    vmUuids.add((String) result[3]);
-                }
-            }
-            if (resourceTypes.isEmpty() && result[3] == null) {
-                resourceTypes.add(ResourceType.OTHER);
+                resourceTypes.add(ResourceType.VIP);
             }
-        }
 
-        Map<String, Tuple> vrInfos = getApplianceVmInfo(vmUuids);
-
-        for (IpStatisticData element : ipStatistics) {
-            if (element.getVmInstanceUuid() != null) {
-                Tuple vrInfo = vrInfos.get(element.getVmInstanceUuid());
-                if (vrInfo != null) {
-                    element.setVmInstanceType(vrInfo.get(1, String.class));
-                }
-            }
+            if (result[3] != null && vmAccessible) {
+                element.setVmInstanceUuid((String) result[3]);
+                element.setVmInstanceName((String) result[4]);
+                // the appliance vm type tells the virtual routers apart
+                element.setVmInstanceType(result[7] != null ? (String) result[7] : (String) result[5]);
 
-            List<String> resourceTypes = element.getResourceTypes();
-            if (element.getVmInstanceUuid() != null) {
                 if (VmType.USER_VM.equals(element.getVmInstanceType())) {
                     resourceTypes.add(ResourceType.VM);
                 } else if (VmType.VROUTER.equals(element.getVmInstanceType())) {
@@ -345,18 +283,36 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
                     resourceTypes.add(ResourceType.VPC_VROUTER);
                 }
             }
+
+            if (resourceTypes.isEmpty() && result[3] == null) {
+                resourceTypes.add(ResourceType.OTHER);
+            }
         }
 
         return ipStatistics;
     }
 
+    /**
+     * @return a column of the statistic query telling whether the account :accUuid owns the resource or it's shared to the account
+     */
+    private static String accessibleExpression(String resourceUuidColumn) {
+        return String.format("case when %1$s is not null and (exists (select 1 from AccountResourceRefVO r where r.resourceUuid = %1$s" +
+                " and r.accountUuid = :accUuid) or exists (select 1 from SharedResourceVO s where s.resourceUuid = %1$s" +
+                " and (s.toPublic = 1 or s.receiverAccountUuid = :accUuid))) then 1 else 0 end", resourceUuidColumn);
+    }
+
+    private static boolean isAccessible(Object column) {
+        return column != null && ((Number) column).intValue() == 1;
+    }
+
     private Long countUsedIp(APIGetL3NetworkIpStatisticMsg msg) {
-        String sql = "select count(*) from UsedIpVO where l3NetworkUuid = :l3Uuid";
-        if (StringUtils.isNotEmpty(msg.getIp())) {
-            sql += " and ip like '" + msg.getIp() + '\'';
+        if (StringUtils.isEmpty(msg.getIp())) {
+            return usedIpCounter.getCount(msg.getL3NetworkUuid());
         }
-        return SQL.New(sql, Long.class)
+
+        return SQL.New("select count(*) from UsedIpVO where l3NetworkUuid = :l3Uuid and ip like :ip", Long.class)
                 .param("l3Uuid", msg.getL3NetworkUuid())
+                .param("ip", msg.getIp())
                 .find();
     }
 
@@ -366,28 +322,29 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
         from (select ip, uuid, name, state, useFor, v.createDate, accountUuid
             from VipVO v,
                 AccountResourceRefVO a
-            where v.l3NetworkUuid = '{l3Uuid}'
+            where v.l3NetworkUuid = :l3Uuid
                 and a.resourceType = 'VipVO'
                 and v.uuid = a.resourceUuid
-                [and a.accountUuid = '{accUuid}']
-                [and ip like '{ip}']
+                [and a.accountUuid = :accUuid]
+                [and ip like :ip]
             order by {sortBy} {direction}
             limit {limit} offset {start}) vip
                 left join (select uuid, name from AccountVO) ac on ac.uuid = vip.accountUuid
             order by {sortBy} {direction};
          */
-        String accUuid = msg.getSession().getAccountUuid();
+        boolean isAdmin = acntMgr.isAdmin(msg.getSession());
+        boolean byIp = StringUtils.isNotEmpty(msg.getIp());
         StringBuilder sqlBuilder = new StringBuilder();
         sqlBuilder.append("select ip, vip.uuid, vip.name as vipName, state, useFor, vip.createDate, ac.name as ownerName ")
                 .append("from (select ip, uuid, name, state, useFor, v.createDate, accountUuid ")
-                .append("from VipVO v, AccountResourceRefVO a where l3NetworkUuid = '")
-                .append(msg.getL3NetworkUuid()).append('\'').append(" and a.resourceType = 'VipVO' ")
+                .append("from VipVO v, AccountResourceRefVO a where l3NetworkUuid = :l3Uuid")
+                .append(" and a.resourceType = 'VipVO' ")
                 .append("and v.uuid = a.resourceUuid");
-        if (StringUtils.isNotEmpty(msg.getIp())) {
-            sqlBuilder.append(" and ip like '").append(msg.getIp()).append('\'');
+        if (byIp) {
+            sqlBuilder.append(" and ip like :ip");
         }
-        if (!acntMgr.isAdmin(msg.getSession())) {
-            sqlBuilder.append(" and a.accountUuid = '").append(accUuid).append('\'');
+        if (!isAdmin) {
+            sqlBuilder.append(" and a.accountUuid = :accUuid");
         }
         sqlBuilder.append(" order by ").append(sortBy).append(' ').append(msg.getSortDirection())
                 .append(" limit ").append(msg.getLimit()).append(" offset ").append(msg.getStart())
@@ -396,6 +353,14 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
                 .append(" order by ").append(sortBy).append(' ').append(msg.getSortDirection());
 
         Query q = dbf.getEntityManager().createNativeQuery(sqlBuilder.toString());
+        q.setParameter("l3Uuid", msg.getL3NetworkUuid());
+        if (byIp) {
+            q.setParameter("ip", msg.getIp());
+        }
+        if (!isAdmin) {
+            q.setParameter("accUuid", msg.getSession().getAccountUuid());
+        }
+
         List<Object[]> results = q.getResultList();
         List<IpStatisticData> ipStatistics = new ArrayList<>();
 
@@ -416,89 +381,78 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
     }
 
     private Long countVip(APIGetL3NetworkIpStatisticMsg msg) {
+        String ipCondition = StringUtils.isNotEmpty(msg.getIp()) ? " and ip like :ip" : "";
+        SQL sql;
         if (acntMgr.isAdmin(msg.getSession())) {
-            String sql = "select count(*) from VipVO v where l3NetworkUuid = :l3Uuid";
-            if (StringUtils.isNotEmpty(msg.getIp())) {
-                sql += " and ip like '" + msg.getIp() + '\'';
-            }
-            return SQL.New(sql, Long.class)
-                    .param("l3Uuid", msg.getL3NetworkUuid())
-                    .find();
+            sql = SQL.New("select count(*) from VipVO v where l3NetworkUuid = :l3Uuid" + ipCondition, Long.class);
         } else {
-            String sql = "select count(*) from VipVO v, AccountResourceRefVO a where a.accountUuid = :accUuid " +
-                    "and v.l3NetworkUuid = :l3Uuid and v.uuid = a.resourceUuid";
-            if (StringUtils.isNotEmpty(msg.getIp())) {
-                sql += " and ip like '" + msg.getIp() + '\'';
-            }
-            return SQL.New(sql, Long.class)
-                    .param("accUuid", msg.getSession().getAccountUuid())
-                    .param("l3Uuid", msg.getL3NetworkUuid())
-                    .find();
+            sql = SQL.New("select count(*) from VipVO v, AccountResourceRefVO a where a.accountUuid = :accUuid " +
+                    "and v.l3NetworkUuid = :l3Uuid and v.uuid = a.resourceUuid" + ipCondition, Long.class)
+                    .param("accUuid", msg.getSession().getAccountUuid());
+        }
+
+        sql.param("l3Uuid", msg.getL3NetworkUuid());
+        if (!ipCondition.isEmpty()) {
+            sql.param("ip", msg.getIp());
         }
+        return sql.find();
     }
 
     private List<IpStatisticData> ipStatisticVm(APIGetL3NetworkIpStatisticMsg msg, String sortBy) {
         /*
-        select ip, vm.uuid, vm.name, vm.type, vm.state, vm.type, vm.createDate, ac.name as ownerName
-        from (select n.vmInstanceUuid, u.ip, accountUuid
-            from UsedIpVO u,
-                 VmNicVO n,
-                 AccountResourceRefVO a
-            where u.l3NetworkUuid = '{l3Uuid}'
-                and resourceType = 'VmNicVO'
-                and n.ip is not null
-                and n.metadata is null
-                and u.vmNicUuid = n.uuid
-                and n.uuid = a.resourceUuid
-                [and a.accountUuid = '{accUuid}']
-                [and u.ip like '{ip}']
-            order by {sortBy} {direction}
-            [limit {limit} offset {start}]
-            ) nic
-                left join (select uuid, name from AccountVO) ac on ac.uuid = nic.accountUuid
-                left join (select uuid, name, state, type, createDate from VmInstanceVO) vm on nic.vmInstanceUuid = vm.uuid
-            order by {sortBy} {direction}
-            [limit {limit} offset {start}];
+        select u.ip, vm.uuid, vm.name, vm.type, vm.state, vm.createDate, ac.name as ownerName
+        from UsedIpVO u
+            join VmNicVO n on u.vmNicUuid = n.uuid
+            join AccountResourceRefVO a on a.resourceUuid = n.uuid and a.resourceType = 'VmNicVO'
+            left join VmInstanceVO vm on vm.uuid = n.vmInstanceUuid
+            left join AccountVO ac on ac.uuid = a.accountUuid
+        where u.l3NetworkUuid = :l3Uuid
+            and n.ip is not null
+            and n.metadata is null
+            [and a.accountUuid = :accUuid]
+            [and u.ip like :ip]
+        order by {u.ip | vm.createDate} {direction}
+        limit {limit} offset {start};
          */
+        boolean isAdmin = acntMgr.isAdmin(msg.getSession());
+        boolean byIp = StringUtils.isNotEmpty(msg.getIp());
+        String sortByExpression;
+        if ("INET_ATON(ip)".equals(sortBy)) {
+            sortByExpression = "INET_ATON(u.ip)";
+        } else if ("ip".equals(sortBy)) {
+            sortByExpression = "u.ip";
+        } else {
+            sortByExpression = "vm.createDate";
+        }
 
-        boolean byIp = SortBy.IP.equals(msg.getSortBy());
-        String accUuid = msg.getSession().getAccountUuid();
         StringBuilder sqlBuilder = new StringBuilder();
-        sqlBuilder.append("select ip, vm.uuid, vm.name, vm.type, vm.state, vm.createDate, ac.name as ownerName ")
-                .append("from (select n.vmInstanceUuid, u.ip, accountUuid from UsedIpVO u, VmNicVO n, AccountResourceRefVO a ")
-                .append("where u.l3NetworkUuid = '").append(msg.getL3NetworkUuid())
-                .append('\'');
-        if (StringUtils.isNotEmpty(msg.getIp())) {
-            sqlBuilder.append(" and u.ip like '").append(msg.getIp()).append('\'');
+        sqlBuilder.append("select u.ip, vm.uuid, vm.name, vm.type, vm.state, vm.createDate, ac.name as ownerName ")
+                .append("from UsedIpVO u join VmNicVO n on u.vmNicUuid = n.uuid ")
+                .append("join AccountResourceRefVO a on a.resourceUuid = n.uuid and a.resourceType = 'VmNicVO' ")
+                .append("left join VmInstanceVO vm on vm.uuid = n.vmInstanceUuid ")
+                .append("left join AccountVO ac on ac.uuid = a.accountUuid ")
+                .append("where u.l3NetworkUuid = :l3Uuid and n.metadata is null and n.ip is not null");
+        if (byIp) {
+            sqlBuilder.append(" and u.ip like :ip");
         }
-        if (!acntMgr.isAdmin(msg.getSession())) {
-            sqlBuilder.append(" and a.accountUuid = '").append(accUuid).append('\'');
+        if (!isAdmin) {
+            sqlBuilder.append(" and a.accountUuid = :accUuid");
         }
-        sqlBuilder.append(" and resourceType = 'VmNicVO' and n.metadata is null and n.ip is not null and u.vmNicUuid = n.uuid and n.uuid = a.resourceUuid");
+        sqlBuilder.append(" order by ").append(sortByExpression).append(' ').append(msg.getSortDirection())
+                .append(" limit ").append(msg.getLimit()).append(" offset ").append(msg.getStart());
+
+        Query q = dbf.getEntityManager().createNativeQuery(sqlBuilder.toString());
+        q.setParameter("l3Uuid", msg.getL3NetworkUuid());
         if (byIp) {
-            String sortByExpression;
-            if ("INET_ATON(ip)".equals(sortBy)) {
-                sortByExpression = "INET_ATON(u.ip)";
-            } else {
-                sortByExpression = sortBy;
-            }
-            sqlBuilder.append(" order by ").append(sortByExpression).append(' ').append(msg.getSortDirection())
-                    .append(" limit ").append(msg.getLimit()).append(" offset ").append(msg.getStart());
+            q.setParameter("ip", msg.getIp());
         }
-
-        sqlBuilder.append(") nic ")
-                .append("left join (select uuid, name from AccountVO) ac on ac.uuid = nic.accountUuid ")
-                .append("left join (select uuid, name, createDate, state, type from VmInstanceVO) vm ")
-                .append("on vm.uuid = nic.vmInstanceUuid")
-                .append(" order by ").append(sortBy).append(' ').append(msg.getSortDirection());
-        if (!byIp) {
-            sqlBuilder.append(" limit ").append(msg.getLimit()).append(" offset ").append(msg.getStart());
+        if (!isAdmin) {
+            q.setParameter("accUuid", msg.getSession().getAccountUuid());
         }
 
-        Query q = dbf.getEntityManager().createNativeQuery(sqlBuilder.toString());
         List<Object[]> results = q.getResultList();
         List<IpStatisticData> ipStatistics = new ArrayList<>();
-        List<String> vmUuids = new ArrayList<>();
+        Set<String> vmUuids = new HashSet<>();
 
         for (Object[] result : results) {
             IpStatisticData element = new IpStatisticData();
@@ -522,84 +476,59 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
             element.setOwnerName((String) result[6]);
         }
 
-        if (vmUuids.size() == 0) {
+        if (vmUuids.isEmpty()) {
             return ipStatistics;
         }
 
-        List<VmInstanceVO> vms = Q.New(VmInstanceVO.class).in(VmInstanceVO_.uuid, vmUuids).list();
-
-        Map<String, VmInstanceVO> vmvos = vms.stream()
-                .collect(Collectors.toMap(VmInstanceVO::getUuid, inv -> inv));
-        Map<String, List<String>> vmToDefaultIpMap = new HashMap<>();
+        Map<String, List<String>> vmToDefaultIpMap = getVmDefaultIps(vmUuids);
         for (IpStatisticData element : ipStatistics) {
-            VmInstanceVO vmvo = vmvos.get(element.getVmInstanceUuid());
-            if (vmvo == null) {
-                continue;
-            }
-            if (!vmToDefaultIpMap.containsKey(vmvo.getUuid())) {
-                List<VmNicVO> nics;
-                nics = vmvo.getVmNics().stream()
-                        .filter(vmNic -> vmNic.getL3NetworkUuid().equals(vmvo.getDefaultL3NetworkUuid()))
-                        .collect(Collectors.toList());
-
-                VmNicVO nic;
-                if (nics.size() == 1) {
-                    nic = nics.get(0);
-                } else if (nics.size() > 1) {
-                    nic = VmNicVO.findTheEarliestOne(nics);
-                } else {
-                    continue;
-                }
-                vmToDefaultIpMap.put(vmvo.getUuid(), new ArrayList<>());
-                for (UsedIpVO usedIpVO : nic.getUsedIps()) {
-                    vmToDefaultIpMap.get(vmvo.getUuid()).add(usedIpVO.getIp());
-                }
-                element.setVmDefaultIp(vmToDefaultIpMap.get(vmvo.getUuid()));
-            } else {
-                element.setVmDefaultIp(vmToDefaultIpMap.get(vmvo.getUuid()));
-            }
+            element.setVmDefaultIp(vmToDefaultIpMap.get(element.getVmInstanceUuid()));
         }
 
         return ipStatistics;
     }
 
-    private Map<String, Tuple> getApplianceVmInfo(List<String> vmUuids) {
-        Map<String, Tuple> vrInfos = new HashMap<>();
-        if (vmUuids.size() == 0) {
-            return vrInfos;
-        }
-        List<Tuple> vrs = SQL.New("select uuid, applianceVmType, defaultRouteL3NetworkUuid from ApplianceVmVO where uuid in (:vrUuids)",
-                Tuple.class)
-                .param("vrUuids", vmUuids)
+    /**
+     * @return the IPs of the earliest nic on the default L3 network of each VM
+     */
+    private Map<String, List<String>> getVmDefaultIps(Collection<String> vmUuids) {
+        List<Tuple> ips = SQL.New("select nic.vmInstanceUuid, nic.uuid, ip.ip from VmInstanceVO vm, VmNicVO nic, UsedIpVO ip" +
+                " where vm.uuid in (:vmUuids) and nic.vmInstanceUuid = vm.uuid and nic.l3NetworkUuid = vm.defaultL3NetworkUuid" +
+                " and ip.vmNicUuid = nic.uuid order by nic.createDate, nic.deviceId", Tuple.class)
+                .param("vmUuids", vmUuids)
                 .list();
-        for (Tuple t : vrs) {
-            vrInfos.put(t.get(0, String.class), t);
+
+        Map<String, String> defaultNics = new HashMap<>();
+        Map<String, List<String>> ret = new HashMap<>();
+        for (Tuple t : ips) {
+            String vmUuid = t.get(0, String.class);
+            String nicUuid = defaultNics.computeIfAbsent(vmUuid, k -> t.get(1, String.class));
+            if (nicUuid.equals(t.get(1, String.class))) {
+                ret.computeIfAbsent(vmUuid, k -> new ArrayList<>()).add(t.get(2, String.class));
+            }
         }
-        return vrInfos;
+
+        return ret;
     }
 
     private Long countVMNicIp(APIGetL3NetworkIpStatisticMsg msg) {
+        String ipCondition = StringUtils.isNotEmpty(msg.getIp()) ? " and u.ip like :ip" : "";
+        SQL sql;
         if (acntMgr.isAdmin(msg.getSession())) {
-            String sql = "select count(*) from UsedIpVO u, VmNicVO n " +
-                    "where u.l3NetworkUuid = :l3Uuid and u.vmNicUuid = n.uuid";
-            if (StringUtils.isNotEmpty(msg.getIp())) {
-                sql += " and u.ip like '" + msg.getIp() + '\'';
-            }
-            return SQL.New(sql, Long.class)
-                    .param("l3Uuid", msg.getL3NetworkUuid())
-                    .find();
+            sql = SQL.New("select count(*) from UsedIpVO u, VmNicVO n " +
+                    "where u.l3NetworkUuid = :l3Uuid and u.vmNicUuid = n.uuid" + ipCondition, Long.class);
         } else {
-            String sql = "select count(*) from UsedIpVO u, VmNicVO n, AccountResourceRefVO a " +
+            sql = SQL.New("select count(*) from UsedIpVO u, VmNicVO n, AccountResourceRefVO a " +
                     "where a.accountUuid = :accUuid and u.l3NetworkUuid = :l3Uuid " +
-                    "and u.vmNicUuid = n.uuid and n.uuid = a.resourceUuid";
-            if (StringUtils.isNotEmpty(msg.getIp())) {
-                sql += " and ip like '" + msg.getIp() + '\'';
-            }
-            return SQL.New(sql, Long.class)
-                    .param("accUuid", msg.getSession().getAccountUuid())
-                    .param("l3Uuid", msg.getL3NetworkUuid())
-                    .find();
+                    "and u.vmNicUuid = n.uuid and n.uuid = a.resourceUuid" + ipCondition, Long.class)
+                    .param("accUuid", msg.getSession().getAccountUuid());
+        }
+
+        sql.param("l3Uuid", msg.getL3NetworkUuid());
+        if (!ipCondition.isEmpty()) {
+            sql.param("ip", msg.getIp());
         }
+        return sql.find();
     }
 
     private void handleLocalMessage(Message msg) {
@@ -651,7 +580,7 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
         return allocateDhcpIp(l3Uuid, ipVersion, true, null, excludedIp);
     }
 
-    private static Map<String, String> getExistingDhcpServerIp(String l3Uuid, int ipVersion) {
+    static Map<String, String> getExistingDhcpServerIp(String l3Uuid, int ipVersion) {
         Map<String, String> ret = new HashMap<>();
         List<String> tags = FlatNetworkSystemTags.L3_NETWORK_DHCP_IP.getTags(l3Uuid);
         if (tags != null) {
@@ -799,6 +728,7 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
 
     @Override
     public boolean start() {
+        usedIpCounter.install(dbf);
         return true;
     }
 
@@ -807,6 +737,41 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
         return true;
     }
 
+    /**
+     * forgets the entries applied to the DHCP namespace of the L3 network on the host after the
+     * namespace is deleted, all namespaces of the host if l3Uuid is null
+     */
+    void namespaceDeleted(String hostUuid, String l3Uuid) {
+        if (l3Uuid == null) {
+            appliedEntries.forgetHost(hostUuid);
+        } else {
+            appliedEntries.forget(hostUuid, l3Uuid);
+        }
+    }
+
+    @Override
+    public void afterReturnIp(String l3NetworkUuid, String usedIpUuid) {
+        usedIpCounter.invalidate(l3NetworkUuid);
+    }
+
+    @Override
+    public void nodeJoin(ManagementNodeInventory inv) {
+        appliedEntries.forgetAll();
+    }
+
+    @Override
+    public void nodeLeft(ManagementNodeInventory inv) {
+        appliedEntries.forgetAll();
+    }
+
+    @Override
+    public void iAmDead(ManagementNodeInventory inv) {
+    }
+
+    @Override
+    public void iJoin(ManagementNodeInventory inv) {
+    }
+
     @Override
     public String preDeleteL3Network(L3NetworkInventory inventory) {
         return null;
@@ -840,6 +805,8 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
     }
 
     private void deleteNameSpace(L3NetworkInventory inventory) {
+        appliedEntries.forgetL3Network(inventory.getUuid());
+
         List<String> huuids = new Callable<List<String>>() {
             @Override
             @Transactional(readOnly = true)
@@ -880,6 +847,7 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
 
                     FlatDHCPDeleteNamespaceGC gc = new FlatDHCPDeleteNamespaceGC();
                     gc.hostUuid = getHostUuid();
+                    gc.l3NetworkUuid = inventory.getUuid();
                     gc.command = cmd;
                     gc.NAME = String.format("gc-namespace-on-host-%s", getHostUuid());
                     gc.submit();
@@ -895,12 +863,8 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
 
     }
 
-    private List<DhcpInfo> getVmDhcpInfo(VmInstanceInventory vm) {
-        return getVmDhcpInfo(vm, null);
-    }
-
     @Transactional(readOnly = true)
-    private List<DhcpInfo> getVmDhcpInfo(VmInstanceInventory vm, String l3Uuid) {
+    private List<DhcpInfo> getVmDhcpInfo(VmInstanceInventory vm) {
         List<DhcpInfo> dhcpInfoList = new ArrayList<>();
         if (!vm.getType().equals(VmInstanceConstant.USER_VM_TYPE)) {
             return dhcpInfoList;
@@ -917,11 +881,6 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
         nq.setParameter("ptype", FlatNetworkServiceConstant.FLAT_NETWORK_SERVICE_TYPE_STRING);
         nq.setParameter("vmUuid", vm.getUuid());
         List<VmNicVO> nics = nq.getResultList();
-
-        if (l3Uuid != null) {
-            nics = nics.stream().filter(nic -> nic.getUsedIps().stream().map(UsedIpVO::getL3NetworkUuid).collect(Collectors.toList()).contains(l3Uuid)).collect(Collectors.toList());
-        }
-
         if (nics.isEmpty()) {
             return dhcpInfoList;
         }
@@ -937,10 +896,6 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
 
         List<VmNicVO> dhcpNics = new ArrayList<>();
         for (VmNicInventory nic : vm.getVmNics()) {
-            if (l3Uuid != null && !VmNicHelper.getL3Uuids(nic).contains(l3Uuid)) {
-                continue;
-            }
-
             VmNicVO nicVO = dbf.findByUuid(nic.getUuid(), VmNicVO.class);
             dhcpNics.add(nicVO);
         }
@@ -1206,6 +1161,8 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
 
             @Override
             public void run(final FlowTrigger trigger, Map data) {
+                appliedEntries.forgetHost(context.getInventory().getUuid());
+
                 final List<DhcpInfo> dhcpInfoList = getDhcpInfoForConnectedKvmHost(context);
                 if (dhcpInfoList == null) {
                     trigger.next();
@@ -1321,6 +1278,8 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
     }
 
     public static class PrepareDhcpRsp extends KVMAgentCommands.AgentResponse {
+        // false if the command created the namespace, also when the agent doesn't report it
+        public boolean namespaceExisted;
     }
 
     public static class ConnectCmd extends KVMAgentCommands.AgentCommand {
@@ -1355,127 +1314,22 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
         return FlatNetworkServiceConstant.FLAT_NETWORK_SERVICE_TYPE;
     }
 
-    private List<String> getL3NetworkDns(String l3NetworkUuid){
-        List<String> dns = Q.New(L3NetworkDnsVO.class).eq(L3NetworkDnsVO_.l3NetworkUuid, l3NetworkUuid)
-                .select(L3NetworkDnsVO_.dns).orderBy(L3NetworkDnsVO_.id, SimpleQuery.Od.ASC).listValues();
-        if (dns == null) {
-            dns = new ArrayList<String>();
-        }
-
-        L3NetworkVO l3VO = Q.New(L3NetworkVO.class).eq(L3NetworkVO_.uuid, l3NetworkUuid).find();
-        if (FlatNetwordProviderGlobalConfig.ALLOW_DEFAULT_DNS.value(Boolean.class) && l3VO.getIpVersions().contains(IPv6Constants.IPv4)) {
-            Map<String, String> dhcpIpMap = getExistingDhcpServerIp(l3NetworkUuid, IPv6Constants.IPv4);
-            if (!dhcpIpMap.isEmpty()) {
-                Map.Entry<String, String> entry = dhcpIpMap.entrySet().iterator().next();
-                dns.add(entry.getKey());
-            }
-        }
-
-        for (FlatDhcpGetDnsAddressExtensionPoint exp : pluginRgty.getExtensionList(FlatDhcpGetDnsAddressExtensionPoint.class)) {
-            dns.addAll(exp.getDnsAddress(L3NetworkInventory.valueOf(l3VO)));
-        }
-
-        return dns;
-    }
-
-    private List<HostRouteInfo> getL3NetworkHostRoute(String l3NetworkUuid){
-        List<L3NetworkHostRouteVO> vos = Q.New(L3NetworkHostRouteVO.class).eq(L3NetworkHostRouteVO_.l3NetworkUuid, l3NetworkUuid).list();
-        if (vos == null || vos.isEmpty()) {
-            return new ArrayList<>();
-        }
-
-        List<HostRouteInfo> res = new ArrayList<>();
-        for (L3NetworkHostRouteVO vo : vos) {
-            HostRouteInfo info = new HostRouteInfo();
-            info.prefix = vo.getPrefix();
-            info.nexthop = vo.getNexthop();
-            res.add(info);
-        }
-
-        return res;
-    }
-
     private List<DhcpInfo> toDhcpInfo(List<DhcpStruct> structs) {
-        final Map<String, String> l3Bridges = new HashMap<String, String>();
-        for (DhcpStruct s : structs) {
-            if (!l3Bridges.containsKey(s.getL3Network().getUuid())) {
-                l3Bridges.put(s.getL3Network().getUuid(),
-                        KVMSystemTags.L2_BRIDGE_NAME.getTokenByResourceUuid(s.getL3Network().getL2NetworkUuid(), KVMSystemTags.L2_BRIDGE_NAME_TOKEN));
-            }
-        }
-
-        return CollectionUtils.transformToList(structs, new Function<DhcpInfo, DhcpStruct>() {
-            @Override
-            public DhcpInfo call(DhcpStruct arg) {
-                if (arg.getIp() == null && arg.getIp6() == null) {
-                    return null;
-                }
-
-                if ((arg.getIpVersion() == IPv6Constants.IPv6) && (IPv6Constants.SLAAC.equals(arg.getRaMode()))) {
-                    return null;
-                }
-
-                String vmMultiGateway = VmSystemTags.MULTIPLE_GATEWAY.getTokenByResourceUuid(arg.getVmUuid(),
-                        VmSystemTags.MULTIPLE_GATEWAY_TOKEN);
-                boolean multiGateway = Boolean.parseBoolean(vmMultiGateway);
-
-                DhcpInfo info = new DhcpInfo();
-                info.ipVersion = arg.getIpVersion();
-                info.raMode = arg.getRaMode();
-                info.dnsDomain = arg.getDnsDomain();
-                info.gateway = arg.getGateway();
-                info.hostname = arg.getHostname();
-                info.isDefaultL3Network = arg.isDefaultL3Network();
-
-                if (info.isDefaultL3Network) {
-                    if (info.hostname == null) {
-                        /* ipVersion can be ipv4, ipv6, ip46. used ip address as hostName iif ipVersion is ipv6 */
-                        if (info.ipVersion == IPv6Constants.IPv6 && arg.getIp6() != null) {
-                            info.hostname = IPv6NetworkUtils.ipv6AddessToHostname(arg.getIp6());
-                        } else if (arg.getIp() != null) {
-                            info.hostname = arg.getIp().replaceAll("\\.", "-");
-                        }
-                    }
-
-                    if (info.dnsDomain != null) {
-                        info.hostname = String.format("%s.%s", info.hostname, info.dnsDomain);
-                    }
-                }
+        return new FlatDhcpInfoBuilder().toDhcpInfo(structs);
+    }
 
-                List<String> dns = new ArrayList<>();
-                List<String> dns6 = new ArrayList<>();
-                for (String dnsIp : getL3NetworkDns(arg.getL3Network().getUuid())) {
-                    if (NetworkUtils.isIpv4Address(dnsIp)) {
-                        dns.add(dnsIp);
-                    } else {
-                        dns6.add(dnsIp);
-                    }
-                }
-                info.ip = arg.getIp();
-                info.netmask = arg.getNetmask();
-                info.mac = arg.getMac();
-                info.dns = dns;
-                info.l3NetworkUuid = arg.getL3Network().getUuid();
-                info.bridgeName = l3Bridges.get(arg.getL3Network().getUuid());
-                info.namespaceName = makeNamespaceName(info.bridgeName, arg.getL3Network().getUuid());
-                info.mtu = arg.getMtu();
-                info.hostRoutes = getL3NetworkHostRoute(arg.getL3Network().getUuid());
-                info.vmMultiGateway = multiGateway;
-                if ((arg.getIpVersion() == IPv6Constants.DUAL_STACK  || arg.getIpVersion() == IPv6Constants.IPv6)
-                        && !IPv6Constants.SLAAC.equals(arg.getRaMode())) {
-                    info.ip6 = arg.getIp6();
-                    info.gateway6 = arg.getGateway6();
-                    info.dns6 = dns6;
-                    info.firstIp = arg.getFirstIp();
-                    info.endIp = arg.getEndIP();
-                    info.prefixLength = arg.getPrefixLength();
-                }
-                return info;
-            }
-        });
+    /**
+     * DHCP entries of a host may be applied by any management node, the entries applied by this
+     * node tell what the namespaces have only if this node is the only one
+     */
+    private boolean isAppliedEntriesTracked() {
+        return destMaker.getManagementNodeCount() == 1;
     }
 
     private void applyDhcpToHosts(List<DhcpInfo> dhcpInfo, final String hostUuid, final boolean rebuild, final Completion completion) {
+        final boolean tracked = isAppliedEntriesTracked();
+        // entries forgotten while applying are not recorded by the apply
+        final long generation = appliedEntries.getGeneration();
         final Map<String, List<DhcpInfo>> l3DhcpMap = new HashMap<String, List<DhcpInfo>>();
         for (DhcpInfo d : dhcpInfo) {
             List<DhcpInfo> lst = l3DhcpMap.get(d.l3NetworkUuid);
@@ -1498,16 +1352,20 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
 
                 Map.Entry<String, List<DhcpInfo>> e = it.next();
                 final String l3Uuid = e.getKey();
-                final List<DhcpInfo> info = e.getValue();
-                final List<DhcpInfo> info4 = info.stream().filter(i -> i.ipVersion == IPv6Constants.IPv4).collect(Collectors.toList());
-                final List<DhcpInfo> info6 = info.stream().filter(i -> i.ipVersion == IPv6Constants.IPv6).collect(Collectors.toList());
-                DebugUtils.Assert(!info.isEmpty(), "how can info be empty???");
+                final List<DhcpInfo> all = e.getValue();
+                final List<DhcpInfo> changed = tracked && !rebuild ? appliedEntries.getChanged(hostUuid, l3Uuid, all) : null;
+                final List<DhcpInfo> info4 = all.stream().filter(i -> i.ipVersion == IPv6Constants.IPv4).collect(Collectors.toList());
+                final List<DhcpInfo> info6 = all.stream().filter(i -> i.ipVersion == IPv6Constants.IPv6).collect(Collectors.toList());
+                DebugUtils.Assert(!all.isEmpty(), "how can info be empty???");
 
                 FlowChain chain = FlowChainBuilder.newShareFlowChain();
                 chain.setName(String.format("flat-dhcp-provider-apply-dhcp-to-l3-network-%s", l3Uuid));
                 chain.then(new ShareFlow() {
                     FlatDhcpAcquireDhcpServerIpReply.DhcpServerIpStruct dhcp4Server = null;
                     FlatDhcpAcquireDhcpServerIpReply.DhcpServerIpStruct dhcp6Server = null;
+                    // the namespace is always prepared as it may be gone on the host, only entries an
+                    // existing namespace doesn't have are sent
+                    List<DhcpInfo> info = all;
 
                     @Override
                     public void setup() {
@@ -1516,10 +1374,6 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
 
                             @Override
                             public void run(final FlowTrigger trigger, Map data) {
-                                if (info.isEmpty()) {
-                                    trigger.next();
-                                    return;
-                                }
                                 FlatDhcpAcquireDhcpServerIpMsg msg = new FlatDhcpAcquireDhcpServerIpMsg();
                                 msg.setL3NetworkUuid(l3Uuid);
                                 bus.makeTargetServiceIdByResourceUuid(msg, FlatNetworkServiceConstant.SERVICE_ID, l3Uuid);
@@ -1564,7 +1418,7 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
 
                             @Override
                             public void run(final FlowTrigger trigger, Map data) {
-                                DhcpInfo i = info.get(0);
+                                DhcpInfo i = all.get(0);
 
                                 PrepareDhcpCmd cmd = new PrepareDhcpCmd();
                                 cmd.bridgeName = i.bridgeName;
@@ -1607,6 +1461,9 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
                                             return;
                                         }
 
+                                        if (changed != null && rsp.namespaceExisted) {
+                                            info = changed;
+                                        }
                                         trigger.next();
                                     }
                                 });
@@ -1618,6 +1475,13 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
 
                             @Override
                             public void run(final FlowTrigger trigger, Map data) {
+                                if (info.isEmpty()) {
+                                    logger.debug(String.format("all DHCP entries of the L3 network[uuid:%s] are applied on the host[uuid:%s]",
+                                            l3Uuid, hostUuid));
+                                    trigger.next();
+                                    return;
+                                }
+
                                 ApplyDhcpCmd cmd = new ApplyDhcpCmd();
                                 cmd.dhcp = info;
                                 cmd.rebuild = rebuild;
@@ -1644,6 +1508,10 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
                                             return;
                                         }
 
+                                        // a recreated namespace has only the entries just sent
+                                        if (isAppliedEntriesTracked()) {
+                                            appliedEntries.applied(hostUuid, l3Uuid, info, info == all, generation);
+                                        }
                                         trigger.next();
                                     }
                                 });
@@ -1660,6 +1528,7 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
                         error(new FlowErrorHandler(completion) {
                             @Override
                             public void handle(ErrorCode errCode, Map data) {
+                                appliedEntries.forget(hostUuid, l3Uuid);
                                 completion.fail(errCode);
                             }
                         });
@@ -1682,6 +1551,8 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
     }
 
     private void releaseDhcpService(List<DhcpInfo> info, final String vmUuid, final String hostUuid, final NoErrorCompletion completion) {
+        appliedEntries.released(hostUuid, info);
+
         final ReleaseDhcpCmd cmd = new ReleaseDhcpCmd();
         cmd.dhcp = info;
 
@@ -1806,21 +1677,7 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
     private void handle(L3NetworkUpdateDhcpMsg msg) {
         L3NetworkUpdateDhcpReply reply = new L3NetworkUpdateDhcpReply();
 
-        Map<String, List<DhcpInfo>> l3DhcpMap = new HashMap<String, List<DhcpInfo>>();
-
-        List<String> vmUuids = Q.New(VmNicVO.class).eq(VmNicVO_.l3NetworkUuid, msg.getL3NetworkUuid()).select(VmNicVO_.vmInstanceUuid)
-                .groupBy(VmNicVO_.vmInstanceUuid).listValues();
-
-        for (String uuid: vmUuids) {
-            VmInstanceInventory vm = VmInstanceInventory.valueOf(dbf.findByUuid(uuid, VmInstanceVO.class));
-            if (!vm.getState().equals(VmInstanceState.Running.toString()) || vm.getHostUuid() == null) {
-                continue;
-            }
-
-            String hostUuid = vm.getHostUuid();
-            List<DhcpInfo> hostInfo = l3DhcpMap.computeIfAbsent(hostUuid, k -> new ArrayList<>());
-            hostInfo.addAll(getVmDhcpInfo(vm, msg.getL3NetworkUuid()));
-        }
+        Map<String, List<DhcpInfo>> l3DhcpMap = new FlatDhcpInfoBuilder().buildForL3Network(msg.getL3NetworkUuid());
 
         applyDhcpToHosts(l3DhcpMap.entrySet().iterator(), new Completion(msg) {
             @Override
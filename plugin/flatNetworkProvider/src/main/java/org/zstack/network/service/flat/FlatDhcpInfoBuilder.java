@@ -0,0 +1,330 @@
+package org.zstack.network.service.flat;
+
+import org.springframework.beans.factory.annotation.Autowire;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Configurable;
+import org.springframework.transaction.annotation.Transactional;
+import org.zstack.compute.vm.VmSystemTags;
+import org.zstack.core.componentloader.PluginRegistry;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.Q;
+import org.zstack.core.db.SimpleQuery;
+import org.zstack.header.network.l3.*;
+import org.zstack.header.network.service.DhcpStruct;
+import org.zstack.header.network.service.NetworkServiceType;
+import org.zstack.header.tag.SystemTagInventory;
+import org.zstack.header.vm.*;
+import org.zstack.kvm.KVMSystemTags;
+import org.zstack.network.service.DhcpExtension;
+import org.zstack.network.service.DhcpStructCache;
+import org.zstack.network.service.flat.FlatDhcpBackend.DhcpInfo;
+import org.zstack.network.service.flat.FlatDhcpBackend.HostRouteInfo;
+import org.zstack.utils.network.IPv6Constants;
+import org.zstack.utils.network.IPv6NetworkUtils;
+import org.zstack.utils.network.NetworkUtils;
+
+import javax.persistence.Tuple;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.zstack.utils.CollectionDSL.list;
+
+/**
+ * Builds DhcpInfo of flat DHCP entries. Everything looked up for an L3 network (DNS, host
+ * routes, bridge name, MTU and IP ranges) is cached in the builder and shared by all entries
+ * it builds, a builder is meant to be used for one batch and dropped.
+ *
+ * buildForHosts() and buildForL3Network() build the entries of many VMs with a fixed number
+ * of set-based queries instead of queries per VM and per nic, they are used when a host
+ * reconnects and when the DHCP of an L3 network is updated.
+ */
+@Configurable(preConstruction = true, autowire = Autowire.BY_TYPE)
+class FlatDhcpInfoBuilder {
+    @Autowired
+    private DatabaseFacade dbf;
+    @Autowired
+    private PluginRegistry pluginRgty;
+    @Autowired
+    private DhcpExtension dhcpExtension;
+
+    private static final List<VmInstanceState> CONNECTED_HOST_VM_STATES = list(VmInstanceState.Running, VmInstanceState.Unknown,
+            VmInstanceState.Starting, VmInstanceState.Rebooting, VmInstanceState.Resuming, VmInstanceState.Migrating,
+            VmInstanceState.VolumeMigrating);
+
+    private final DhcpStructCache structCache = new DhcpStructCache();
+    private final Map<String, List<String>> l3Dns = new HashMap<>();
+    private final Map<String, List<HostRouteInfo>> l3HostRoutes = new HashMap<>();
+    private final Map<String, String> l2Bridges = new HashMap<>();
+    private final Map<String, Boolean> vmMultiGateways = new HashMap<>();
+
+    /**
+     * @return the entries of user VMs on the hosts by host uuid, a host without any VM having
+     * flat DHCP nics is absent
+     */
+    @Transactional(readOnly = true)
+    Map<String, List<DhcpInfo>> buildForHosts(Collection<String> hostUuids) {
+        List<Tuple> vms = Q.New(VmInstanceVO.class)
+                .select(VmInstanceVO_.uuid, VmInstanceVO_.hostUuid, VmInstanceVO_.defaultL3NetworkUuid)
+                .in(VmInstanceVO_.hostUuid, hostUuids)
+                .in(VmInstanceVO_.state, CONNECTED_HOST_VM_STATES)
+                .eq(VmInstanceVO_.type, VmInstanceConstant.USER_VM_TYPE)
+                .listTuple();
+
+        return build(vms, null);
+    }
+
+    /**
+     * @return the entries of the L3 network of running user VMs by host uuid
+     */
+    @Transactional(readOnly = true)
+    Map<String, List<DhcpInfo>> buildForL3Network(String l3Uuid) {
+        String sql = "select vm.uuid, vm.hostUuid, vm.defaultL3NetworkUuid from VmInstanceVO vm" +
+                " where vm.uuid in (select nic.vmInstanceUuid from VmNicVO nic where nic.l3NetworkUuid = :l3Uuid)" +
+                " and vm.state = :state and vm.type = :vtype and vm.hostUuid is not null";
+        List<Tuple> vms = dbf.getEntityManager().createQuery(sql, Tuple.class)
+                .setParameter("l3Uuid", l3Uuid)
+                .setParameter("state", VmInstanceState.Running)
+                .setParameter("vtype", VmInstanceConstant.USER_VM_TYPE)
+                .getResultList();
+
+        return build(vms, l3Uuid);
+    }
+
+    private Map<String, List<DhcpInfo>> build(List<Tuple> vms, String l3Uuid) {
+        Map<String, List<DhcpInfo>> ret = new HashMap<>();
+        if (vms.isEmpty()) {
+            return ret;
+        }
+
+        List<String> vmUuids = vms.stream().map(t -> t.get(0, String.class)).collect(Collectors.toList());
+        String sql = "select nic.uuid from VmNicVO nic, L3NetworkVO l3, NetworkServiceL3NetworkRefVO ref, NetworkServiceProviderVO provider, UsedIpVO ip" +
+                " where nic.uuid = ip.vmNicUuid and ip.l3NetworkUuid = l3.uuid" +
+                " and ref.l3NetworkUuid = l3.uuid and ref.networkServiceProviderUuid = provider.uuid " +
+                " and ref.networkServiceType = :dhcpType " +
+                " and provider.type = :ptype and nic.vmInstanceUuid in (:vmUuids) group by nic.uuid";
+        List<String> nicUuids = dbf.getEntityManager().createQuery(sql, String.class)
+                .setParameter("dhcpType", NetworkServiceType.DHCP.toString())
+                .setParameter("ptype", FlatNetworkServiceConstant.FLAT_NETWORK_SERVICE_TYPE_STRING)
+                .setParameter("vmUuids", vmUuids)
+                .getResultList();
+        if (nicUuids.isEmpty()) {
+            return ret;
+        }
+
+        // fetch the used IPs with the nics, they are loaded nic by nic otherwise
+        List<VmNicVO> nics = dbf.getEntityManager().createQuery("select distinct nic from VmNicVO nic left join fetch nic.usedIps" +
+                " where nic.uuid in (:uuids)", VmNicVO.class)
+                .setParameter("uuids", nicUuids)
+                .getResultList();
+        if (l3Uuid != null) {
+            nics = nics.stream().filter(nic -> nic.getUsedIps().stream().anyMatch(ip -> l3Uuid.equals(ip.getL3NetworkUuid())))
+                    .collect(Collectors.toList());
+        }
+
+        if (nics.isEmpty()) {
+            return ret;
+        }
+
+        Map<String, List<VmNicVO>> vmNics = new HashMap<>();
+        Set<String> l3Uuids = new HashSet<>();
+        for (VmNicVO nic : nics) {
+            vmNics.computeIfAbsent(nic.getVmInstanceUuid(), k -> new ArrayList<>()).add(nic);
+            l3Uuids.add(nic.getL3NetworkUuid());
+            nic.getUsedIps().forEach(ip -> l3Uuids.add(ip.getL3NetworkUuid()));
+        }
+        l3Uuids.remove(null);
+
+        preloadL3Networks(l3Uuids);
+        preloadVms(new ArrayList<>(vmNics.keySet()));
+
+        Map<String, String> hostnames = new HashMap<>();
+        for (SystemTagInventory tag : VmSystemTags.HOSTNAME.getTagInventories(new ArrayList<>(vmNics.keySet()))) {
+            hostnames.put(tag.getResourceUuid(), VmSystemTags.HOSTNAME.getTokenByTag(tag.getTag(), VmSystemTags.HOSTNAME_TOKEN));
+        }
+
+        for (Tuple t : vms) {
+            String vmUuid = t.get(0, String.class);
+            List<VmNicVO> dhcpNics = vmNics.get(vmUuid);
+            if (dhcpNics == null) {
+                continue;
+            }
+
+            // makeDhcpStruct() only needs these of the VM, a full inventory loads all volumes and nics of the VM
+            VmInstanceInventory vm = new VmInstanceInventory();
+            vm.setUuid(vmUuid);
+            vm.setHostUuid(t.get(1, String.class));
+            vm.setDefaultL3NetworkUuid(t.get(2, String.class));
+
+            List<VmInstanceSpec.HostName> hostNames = new ArrayList<>();
+            String hostName = hostnames.get(vmUuid);
+            if (hostName != null) {
+                VmInstanceSpec.HostName hostNameSpec = new VmInstanceSpec.HostName();
+                hostNameSpec.setL3NetworkUuid(vm.getDefaultL3NetworkUuid());
+                hostNameSpec.setHostname(hostName);
+                hostNames.add(hostNameSpec);
+            }
+
+            List<DhcpStruct> structs = dhcpExtension.makeDhcpStruct(vm, hostNames, dhcpNics, structCache);
+            ret.computeIfAbsent(vm.getHostUuid(), k -> new ArrayList<>()).addAll(toDhcpInfo(structs));
+        }
+
+        return ret;
+    }
+
+    private void preloadL3Networks(Collection<String> l3Uuids) {
+        if (l3Uuids.isEmpty()) {
+            return;
+        }
+
+        structCache.preload(l3Uuids);
+
+        List<L3NetworkDnsVO> dnsVOs = Q.New(L3NetworkDnsVO.class).in(L3NetworkDnsVO_.l3NetworkUuid, l3Uuids)
+                .orderBy(L3NetworkDnsVO_.id, SimpleQuery.Od.ASC).list();
+        Map<String, List<String>> dns = new HashMap<>();
+        l3Uuids.forEach(uuid -> dns.put(uuid, new ArrayList<>()));
+        dnsVOs.forEach(vo -> dns.get(vo.getL3NetworkUuid()).add(vo.getDns()));
+        dns.forEach((uuid, l3dns) -> l3Dns.put(uuid, completeDns(uuid, l3dns)));
+
+        List<L3NetworkHostRouteVO> routeVOs = Q.New(L3NetworkHostRouteVO.class).in(L3NetworkHostRouteVO_.l3NetworkUuid, l3Uuids).list();
+        l3Uuids.forEach(uuid -> l3HostRoutes.put(uuid, new ArrayList<>()));
+        routeVOs.forEach(vo -> l3HostRoutes.get(vo.getL3NetworkUuid()).add(toHostRouteInfo(vo)));
+
+        List<String> l2Uuids = l3Uuids.stream().map(uuid -> structCache.getL3Network(uuid).getL2NetworkUuid()).distinct().collect(Collectors.toList());
+        l2Uuids.forEach(uuid -> l2Bridges.put(uuid, null));
+        for (SystemTagInventory tag : KVMSystemTags.L2_BRIDGE_NAME.getTagInventories(l2Uuids)) {
+            l2Bridges.put(tag.getResourceUuid(), KVMSystemTags.L2_BRIDGE_NAME.getTokenByTag(tag.getTag(), KVMSystemTags.L2_BRIDGE_NAME_TOKEN));
+        }
+    }
+
+    private void preloadVms(List<String> vmUuids) {
+        if (vmUuids.isEmpty()) {
+            return;
+        }
+
+        vmUuids.forEach(uuid -> vmMultiGateways.put(uuid, false));
+        for (SystemTagInventory tag : VmSystemTags.MULTIPLE_GATEWAY.getTagInventories(vmUuids)) {
+            vmMultiGateways.put(tag.getResourceUuid(), Boolean.parseBoolean(
+                    VmSystemTags.MULTIPLE_GATEWAY.getTokenByTag(tag.getTag(), VmSystemTags.MULTIPLE_GATEWAY_TOKEN)));
+        }
+    }
+
+    private List<String> completeDns(String l3Uuid, List<String> dns) {
+        L3NetworkInventory l3 = structCache.getL3Network(l3Uuid);
+        if (FlatNetwordProviderGlobalConfig.ALLOW_DEFAULT_DNS.value(Boolean.class) && l3.getIpVersions().contains(IPv6Constants.IPv4)) {
+            Map<String, String> dhcpIpMap = FlatDhcpBackend.getExistingDhcpServerIp(l3Uuid, IPv6Constants.IPv4);
+            if (!dhcpIpMap.isEmpty()) {
+                Map.Entry<String, String> entry = dhcpIpMap.entrySet().iterator().next();
+                dns.add(entry.getKey());
+            }
+        }
+
+        for (FlatDhcpGetDnsAddressExtensionPoint exp : pluginRgty.getExtensionList(FlatDhcpGetDnsAddressExtensionPoint.class)) {
+            dns.addAll(exp.getDnsAddress(l3));
+        }
+
+        return dns;
+    }
+
+    private List<String> getL3NetworkDns(String l3Uuid) {
+        return l3Dns.computeIfAbsent(l3Uuid, uuid -> {
+            List<String> dns = Q.New(L3NetworkDnsVO.class).eq(L3NetworkDnsVO_.l3NetworkUuid, uuid)
+                    .select(L3NetworkDnsVO_.dns).orderBy(L3NetworkDnsVO_.id, SimpleQuery.Od.ASC).listValues();
+            return completeDns(uuid, dns == null ? new ArrayList<>() : dns);
+        });
+    }
+
+    private static HostRouteInfo toHostRouteInfo(L3NetworkHostRouteVO vo) {
+        HostRouteInfo info = new HostRouteInfo();
+        info.prefix = vo.getPrefix();
+        info.nexthop = vo.getNexthop();
+        return info;
+    }
+
+    private List<HostRouteInfo> getL3NetworkHostRoute(String l3Uuid) {
+        return l3HostRoutes.computeIfAbsent(l3Uuid, uuid -> {
+            List<L3NetworkHostRouteVO> vos = Q.New(L3NetworkHostRouteVO.class).eq(L3NetworkHostRouteVO_.l3NetworkUuid, uuid).list();
+            return vos.stream().map(FlatDhcpInfoBuilder::toHostRouteInfo).collect(Collectors.toList());
+        });
+    }
+
+    private String getBridgeName(String l2Uuid) {
+        if (!l2Bridges.containsKey(l2Uuid)) {
+            l2Bridges.put(l2Uuid, KVMSystemTags.L2_BRIDGE_NAME.getTokenByResourceUuid(l2Uuid, KVMSystemTags.L2_BRIDGE_NAME_TOKEN));
+        }
+
+        return l2Bridges.get(l2Uuid);
+    }
+
+    private boolean isVmMultiGateway(String vmUuid) {
+        return vmMultiGateways.computeIfAbsent(vmUuid, uuid -> Boolean.parseBoolean(
+                VmSystemTags.MULTIPLE_GATEWAY.getTokenByResourceUuid(uuid, VmSystemTags.MULTIPLE_GATEWAY_TOKEN)));
+    }
+
+    List<DhcpInfo> toDhcpInfo(List<DhcpStruct> structs) {
+        List<DhcpInfo> ret = new ArrayList<>();
+        for (DhcpStruct arg : structs) {
+            if (arg.getIp() == null && arg.getIp6() == null) {
+                continue;
+            }
+
+            if ((arg.getIpVersion() == IPv6Constants.IPv6) && (IPv6Constants.SLAAC.equals(arg.getRaMode()))) {
+                continue;
+            }
+
+            DhcpInfo info = new DhcpInfo();
+            info.ipVersion = arg.getIpVersion();
+            info.raMode = arg.getRaMode();
+            info.dnsDomain = arg.getDnsDomain();
+            info.gateway = arg.getGateway();
+            info.hostname = arg.getHostname();
+            info.isDefaultL3Network = arg.isDefaultL3Network();
+
+            if (info.isDefaultL3Network) {
+                if (info.hostname == null) {
+                    /* ipVersion can be ipv4, ipv6, ip46. used ip address as hostName iif ipVersion is ipv6 */
+                    if (info.ipVersion == IPv6Constants.IPv6 && arg.getIp6() != null) {
+                        info.hostname = IPv6NetworkUtils.ipv6AddessToHostname(arg.getIp6());
+                    } else if (arg.getIp() != null) {
+                        info.hostname = arg.getIp().replaceAll("\\.", "-");
+                    }
+                }
+
+                if (info.dnsDomain != null) {
+                    info.hostname = String.format("%s.%s", info.hostname, info.dnsDomain);
+                }
+            }
+
+            List<String> dns = new ArrayList<>();
+            List<String> dns6 = new ArrayList<>();
+            for (String dnsIp : getL3NetworkDns(arg.getL3Network().getUuid())) {
+                if (NetworkUtils.isIpv4Address(dnsIp)) {
+                    dns.add(dnsIp);
+                } else {
+                    dns6.add(dnsIp);
+                }
+            }
+            info.ip = arg.getIp();
+            info.netmask = arg.getNetmask();
+            info.mac = arg.getMac();
+            info.dns = dns;
+            info.l3NetworkUuid = arg.getL3Network().getUuid();
+            info.bridgeName = getBridgeName(arg.getL3Network().getL2NetworkUuid());
+            info.namespaceName = FlatDhcpBackend.makeNamespaceName(info.bridgeName, arg.getL3Network().getUuid());
+            info.mtu = arg.getMtu();
+            info.hostRoutes = new ArrayList<>(getL3NetworkHostRoute(arg.getL3Network().getUuid()));
+            info.vmMultiGateway = isVmMultiGateway(arg.getVmUuid());
+            if ((arg.getIpVersion() == IPv6Constants.DUAL_STACK  || arg.getIpVersion() == IPv6Constants.IPv6)
+                    && !IPv6Constants.SLAAC.equals(arg.getRaMode())) {
+                info.ip6 = arg.getIp6();
+                info.gateway6 = arg.getGateway6();
+                info.dns6 = dns6;
+                info.firstIp = arg.getFirstIp();
+                info.endIp = arg.getEndIP();
+                info.prefixLength = arg.getPrefixLength();
+            }
+            ret.add(info);
+        }
+
+        return ret;
+    }
+}
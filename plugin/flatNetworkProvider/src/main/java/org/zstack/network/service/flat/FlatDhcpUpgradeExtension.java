@@ -44,6 +44,8 @@ public class FlatDhcpUpgradeExtension implements Component {
     private EventFacade evtf;
     @Autowired
     private ErrorFacade errf;
+    @Autowired
+    private FlatDhcpBackend dhcpBackend;
 
     class L3Host {
         String hostUuid;
@@ -128,6 +130,7 @@ public class FlatDhcpUpgradeExtension implements Component {
                     }, new SteppingSendCallback<KvmResponseWrapper>() {
                         @Override
                         public void success(KvmResponseWrapper w) {
+                            dhcpBackend.namespaceDeleted(l3Host.hostUuid, l3.getUuid());
                             logger.debug(String.format("successfully deleted namespace for L3 network[uuid:%s, name:%s] on the " +
                                     "KVM host[uuid:%s]", l3.getUuid(), l3.getName(), getHostUuid()));
                         }
@@ -140,6 +143,7 @@ public class FlatDhcpUpgradeExtension implements Component {
 
                             FlatDHCPDeleteNamespaceGC gc = new FlatDHCPDeleteNamespaceGC();
                             gc.hostUuid = getHostUuid();
+                            gc.l3NetworkUuid = l3.getUuid();
                             gc.command = cmd;
                             gc.NAME = String.format("gc-namespace-on-host-%s", getHostUuid());
                             gc.submit();
@@ -627,6 +627,7 @@ public class FlatEipBackend implements EipBackend, KVMHostConnectExtensionPoint,
         msg.setCommand(cmd);
         msg.setHostUuid(hostUuid);
         msg.setPath(APPLY_EIP_PATH);
+        msg.setCoalescible(true);
         bus.makeTargetServiceIdByResourceUuid(msg, HostConstant.SERVICE_ID, msg.getHostUuid());
         bus.send(msg, new CloudBusCallBack(completion) {
             @Override
@@ -675,6 +676,7 @@ public class FlatEipBackend implements EipBackend, KVMHostConnectExtensionPoint,
             msg.setHostUuid(getHostUuidByVmUuid(cmd.eip.vmUuid));
         }
         msg.setPath(DELETE_EIP_PATH);
+        msg.setCoalescible(true);
         bus.makeTargetServiceIdByResourceUuid(msg, HostConstant.SERVICE_ID, msg.getHostUuid());
         bus.send(msg, new CloudBusCallBack(completion) {
             @Override
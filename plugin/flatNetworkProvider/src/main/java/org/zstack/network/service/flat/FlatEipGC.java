@@ -1,5 +1,6 @@
 package org.zstack.network.service.flat;
 
+import org.zstack.core.gc.BatchableGarbageCollector;
 import org.zstack.core.gc.EventBasedGarbageCollector;
 import org.zstack.core.gc.GC;
 import org.zstack.core.gc.GCCompletion;
@@ -15,12 +16,13 @@ import org.zstack.kvm.KvmResponseWrapper;
 
 import static org.zstack.core.Platform.operr;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Created by xing5 on 2017/3/6.
  */
-public class FlatEipGC extends EventBasedGarbageCollector {
+public class FlatEipGC extends EventBasedGarbageCollector implements BatchableGarbageCollector {
     @GC
     public List<FlatEipBackend.EipTO> eips;
     @GC
@@ -33,8 +35,46 @@ public class FlatEipGC extends EventBasedGarbageCollector {
             return;
         }
 
+        deleteEips(eips, completion);
+    }
+
+    @Override
+    public String getBatchKey() {
+        return hostUuid;
+    }
+
+    @Override
+    public void triggerNowInBatch(List<GCBatchItem> items) {
+        if (!dbf.isExist(hostUuid, HostVO.class)) {
+            items.forEach(it -> it.completion.cancel());
+            return;
+        }
+
+        // the eips of all jobs on the same host are deleted by one command
+        List<FlatEipBackend.EipTO> toDelete = new ArrayList<>();
+        items.forEach(it -> toDelete.addAll(((FlatEipGC) it.gc).eips));
+
+        deleteEips(toDelete, new GCCompletion(null) {
+            @Override
+            public void cancel() {
+                items.forEach(it -> it.completion.cancel());
+            }
+
+            @Override
+            public void success() {
+                items.forEach(it -> it.completion.success());
+            }
+
+            @Override
+            public void fail(ErrorCode errorCode) {
+                items.forEach(it -> it.completion.fail(errorCode));
+            }
+        });
+    }
+
+    private void deleteEips(List<FlatEipBackend.EipTO> eipsToDelete, GCCompletion completion) {
         FlatEipBackend.BatchDeleteEipCmd cmd = new FlatEipBackend.BatchDeleteEipCmd();
-        cmd.eips = eips;
+        cmd.eips = eipsToDelete;
 
         new KvmCommandSender(hostUuid).send(cmd, FlatEipBackend.BATCH_DELETE_EIP_PATH,
                 new KvmCommandFailureChecker() {
@@ -61,12 +101,12 @@ public class FlatEipGC extends EventBasedGarbageCollector {
 
     @Override
     protected void setup() {
-        onEvent(HostCanonicalEvents.HOST_STATUS_CHANGED_PATH, ((tokens, data) -> {
+        onEvent(HostCanonicalEvents.HOST_STATUS_CHANGED_PATH, hostUuid, ((tokens, data) -> {
             HostCanonicalEvents.HostStatusChangedData d = (HostCanonicalEvents.HostStatusChangedData) data;
             return hostUuid.equals(d.getHostUuid()) && d.getNewStatus().equals(HostStatus.Connected.toString());
         }));
 
-        onEvent(HostCanonicalEvents.HOST_DELETED_PATH, ((tokens, data) -> {
+        onEvent(HostCanonicalEvents.HOST_DELETED_PATH, hostUuid, ((tokens, data) -> {
             HostCanonicalEvents.HostDeletedData d = (HostCanonicalEvents.HostDeletedData) data;
             return hostUuid.equals(d.getHostUuid());
         }));
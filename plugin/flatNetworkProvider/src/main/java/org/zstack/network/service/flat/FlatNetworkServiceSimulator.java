@@ -55,7 +55,9 @@ public class FlatNetworkServiceSimulator {
     public @ResponseBody String prepareDhcp(HttpEntity<String> entity) {
         PrepareDhcpCmd cmd = JSONObjectUtil.toObject(entity.getBody(), PrepareDhcpCmd.class);
         config.prepareDhcpCmdList.add(cmd);
-        reply(entity, new PrepareDhcpRsp());
+        PrepareDhcpRsp rsp = new PrepareDhcpRsp();
+        rsp.namespaceExisted = true;
+        reply(entity, rsp);
         return null;
     }
 
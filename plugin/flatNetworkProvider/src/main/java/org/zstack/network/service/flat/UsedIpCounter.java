@@ -0,0 +1,70 @@
+package org.zstack.network.service.flat;
+
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.EntityEvent;
+import org.zstack.core.db.Q;
+import org.zstack.header.network.l3.UsedIpVO;
+import org.zstack.header.network.l3.UsedIpVO_;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Number of used IPs of L3 networks for the IP statistic. A count is loaded from the database
+ * once and then kept up to date with UsedIpVO persisted and removed on this management node.
+ *
+ * IPs returned by ReturnIpMsg are deleted in bulk and invalidate the count of their L3 network
+ * instead. Other bulk deletes and IPs released by other management nodes don't fire entity
+ * callbacks, and a callback may fire in a transaction rolled back later, so a count is
+ * approximate and reloaded after COUNT_EXPIRE_TIME.
+ */
+class UsedIpCounter {
+    private static final long COUNT_EXPIRE_TIME = TimeUnit.SECONDS.toMillis(30);
+
+    private static class Count {
+        final AtomicLong value;
+        final long loadTime = System.currentTimeMillis();
+
+        Count(long value) {
+            this.value = new AtomicLong(value);
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() - loadTime > COUNT_EXPIRE_TIME;
+        }
+    }
+
+    private final Map<String, Count> counts = new ConcurrentHashMap<>();
+
+    void install(DatabaseFacade dbf) {
+        dbf.installEntityLifeCycleCallback(UsedIpVO.class, EntityEvent.POST_PERSIST, (evt, o) -> add(((UsedIpVO) o).getL3NetworkUuid(), 1));
+        dbf.installEntityLifeCycleCallback(UsedIpVO.class, EntityEvent.POST_REMOVE, (evt, o) -> add(((UsedIpVO) o).getL3NetworkUuid(), -1));
+    }
+
+    private void add(String l3Uuid, long delta) {
+        if (l3Uuid == null) {
+            return;
+        }
+
+        Count count = counts.get(l3Uuid);
+        if (count != null) {
+            count.value.addAndGet(delta);
+        }
+    }
+
+    void invalidate(String l3Uuid) {
+        counts.remove(l3Uuid);
+    }
+
+    long getCount(String l3Uuid) {
+        Count count = counts.get(l3Uuid);
+        if (count == null || count.isExpired()) {
+            count = new Count(Q.New(UsedIpVO.class).eq(UsedIpVO_.l3NetworkUuid, l3Uuid).count());
+            counts.put(l3Uuid, count);
+        }
+
+        return Math.max(count.value.get(), 0);
+    }
+}
@@ -0,0 +1,62 @@
+package org.zstack.kvm;
+
+import org.zstack.header.errorcode.ErrorCode;
+import org.zstack.header.host.HostInventory;
+import org.zstack.header.host.HostState;
+import org.zstack.header.host.HostStatus;
+import org.zstack.header.message.APIEvent;
+import org.zstack.header.rest.RestResponse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestResponse(fieldsTo = {"all"})
+public class APIAddKVMHostsEvent extends APIEvent {
+    private List<HostInventory> inventories = new ArrayList<>();
+    /**
+     * errors of hosts failing to add, keyed by management ip
+     */
+    private Map<String, ErrorCode> errors = new HashMap<>();
+
+    public APIAddKVMHostsEvent() {
+        super(null);
+    }
+
+    public APIAddKVMHostsEvent(String apiId) {
+        super(apiId);
+    }
+
+    public List<HostInventory> getInventories() {
+        return inventories;
+    }
+
+    public void setInventories(List<HostInventory> inventories) {
+        this.inventories = inventories;
+    }
+
+    public Map<String, ErrorCode> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(Map<String, ErrorCode> errors) {
+        this.errors = errors;
+    }
+
+    public static APIAddKVMHostsEvent __example__() {
+        APIAddKVMHostsEvent event = new APIAddKVMHostsEvent();
+        HostInventory hi = new HostInventory();
+        hi.setUuid(uuid());
+        hi.setName("host1");
+        hi.setManagementIp("192.168.0.1");
+        hi.setClusterUuid(uuid());
+        hi.setZoneUuid(uuid());
+        hi.setHypervisorType("KVM");
+        hi.setState(HostState.Enabled.toString());
+        hi.setStatus(HostStatus.Connected.toString());
+        event.getInventories().add(hi);
+        event.getErrors().put("192.168.0.2", new ErrorCode());
+        return event;
+    }
+}
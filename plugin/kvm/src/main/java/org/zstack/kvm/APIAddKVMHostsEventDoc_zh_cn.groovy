@@ -0,0 +1,32 @@
+package org.zstack.kvm
+
+import org.zstack.header.errorcode.ErrorCode
+import org.zstack.header.host.HostInventory
+
+doc {
+
+	title "批量添加KVM主机结果"
+
+	ref {
+		name "error"
+		path "org.zstack.kvm.APIAddKVMHostsEvent.error"
+		desc "错误码，若不为null，则表示操作失败, 操作成功时该字段为null",false
+		type "ErrorCode"
+		since "3.10.0"
+		clz ErrorCode.class
+	}
+	ref {
+		name "inventories"
+		path "org.zstack.kvm.APIAddKVMHostsEvent.inventories"
+		desc "添加成功的物理机的详细信息"
+		type "List"
+		since "3.10.0"
+		clz HostInventory.class
+	}
+	field {
+		name "errors"
+		desc "添加失败的物理机的错误，以物理机管理IP为键"
+		type "Map"
+		since "3.10.0"
+	}
+}
@@ -0,0 +1,63 @@
+package org.zstack.kvm;
+
+import org.springframework.http.HttpMethod;
+import org.zstack.header.cluster.ClusterVO;
+import org.zstack.header.log.HasSensitiveInfo;
+import org.zstack.header.message.APIMessage;
+import org.zstack.header.message.APIParam;
+import org.zstack.header.message.DefaultTimeout;
+import org.zstack.header.rest.RestRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * add a batch of kvm hosts to a cluster, hosts failing to add don't fail the others
+ */
+@RestRequest(
+        path = "/hosts/kvm/batch",
+        method = HttpMethod.POST,
+        parameterName = "params",
+        responseClass = APIAddKVMHostsEvent.class
+)
+@DefaultTimeout(timeunit = TimeUnit.HOURS, value = 6)
+public class APIAddKVMHostsMsg extends APIMessage implements HasSensitiveInfo {
+    @APIParam(resourceType = ClusterVO.class)
+    private String clusterUuid;
+
+    @APIParam(nonempty = true)
+    private List<AddKVMHostStruct> hosts;
+
+    public String getClusterUuid() {
+        return clusterUuid;
+    }
+
+    public void setClusterUuid(String clusterUuid) {
+        this.clusterUuid = clusterUuid;
+    }
+
+    public List<AddKVMHostStruct> getHosts() {
+        return hosts;
+    }
+
+    public void setHosts(List<AddKVMHostStruct> hosts) {
+        this.hosts = hosts;
+    }
+
+    public static APIAddKVMHostsMsg __example__() {
+        APIAddKVMHostsMsg msg = new APIAddKVMHostsMsg();
+        msg.setClusterUuid(uuid());
+        List<AddKVMHostStruct> hosts = new ArrayList<>();
+        for (int i = 1; i < 3; i++) {
+            AddKVMHostStruct s = new AddKVMHostStruct();
+            s.setName(String.format("host%s", i));
+            s.setManagementIp(String.format("192.168.0.%s", i));
+            s.setUsername("root");
+            s.setPassword("password");
+            hosts.add(s);
+        }
+        msg.setHosts(hosts);
+        return msg;
+    }
+}
@@ -0,0 +1,51 @@
+package org.zstack.kvm
+
+import org.zstack.kvm.APIAddKVMHostsEvent
+
+doc {
+    title "AddKVMHosts"
+
+    category "host"
+
+    desc """批量添加KVM主机，单个主机添加失败不影响其他主机"""
+
+    rest {
+        request {
+			url "POST /v1/hosts/kvm/batch"
+
+			header (Authorization: 'OAuth the-session-uuid')
+
+            clz APIAddKVMHostsMsg.class
+
+            desc """批量添加KVM主机"""
+            
+			params {
+
+				column {
+					name "clusterUuid"
+					enclosedIn "params"
+					desc "集群UUID"
+					location "body"
+					type "String"
+					optional false
+					since "3.10.0"
+					
+				}
+				column {
+					name "hosts"
+					enclosedIn "params"
+					desc "待添加的主机列表，每项包含name、description、managementIp、username、password、sshPort"
+					location "body"
+					type "List"
+					optional false
+					since "3.10.0"
+					
+				}
+			}
+        }
+
+        response {
+            clz APIAddKVMHostsEvent.class
+        }
+    }
+}
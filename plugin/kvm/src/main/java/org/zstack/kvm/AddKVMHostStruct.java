@@ -0,0 +1,77 @@
+package org.zstack.kvm;
+
+import org.zstack.header.log.HasSensitiveInfo;
+import org.zstack.header.log.NoLogging;
+
+/**
+ * a host of APIAddKVMHostsMsg, the name defaults to HOST-{managementIp}
+ */
+public class AddKVMHostStruct implements HasSensitiveInfo {
+    private String name;
+    private String description;
+    private String managementIp;
+    private String username;
+    @NoLogging
+    private String password;
+    private int sshPort = 22;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public String getManagementIp() {
+        return managementIp;
+    }
+
+    public void setManagementIp(String managementIp) {
+        this.managementIp = managementIp;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public int getSshPort() {
+        return sshPort;
+    }
+
+    public void setSshPort(int sshPort) {
+        this.sshPort = sshPort;
+    }
+
+    public AddKVMHostMsg toAddKVMHostMsg(String clusterUuid) {
+        AddKVMHostMsg msg = new AddKVMHostMsg();
+        msg.setClusterUuid(clusterUuid);
+        msg.setName(name != null ? name : String.format("HOST-%s", managementIp));
+        msg.setDescription(description);
+        msg.setManagementIp(managementIp);
+        msg.setUsername(username);
+        msg.setPassword(password);
+        msg.setSshPort(sshPort);
+        return msg;
+    }
+}
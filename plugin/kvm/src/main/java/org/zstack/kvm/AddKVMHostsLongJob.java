@@ -0,0 +1,60 @@
+package org.zstack.kvm;
+
+import org.springframework.beans.factory.annotation.Autowire;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Configurable;
+import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.cloudbus.CloudBusCallBack;
+import org.zstack.header.core.ReturnValueCompletion;
+import org.zstack.header.host.AddHostsMsg;
+import org.zstack.header.host.AddHostsReply;
+import org.zstack.header.host.HostConstant;
+import org.zstack.header.longjob.*;
+import org.zstack.header.message.APIEvent;
+import org.zstack.header.message.MessageReply;
+import org.zstack.longjob.LongJobUtils;
+import org.zstack.utils.gson.JSONObjectUtil;
+
+import static org.zstack.core.Platform.err;
+
+@UseApiTimeout(APIAddKVMHostsMsg.class)
+@LongJobFor(APIAddKVMHostsMsg.class)
+@Configurable(preConstruction = true, autowire = Autowire.BY_TYPE)
+public class AddKVMHostsLongJob implements LongJob {
+    @Autowired
+    protected CloudBus bus;
+
+    @Override
+    public void start(LongJobVO job, ReturnValueCompletion<APIEvent> completion) {
+        APIAddKVMHostsMsg msg = JSONObjectUtil.toObject(job.getJobData(), APIAddKVMHostsMsg.class);
+        AddHostsMsg amsg = new AddHostsMsg();
+        msg.getHosts().forEach(h -> amsg.getHosts().add(h.toAddKVMHostMsg(msg.getClusterUuid())));
+        bus.makeLocalServiceId(amsg, HostConstant.SERVICE_ID);
+        bus.send(amsg, new CloudBusCallBack(completion) {
+            @Override
+            public void run(MessageReply reply) {
+                if (!reply.isSuccess()) {
+                    completion.fail(reply.getError());
+                    return;
+                }
+
+                AddHostsReply r = reply.castReply();
+                LongJobUtils.setJobResult(job.getUuid(), r.getInventories());
+                APIAddKVMHostsEvent event = new APIAddKVMHostsEvent();
+                event.setInventories(r.getInventories());
+                event.setErrors(r.getErrors());
+                completion.success(event);
+            }
+        });
+    }
+
+    @Override
+    public void cancel(LongJobVO job, ReturnValueCompletion<Boolean> completion) {
+        completion.fail(err(LongJobErrors.NOT_SUPPORTED, "not supported"));
+    }
+
+    @Override
+    public void resume(LongJobVO job, ReturnValueCompletion<APIEvent> completion) {
+        completion.fail(err(LongJobErrors.NOT_SUPPORTED, "not supported"));
+    }
+}
@@ -66,6 +66,22 @@ public class KVMAgentCommands {
         public LinkedHashMap kvmHostAddons;
     }
 
+    public static class BatchedCommand {
+        public String path;
+        public LinkedHashMap command;
+    }
+
+    /**
+     * commands run by the agent one by one, responses are replied in the order of commands
+     */
+    public static class BatchCommand extends AgentCommand {
+        public List<BatchedCommand> commands;
+    }
+
+    public static class BatchResponse extends AgentResponse {
+        public List<LinkedHashMap> responses;
+    }
+
     public static class CheckVmStateCmd extends AgentCommand {
         public List<String> vmUuids;
         public String hostUuid;
@@ -1,7 +1,10 @@
 package org.zstack.kvm;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.apache.commons.lang.StringUtils;
+import org.zstack.compute.host.HostGlobalConfig;
 import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.Q;
 import org.zstack.core.db.SimpleQuery;
 import org.zstack.core.db.SimpleQuery.Op;
 import org.zstack.core.errorcode.ErrorFacade;
@@ -9,6 +12,7 @@ import org.zstack.header.apimediator.ApiMessageInterceptionException;
 import org.zstack.header.apimediator.ApiMessageInterceptor;
 import org.zstack.header.apimediator.GlobalApiMessageInterceptor;
 import org.zstack.header.cluster.ClusterVO;
+import org.zstack.header.cluster.ClusterVO_;
 import org.zstack.header.message.APIMessage;
 import org.zstack.header.network.l2.APIAttachL2NetworkToClusterMsg;
 import org.zstack.header.network.l2.L2NetworkConstant;
@@ -16,7 +20,9 @@ import org.zstack.header.network.l2.L2VlanNetworkVO;
 import org.zstack.utils.CollectionDSL;
 import org.zstack.utils.network.NetworkUtils;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static org.zstack.core.Platform.argerr;
 
@@ -32,6 +38,8 @@ public class KVMApiInterceptor implements ApiMessageInterceptor, GlobalApiMessag
     public APIMessage intercept(APIMessage msg) throws ApiMessageInterceptionException {
         if (msg instanceof APIAddKVMHostMsg) {
             validate((APIAddKVMHostMsg) msg);
+        } else if (msg instanceof APIAddKVMHostsMsg) {
+            validate((APIAddKVMHostsMsg) msg);
         } else if (msg instanceof APIAttachL2NetworkToClusterMsg) {
             validate((APIAttachL2NetworkToClusterMsg) msg);
         }
@@ -47,6 +55,42 @@ public class KVMApiInterceptor implements ApiMessageInterceptor, GlobalApiMessag
         }
     }
 
+    private void validate(APIAddKVMHostsMsg msg) {
+        int limit = HostGlobalConfig.BATCH_ADD_HOST_LIMIT.value(Integer.class);
+        if (msg.getHosts().size() > limit) {
+            throw new ApiMessageInterceptionException(argerr("cannot add more than %s hosts at once, got %s", limit, msg.getHosts().size()));
+        }
+
+        String hypervisorType = Q.New(ClusterVO.class).select(ClusterVO_.hypervisorType)
+                .eq(ClusterVO_.uuid, msg.getClusterUuid())
+                .findValue();
+        if (!KVMConstant.KVM_HYPERVISOR_TYPE.equals(hypervisorType)) {
+            throw new ApiMessageInterceptionException(argerr("cluster[uuid:%s] hypervisorType is not %s", msg.getClusterUuid(), KVMConstant.KVM_HYPERVISOR_TYPE));
+        }
+
+        Set<String> ips = new HashSet<>();
+        for (AddKVMHostStruct h : msg.getHosts()) {
+            if (StringUtils.isEmpty(h.getManagementIp()) || StringUtils.isEmpty(h.getUsername()) || h.getPassword() == null) {
+                throw new ApiMessageInterceptionException(argerr("managementIp, username and password of every host must be set"));
+            }
+
+            if (h.getSshPort() < 1 || h.getSshPort() > 65535) {
+                throw new ApiMessageInterceptionException(argerr("invalid ssh port[%s] of host[%s]", h.getSshPort(), h.getManagementIp()));
+            }
+
+            if (!ips.add(h.getManagementIp())) {
+                throw new ApiMessageInterceptionException(argerr("duplicate management ip[%s]", h.getManagementIp()));
+            }
+        }
+
+        List<String> existingIps = Q.New(KVMHostVO.class).select(KVMHostVO_.managementIp)
+                .in(KVMHostVO_.managementIp, ips)
+                .listValues();
+        if (!existingIps.isEmpty()) {
+            throw new ApiMessageInterceptionException(argerr("there has been kvm hosts having management ips%s", existingIps));
+        }
+    }
+
     // if attach l2 vlan network to kvm cluster, then check its interface length
     private void validate(APIAttachL2NetworkToClusterMsg msg) {
         ClusterVO cls = dbf.findByUuid(msg.getClusterUuid(), ClusterVO.class);
@@ -0,0 +1,62 @@
+package org.zstack.kvm;
+
+import org.springframework.beans.factory.annotation.Autowire;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Configurable;
+import org.zstack.core.thread.ThreadFacade;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Gathers coalescible KVMHostAsyncHttpCallMsg of a host, there is one per host kept by
+ * KVMHostFactory. The first message opens a window of KVMGlobalConfig.COMMAND_COALESCE_WINDOW
+ * milliseconds, messages arriving in the window are handed over with it as one batch in the
+ * order they arrive when the window closes or the batch is full.
+ */
+@Configurable(preConstruction = true, autowire = Autowire.BY_TYPE)
+class KVMCommandCoalescer {
+    @Autowired
+    private ThreadFacade thdf;
+
+    private List<KVMHostAsyncHttpCallMsg> window;
+
+    void submit(KVMHostAsyncHttpCallMsg msg, Consumer<List<KVMHostAsyncHttpCallMsg>> flusher) {
+        List<KVMHostAsyncHttpCallMsg> full = null;
+
+        synchronized (this) {
+            if (window == null) {
+                window = new ArrayList<>();
+
+                List<KVMHostAsyncHttpCallMsg> opened = window;
+                thdf.submitTimeoutTask(() -> close(opened, flusher), TimeUnit.MILLISECONDS,
+                        KVMGlobalConfig.COMMAND_COALESCE_WINDOW.value(Long.class));
+            }
+
+            window.add(msg);
+            if (window.size() >= KVMGlobalConfig.COMMAND_COALESCE_MAX_BATCH_SIZE.value(Integer.class)) {
+                full = window;
+                window = null;
+            }
+        }
+
+        if (full != null) {
+            flusher.accept(full);
+        }
+    }
+
+    private void close(List<KVMHostAsyncHttpCallMsg> opened, Consumer<List<KVMHostAsyncHttpCallMsg>> flusher) {
+        synchronized (this) {
+            if (window != opened) {
+                // handed over when it was full
+                return;
+            }
+
+            window = null;
+        }
+
+        flusher.accept(opened);
+    }
+}
@@ -17,6 +17,7 @@ public interface KVMConstant {
     String KVM_ADD_INTERFACE_TO_BRIDGE_PATH = "/network/bridge/addif";
     String KVM_HOST_CAPACITY_PATH = "/host/capacity";
     String KVM_HOST_FACT_PATH = "/host/fact";
+    String KVM_BATCH_COMMAND_PATH = "/host/batchcommand";
     String KVM_HOST_REPORT_DEVICE_EVENT_PATH = "/host/reportdeviceevent";
     String KVM_REALIZE_L2NOVLAN_NETWORK_PATH = "/network/l2novlan/createbridge";
     String KVM_CHECK_L2NOVLAN_NETWORK_PATH = "/network/l2novlan/checkbridge";
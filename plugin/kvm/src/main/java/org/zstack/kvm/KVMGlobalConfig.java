@@ -58,6 +58,13 @@ public class KVMGlobalConfig {
     @GlobalConfigValidation
     public static GlobalConfig RESTART_AGENT_IF_FAKE_DEAD = new GlobalConfig(CATEGORY, "restartagentwhenfakedead");
 
+    @GlobalConfigValidation
+    public static GlobalConfig COMMAND_COALESCE = new GlobalConfig(CATEGORY, "command.coalesce");
+    @GlobalConfigValidation(numberGreaterThan = 0, numberLessThan = 1000)
+    public static GlobalConfig COMMAND_COALESCE_WINDOW = new GlobalConfig(CATEGORY, "command.coalesce.window");
+    @GlobalConfigValidation(numberGreaterThan = 1)
+    public static GlobalConfig COMMAND_COALESCE_MAX_BATCH_SIZE = new GlobalConfig(CATEGORY, "command.coalesce.maxBatchSize");
+
     @GlobalConfigValidation
     public static GlobalConfig KVMAGENT_ALLOW_PORTS_LIST = new GlobalConfig(CATEGORY, "kvmagent.allow.ports");
 }
@@ -80,6 +80,8 @@ import org.zstack.utils.tester.ZTester;
 import javax.persistence.TypedQuery;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -337,6 +339,8 @@ public class KVMHost extends HostBase implements Host {
         AgentCommand cmd;
         Class<T> responseClass;
         String commandStr;
+        // in milliseconds, the timeout of the current task is used if not set
+        Long timeout;
 
         public Http(String path, String cmd, Class<T> rspClz) {
             this.path = path;
@@ -378,7 +382,7 @@ public class KVMHost extends HostBase implements Host {
                     public Class<T> getReturnClass() {
                         return responseClass;
                     }
-                }, TimeUnit.MILLISECONDS, timeoutManager.getTimeout());
+                }, TimeUnit.MILLISECONDS, timeout != null ? timeout : timeoutManager.getTimeout());
             } else {
                 restf.asyncJsonPost(path, cmd, header, new JsonAsyncRESTCallback<T>(completion) {
                     @Override
@@ -1376,6 +1380,15 @@ public class KVMHost extends HostBase implements Host {
     }
 
     private void handle(final KVMHostAsyncHttpCallMsg msg) {
+        if (msg.isCoalescible() && KVMGlobalConfig.COMMAND_COALESCE.value(Boolean.class)) {
+            factory.getCommandCoalescer(self.getUuid()).submit(msg, this::handleCoalescedKvmAsyncMsgs);
+            return;
+        }
+
+        submitKvmAsyncMsg(msg);
+    }
+
+    private void submitKvmAsyncMsg(final KVMHostAsyncHttpCallMsg msg) {
         thdf.chainSubmit(new ChainTask(msg) {
             @Override
             public String getSyncSignature() {
@@ -1399,6 +1412,163 @@ public class KVMHost extends HostBase implements Host {
         });
     }
 
+    private void handleCoalescedKvmAsyncMsgs(final List<KVMHostAsyncHttpCallMsg> msgs) {
+        if (msgs.size() == 1) {
+            submitKvmAsyncMsg(msgs.get(0));
+            return;
+        }
+
+        AsyncBackup[] rest = msgs.subList(1, msgs.size()).toArray(new AsyncBackup[msgs.size() - 1]);
+        thdf.chainSubmit(new ChainTask(msgs.get(0), rest) {
+            @Override
+            public String getSyncSignature() {
+                return "host-sync-control";
+            }
+
+            @Override
+            public void run(SyncTaskChain chain) {
+                RunInKVMHostQueue queue = inQueue().name(String.format("execute-batched-async-http-calls-on-kvm-host-%s", self.getUuid()));
+                msgs.forEach(queue::asyncBackup);
+                queue.asyncBackup(chain)
+                        .run(innerChain -> executeBatchedAsyncHttpCalls(msgs, new NoErrorCompletion(innerChain, chain) {
+                            @Override
+                            public void done() {
+                                innerChain.next();
+                                chain.next();
+                            }
+                        }));
+            }
+
+            @Override
+            protected int getSyncLevel() {
+                return getHostMaxThreadsNum();
+            }
+
+            @Override
+            public String getName() {
+                return String.format("batched-async-call-on-kvm-%s", self.getUuid());
+            }
+        });
+    }
+
+    private void executeBatchedAsyncHttpCalls(final List<KVMHostAsyncHttpCallMsg> msgs, final NoErrorCompletion completion) {
+        List<KVMHostAsyncHttpCallMsg> toSend = msgs;
+        if (msgs.stream().anyMatch(msg -> !msg.isNoStatusCheck())) {
+            try {
+                checkStatus();
+            } catch (OperationFailureException e) {
+                // the commands not checking the status are still sent, in their order
+                toSend = new ArrayList<>();
+                for (KVMHostAsyncHttpCallMsg msg : msgs) {
+                    if (msg.isNoStatusCheck()) {
+                        toSend.add(msg);
+                    } else {
+                        KVMHostAsyncHttpCallReply reply = new KVMHostAsyncHttpCallReply();
+                        reply.setError(e.getErrorCode());
+                        bus.reply(msg, reply);
+                    }
+                }
+            }
+        }
+
+        if (toSend.isEmpty()) {
+            completion.done();
+            return;
+        }
+
+        final List<KVMHostAsyncHttpCallMsg> batch = toSend;
+        final List<AtomicBoolean> replied = batch.stream().map(msg -> new AtomicBoolean()).collect(Collectors.toList());
+        final List<ThreadFacadeImpl.TimeoutTaskReceipt> timers = new ArrayList<>(Collections.nCopies(batch.size(), null));
+        BiConsumer<Integer, KVMHostAsyncHttpCallReply> replyOnce = (i, reply) -> {
+            if (replied.get(i).compareAndSet(false, true)) {
+                ThreadFacadeImpl.TimeoutTaskReceipt timer = timers.get(i);
+                if (timer != null) {
+                    timer.cancel();
+                }
+
+                bus.reply(batch.get(i), reply);
+            }
+        };
+
+        // the batch waits for the command of the longest timeout, a command of a shorter timeout
+        // is replied with a timeout error when its own timeout comes
+        long now = System.currentTimeMillis();
+        List<Long> timeouts = batch.stream()
+                .map(msg -> msg.getTimeout() > 0 ? msg.getTimeout() : timeoutManager.getTimeout())
+                .collect(Collectors.toList());
+        List<Long> lefts = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            lefts.add(Math.max(1, batch.get(i).getCreatedTime() + timeouts.get(i) - now));
+        }
+        long timeout = Collections.max(lefts);
+
+        for (int i = 0; i < batch.size(); i++) {
+            if (lefts.get(i) >= timeout) {
+                continue;
+            }
+
+            int index = i;
+            timers.set(i, thdf.submitTimeoutTask(() -> {
+                KVMHostAsyncHttpCallReply reply = new KVMHostAsyncHttpCallReply();
+                reply.setError(touterr("the command[path:%s] in the batch command to the KVM host[uuid:%s] timeout after %s milliseconds",
+                        batch.get(index).getPath(), self.getUuid(), timeouts.get(index)));
+                replyOnce.accept(index, reply);
+            }, TimeUnit.MILLISECONDS, lefts.get(i)));
+        }
+
+        BatchCommand cmd = new BatchCommand();
+        cmd.commands = batch.stream().map(msg -> {
+            MessageCommandRecorder.record(msg.getCommandClassName());
+
+            // each command gets the addons it has when sent alone
+            Http<LinkedHashMap> http = new Http<>(msg.getPath(), msg.getCommand(), LinkedHashMap.class);
+            Map<String, String> header = new HashMap<>();
+            header.put(Constants.AGENT_HTTP_HEADER_RESOURCE_UUID, self.getUuid());
+            http.runBeforeAsyncJsonPostExts(header);
+
+            BatchedCommand bcmd = new BatchedCommand();
+            bcmd.path = msg.getPath();
+            bcmd.command = JSONObjectUtil.toObject(http.commandStr, LinkedHashMap.class);
+            return bcmd;
+        }).collect(Collectors.toList());
+
+        Http<BatchResponse> http = new Http<>(buildUrl(KVMConstant.KVM_BATCH_COMMAND_PATH), JSONObjectUtil.toJsonString(cmd), BatchResponse.class);
+        http.timeout = timeout;
+        http.call(new ReturnValueCompletion<BatchResponse>(completion) {
+            @Override
+            public void success(BatchResponse ret) {
+                for (int i = 0; i < batch.size(); i++) {
+                    KVMHostAsyncHttpCallReply reply = new KVMHostAsyncHttpCallReply();
+                    if (!ret.isSuccess()) {
+                        reply.setError(operr("batch command failed on the KVM host[uuid:%s], %s", self.getUuid(), ret.getError()));
+                    } else if (ret.responses == null || ret.responses.size() <= i) {
+                        reply.setError(operr("no response of the command[path:%s] in the batch command replied by the KVM host[uuid:%s]",
+                                batch.get(i).getPath(), self.getUuid()));
+                    } else {
+                        reply.setResponse(ret.responses.get(i));
+                    }
+
+                    replyOnce.accept(i, reply);
+                }
+
+                completion.done();
+            }
+
+            @Override
+            public void fail(ErrorCode err) {
+                ErrorCode error = err.isError(SysErrors.HTTP_ERROR, SysErrors.IO_ERROR) ?
+                        err(HostErrors.OPERATION_FAILURE_GC_ELIGIBLE, err, "cannot do the operation on the KVM host") : err;
+                for (int i = 0; i < batch.size(); i++) {
+                    KVMHostAsyncHttpCallReply reply = new KVMHostAsyncHttpCallReply();
+                    reply.setError(error);
+                    replyOnce.accept(i, reply);
+                }
+
+                completion.done();
+            }
+        });
+    }
+
     private String buildUrl(String path) {
         UriComponentsBuilder ub = UriComponentsBuilder.newInstance();
         ub.scheme(KVMGlobalProperty.AGENT_URL_SCHEME);
@@ -3,4 +3,17 @@ package org.zstack.kvm;
 /**
  */
 public class KVMHostAsyncHttpCallMsg extends KVMHostHttpCallMsg {
+    /**
+     * the command can be sent to the agent with other commands in one batch command,
+     * see KVMGlobalConfig.COMMAND_COALESCE
+     */
+    private boolean coalescible;
+
+    public boolean isCoalescible() {
+        return coalescible;
+    }
+
+    public void setCoalescible(boolean coalescible) {
+        this.coalescible = coalescible;
+    }
 }
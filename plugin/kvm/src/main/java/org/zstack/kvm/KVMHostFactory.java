@@ -49,13 +49,15 @@ import org.zstack.utils.logging.CLogger;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import static org.zstack.core.Platform.argerr;
 import static org.zstack.core.Platform.operr;
 
 public class KVMHostFactory extends AbstractService implements HypervisorFactory, Component,
-        ManagementNodeReadyExtensionPoint, MaxDataVolumeNumberExtensionPoint, HypervisorMessageFactory {
+        ManagementNodeReadyExtensionPoint, MaxDataVolumeNumberExtensionPoint, HypervisorMessageFactory,
+        HostDeleteExtensionPoint {
     private static final CLogger logger = Utils.getLogger(KVMHostFactory.class);
 
     public static final HypervisorType hypervisorType = new HypervisorType(KVMConstant.KVM_HYPERVISOR_TYPE);
@@ -64,6 +66,7 @@ public class KVMHostFactory extends AbstractService implements HypervisorFactory
     private List<KVMHostConnectExtensionPoint> connectExtensions = new ArrayList<>();
     private Map<L2NetworkType, KVMCompleteNicInformationExtensionPoint> completeNicInfoExtensions = new HashMap<>();
     private int maxDataVolumeNum;
+    private final Map<String, KVMCommandCoalescer> commandCoalescers = new ConcurrentHashMap<>();
 
     static {
         RAW_FORMAT.newFormatInputOutputMapping(hypervisorType, QCOW2_FORMAT.toString());
@@ -85,8 +88,7 @@ public class KVMHostFactory extends AbstractService implements HypervisorFactory
     @Autowired
     private EventFacade evf;
 
-    @Override
-    public HostVO createHost(HostVO vo, AddHostMessage msg) {
+    private KVMHostVO newKVMHostVO(HostVO vo, AddHostMessage msg) {
         if (!(msg instanceof AddKVMHostMessage)) {
             throw new OperationFailureException(operr("cluster[uuid:%s] hypervisorType is not %s", msg.getClusterUuid(), KVMConstant.KVM_HYPERVISOR_TYPE));
         }
@@ -96,10 +98,26 @@ public class KVMHostFactory extends AbstractService implements HypervisorFactory
         kvo.setUsername(amsg.getUsername());
         kvo.setPassword(amsg.getPassword());
         kvo.setPort(amsg.getSshPort());
-        kvo = dbf.persistAndRefresh(kvo);
         return kvo;
     }
 
+    @Override
+    public HostVO createHost(HostVO vo, AddHostMessage msg) {
+        return dbf.persistAndRefresh(newKVMHostVO(vo, msg));
+    }
+
+    @Override
+    public List<HostVO> createHosts(List<HostVO> vos, List<? extends AddHostMessage> msgs) {
+        List<KVMHostVO> kvos = new ArrayList<>();
+        for (int i = 0; i < vos.size(); i++) {
+            kvos.add(newKVMHostVO(vos.get(i), msgs.get(i)));
+        }
+
+        dbf.persistCollection(kvos);
+        List<String> uuids = kvos.stream().map(KVMHostVO::getUuid).collect(Collectors.toList());
+        return new ArrayList<>(dbf.listByPrimaryKeys(uuids, KVMHostVO.class));
+    }
+
     @Override
     public List<AddHostMsg> buildMessageFromFile(String content, ValidateFunction<AddHostMsg> validator) {
         try {
@@ -421,6 +439,23 @@ public class KVMHostFactory extends AbstractService implements HypervisorFactory
         return createHostContext(kvo);
     }
 
+    KVMCommandCoalescer getCommandCoalescer(String hostUuid) {
+        return commandCoalescers.computeIfAbsent(hostUuid, k -> new KVMCommandCoalescer());
+    }
+
+    @Override
+    public void preDeleteHost(HostInventory inventory) throws HostException {
+    }
+
+    @Override
+    public void beforeDeleteHost(HostInventory inventory) {
+    }
+
+    @Override
+    public void afterDeleteHost(HostInventory inventory) {
+        commandCoalescers.remove(inventory.getUuid());
+    }
+
     @Override
     public String getHypervisorTypeForMaxDataVolumeNumberExtension() {
         return KVMConstant.KVM_HYPERVISOR_TYPE;
@@ -481,6 +516,8 @@ public class KVMHostFactory extends AbstractService implements HypervisorFactory
     public void handleMessage(Message msg) {
         if (msg instanceof APIKvmRunShellMsg) {
             handle((APIKvmRunShellMsg) msg);
+        } else if (msg instanceof APIAddKVMHostsMsg) {
+            handle((APIAddKVMHostsMsg) msg);
         } else {
             bus.dealWithUnknownMessage(msg);
         }
@@ -524,6 +561,28 @@ public class KVMHostFactory extends AbstractService implements HypervisorFactory
         });
     }
 
+    private void handle(final APIAddKVMHostsMsg msg) {
+        final APIAddKVMHostsEvent evt = new APIAddKVMHostsEvent(msg.getId());
+
+        AddHostsMsg amsg = new AddHostsMsg();
+        msg.getHosts().forEach(h -> amsg.getHosts().add(h.toAddKVMHostMsg(msg.getClusterUuid())));
+        bus.makeLocalServiceId(amsg, HostConstant.SERVICE_ID);
+        bus.send(amsg, new CloudBusCallBack(msg) {
+            @Override
+            public void run(MessageReply reply) {
+                if (!reply.isSuccess()) {
+                    evt.setError(reply.getError());
+                } else {
+                    AddHostsReply r = reply.castReply();
+                    evt.setInventories(r.getInventories());
+                    evt.setErrors(r.getErrors());
+                }
+
+                bus.publish(evt);
+            }
+        });
+    }
+
     @Override
     public String getId() {
         return bus.makeLocalServiceId(KVMConstant.SERVICE_ID);
@@ -78,17 +78,17 @@ public class LocalStorageDeleteBitsGC extends EventBasedGarbageCollector {
 
     @Override
     protected void setup() {
-        onEvent(HostCanonicalEvents.HOST_STATUS_CHANGED_PATH, ((tokens, data) -> {
+        onEvent(HostCanonicalEvents.HOST_STATUS_CHANGED_PATH, hostUuid, ((tokens, data) -> {
             HostCanonicalEvents.HostStatusChangedData d = (HostCanonicalEvents.HostStatusChangedData) data;
             return d.getHostUuid().equals(hostUuid) && d.getNewStatus().equals(HostStatus.Connected.toString());
         }));
 
-        onEvent(HostCanonicalEvents.HOST_DELETED_PATH, ((tokens, data) -> {
+        onEvent(HostCanonicalEvents.HOST_DELETED_PATH, hostUuid, ((tokens, data) -> {
             HostCanonicalEvents.HostDeletedData d = (HostCanonicalEvents.HostDeletedData) data;
             return d.getHostUuid().equals(hostUuid);
         }));
 
-        onEvent(PrimaryStorageCanonicalEvent.PRIMARY_STORAGE_DELETED_PATH, ((tokens, data) -> {
+        onEvent(PrimaryStorageCanonicalEvent.PRIMARY_STORAGE_DELETED_PATH, primaryStorageUuid, ((tokens, data) -> {
             PrimaryStorageCanonicalEvent.PrimaryStorageDeletedData d = (PrimaryStorageCanonicalEvent.PrimaryStorageDeletedData) data;
             return d.getPrimaryStorageUuid().equals(primaryStorageUuid);
         }));
@@ -3,11 +3,18 @@ package org.zstack.network.l2.vxlan.vtep;
 import org.zstack.header.message.NeedReplyMessage;
 import org.zstack.header.network.l2.L2NetworkMessage;
 
+import java.util.List;
+
 /**
  * Created by weiwang on 21/04/2017.
  */
 public class PopulateVtepPeersMsg extends NeedReplyMessage implements L2NetworkMessage {
     private String poolUuid;
+    /**
+     * when both are null, all vteps of the pool are populated with all their peers
+     */
+    private List<String> addedVtepIps;
+    private List<String> removedVtepIps;
 
     public String getPoolUuid() {
         return poolUuid;
@@ -17,6 +24,22 @@ public class PopulateVtepPeersMsg extends NeedReplyMessage implements L2NetworkM
         this.poolUuid = poolUuid;
     }
 
+    public List<String> getAddedVtepIps() {
+        return addedVtepIps;
+    }
+
+    public void setAddedVtepIps(List<String> addedVtepIps) {
+        this.addedVtepIps = addedVtepIps;
+    }
+
+    public List<String> getRemovedVtepIps() {
+        return removedVtepIps;
+    }
+
+    public void setRemovedVtepIps(List<String> removedVtepIps) {
+        this.removedVtepIps = removedVtepIps;
+    }
+
     @Override
     public String getL2NetworkUuid() {
         return getPoolUuid();
@@ -14,4 +14,7 @@ public class VxlanNetworkGlobalConfig {
 
     @GlobalConfigValidation
     public static GlobalConfig CLUSTER_LAZY_ATTACH = new GlobalConfig(CATEGORY, "cluster.lazyAttach");
+
+    @GlobalConfigValidation(numberGreaterThan = 0)
+    public static GlobalConfig FDB_PROPAGATION_WINDOW = new GlobalConfig(CATEGORY, "fdb.propagation.window");
 }
\ No newline at end of file
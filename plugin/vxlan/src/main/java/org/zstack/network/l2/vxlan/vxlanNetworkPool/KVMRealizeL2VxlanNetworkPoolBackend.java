@@ -1,7 +1,6 @@
 package org.zstack.network.l2.vxlan.vxlanNetworkPool;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.zstack.core.asyncbatch.While;
 import org.zstack.core.cloudbus.CloudBus;
 import org.zstack.core.cloudbus.CloudBusCallBack;
 import org.zstack.core.componentloader.PluginRegistry;
@@ -10,7 +9,6 @@ import org.zstack.core.db.Q;
 import org.zstack.core.db.SQL;
 import org.zstack.core.workflow.FlowChainBuilder;
 import org.zstack.header.core.Completion;
-import org.zstack.header.core.NoErrorCompletion;
 import org.zstack.header.core.workflow.*;
 import org.zstack.header.errorcode.ErrorCode;
 import org.zstack.header.exception.CloudRuntimeException;
@@ -26,6 +24,7 @@ import org.zstack.kvm.*;
 import org.zstack.network.l2.L2NetworkDefaultMtu;
 import org.zstack.network.l2.L2NetworkManager;
 import org.zstack.network.l2.vxlan.vtep.CreateVtepMsg;
+import org.zstack.network.l2.vxlan.vtep.PopulateVtepPeersMsg;
 import org.zstack.network.l2.vxlan.vtep.VtepVO;
 import org.zstack.network.l2.vxlan.vtep.VtepVO_;
 import org.zstack.network.l2.vxlan.vxlanNetwork.*;
@@ -59,6 +58,7 @@ public class KVMRealizeL2VxlanNetworkPoolBackend implements L2NetworkRealization
 
     private static String VTEP_IP = "vtepIp";
     private static String NEED_POPULATE = "needPopulate";
+    private static String DEPRECATED_VTEP_IP = "deprecatedVtepIp";
 
     @Override
     public void realize(final L2NetworkInventory l2Network, final String hostUuid, final Completion completion) {
@@ -157,6 +157,7 @@ public class KVMRealizeL2VxlanNetworkPoolBackend implements L2NetworkRealization
                             "remove deprecated vtep[ip:%s] from host[uuid:%s] for l2 vxlan network pool[uuid:%s]",
                             vtepVOS.get(0).getVtepIp(), hostUuid, l2Network.getUuid()));
                     dbf.remove(vtepVOS.get(0));
+                    data.put(DEPRECATED_VTEP_IP, vtepVOS.get(0).getVtepIp());
                 }
 
                 logger.debug(String.format(
@@ -283,50 +284,19 @@ public class KVMRealizeL2VxlanNetworkPoolBackend implements L2NetworkRealization
                     return;
                 }
 
-                List<VtepVO> vteps = Q.New(VtepVO.class).eq(VtepVO_.poolUuid, l2Network.getUuid()).list();
-
-                if (vteps == null || vteps.size() <= 1) {
-                    logger.debug("no need to populate fdb since there are only one vtep or less");
-                    trigger.next();
-                    return;
+                PopulateVtepPeersMsg msg = new PopulateVtepPeersMsg();
+                msg.setPoolUuid(l2Network.getUuid());
+                msg.setAddedVtepIps(Collections.singletonList((String) data.get(VTEP_IP)));
+                if (data.get(DEPRECATED_VTEP_IP) != null) {
+                    msg.setRemovedVtepIps(Collections.singletonList((String) data.get(DEPRECATED_VTEP_IP)));
                 }
-
-                List<String> vxlanNetworkUuids = Q.New(VxlanNetworkVO.class)
-                        .select(VxlanNetworkVO_.uuid)
-                        .eq(VxlanNetworkVO_.poolUuid, l2Network.getUuid())
-                        .listValues();
-
-                new While<>(vteps).all((vtep, completion1) -> {
-                    Set<String> peers = vteps.stream()
-                            .map(VtepVO::getVtepIp)
-                            .collect(Collectors.toSet());
-                    peers.remove(vtep.getVtepIp());
-
-                    logger.info(String.format("populate fdb to vtep[ip:%s] for vxlan network pool %s with vxlan network[uuids:%s] to host[uuid:%s]",
-                            vtep.getVtepIp(), l2Network.getUuid(), vxlanNetworkUuids, vtep.getHostUuid()));
-
-                    VxlanKvmAgentCommands.PopulateVxlanNetworksFdbCmd cmd = new VxlanKvmAgentCommands.PopulateVxlanNetworksFdbCmd();
-                    cmd.setPeers(new ArrayList<>(peers));
-                    cmd.setNetworkUuids(vxlanNetworkUuids);
-
-                    KVMHostAsyncHttpCallMsg msg = new KVMHostAsyncHttpCallMsg();
-                    msg.setHostUuid(vtep.getHostUuid());
-                    msg.setCommand(cmd);
-                    msg.setPath(VXLAN_KVM_POPULATE_FDB_L2VXLAN_NETWORKS_PATH);
-                    msg.setNoStatusCheck(noStatusCheck);
-                    bus.makeTargetServiceIdByResourceUuid(msg, HostConstant.SERVICE_ID, hostUuid);
-                    bus.send(msg, new CloudBusCallBack(completion1) {
-                        @Override
-                        public void run(MessageReply reply) {
-                            if (!reply.isSuccess()) {
-                                logger.warn(reply.getError().toString());
-                            }
-                            completion1.done();
-                        }
-                    });
-                }).run(new NoErrorCompletion() {
+                bus.makeTargetServiceIdByResourceUuid(msg, L2NetworkConstant.SERVICE_ID, l2Network.getUuid());
+                bus.send(msg, new CloudBusCallBack(trigger) {
                     @Override
-                    public void done() {
+                    public void run(MessageReply reply) {
+                        if (!reply.isSuccess()) {
+                            logger.warn(reply.getError().toString());
+                        }
                         trigger.next();
                     }
                 });
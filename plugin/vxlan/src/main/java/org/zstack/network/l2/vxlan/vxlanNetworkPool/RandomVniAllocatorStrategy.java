@@ -56,78 +56,34 @@ public class RandomVniAllocatorStrategy extends AbstractVniAllocatorStrategy {
     }
 
     private Integer allocateVni(VniRangeVO vo) {
-        int total = vo.size();
-        Random random = new Random();
-        Integer s = random.nextInt(total) + vo.getStartVni();
-        Integer e = vo.getEndVni();
-        Integer ret = steppingAllocate(s, e, total, vo.getUuid(), vo.getL2NetworkUuid());
-        if (ret != null) {
-            return ret;
+        // load the used vnis of the range once and pick from the bitmap, instead of
+        // querying the range again and again in small steps
+        SimpleQuery<VxlanNetworkVO> q = dbf.createQuery(VxlanNetworkVO.class);
+        q.select(VxlanNetworkVO_.vni);
+        q.add(VxlanNetworkVO_.poolUuid, SimpleQuery.Op.EQ, vo.getL2NetworkUuid());
+        q.add(VxlanNetworkVO_.vni, SimpleQuery.Op.GTE, vo.getStartVni());
+        q.add(VxlanNetworkVO_.vni, SimpleQuery.Op.LTE, vo.getEndVni());
+        List<Integer> used = q.listValue();
+
+        Integer vni = randomAllocateVni(vo.getStartVni(), vo.getEndVni(), used);
+        if (vni == null) {
+            logger.debug(String.format("vni range[uuid:%s] has no vni available, try next one", vo.getUuid()));
         }
 
-        e = s;
-        s = vo.getStartVni();
-        return steppingAllocate(s, e, total, vo.getUuid(), vo.getL2NetworkUuid());
-    }
-
-    private Integer steppingAllocate(Integer s, Integer e, int total, String rangeUuid, String poolUuid) {
-        int step = 254;
-        int failureCount = 0;
-        int failureCheckPoint = 5;
-
-        /*zhanyong.miao s equal e that there is only one vni in the pool/range*/
-        while (s <= e) {
-            // if failing failureCheckPoint times, the range is probably full,
-            // we check the range.
-            // why don't we check before steppingAllocate()? because in that case we
-            // have to count the used IP every time allocating a Vni, and count operation
-            // is a full scan in DB, which is very costly
-            if (failureCheckPoint == failureCount++) {
-                SimpleQuery<VxlanNetworkVO> q = dbf.createQuery(VxlanNetworkVO.class);
-                q.add(VxlanNetworkVO_.poolUuid, SimpleQuery.Op.EQ, poolUuid);
-                q.add(VxlanNetworkVO_.vni, SimpleQuery.Op.GTE, s);
-                q.add(VxlanNetworkVO_.vni, SimpleQuery.Op.LTE, e);
-                long count = q.count();
-                if (count == total) {
-                    logger.debug(String.format("vni range[uuid:%s] has no vni available, try next one", rangeUuid));
-                    return null;
-                } else {
-                    failureCount = 0;
-                }
-            }
-
-            int te = s + step;
-            te = te > e ? e : te;
-            SimpleQuery<VxlanNetworkVO> q = dbf.createQuery(VxlanNetworkVO.class);
-            q.select(VxlanNetworkVO_.vni);
-            q.add(VxlanNetworkVO_.vni, SimpleQuery.Op.GTE, s);
-            q.add(VxlanNetworkVO_.vni, SimpleQuery.Op.LTE, te);
-            q.add(VxlanNetworkVO_.poolUuid, SimpleQuery.Op.EQ, poolUuid);
-            List<Integer> used = q.listValue();
-            if (te - s + 1 == used.size()) {
-                s += step;
-                continue;
-            }
-
-            Collections.sort(used);
-
-            return randomAllocateVni(s, te, used);
-        }
-
-        return null;
+        return vni;
     }
 
     private static Integer randomAllocateVni(Integer startVni, Integer endVni, List<Integer> allocatedVnis) {
         int total = (endVni - startVni + 1);
-        if (total == allocatedVnis.size()) {
-            return null;
-        }
-
         BitSet full = new BitSet(total);
         for (Integer alloc : allocatedVnis) {
             full.set(alloc - startVni);
         }
 
+        if (full.cardinality() == total) {
+            return null;
+        }
+
         Random random = new Random();
         int next = random.nextInt(total);
         int a = full.nextClearBit(next);
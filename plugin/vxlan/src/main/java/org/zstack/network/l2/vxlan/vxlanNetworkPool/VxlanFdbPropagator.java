@@ -0,0 +1,171 @@
+package org.zstack.network.l2.vxlan.vxlanNetworkPool;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.zstack.core.asyncbatch.While;
+import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.cloudbus.CloudBusCallBack;
+import org.zstack.core.db.Q;
+import org.zstack.core.thread.ThreadFacade;
+import org.zstack.header.core.NoErrorCompletion;
+import org.zstack.header.host.HostConstant;
+import org.zstack.header.message.MessageReply;
+import org.zstack.kvm.KVMHostAsyncHttpCallMsg;
+import org.zstack.network.l2.vxlan.vtep.VtepVO;
+import org.zstack.network.l2.vxlan.vtep.VtepVO_;
+import org.zstack.network.l2.vxlan.vxlanNetwork.VxlanNetworkGlobalConfig;
+import org.zstack.network.l2.vxlan.vxlanNetwork.VxlanNetworkVO;
+import org.zstack.network.l2.vxlan.vxlanNetwork.VxlanNetworkVO_;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.zstack.network.l2.vxlan.vxlanNetworkPool.VxlanNetworkPoolConstant.VXLAN_KVM_DELETE_FDB_L2VXLAN_NETWORKS_PATH;
+import static org.zstack.network.l2.vxlan.vxlanNetworkPool.VxlanNetworkPoolConstant.VXLAN_KVM_POPULATE_FDB_L2VXLAN_NETWORKS_PATH;
+
+/**
+ * Propagates vtep changes of vxlan network pools to the fdb of their vteps.
+ *
+ * The first change of a pool opens a window of VxlanNetworkGlobalConfig.FDB_PROPAGATION_WINDOW
+ * milliseconds, changes of the pool arriving in the window are propagated together when it closes:
+ * a new vtep gets all its peers, other vteps only get the peers added and removed.
+ */
+public class VxlanFdbPropagator {
+    private static final CLogger logger = Utils.getLogger(VxlanFdbPropagator.class);
+
+    @Autowired
+    private CloudBus bus;
+    @Autowired
+    private ThreadFacade thdf;
+
+    private static class VtepChanges {
+        final Set<String> addedVtepIps = new HashSet<>();
+        final Set<String> removedVtepIps = new HashSet<>();
+        final List<NoErrorCompletion> completions = new ArrayList<>();
+    }
+
+    private final Map<String, VtepChanges> windows = new HashMap<>();
+
+    public void propagate(String poolUuid, Collection<String> addedVtepIps, Collection<String> removedVtepIps, NoErrorCompletion completion) {
+        synchronized (this) {
+            VtepChanges changes = windows.get(poolUuid);
+            if (changes == null) {
+                changes = new VtepChanges();
+                windows.put(poolUuid, changes);
+                thdf.submitTimeoutTask(() -> close(poolUuid), TimeUnit.MILLISECONDS,
+                        VxlanNetworkGlobalConfig.FDB_PROPAGATION_WINDOW.value(Long.class));
+            }
+
+            if (addedVtepIps != null) {
+                changes.addedVtepIps.addAll(addedVtepIps);
+            }
+            if (removedVtepIps != null) {
+                changes.removedVtepIps.addAll(removedVtepIps);
+            }
+            changes.completions.add(completion);
+        }
+    }
+
+    private void close(String poolUuid) {
+        VtepChanges changes;
+        synchronized (this) {
+            changes = windows.remove(poolUuid);
+        }
+
+        try {
+            propagate(poolUuid, changes, new NoErrorCompletion() {
+                @Override
+                public void done() {
+                    changes.completions.forEach(NoErrorCompletion::done);
+                }
+            });
+        } catch (Throwable t) {
+            logger.warn(String.format("failed to propagate vtep changes of vxlan network pool[uuid:%s]", poolUuid), t);
+            changes.completions.forEach(NoErrorCompletion::done);
+        }
+    }
+
+    private void propagate(String poolUuid, VtepChanges changes, NoErrorCompletion completion) {
+        List<String> vxlanNetworkUuids = Q.New(VxlanNetworkVO.class)
+                .select(VxlanNetworkVO_.uuid)
+                .eq(VxlanNetworkVO_.poolUuid, poolUuid)
+                .listValues();
+        if (vxlanNetworkUuids.isEmpty()) {
+            completion.done();
+            return;
+        }
+
+        List<VtepVO> vteps = Q.New(VtepVO.class).eq(VtepVO_.poolUuid, poolUuid).list();
+        Set<String> vtepIps = vteps.stream().map(VtepVO::getVtepIp).collect(Collectors.toSet());
+
+        // a vtep added then removed in the window, or the other way around, ends as it is in the database
+        Set<String> added = changes.addedVtepIps.stream().filter(vtepIps::contains).collect(Collectors.toSet());
+        List<String> removed = changes.removedVtepIps.stream().filter(ip -> !vtepIps.contains(ip)).collect(Collectors.toList());
+
+        new While<>(vteps).all((vtep, completion1) -> {
+            List<String> peersToAdd;
+            List<String> peersToRemove;
+            if (added.contains(vtep.getVtepIp())) {
+                peersToAdd = vtepIps.stream().filter(ip -> !ip.equals(vtep.getVtepIp())).collect(Collectors.toList());
+                peersToRemove = Collections.emptyList();
+            } else {
+                peersToAdd = new ArrayList<>(added);
+                peersToRemove = removed;
+            }
+
+            List<KVMHostAsyncHttpCallMsg> msgs = new ArrayList<>();
+            if (!peersToAdd.isEmpty()) {
+                VxlanKvmAgentCommands.PopulateVxlanNetworksFdbCmd cmd = new VxlanKvmAgentCommands.PopulateVxlanNetworksFdbCmd();
+                cmd.setPeers(peersToAdd);
+                cmd.setNetworkUuids(vxlanNetworkUuids);
+                msgs.add(makeMsg(vtep.getHostUuid(), VXLAN_KVM_POPULATE_FDB_L2VXLAN_NETWORKS_PATH, cmd));
+            }
+            if (!peersToRemove.isEmpty()) {
+                VxlanKvmAgentCommands.DeleteVxlanNetworksFdbCmd cmd = new VxlanKvmAgentCommands.DeleteVxlanNetworksFdbCmd();
+                cmd.setPeers(peersToRemove);
+                cmd.setNetworkUuids(vxlanNetworkUuids);
+                msgs.add(makeMsg(vtep.getHostUuid(), VXLAN_KVM_DELETE_FDB_L2VXLAN_NETWORKS_PATH, cmd));
+            }
+
+            if (msgs.isEmpty()) {
+                completion1.done();
+                return;
+            }
+
+            logger.info(String.format("propagate fdb to vtep[ip:%s] for vxlan network pool %s, add peers %s, remove peers %s, host[uuid:%s]",
+                    vtep.getVtepIp(), poolUuid, peersToAdd, peersToRemove, vtep.getHostUuid()));
+
+            new While<>(msgs).all((msg, completion2) -> bus.send(msg, new CloudBusCallBack(completion2) {
+                @Override
+                public void run(MessageReply reply) {
+                    if (!reply.isSuccess()) {
+                        logger.warn(reply.getError().toString());
+                    }
+                    completion2.done();
+                }
+            })).run(new NoErrorCompletion(completion1) {
+                @Override
+                public void done() {
+                    completion1.done();
+                }
+            });
+        }).run(new NoErrorCompletion(completion) {
+            @Override
+            public void done() {
+                completion.done();
+            }
+        });
+    }
+
+    private KVMHostAsyncHttpCallMsg makeMsg(String hostUuid, String path, Object cmd) {
+        KVMHostAsyncHttpCallMsg msg = new KVMHostAsyncHttpCallMsg();
+        msg.setHostUuid(hostUuid);
+        msg.setCommand(cmd);
+        msg.setPath(path);
+        msg.setNoStatusCheck(true);
+        bus.makeTargetServiceIdByResourceUuid(msg, HostConstant.SERVICE_ID, hostUuid);
+        return msg;
+    }
+}
@@ -28,7 +28,6 @@ import org.zstack.header.message.APIMessage;
 import org.zstack.header.message.Message;
 import org.zstack.header.message.MessageReply;
 import org.zstack.header.network.l2.*;
-import org.zstack.kvm.KVMHostAsyncHttpCallMsg;
 import org.zstack.network.l2.L2NetworkExtensionPointEmitter;
 import org.zstack.network.l2.L2NetworkManager;
 import org.zstack.network.l2.L2NoVlanNetwork;
@@ -43,9 +42,7 @@ import org.zstack.utils.gson.JSONObjectUtil;
 import org.zstack.utils.logging.CLogger;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
-import static org.zstack.network.l2.vxlan.vxlanNetworkPool.VxlanNetworkPoolConstant.VXLAN_KVM_POPULATE_FDB_L2VXLAN_NETWORKS_PATH;
 import static org.zstack.utils.CollectionDSL.e;
 import static org.zstack.utils.CollectionDSL.map;
 import static org.zstack.core.Platform.err;
@@ -75,6 +72,8 @@ public class VxlanNetworkPool extends L2NoVlanNetwork implements L2VxlanNetworkP
     private TagManager tagMgr;
     @Autowired
     private ApiTimeoutManager timeoutMgr;
+    @Autowired
+    private VxlanFdbPropagator fdbPropagator;
 
     private Map<String, VniAllocatorStrategy> vniAllocatorStrategies = Collections.synchronizedMap(new HashMap<String, VniAllocatorStrategy>());
 
@@ -136,47 +135,15 @@ public class VxlanNetworkPool extends L2NoVlanNetwork implements L2VxlanNetworkP
     protected void handle(final PopulateVtepPeersMsg msg) {
         final PopulateVtepPeersReply reply = new PopulateVtepPeersReply();
 
-        List<VtepVO> vteps = Q.New(VtepVO.class).eq(VtepVO_.poolUuid, msg.getPoolUuid()).list();
-        if (vteps == null || vteps.size() <= 1) {
-            logger.debug("no need to populate fdb since there are only one vtep or less");
-            bus.reply(msg, reply);
-            return;
+        List<String> addedVtepIps = msg.getAddedVtepIps();
+        if (addedVtepIps == null && msg.getRemovedVtepIps() == null) {
+            addedVtepIps = Q.New(VtepVO.class)
+                    .select(VtepVO_.vtepIp)
+                    .eq(VtepVO_.poolUuid, msg.getPoolUuid())
+                    .listValues();
         }
 
-        List<String> vxlanNetworkUuids = Q.New(VxlanNetworkVO.class)
-                .select(VxlanNetworkVO_.uuid)
-                .eq(VxlanNetworkVO_.poolUuid, msg.getPoolUuid())
-                .listValues();
-
-        new While<>(vteps).all((vtep, completion1) -> {
-            Set<String> peers = vteps.stream()
-                    .map(v -> v.getVtepIp())
-                    .collect(Collectors.toSet());
-            peers.remove(vtep.getVtepIp());
-
-            logger.info(String.format("populate fdb to vtep[ip:%s] for vxlan network pool %s with vxlan network[uuids:%s] to host[uuid:%s]",
-                    vtep.getVtepIp(), msg.getPoolUuid(), vxlanNetworkUuids, vtep.getHostUuid()));
-
-            VxlanKvmAgentCommands.PopulateVxlanNetworksFdbCmd cmd = new VxlanKvmAgentCommands.PopulateVxlanNetworksFdbCmd();
-            cmd.setPeers(new ArrayList<>(peers));
-            cmd.setNetworkUuids(vxlanNetworkUuids);
-
-            KVMHostAsyncHttpCallMsg kmsg = new KVMHostAsyncHttpCallMsg();
-            kmsg.setHostUuid(vtep.getHostUuid());
-            kmsg.setCommand(cmd);
-            kmsg.setPath(VXLAN_KVM_POPULATE_FDB_L2VXLAN_NETWORKS_PATH);
-            kmsg.setNoStatusCheck(true);
-            bus.makeTargetServiceIdByResourceUuid(kmsg, HostConstant.SERVICE_ID, vtep.getHostUuid());
-            bus.send(kmsg, new CloudBusCallBack(completion1) {
-                @Override
-                public void run(MessageReply reply) {
-                    if (!reply.isSuccess()) {
-                        logger.warn(reply.getError().toString());
-                    }
-                    completion1.done();
-                }
-            });
-        }).run(new NoErrorCompletion() {
+        fdbPropagator.propagate(msg.getPoolUuid(), addedVtepIps, msg.getRemovedVtepIps(), new NoErrorCompletion(msg) {
             @Override
             public void done() {
                 bus.reply(msg, reply);
@@ -280,7 +247,14 @@ public class VxlanNetworkPool extends L2NoVlanNetwork implements L2VxlanNetworkP
     protected void handle(DeleteVtepMsg msg) {
         DeleteVtepReply reply = new DeleteVtepReply();
         VtepVO vo = dbf.findByUuid(msg.getVtepUuid(), VtepVO.class);
-        dbf.remove(vo);
+        if (vo != null) {
+            dbf.remove(vo);
+            fdbPropagator.propagate(vo.getPoolUuid(), null, Collections.singletonList(vo.getVtepIp()), new NoErrorCompletion() {
+                @Override
+                public void done() {
+                }
+            });
+        }
         bus.reply(msg, reply);
     }
 
@@ -324,6 +298,7 @@ public class VxlanNetworkPool extends L2NoVlanNetwork implements L2VxlanNetworkP
 
         PopulateVtepPeersMsg pmsg = new PopulateVtepPeersMsg();
         pmsg.setPoolUuid(msg.getPoolUuid());
+        pmsg.setAddedVtepIps(Collections.singletonList(msg.getVtepIp()));
         bus.makeTargetServiceIdByResourceUuid(pmsg, L2NetworkConstant.SERVICE_ID, msg.getPoolUuid());
         bus.send(pmsg, new CloudBusCallBack(msg){
             @Override
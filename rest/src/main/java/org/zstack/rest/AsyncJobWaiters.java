@@ -0,0 +1,87 @@
+package org.zstack.rest;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Requests blocked on the completion of async jobs. RestServer wakes up the waiters
+ * of a job when it receives the APIEvent of the job, so a client waiting for a job
+ * gets the result as soon as the job is done instead of at its next polling.
+ *
+ * A waiter holds a servlet thread, the number of waiters is limited by
+ * RestServer.maxJobWaiters.
+ */
+class AsyncJobWaiters {
+    static class Waiter {
+        private final Set<String> jobUuids;
+        private final BlockingQueue<String> completed = new LinkedBlockingQueue<>();
+
+        private Waiter(Set<String> jobUuids) {
+            this.jobUuids = jobUuids;
+        }
+
+        /**
+         * @return the jobs completed since the last call, empty if none completes before the timeout
+         */
+        Set<String> await(long timeout, TimeUnit unit) throws InterruptedException {
+            Set<String> ret = new HashSet<>();
+            String uuid = completed.poll(timeout, unit);
+            if (uuid != null) {
+                ret.add(uuid);
+                completed.drainTo(ret);
+            }
+
+            return ret;
+        }
+    }
+
+    private final Map<String, Set<Waiter>> waiters = new ConcurrentHashMap<>();
+    private final AtomicInteger waiterCount = new AtomicInteger(0);
+
+    /**
+     * @return null if the number of waiters reaches the limit
+     */
+    Waiter register(Collection<String> jobUuids) {
+        if (waiterCount.incrementAndGet() > RestGlobalProperty.MAX_JOB_WAITERS) {
+            waiterCount.decrementAndGet();
+            return null;
+        }
+
+        Waiter w = new Waiter(new HashSet<>(jobUuids));
+        for (String uuid : w.jobUuids) {
+            waiters.compute(uuid, (k, set) -> {
+                set = set == null ? ConcurrentHashMap.newKeySet() : set;
+                set.add(w);
+                return set;
+            });
+        }
+
+        return w;
+    }
+
+    void unregister(Waiter w) {
+        for (String uuid : w.jobUuids) {
+            waiters.computeIfPresent(uuid, (k, set) -> {
+                set.remove(w);
+                return set.isEmpty() ? null : set;
+            });
+        }
+
+        waiterCount.decrementAndGet();
+    }
+
+    void jobCompleted(String jobUuid) {
+        Set<Waiter> ws = waiters.get(jobUuid);
+        if (ws != null) {
+            ws.forEach(w -> w.completed.offer(jobUuid));
+        }
+    }
+
+    int getWaiterCount() {
+        return waiterCount.get();
+    }
+}
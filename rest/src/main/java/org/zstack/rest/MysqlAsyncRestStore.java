@@ -32,14 +32,14 @@ public class MysqlAsyncRestStore implements AsyncRestApiStore, Component {
     private static final CLogger logger = Utils.getLogger(MysqlAsyncRestStore.class);
 
     @Autowired
-    private DatabaseFacade dbf;
+    protected DatabaseFacade dbf;
     @Autowired
-    private ResourceDestinationMaker destinationMaker;
+    protected ResourceDestinationMaker destinationMaker;
     @Autowired
-    private ThreadFacade thdf;
+    protected ThreadFacade thdf;
 
     // cache 2000 API results
-    private Map<String, APIEvent> results = Collections.synchronizedMap(new LRUMap(RestGlobalProperty.MAX_CACHED_API_RESULTS));
+    protected Map<String, APIEvent> results = Collections.synchronizedMap(new LRUMap(RestGlobalProperty.MAX_CACHED_API_RESULTS));
     private Future cleanupThread;
 
     @Override
@@ -7,6 +7,8 @@ public interface RestConstants {
     String API_VERSION = "/v1";
     String ASYNC_JOB_PATH = "/api-jobs";
     String ALL_PATH = "/v1/**";
+    /* query parameter of the multi-job stream, a comma separated list of job uuids */
+    String JOB_UUIDS_PARAM = "uuids";
 
     String HEADER_JSON_SCHEMA = "X-JSON-Schema";
     String HEADER_WEBHOOK = "X-Web-Hook";
@@ -14,6 +16,8 @@ public interface RestConstants {
     String HEADER_REQUEST_IP = "X-Request-Ip";
     String HEADER_API_TIMEOUT = "X-API-Timeout";
     String HEADER_JOB_SUCCESS = "X-Job-Success";
+    /* seconds to hold a job query until the job completes, see RestServer.handleJobQuery */
+    String HEADER_JOB_WAIT_SECONDS = "X-Job-Wait-Seconds";
     String HEADER_OAUTH = "OAuth";
     String HEADER_ACCESSKEY = "ZStack";
     String HEADER_DATE = "Date";
@@ -10,4 +10,12 @@ import org.zstack.core.GlobalPropertyDefinition;
 public class RestGlobalProperty {
     @GlobalProperty(name="RestServer.maxCachedApiResults", defaultValue = "2000")
     public static int MAX_CACHED_API_RESULTS;
+    @GlobalProperty(name="RestServer.maxJobWaiters", defaultValue = "200")
+    public static int MAX_JOB_WAITERS;
+    @GlobalProperty(name="RestServer.maxJobWaitSeconds", defaultValue = "60")
+    public static long MAX_JOB_WAIT_SECONDS;
+    @GlobalProperty(name="RestServer.asyncStore.writeBehind", defaultValue = "true")
+    public static boolean ASYNC_STORE_WRITE_BEHIND;
+    @GlobalProperty(name="RestServer.asyncStore.flushInterval", defaultValue = "500")
+    public static long ASYNC_STORE_FLUSH_INTERVAL_MS;
 }
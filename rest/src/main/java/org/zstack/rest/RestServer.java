@@ -85,6 +85,7 @@ public class RestServer implements Component, CloudBusEventListener {
     private CloudBus bus;
     @Autowired
     private AsyncRestApiStore asyncStore;
+    private AsyncJobWaiters jobWaiters = new AsyncJobWaiters();
     @Autowired
     private RESTFacade restf;
     @Autowired
@@ -138,6 +139,9 @@ public class RestServer implements Component, CloudBusEventListener {
     }
 
     private static final String ASYNC_JOB_PATH_PATTERN = String.format("%s/%s/{uuid}", RestConstants.API_VERSION, RestConstants.ASYNC_JOB_PATH);
+    private static final String ASYNC_JOB_STREAM_PATH = String.format("%s%s", RestConstants.API_VERSION, RestConstants.ASYNC_JOB_PATH);
+    // jobs completed on other management nodes may not be notified, re-check them in this interval
+    private static final long JOB_WAIT_RECHECK_SECONDS = 5;
 
     public static void generateDocTemplate(String path, DocumentGenerator.DocMode mode) {
         DocumentGenerator rg =  GroovyUtils.newInstance("scripts/RestDocumentationGenerator.groovy");
@@ -203,6 +207,7 @@ public class RestServer implements Component, CloudBusEventListener {
     public boolean handleEvent(Event e) {
         if (e instanceof APIEvent) {
             RequestData d = asyncStore.complete((APIEvent) e);
+            jobWaiters.jobCompleted(((APIEvent) e).getApiId());
 
             if (d != null && d.webHook != null) {
                 try {
@@ -565,6 +570,11 @@ public class RestServer implements Component, CloudBusEventListener {
             return;
         }
 
+        if (matcher.match(ASYNC_JOB_STREAM_PATH, path)) {
+            handleJobStream(req, rsp);
+            return;
+        }
+
         Object api = apis.get(getMatchPath(path));
         if (api == null) {
             sendResponse(HttpStatus.NOT_FOUND.value(), String.format("no api mapping to %s", path), rsp);
@@ -605,7 +615,23 @@ public class RestServer implements Component, CloudBusEventListener {
 
         Map<String, String> vars = matcher.extractUriTemplateVariables(ASYNC_JOB_PATH_PATTERN, getDecodedUrl(req));
         String uuid = vars.get("uuid");
-        AsyncRestQueryResult ret = asyncStore.query(uuid);
+
+        long waitSeconds;
+        try {
+            waitSeconds = getJobWaitSeconds(req);
+        } catch (RestException e) {
+            sendResponse(e.statusCode, e.error, rsp);
+            return;
+        }
+
+        AsyncRestQueryResult[] result = new AsyncRestQueryResult[1];
+        waitForJobs(Collections.singletonList(uuid), waitSeconds, ret -> result[0] = ret);
+        AsyncRestQueryResult ret = result[0];
+        if (ret == null) {
+            ret = new AsyncRestQueryResult();
+            ret.setUuid(uuid);
+            ret.setState(AsyncRestState.processing);
+        }
 
         if (ret.getState() == AsyncRestState.expired) {
             sendResponse(HttpStatus.NOT_FOUND.value(), "the job has been expired", rsp);
@@ -613,12 +639,74 @@ public class RestServer implements Component, CloudBusEventListener {
         }
 
         ApiResponse response = new ApiResponse();
+        int statusCode = writeJobResponse(ret, response);
+        sendResponse(statusCode, response, rsp);
+    }
 
-        if (ret.getState() == AsyncRestState.processing) {
-            sendResponse(HttpStatus.ACCEPTED.value(), response, rsp);
+    /**
+     * GET /v1/api-jobs?uuids=uuid1,uuid2 streams the results of the jobs, one JSON object
+     * per line in the order the jobs complete. Each line has the job uuid, the status code
+     * and the response the job query API returns. The stream ends when all the jobs complete
+     * or the time given by the X-Job-Wait-Seconds header is out, in the latter case a line
+     * of status code 202 is written for each unfinished job.
+     */
+    private void handleJobStream(HttpServletRequest req, HttpServletResponse rsp) throws IOException, IllegalAccessException, NoSuchMethodException, InvocationTargetException {
+        if (!req.getMethod().equals(HttpMethod.GET.name())) {
+            sendResponse(HttpStatus.METHOD_NOT_ALLOWED.value(), "only GET method is allowed for streaming job results", rsp);
+            return;
+        }
+
+        String param = req.getParameter(RestConstants.JOB_UUIDS_PARAM);
+        Set<String> uuids = param == null ? new LinkedHashSet<>() : Arrays.stream(param.split(","))
+                .map(String::trim).filter(it -> !it.isEmpty()).collect(Collectors.toCollection(LinkedHashSet::new));
+        if (uuids.isEmpty()) {
+            sendResponse(HttpStatus.BAD_REQUEST.value(), String.format("missing query parameter[%s]", RestConstants.JOB_UUIDS_PARAM), rsp);
+            return;
+        }
+
+        long waitSeconds;
+        try {
+            waitSeconds = getJobWaitSeconds(req);
+        } catch (RestException e) {
+            sendResponse(e.statusCode, e.error, rsp);
             return;
         }
 
+        extensions.forEach(ext -> ext.beforeRestResponse(requestInfo.get().method, HttpStatus.OK.value()));
+        rsp.setStatus(HttpStatus.OK.value());
+        rsp.setContentType("application/x-ndjson");
+
+        Set<String> pending = waitForJobs(uuids, waitSeconds, ret -> writeJobStreamLine(ret, rsp));
+        for (String uuid : pending) {
+            AsyncRestQueryResult ret = new AsyncRestQueryResult();
+            ret.setUuid(uuid);
+            ret.setState(AsyncRestState.processing);
+            writeJobStreamLine(ret, rsp);
+        }
+    }
+
+    private void writeJobStreamLine(AsyncRestQueryResult ret, HttpServletResponse rsp) throws IOException, IllegalAccessException, NoSuchMethodException, InvocationTargetException {
+        ApiResponse response = new ApiResponse();
+        int statusCode = ret.getState() == AsyncRestState.expired ? HttpStatus.NOT_FOUND.value() : writeJobResponse(ret, response);
+
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("uuid", ret.getUuid());
+        line.put("statusCode", statusCode);
+        line.put("response", response);
+
+        rsp.getWriter().write(CloudBusGson.toJsonForHttpResponse(line));
+        rsp.getWriter().write("\n");
+        rsp.flushBuffer();
+    }
+
+    /**
+     * @return the status code of the job query API
+     */
+    private int writeJobResponse(AsyncRestQueryResult ret, ApiResponse response) throws IllegalAccessException, NoSuchMethodException, InvocationTargetException {
+        if (ret.getState() == AsyncRestState.processing) {
+            return HttpStatus.ACCEPTED.value();
+        }
+
         // task is done
         APIEvent evt = ret.getResult();
         if (evt.isSuccess()) {
@@ -627,10 +715,70 @@ public class RestServer implements Component, CloudBusEventListener {
                 throw new CloudRuntimeException(String.format("cannot find RestResponseWrapper for the class[%s]", evt.getClass()));
             }
             writeResponse(response, w, ret.getResult());
-            sendResponse(HttpStatus.OK.value(), response, rsp);
+            return HttpStatus.OK.value();
         } else {
             response.setError(evt.getError());
-            sendResponse(HttpStatus.SERVICE_UNAVAILABLE.value(), response, rsp);
+            return HttpStatus.SERVICE_UNAVAILABLE.value();
+        }
+    }
+
+    private long getJobWaitSeconds(HttpServletRequest req) throws RestException {
+        String value = req.getHeader(RestConstants.HEADER_JOB_WAIT_SECONDS);
+        if (value == null) {
+            return 0;
+        }
+
+        try {
+            return Math.min(Math.max(Long.parseLong(value.trim()), 0), RestGlobalProperty.MAX_JOB_WAIT_SECONDS);
+        } catch (NumberFormatException e) {
+            throw new RestException(HttpStatus.BAD_REQUEST.value(), String.format("Invalid header[%s], it must be" +
+                    " a number of seconds", RestConstants.HEADER_JOB_WAIT_SECONDS));
+        }
+    }
+
+    private interface JobResultConsumer {
+        void accept(AsyncRestQueryResult ret) throws IOException, IllegalAccessException, NoSuchMethodException, InvocationTargetException;
+    }
+
+    /**
+     * wait until the jobs complete or the timeout is out. The consumer is called for each job
+     * that is done or expired, in the order they complete. If the number of waiters reaches
+     * RestServer.maxJobWaiters, the jobs are checked once without waiting
+     *
+     * @return the jobs still in processing
+     */
+    private Set<String> waitForJobs(Collection<String> uuids, long timeoutSeconds, JobResultConsumer consumer) throws IOException, IllegalAccessException, NoSuchMethodException, InvocationTargetException {
+        Set<String> pending = new LinkedHashSet<>(uuids);
+        // register before checking the jobs, so a job completed in between is not missed
+        AsyncJobWaiters.Waiter waiter = timeoutSeconds > 0 ? jobWaiters.register(pending) : null;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+
+        try {
+            Collection<String> toCheck = new ArrayList<>(pending);
+            while (true) {
+                for (String uuid : toCheck) {
+                    AsyncRestQueryResult ret = asyncStore.query(uuid);
+                    if (ret.getState() != AsyncRestState.processing) {
+                        pending.remove(uuid);
+                        consumer.accept(ret);
+                    }
+                }
+
+                long remaining = deadline - System.nanoTime();
+                if (pending.isEmpty() || waiter == null || remaining <= 0) {
+                    return pending;
+                }
+
+                Set<String> completed = waiter.await(Math.min(remaining, TimeUnit.SECONDS.toNanos(JOB_WAIT_RECHECK_SECONDS)), TimeUnit.NANOSECONDS);
+                toCheck = completed.isEmpty() ? new ArrayList<>(pending) : completed.stream().filter(pending::contains).collect(Collectors.toList());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return pending;
+        } finally {
+            if (waiter != null) {
+                jobWaiters.unregister(waiter);
+            }
         }
     }
 
@@ -0,0 +1,242 @@
+package org.zstack.rest;
+
+import org.zstack.core.CoreGlobalProperty;
+import org.zstack.core.db.SQLBatch;
+import org.zstack.core.thread.PeriodicTask;
+import org.zstack.header.message.APIEvent;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * An AsyncRestApiStore keeping the jobs accepted by this management node in memory.
+ *
+ * Saving and completing a job only change the in-memory table, the jobs are written to
+ * AsyncRestVO every RestServer.asyncStore.flushInterval milliseconds: new jobs are inserted
+ * in one batch, already completed ones are inserted in done state directly, and the results
+ * of jobs inserted by former flushes are updated in one batch. Jobs accepted by this node
+ * are queried from the memory; the database is looked up for jobs accepted by other nodes
+ * or by this node before restarting.
+ *
+ * The API events are broadcast, every management node caches the results of the jobs
+ * accepted by other nodes, only the accepting node writes the database. A poll reaching
+ * another management node before the first flush of its job finds no record, the flush
+ * interval is kept below the polling interval of the SDK for that. A crash loses the jobs
+ * of the last flush interval.
+ */
+public class WriteBehindAsyncRestStore extends MysqlAsyncRestStore {
+    private static final CLogger logger = Utils.getLogger(WriteBehindAsyncRestStore.class);
+
+    private static class Job {
+        final String uuid;
+        final RequestData data;
+        APIEvent result;
+        boolean persisted;
+
+        Job(RequestData data) {
+            this.uuid = data.apiMessage.getId();
+            this.data = data;
+        }
+
+        AsyncRestVO toVO() {
+            AsyncRestVO vo = new AsyncRestVO();
+            vo.setUuid(uuid);
+            vo.setRequestData(data.toJson());
+            if (result == null) {
+                vo.setState(AsyncRestState.processing);
+            } else {
+                vo.setState(AsyncRestState.done);
+                vo.setResult(ApiEventResult.toJson(result));
+            }
+            return vo;
+        }
+    }
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final Set<String> dirtyJobs = ConcurrentHashMap.newKeySet();
+    private Future flushThread;
+
+    @Override
+    public void save(RequestData d) {
+        if (!RestGlobalProperty.ASYNC_STORE_WRITE_BEHIND) {
+            super.save(d);
+            return;
+        }
+
+        Job job = new Job(d);
+        jobs.put(job.uuid, job);
+        dirtyJobs.add(job.uuid);
+    }
+
+    @Override
+    public RequestData complete(APIEvent evt) {
+        if (!RestGlobalProperty.ASYNC_STORE_WRITE_BEHIND) {
+            return super.complete(evt);
+        }
+
+        if (!CoreGlobalProperty.UNIT_TEST_ON) {
+            results.put(evt.getApiId(), evt);
+        }
+
+        Job job = jobs.get(evt.getApiId());
+        if (job == null) {
+            // accepted by another management node, which writes the result
+            return null;
+        }
+
+        synchronized (job) {
+            if (job.result != null) {
+                return null;
+            }
+
+            job.result = evt;
+        }
+
+        dirtyJobs.add(job.uuid);
+        return job.data;
+    }
+
+    @Override
+    public AsyncRestQueryResult query(String uuid) {
+        Job job = jobs.get(uuid);
+        if (job == null) {
+            return super.query(uuid);
+        }
+
+        AsyncRestQueryResult result = new AsyncRestQueryResult();
+        result.setUuid(uuid);
+        synchronized (job) {
+            result.setState(job.result == null ? AsyncRestState.processing : AsyncRestState.done);
+            result.setResult(job.result);
+        }
+
+        return result;
+    }
+
+    synchronized void flush() {
+        if (dirtyJobs.isEmpty()) {
+            return;
+        }
+
+        List<Job> toInsert = new ArrayList<>();
+        List<Job> toUpdate = new ArrayList<>();
+        List<AsyncRestVO> newVOs = new ArrayList<>();
+        for (String uuid : new ArrayList<>(dirtyJobs)) {
+            dirtyJobs.remove(uuid);
+            Job job = jobs.get(uuid);
+            if (job == null) {
+                continue;
+            }
+
+            synchronized (job) {
+                if (!job.persisted) {
+                    toInsert.add(job);
+                    newVOs.add(job.toVO());
+                } else if (job.result != null) {
+                    toUpdate.add(job);
+                }
+            }
+        }
+
+        if (toInsert.isEmpty() && toUpdate.isEmpty()) {
+            return;
+        }
+
+        Map<String, APIEvent> updates = toUpdate.stream().collect(Collectors.toMap(job -> job.uuid, job -> job.result));
+        try {
+            new SQLBatch() {
+                @Override
+                protected void scripts() {
+                    persistCollection(newVOs);
+
+                    if (updates.isEmpty()) {
+                        return;
+                    }
+
+                    // the loaded records are written in batched updates when the transaction commits
+                    List<AsyncRestVO> vos = q(AsyncRestVO.class).in(AsyncRestVO_.uuid, updates.keySet()).list();
+                    vos.forEach(vo -> {
+                        vo.setState(AsyncRestState.done);
+                        vo.setResult(ApiEventResult.toJson(updates.get(vo.getUuid())));
+                    });
+                }
+            }.execute();
+        } catch (Throwable t) {
+            logger.warn(String.format("failed to write %s async API records to the database, retry in the next flush",
+                    toInsert.size() + toUpdate.size()), t);
+            toInsert.forEach(job -> dirtyJobs.add(job.uuid));
+            toUpdate.forEach(job -> dirtyJobs.add(job.uuid));
+            return;
+        }
+
+        toInsert.forEach(job -> {
+            synchronized (job) {
+                job.persisted = true;
+            }
+        });
+
+        // the completed jobs are in the database now, later queries find them in the result cache or the database.
+        // a job completed while being inserted in processing is dirty again, its result goes in the next flush
+        for (int i = 0; i < toInsert.size(); i++) {
+            if (newVOs.get(i).getState() == AsyncRestState.done) {
+                jobs.remove(toInsert.get(i).uuid);
+            }
+        }
+        toUpdate.forEach(job -> jobs.remove(job.uuid));
+    }
+
+    @Override
+    public boolean start() {
+        super.start();
+
+        flushThread = thdf.submitPeriodicTask(new PeriodicTask() {
+            @Override
+            public TimeUnit getTimeUnit() {
+                return TimeUnit.MILLISECONDS;
+            }
+
+            @Override
+            public long getInterval() {
+                return RestGlobalProperty.ASYNC_STORE_FLUSH_INTERVAL_MS;
+            }
+
+            @Override
+            public String getName() {
+                return "flush-async-api-records";
+            }
+
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (Throwable t) {
+                    logger.warn("unhandled error", t);
+                }
+            }
+        });
+
+        return true;
+    }
+
+    @Override
+    public boolean stop() {
+        if (flushThread != null) {
+            flushThread.cancel(true);
+        }
+
+        flush();
+        return super.stop();
+    }
+
+    int getInMemoryJobCount() {
+        return jobs.size();
+    }
+}
@@ -0,0 +1,22 @@
+package org.zstack.sdk;
+
+
+
+public class AddKVMHostsResult {
+    public java.util.List inventories;
+    public void setInventories(java.util.List inventories) {
+        this.inventories = inventories;
+    }
+    public java.util.List getInventories() {
+        return this.inventories;
+    }
+
+    public java.util.Map errors;
+    public void setErrors(java.util.Map errors) {
+        this.errors = errors;
+    }
+    public java.util.Map getErrors() {
+        return this.errors;
+    }
+
+}
@@ -0,0 +1,22 @@
+package org.zstack.sdk;
+
+
+
+public class GetMessageTraceResult {
+    public int samplingPercent;
+    public void setSamplingPercent(int samplingPercent) {
+        this.samplingPercent = samplingPercent;
+    }
+    public int getSamplingPercent() {
+        return this.samplingPercent;
+    }
+
+    public java.util.List spans;
+    public void setSpans(java.util.List spans) {
+        this.spans = spans;
+    }
+    public java.util.List getSpans() {
+        return this.spans;
+    }
+
+}
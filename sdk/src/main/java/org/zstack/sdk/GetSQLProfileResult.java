@@ -0,0 +1,30 @@
+package org.zstack.sdk;
+
+
+
+public class GetSQLProfileResult {
+    public boolean enabled;
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    public boolean getEnabled() {
+        return this.enabled;
+    }
+
+    public long slowTransactions;
+    public void setSlowTransactions(long slowTransactions) {
+        this.slowTransactions = slowTransactions;
+    }
+    public long getSlowTransactions() {
+        return this.slowTransactions;
+    }
+
+    public java.util.List callSites;
+    public void setCallSites(java.util.List callSites) {
+        this.callSites = callSites;
+    }
+    public java.util.List getCallSites() {
+        return this.callSites;
+    }
+
+}
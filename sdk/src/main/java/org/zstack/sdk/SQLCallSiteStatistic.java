@@ -0,0 +1,111 @@
+package org.zstack.sdk;
+
+
+
+public class SQLCallSiteStatistic  {
+
+    public java.lang.String callSite;
+    public void setCallSite(java.lang.String callSite) {
+        this.callSite = callSite;
+    }
+    public java.lang.String getCallSite() {
+        return this.callSite;
+    }
+
+    public java.lang.String api;
+    public void setApi(java.lang.String api) {
+        this.api = api;
+    }
+    public java.lang.String getApi() {
+        return this.api;
+    }
+
+    public long statements;
+    public void setStatements(long statements) {
+        this.statements = statements;
+    }
+    public long getStatements() {
+        return this.statements;
+    }
+
+    public long queries;
+    public void setQueries(long queries) {
+        this.queries = queries;
+    }
+    public long getQueries() {
+        return this.queries;
+    }
+
+    public long rows;
+    public void setRows(long rows) {
+        this.rows = rows;
+    }
+    public long getRows() {
+        return this.rows;
+    }
+
+    public long totalQueryTimeMs;
+    public void setTotalQueryTimeMs(long totalQueryTimeMs) {
+        this.totalQueryTimeMs = totalQueryTimeMs;
+    }
+    public long getTotalQueryTimeMs() {
+        return this.totalQueryTimeMs;
+    }
+
+    public long maxQueryTimeMs;
+    public void setMaxQueryTimeMs(long maxQueryTimeMs) {
+        this.maxQueryTimeMs = maxQueryTimeMs;
+    }
+    public long getMaxQueryTimeMs() {
+        return this.maxQueryTimeMs;
+    }
+
+    public java.util.List queryLatencyBucketsMs;
+    public void setQueryLatencyBucketsMs(java.util.List queryLatencyBucketsMs) {
+        this.queryLatencyBucketsMs = queryLatencyBucketsMs;
+    }
+    public java.util.List getQueryLatencyBucketsMs() {
+        return this.queryLatencyBucketsMs;
+    }
+
+    public java.util.List queryLatencyHistogram;
+    public void setQueryLatencyHistogram(java.util.List queryLatencyHistogram) {
+        this.queryLatencyHistogram = queryLatencyHistogram;
+    }
+    public java.util.List getQueryLatencyHistogram() {
+        return this.queryLatencyHistogram;
+    }
+
+    public long transactions;
+    public void setTransactions(long transactions) {
+        this.transactions = transactions;
+    }
+    public long getTransactions() {
+        return this.transactions;
+    }
+
+    public long totalTransactionTimeMs;
+    public void setTotalTransactionTimeMs(long totalTransactionTimeMs) {
+        this.totalTransactionTimeMs = totalTransactionTimeMs;
+    }
+    public long getTotalTransactionTimeMs() {
+        return this.totalTransactionTimeMs;
+    }
+
+    public long maxTransactionTimeMs;
+    public void setMaxTransactionTimeMs(long maxTransactionTimeMs) {
+        this.maxTransactionTimeMs = maxTransactionTimeMs;
+    }
+    public long getMaxTransactionTimeMs() {
+        return this.maxTransactionTimeMs;
+    }
+
+    public long slowTransactions;
+    public void setSlowTransactions(long slowTransactions) {
+        this.slowTransactions = slowTransactions;
+    }
+    public long getSlowTransactions() {
+        return this.slowTransactions;
+    }
+
+}
@@ -0,0 +1,39 @@
+package org.zstack.sdk;
+
+
+
+public class TraceHop  {
+
+    public java.lang.String hop;
+    public void setHop(java.lang.String hop) {
+        this.hop = hop;
+    }
+    public java.lang.String getHop() {
+        return this.hop;
+    }
+
+    public java.lang.String location;
+    public void setLocation(java.lang.String location) {
+        this.location = location;
+    }
+    public java.lang.String getLocation() {
+        return this.location;
+    }
+
+    public long startTimeMicros;
+    public void setStartTimeMicros(long startTimeMicros) {
+        this.startTimeMicros = startTimeMicros;
+    }
+    public long getStartTimeMicros() {
+        return this.startTimeMicros;
+    }
+
+    public long durationMicros;
+    public void setDurationMicros(long durationMicros) {
+        this.durationMicros = durationMicros;
+    }
+    public long getDurationMicros() {
+        return this.durationMicros;
+    }
+
+}
@@ -0,0 +1,63 @@
+package org.zstack.sdk;
+
+
+
+public class TraceSpan  {
+
+    public java.lang.String traceId;
+    public void setTraceId(java.lang.String traceId) {
+        this.traceId = traceId;
+    }
+    public java.lang.String getTraceId() {
+        return this.traceId;
+    }
+
+    public java.lang.String spanId;
+    public void setSpanId(java.lang.String spanId) {
+        this.spanId = spanId;
+    }
+    public java.lang.String getSpanId() {
+        return this.spanId;
+    }
+
+    public java.lang.String parentSpanId;
+    public void setParentSpanId(java.lang.String parentSpanId) {
+        this.parentSpanId = parentSpanId;
+    }
+    public java.lang.String getParentSpanId() {
+        return this.parentSpanId;
+    }
+
+    public java.lang.String type;
+    public void setType(java.lang.String type) {
+        this.type = type;
+    }
+    public java.lang.String getType() {
+        return this.type;
+    }
+
+    public java.lang.String name;
+    public void setName(java.lang.String name) {
+        this.name = name;
+    }
+    public java.lang.String getName() {
+        return this.name;
+    }
+
+    public long startTimeMicros;
+    public void setStartTimeMicros(long startTimeMicros) {
+        this.startTimeMicros = startTimeMicros;
+    }
+    public long getStartTimeMicros() {
+        return this.startTimeMicros;
+    }
+
+    public java.util.List hops;
+    public void setHops(java.util.List hops) {
+        this.hops = hops;
+    }
+    public java.util.List getHops() {
+        return this.hops;
+    }
+
+}
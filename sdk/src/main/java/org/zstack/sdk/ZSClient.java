@@ -32,6 +32,8 @@ public class ZSClient {
 
     private static final long ACTION_DEFAULT_TIMEOUT = -1;
     private static final long ACTION_DEFAULT_POLLINGINTERVAL = -1;
+    // the read timeout must be longer than the time the server holds a long-poll request
+    private static final long JOB_WAIT_READ_TIMEOUT_MARGIN = TimeUnit.SECONDS.toMillis(10);
 
     static {
         gson = new GsonBuilder().create();
@@ -47,11 +49,17 @@ public class ZSClient {
     public static void configure(ZSConfig c) {
         config = c;
 
-        if (c.readTimeout != null || c.writeTimeout != null) {
+        Long readTimeout = c.readTimeout;
+        if (c.jobWaitSeconds != null) {
+            long min = TimeUnit.SECONDS.toMillis(c.jobWaitSeconds) + JOB_WAIT_READ_TIMEOUT_MARGIN;
+            readTimeout = readTimeout == null ? min : Math.max(readTimeout, min);
+        }
+
+        if (readTimeout != null || c.writeTimeout != null) {
             OkHttpClient.Builder b = new OkHttpClient.Builder();
 
-            if (c.readTimeout != null) {
-                b.readTimeout(c.readTimeout, TimeUnit.MILLISECONDS);
+            if (readTimeout != null) {
+                b.readTimeout(readTimeout, TimeUnit.MILLISECONDS);
             }
             if (c.writeTimeout != null) {
                 b.writeTimeout(c.writeTimeout, TimeUnit.MILLISECONDS);
@@ -541,6 +549,11 @@ public class ZSClient {
                         builder.addHeader(Constants.HEADER_REQUEST_IP, String.valueOf(requestIp));
                     }
 
+                    long waitSeconds = getJobWaitSeconds(expiredTime);
+                    if (waitSeconds > 0) {
+                        builder.addHeader(Constants.HEADER_JOB_WAIT_SECONDS, String.valueOf(waitSeconds));
+                    }
+
                     Request req = builder.build();
 
                     try {
@@ -559,7 +572,7 @@ public class ZSClient {
                                 return;
                             }
 
-                            count += interval;
+                            count = config.jobWaitSeconds == null ? count + interval : System.currentTimeMillis();
                             if (count >= expiredTime) {
                                 ApiResult res = new ApiResult();
                                 res.error = errorCode(
@@ -615,7 +628,13 @@ public class ZSClient {
                     builder.addHeader(Constants.HEADER_REQUEST_IP, String.valueOf(requestIp));
                 }
 
+                long waitSeconds = getJobWaitSeconds(expiredTime);
+                if (waitSeconds > 0) {
+                    builder.addHeader(Constants.HEADER_JOB_WAIT_SECONDS, String.valueOf(waitSeconds));
+                }
+
                 Request req = builder.build();
+                long start = System.currentTimeMillis();
 
                 try {
                     try (Response response = http.newCall(req).execute()) {
@@ -630,8 +649,18 @@ public class ZSClient {
                             return writeApiResult(response);
                         }
 
-                        TimeUnit.MILLISECONDS.sleep(interval);
-                        current += interval;
+                        if (config.jobWaitSeconds == null) {
+                            TimeUnit.MILLISECONDS.sleep(interval);
+                            current += interval;
+                        } else {
+                            // the server may reply without waiting, e.g. too many requests are waiting,
+                            // don't poll faster than the polling interval in this case
+                            long elapsed = System.currentTimeMillis() - start;
+                            if (elapsed < interval) {
+                                TimeUnit.MILLISECONDS.sleep(interval - elapsed);
+                            }
+                            current = System.currentTimeMillis();
+                        }
                     }
                 } catch (InterruptedException e) {
                     //ignore
@@ -682,6 +711,15 @@ public class ZSClient {
             return timeout == ACTION_DEFAULT_TIMEOUT ? config.defaultPollingTimeout : timeout;
         }
 
+        private long getJobWaitSeconds(long expiredTime) {
+            if (config.jobWaitSeconds == null) {
+                return 0;
+            }
+
+            long remaining = TimeUnit.MILLISECONDS.toSeconds(expiredTime - System.currentTimeMillis());
+            return Math.max(Math.min(config.jobWaitSeconds, remaining), 0);
+        }
+
         private long getInterval(){
             Long interval = (Long) action.getNonAPIParameterValue("pollingInterval", false);
             return interval == ACTION_DEFAULT_POLLINGINTERVAL ? config.defaultPollingInterval : interval;
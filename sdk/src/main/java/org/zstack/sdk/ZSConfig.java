@@ -14,6 +14,7 @@ public class ZSConfig {
     Long readTimeout;
     Long writeTimeout;
     String contextPath;
+    Long jobWaitSeconds;
 
     public String getHostname() {
         return hostname;
@@ -31,6 +32,10 @@ public class ZSConfig {
         return defaultPollingInterval;
     }
 
+    public Long getJobWaitSeconds() {
+        return jobWaitSeconds;
+    }
+
     public static class Builder {
         ZSConfig config = new ZSConfig();
 
@@ -74,6 +79,15 @@ public class ZSConfig {
             return this;
         }
 
+        /**
+         * poll results of async APIs in long-poll mode, the server holds each polling
+         * request until the job completes or the time is out
+         */
+        public Builder setJobWaitTime(long value, TimeUnit unit) {
+            config.jobWaitSeconds = unit.toSeconds(value);
+            return this;
+        }
+
 
         public ZSConfig build() {
             return config;
@@ -8,6 +8,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
 import org.zstack.core.componentloader.PluginRegistry;
 import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.SQLStatementCounter;
 import org.zstack.core.errorcode.ErrorFacade;
 import org.zstack.header.Component;
 import org.zstack.header.apimediator.ApiMessageInterceptionException;
@@ -1293,7 +1294,7 @@ public class MysqlQueryBuilderImpl3 implements Component, QueryBuilder, GlobalAp
         context.msg = msg;
         context.inventoryClass = selectInventoryClass(msg, inventoryClass);
 
-        return context.query();
+        return SQLStatementCounter.count(msg.getClass().getSimpleName(), context::query);
     }
 
     private Class selectInventoryClass(APIQueryMessage msg, Class inventoryClass) {
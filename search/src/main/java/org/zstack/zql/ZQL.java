@@ -10,7 +10,9 @@ import org.zstack.core.Platform;
 import org.zstack.core.asyncbatch.While;
 import org.zstack.core.componentloader.PluginRegistry;
 import org.zstack.core.db.EntityMetadata;
+import org.zstack.core.db.ReadReplicaRouter;
 import org.zstack.core.db.SQLBatch;
+import org.zstack.core.db.SQLStatementCounter;
 import org.zstack.header.core.FutureCompletion;
 import org.zstack.header.core.NoErrorCompletion;
 import org.zstack.header.core.ReturnValueCompletion;
@@ -49,6 +51,8 @@ public class ZQL {
 
     @Autowired
     private PluginRegistry pluginRgty;
+    @Autowired
+    private ReadReplicaRouter replicaRouter;
 
     static class ThrowingErrorListener extends BaseErrorListener {
         String text;
@@ -236,7 +240,7 @@ public class ZQL {
 
                 beforeExecuteQuery(astResult, ZQLContext.getAPISession());
 
-                new SQLBatch() {
+                replicaRouter.readOnly(new SQLBatch() {
                     @Override
                     protected void scripts() {
                         Query q = astResult.createCountQuery.apply(databaseFacade.getEntityManager());
@@ -262,7 +266,7 @@ public class ZQL {
                             ret.count = (Long) totalCountQuery.getSingleResult();
                         }
                     }
-                }.execute();
+                });
 
                 qr.name = query.getName();
 
@@ -284,27 +288,31 @@ public class ZQL {
 
                 beforeExecuteQuery(astResult, ZQLContext.getAPISession());
 
-                new SQLBatch() {
-                    @Override
-                    protected void scripts() {
-                        Query q = astResult.createJPAQuery.apply(databaseFacade.getEntityManager());
-                        ret.vos = q.getResultList();
-
-                        if (astResult.createSimpleCountQuery != null) {
-                            q = astResult.createSimpleCountQuery.apply(databaseFacade.getEntityManager());
-                            ret.count = (Long) q.getSingleResult();
+                // the eager collections of the VOs are loaded in batches when the query runs,
+                // count the statements issued by the query and the inventory materialization
+                qr.inventories = SQLStatementCounter.count(String.format("ZQL:%s", astResult.inventoryMetadata.simpleInventoryName()), () -> {
+                    replicaRouter.readOnly(new SQLBatch() {
+                        @Override
+                        protected void scripts() {
+                            Query q = astResult.createJPAQuery.apply(databaseFacade.getEntityManager());
+                            ret.vos = q.getResultList();
+
+                            if (astResult.createSimpleCountQuery != null) {
+                                q = astResult.createSimpleCountQuery.apply(databaseFacade.getEntityManager());
+                                ret.count = (Long) q.getSingleResult();
+                            }
                         }
-                    }
-                }.execute();
+                    });
 
-                qr.returnWith = callReturnWithExtensions(astResult, wrapper, ret.vos);
-                qr.name = query.getName();
+                    qr.returnWith = callReturnWithExtensions(astResult, wrapper, ret.vos);
+                    qr.name = query.getName();
 
-                wrapper.removePrimaryKeyFieldFromTargetFieldNamesWhenReturnWithEnabledAndIsFieldQuery(astResult);
+                    wrapper.removePrimaryKeyFieldFromTargetFieldNamesWhenReturnWithEnabledAndIsFieldQuery(astResult);
 
-                clean.run();
+                    clean.run();
 
-                qr.inventories = ret.vos != null ? entityVOtoInventories(ret.vos) : null;
+                    return ret.vos != null ? entityVOtoInventories(ret.vos) : null;
+                });
             } else if (ctx instanceof ZQLParser.SumGrammarContext) {
                 ASTNode.Sum sum = ((ZQLParser.SumGrammarContext) ctx).sum().accept(new SumVisitor());
 
@@ -319,13 +327,13 @@ public class ZQL {
 
                 beforeExecuteQuery(astResult, ZQLContext.getAPISession());
 
-                new SQLBatch() {
+                replicaRouter.readOnly(new SQLBatch() {
                     @Override
                     protected void scripts() {
                         Query q = astResult.createJPAQuery.apply(databaseFacade.getEntityManager());
                         ret.vos = q.getResultList();
                     }
-                }.execute();
+                });
 
                 qr.inventories = (List) ret.vos.stream().map(vo -> Arrays.asList((Object[]) vo)).collect(Collectors.toList());
                 qr.name = sum.getName();
@@ -0,0 +1,147 @@
+package org.zstack.test.integration.console
+
+import org.zstack.console.ConsoleGlobalProperty
+import org.zstack.console.ManagementServerConsoleProxyBackend
+import org.zstack.core.CoreGlobalProperty
+import org.zstack.header.core.Completion
+import org.zstack.header.errorcode.ErrorCode
+import org.zstack.kvm.KVMAgentCommands
+import org.zstack.kvm.KVMConstant
+import org.zstack.sdk.ConsoleInventory
+import org.zstack.sdk.VmInstanceInventory
+import org.zstack.test.integration.kvm.Env
+import org.zstack.test.integration.kvm.KvmTest
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.SubCase
+
+import java.nio.charset.StandardCharsets
+
+/**
+ * requests console access of a VM with ConsoleProxy.embedded on, and uses the token granted
+ * with the embedded console proxy of the management node
+ */
+class EmbeddedConsoleProxyBackendCase extends SubCase {
+    EnvSpec env
+    ServerSocket vnc
+    ManagementServerConsoleProxyBackend backend
+    int consoleProxyPort
+    boolean agentConnected
+
+    @Override
+    void setup() {
+        useSpring(KvmTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = Env.oneVmBasicEnv()
+    }
+
+    @Override
+    void test() {
+        env.create {
+            prepare()
+            testRequestConsoleAccess()
+        }
+    }
+
+    void prepare() {
+        // a fake VNC server echoing what it receives, the host of the VM is "localhost"
+        vnc = new ServerSocket(0, 50, InetAddress.getByName("localhost"))
+        Thread.start {
+            while (!vnc.closed) {
+                Socket s
+                try {
+                    s = vnc.accept()
+                } catch (IOException ignored) {
+                    return
+                }
+
+                Thread.start {
+                    try {
+                        byte[] buf = new byte[4096]
+                        int n
+                        while ((n = s.inputStream.read(buf)) > 0) {
+                            s.outputStream.write(buf, 0, n)
+                            s.outputStream.flush()
+                        }
+                    } catch (IOException ignored) {
+                    } finally {
+                        s.close()
+                    }
+                }
+            }
+        }
+
+        env.simulator(KVMConstant.KVM_GET_VNC_PORT_PATH) {
+            def rsp = new KVMAgentCommands.GetVncPortResponse()
+            rsp.port = vnc.localPort
+            return rsp
+        }
+
+        consoleProxyPort = CoreGlobalProperty.CONSOLE_PROXY_PORT
+        CoreGlobalProperty.CONSOLE_PROXY_PORT = 0
+        ConsoleGlobalProperty.EMBEDDED_PROXY = true
+
+        backend = bean(ManagementServerConsoleProxyBackend.class)
+        agentConnected = backend.connected
+        backend.enableEmbeddedProxy()
+
+        boolean connected = false
+        backend.doConnectAgent(new Completion(null) {
+            @Override
+            void success() {
+                connected = true
+            }
+
+            @Override
+            void fail(ErrorCode errorCode) {
+                assert false: errorCode.toString()
+            }
+        })
+        assert connected
+    }
+
+    void testRequestConsoleAccess() {
+        VmInstanceInventory vm = env.inventoryByName("vm") as VmInstanceInventory
+
+        ConsoleInventory console = requestConsoleAccess {
+            vmInstanceUuid = vm.uuid
+        } as ConsoleInventory
+
+        assert console.port == backend.embeddedProxy.port
+        assert backend.embeddedProxy.tokens.get(console.token) != null
+
+        Socket s = new Socket("127.0.0.1", console.port)
+        s.soTimeout = 5000
+        s.outputStream.write(("GET /websockify?token=${URLEncoder.encode(console.token, "UTF-8")} HTTP/1.1\r\n" +
+                "Host: 127.0.0.1\r\n" +
+                "Upgrade: websocket\r\n" +
+                "Connection: Upgrade\r\n" +
+                "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n" +
+                "Sec-WebSocket-Protocol: binary\r\n" +
+                "Sec-WebSocket-Version: 13\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1))
+        s.outputStream.flush()
+        assert EmbeddedConsoleProxyCase.readHttpResponse(s.inputStream).startsWith("HTTP/1.1 101")
+
+        // relayed to the VNC port of the VM
+        byte[] data = "RFB 003.008\n".getBytes(StandardCharsets.US_ASCII)
+        s.outputStream.write(EmbeddedConsoleProxyCase.maskedFrame(data))
+        s.outputStream.flush()
+        assert EmbeddedConsoleProxyCase.readFramesPayload(s.inputStream, data.length) == data
+        s.close()
+    }
+
+    @Override
+    void clean() {
+        if (backend?.embeddedProxy != null) {
+            backend.embeddedProxy.stop()
+            backend.embeddedProxy = null
+            backend.connected = agentConnected
+        }
+        ConsoleGlobalProperty.EMBEDDED_PROXY = false
+        CoreGlobalProperty.CONSOLE_PROXY_PORT = consoleProxyPort
+        vnc?.close()
+        env.delete()
+    }
+}
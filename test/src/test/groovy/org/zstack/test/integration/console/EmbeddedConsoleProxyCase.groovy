@@ -0,0 +1,241 @@
+package org.zstack.test.integration.console
+
+import org.zstack.console.ConsoleProxyTokenTable
+import org.zstack.console.EmbeddedConsoleProxyServer
+import org.zstack.test.integration.ZStackTest
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.SubCase
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.security.MessageDigest
+import java.util.concurrent.Executor
+
+class EmbeddedConsoleProxyCase extends SubCase {
+    EnvSpec env
+    EmbeddedConsoleProxyServer proxy
+    ServerSocket vnc
+
+    @Override
+    void setup() {
+        useSpring(ZStackTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = env {}
+    }
+
+    @Override
+    void test() {
+        env.create {
+            prepare()
+            testRelayFrames()
+            testUnknownTokenRejected()
+            testRevokedTokenClosesConnection()
+            testTokenExpiresOnTimingWheel()
+            testIdleConnectionKeptByDefault()
+            testIdleTimeout()
+        }
+    }
+
+    void prepare() {
+        // a fake VNC server echoing what it receives
+        vnc = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"))
+        Thread.start {
+            while (!vnc.closed) {
+                Socket s
+                try {
+                    s = vnc.accept()
+                } catch (IOException ignored) {
+                    return
+                }
+
+                Thread.start {
+                    try {
+                        byte[] buf = new byte[4096]
+                        int n
+                        while ((n = s.inputStream.read(buf)) > 0) {
+                            s.outputStream.write(buf, 0, n)
+                            s.outputStream.flush()
+                        }
+                    } catch (IOException ignored) {
+                    } finally {
+                        s.close()
+                    }
+                }
+            }
+        }
+
+        proxy = new EmbeddedConsoleProxyServer(16384, { Runnable r -> Thread.start { r.run() } } as Executor)
+        proxy.start("127.0.0.1", 0)
+    }
+
+    void grant(String token) {
+        proxy.getTokens().put(new ConsoleProxyTokenTable.Target(token, "session", "vm", "127.0.0.1", vnc.localPort), 60)
+    }
+
+    static String readHttpResponse(InputStream input) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        while (!out.toString("ISO-8859-1").endsWith("\r\n\r\n")) {
+            int b = input.read()
+            if (b < 0) {
+                break
+            }
+            out.write(b)
+        }
+        return out.toString("ISO-8859-1")
+    }
+
+    Socket connect(String token) {
+        Socket s = new Socket("127.0.0.1", proxy.port)
+        s.soTimeout = 5000
+        s.outputStream.write(("GET /websockify?token=${token} HTTP/1.1\r\n" +
+                "Host: 127.0.0.1\r\n" +
+                "Upgrade: websocket\r\n" +
+                "Connection: Upgrade\r\n" +
+                "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n" +
+                "Sec-WebSocket-Protocol: binary\r\n" +
+                "Sec-WebSocket-Version: 13\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1))
+        s.outputStream.flush()
+        return s
+    }
+
+    static byte[] maskedFrame(byte[] payload) {
+        byte[] mask = [1, 2, 3, 4] as byte[]
+        ByteBuffer buf = ByteBuffer.allocate(payload.length + 8)
+        buf.put((byte) 0x82)
+        if (payload.length < 126) {
+            buf.put((byte) (0x80 | payload.length))
+        } else {
+            buf.put((byte) (0x80 | 126))
+            buf.putShort((short) payload.length)
+        }
+        buf.put(mask)
+        payload.eachWithIndex { byte b, int i -> buf.put((byte) (b ^ mask[i % 4])) }
+        return Arrays.copyOf(buf.array(), buf.position())
+    }
+
+    static byte[] readFramesPayload(InputStream input, int length) {
+        DataInputStream din = new DataInputStream(input)
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        while (out.size() < length) {
+            int b0 = din.readUnsignedByte()
+            assert (b0 & 0x0f) == 0x2
+            int len = din.readUnsignedByte() & 0x7f
+            if (len == 126) {
+                len = din.readUnsignedShort()
+            } else if (len == 127) {
+                len = (int) din.readLong()
+            }
+            byte[] payload = new byte[len]
+            din.readFully(payload)
+            out.write(payload)
+        }
+        return out.toByteArray()
+    }
+
+    void testRelayFrames() {
+        grant("token-relay")
+        Socket s = connect("token-relay")
+
+        String rsp = readHttpResponse(s.inputStream)
+        assert rsp.startsWith("HTTP/1.1 101")
+        String accept = Base64.encoder.encodeToString(MessageDigest.getInstance("SHA-1")
+                .digest("dGhlIHNhbXBsZSBub25jZQ==258EAFA5-E914-47DA-95CA-C5AB0DC85B11".getBytes(StandardCharsets.US_ASCII)))
+        assert rsp.contains("Sec-WebSocket-Accept: ${accept}")
+        assert rsp.contains("Sec-WebSocket-Protocol: binary")
+
+        byte[] small = "RFB 003.008\n".getBytes(StandardCharsets.US_ASCII)
+        s.outputStream.write(maskedFrame(small))
+        s.outputStream.flush()
+        assert readFramesPayload(s.inputStream, small.length) == small
+
+        // larger than a frame with a 7 bits length, and split in several frames back
+        byte[] large = new byte[40000]
+        new Random().nextBytes(large)
+        s.outputStream.write(maskedFrame(Arrays.copyOfRange(large, 0, 20000)))
+        s.outputStream.write(maskedFrame(Arrays.copyOfRange(large, 20000, 40000)))
+        s.outputStream.flush()
+        assert readFramesPayload(s.inputStream, large.length) == large
+
+        s.close()
+    }
+
+    void testUnknownTokenRejected() {
+        Socket s = connect("token-unknown")
+        assert readHttpResponse(s.inputStream).startsWith("HTTP/1.1 403")
+        s.close()
+    }
+
+    void testRevokedTokenClosesConnection() {
+        grant("token-revoke")
+        Socket s = connect("token-revoke")
+        assert readHttpResponse(s.inputStream).startsWith("HTTP/1.1 101")
+
+        proxy.revoke("token-revoke")
+        assert proxy.getTokens().get("token-revoke") == null
+        retryInSecs {
+            assert s.inputStream.read() == -1
+        }
+        s.close()
+    }
+
+    void testTokenExpiresOnTimingWheel() {
+        ConsoleProxyTokenTable table = new ConsoleProxyTokenTable()
+        table.put(new ConsoleProxyTokenTable.Target("t1", "s1", "vm1", "127.0.0.1", 5900), 1)
+        table.put(new ConsoleProxyTokenTable.Target("t2", "s1", "vm2", "127.0.0.1", 5901), ConsoleProxyTokenTable.WHEEL_SIZE + 2)
+        assert table.getSessionTokens("s1") == ["t1", "t2"] as Set
+
+        assert table.tick()*.token == ["t1"]
+        assert table.size() == 1
+
+        (ConsoleProxyTokenTable.WHEEL_SIZE).times {
+            assert table.tick().isEmpty()
+        }
+        assert table.tick()*.token == ["t2"]
+        assert table.size() == 0
+        assert table.getSessionTokens("s1") == null
+    }
+
+    void relayOnce(Socket s) {
+        byte[] data = "ping".getBytes(StandardCharsets.US_ASCII)
+        s.outputStream.write(maskedFrame(data))
+        s.outputStream.flush()
+        assert readFramesPayload(s.inputStream, data.length) == data
+    }
+
+    void testIdleConnectionKeptByDefault() {
+        // a console showing a static screen has no traffic for long
+        grant("token-static")
+        Socket s = connect("token-static")
+        assert readHttpResponse(s.inputStream).startsWith("HTTP/1.1 101")
+
+        sleep(2500)
+        relayOnce(s)
+        s.close()
+    }
+
+    void testIdleTimeout() {
+        proxy.setIdleTimeout(1)
+
+        grant("token-idle")
+        Socket s = connect("token-idle")
+        assert readHttpResponse(s.inputStream).startsWith("HTTP/1.1 101")
+        relayOnce(s)
+
+        retryInSecs {
+            assert s.inputStream.read() == -1
+        }
+        s.close()
+
+        proxy.setIdleTimeout(0)
+    }
+
+    @Override
+    void clean() {
+        proxy?.stop()
+        vnc?.close()
+        env.delete()
+    }
+}
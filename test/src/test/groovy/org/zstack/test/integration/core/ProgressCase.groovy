@@ -5,6 +5,7 @@ import org.zstack.core.Platform
 import org.zstack.core.db.Q
 import org.zstack.core.db.SQL
 import org.zstack.core.db.SimpleQuery
+import org.zstack.core.progress.ProgressGlobalConfig
 import org.zstack.core.progress.ProgressReportService
 import org.zstack.header.core.progress.TaskProgressRange
 import org.zstack.header.core.progress.TaskProgressVO
@@ -40,6 +41,7 @@ class ProgressCase extends SubCase {
     void test() {
         testReportUntil()
         testParallelTaskStage()
+        testCoalescedReports()
     }
 
     void testReportUntil() {
@@ -123,5 +125,28 @@ class ProgressCase extends SubCase {
         // TODO: solve the boundary condition
         assert pvos.content.unique() == ["0", "10", "20", "30", "40", "50", "60", "70", "100"]
     }
-}
 
+    void testCoalescedReports() {
+        SQL.New(TaskProgressVO.class).delete()
+        ProgressGlobalConfig.FLUSH_INTERVAL.updateValue(TimeUnit.HOURS.toMillis(1))
+
+        def apiId = Platform.getUuid()
+        ThreadContext.put(THREAD_CONTEXT_API, apiId)
+        ThreadContext.put(THREAD_CONTEXT_TASK_NAME, "testTaskName")
+        ThreadContext.push(Platform.getUuid())
+
+        5.times { reportProgress("10") }
+        reportProgress("20")
+        reportProgress("30")
+        // reports are kept in memory until the flush interval
+        assert !Q.New(TaskProgressVO.class).eq(TaskProgressVO_.apiId, apiId).isExists()
+
+        // the final progress writes every distinct progress right away, the repeated one is written once
+        reportProgress("100")
+        assert Q.New(TaskProgressVO.class).select(TaskProgressVO_.content)
+                .eq(TaskProgressVO_.apiId, apiId).listValues().sort() == ["10", "100", "20", "30"]
+
+        ThreadContext.pop()
+        ProgressGlobalConfig.FLUSH_INTERVAL.resetValue()
+    }
+}
@@ -0,0 +1,122 @@
+package org.zstack.test.integration.core
+
+import org.zstack.core.thread.ThreadFacade
+import org.zstack.core.thread.ThreadFacadeImpl
+import org.zstack.core.thread.ThreadFacadeMXBean
+import org.zstack.core.thread.ThreadGlobalProperty
+import org.zstack.core.thread.TimerStatistic
+import org.zstack.testlib.SubCase
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class TimeoutTaskCase extends SubCase {
+    ThreadFacade thdf
+
+    @Override
+    void clean() {
+    }
+
+    @Override
+    void setup() {
+    }
+
+    @Override
+    void environment() {
+    }
+
+    @Override
+    void test() {
+        thdf = bean(ThreadFacade.class)
+
+        testTimeoutTasks()
+        testCancel()
+        testTimerTask()
+        testCrossLevelTimeoutTasks()
+        testStatistic()
+    }
+
+    void testTimeoutTasks() {
+        int num = 2000
+        def latch = new CountDownLatch(num)
+        Queue<Long> early = new ConcurrentLinkedQueue<>()
+
+        num.times { int i ->
+            long delay = i % 200
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay)
+            thdf.submitTimeoutTask({
+                if (System.nanoTime() < deadline) {
+                    early.add(delay)
+                }
+                latch.countDown()
+            }, TimeUnit.MILLISECONDS, delay)
+        }
+
+        assert latch.await(10, TimeUnit.SECONDS)
+        assert early.isEmpty()
+    }
+
+    void testCancel() {
+        def executed = false
+        ThreadFacadeImpl.TimeoutTaskReceipt receipt = thdf.submitTimeoutTask({ executed = true }, TimeUnit.MILLISECONDS, 200)
+        assert receipt.cancel()
+        // a cancelled task can't be cancelled again
+        assert !receipt.cancel()
+
+        TimeUnit.MILLISECONDS.sleep(400)
+        assert !executed
+
+        def latch = new CountDownLatch(1)
+        receipt = thdf.submitTimeoutTask({ latch.countDown() }, TimeUnit.MILLISECONDS, 10)
+        assert latch.await(5, TimeUnit.SECONDS)
+        // an expired task can't be cancelled
+        retryInSecs {
+            assert !receipt.cancel()
+        }
+    }
+
+    void testTimerTask() {
+        def latch = new CountDownLatch(1)
+        thdf.submitTimerTask({
+            latch.countDown()
+            return true
+        }, TimeUnit.MILLISECONDS, 50)
+
+        assert latch.await(5, TimeUnit.SECONDS)
+    }
+
+    // a level of the wheel has 512 ticks, delays around and beyond it are held by the second
+    // level and cascade down to the first one
+    void testCrossLevelTimeoutTasks() {
+        long levelSpan = 512 * ThreadGlobalProperty.TIMER_TICK_MS
+        List<Long> delays = [levelSpan - ThreadGlobalProperty.TIMER_TICK_MS, levelSpan, levelSpan + 1,
+                             levelSpan + ThreadGlobalProperty.TIMER_TICK_MS * 3, levelSpan + 700]
+        def latch = new CountDownLatch(delays.size())
+        Map<Long, Long> lateness = [:].asSynchronized()
+
+        delays.each { long delay ->
+            long submitted = System.nanoTime()
+            thdf.submitTimeoutTask({
+                lateness[delay] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submitted) - delay
+                latch.countDown()
+            }, TimeUnit.MILLISECONDS, delay)
+        }
+
+        assert latch.await(levelSpan + 5000, TimeUnit.MILLISECONDS)
+        delays.each { long delay ->
+            // never early, and late for no more than a few ticks plus the hand over to the thread pool
+            assert lateness[delay] >= 0
+            assert lateness[delay] < 500
+        }
+    }
+
+    void testStatistic() {
+        TimerStatistic s = (thdf as ThreadFacadeMXBean).getTimerStatistic()
+        assert s.scheduledTimers >= 2008
+        assert s.expiredTimers >= 2007
+        assert s.cancelledTimers >= 1
+        assert s.pendingTimers == s.scheduledTimers - s.expiredTimers - s.cancelledTimers
+        assert s.averageLatenessMs <= s.maxLatenessMs
+    }
+}
@@ -0,0 +1,163 @@
+package org.zstack.test.integration.core.chaintask
+
+import org.zstack.core.thread.ChainTask
+import org.zstack.core.thread.ChainTaskOverflowPolicy
+import org.zstack.core.thread.ChainTaskQueueDepthStatistic
+import org.zstack.core.thread.SyncTaskChain
+import org.zstack.core.thread.ThreadFacade
+import org.zstack.core.thread.ThreadFacadeMXBean
+import org.zstack.testlib.SubCase
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class ChainTaskOverflowCase extends SubCase {
+    ThreadFacade thdf
+
+    @Override
+    void clean() {
+    }
+
+    @Override
+    void setup() {
+    }
+
+    @Override
+    void environment() {
+    }
+
+    @Override
+    void test() {
+        thdf = bean(ThreadFacade.class)
+
+        testReject()
+        testDropOldest()
+        testBlock()
+        testQueueDepthStatistics()
+    }
+
+    class OverflowTask extends ChainTask {
+        String signature
+        String name
+        ChainTaskOverflowPolicy policy
+        CountDownLatch latch
+        Queue<String> executed
+        Queue<String> rejected
+
+        OverflowTask(String signature, String name, ChainTaskOverflowPolicy policy, CountDownLatch latch, Queue<String> executed, Queue<String> rejected) {
+            super(null)
+            this.signature = signature
+            this.name = name
+            this.policy = policy
+            this.latch = latch
+            this.executed = executed
+            this.rejected = rejected
+        }
+
+        @Override
+        String getSyncSignature() {
+            return signature
+        }
+
+        @Override
+        void run(SyncTaskChain chain) {
+            executed.add(name)
+            latch?.await(10, TimeUnit.SECONDS)
+            chain.next()
+        }
+
+        @Override
+        String getName() {
+            return name
+        }
+
+        @Override
+        protected int getMaxPendingQueueSize() {
+            return 2
+        }
+
+        @Override
+        protected ChainTaskOverflowPolicy getPendingQueueOverflowPolicy() {
+            return policy
+        }
+
+        @Override
+        protected void exceedMaxPendingCallback() {
+            rejected.add(name)
+        }
+    }
+
+    // submits a task blocking the queue, then task1, task2 and task3 while the queue is blocked
+    void submitTasks(String signature, ChainTaskOverflowPolicy policy, CountDownLatch latch, Queue<String> executed, Queue<String> rejected) {
+        thdf.chainSubmit(new OverflowTask(signature, "blocker", policy, latch, executed, rejected))
+        retryInSecs {
+            assert executed.contains("blocker")
+        }
+
+        ["task1", "task2", "task3"].each {
+            thdf.chainSubmit(new OverflowTask(signature, it, policy, null, executed, rejected))
+        }
+    }
+
+    void testReject() {
+        def latch = new CountDownLatch(1)
+        Queue<String> executed = new ConcurrentLinkedQueue<>()
+        Queue<String> rejected = new ConcurrentLinkedQueue<>()
+
+        submitTasks("overflow-reject", ChainTaskOverflowPolicy.Reject, latch, executed, rejected)
+        assert rejected as List == ["task3"]
+
+        latch.countDown()
+        retryInSecs {
+            assert executed as List == ["blocker", "task1", "task2"]
+        }
+    }
+
+    void testDropOldest() {
+        def latch = new CountDownLatch(1)
+        Queue<String> executed = new ConcurrentLinkedQueue<>()
+        Queue<String> rejected = new ConcurrentLinkedQueue<>()
+
+        submitTasks("overflow-drop-oldest", ChainTaskOverflowPolicy.DropOldest, latch, executed, rejected)
+        assert rejected as List == ["task1"]
+
+        latch.countDown()
+        retryInSecs {
+            assert executed as List == ["blocker", "task2", "task3"]
+        }
+    }
+
+    void testBlock() {
+        def latch = new CountDownLatch(1)
+        Queue<String> executed = new ConcurrentLinkedQueue<>()
+        Queue<String> rejected = new ConcurrentLinkedQueue<>()
+        def submitted = new CountDownLatch(1)
+
+        Thread.start {
+            submitTasks("overflow-block", ChainTaskOverflowPolicy.Block, latch, executed, rejected)
+            submitted.countDown()
+        }
+
+        // task3 waits for room in the queue
+        assert !submitted.await(1, TimeUnit.SECONDS)
+
+        latch.countDown()
+        assert submitted.await(10, TimeUnit.SECONDS)
+        retryInSecs {
+            assert executed as List == ["blocker", "task1", "task2", "task3"]
+        }
+        assert rejected.isEmpty()
+    }
+
+    void testQueueDepthStatistics() {
+        Map<String, ChainTaskQueueDepthStatistic> stats = (thdf as ThreadFacadeMXBean).getChainTaskQueueDepthStatistics()
+
+        ChainTaskQueueDepthStatistic s = stats["overflow-reject"]
+        assert s != null
+        assert s.samples == 4
+        assert s.maxDepth == 2
+        assert s.histogram.sum() == s.samples
+        assert s.histogram.length == s.bucketUpperBounds.length + 1
+    }
+}
@@ -0,0 +1,212 @@
+package org.zstack.test.integration.core.cloudbus
+
+import org.zstack.core.Platform
+import org.zstack.core.cloudbus.*
+import org.zstack.core.thread.ChainTask
+import org.zstack.core.thread.SyncTaskChain
+import org.zstack.core.thread.ThreadFacade
+import org.zstack.header.AbstractService
+import org.zstack.header.identity.AccountConstant
+import org.zstack.header.message.*
+import org.zstack.header.vm.APIStartVmInstanceEvent
+import org.zstack.header.vm.APIStartVmInstanceMsg
+import org.zstack.sdk.GetMessageTraceResult
+import org.zstack.sdk.SessionInventory
+import org.zstack.test.integration.ZStackTest
+import org.zstack.testlib.SubCase
+
+import java.util.function.Consumer
+
+class MessageTracerCase extends SubCase {
+    static final String SERVICE_ID = "testMessageTracer"
+
+    CloudBus bus
+    ThreadFacade thdf
+    AbstractService service
+
+    @Override
+    void clean() {
+        CloudBusGlobalConfig.TRACE_SAMPLING_PERCENT.resetValue()
+        bus.unregisterService(service)
+    }
+
+    @Override
+    void setup() {
+        useSpring(ZStackTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+    }
+
+    @Override
+    void test() {
+        bus = bean(CloudBus.class)
+        thdf = bean(ThreadFacade.class)
+        registerService()
+
+        testNotSampled()
+        testTraceApi()
+        testGetMessageTrace()
+    }
+
+    // the API sends a FakeNeedReplyMessage, which is replied in a chain task
+    void registerService() {
+        service = new AbstractService() {
+            @Override
+            void handleMessage(Message msg) {
+                if (msg instanceof APIStartVmInstanceMsg) {
+                    FakeNeedReplyMessage fmsg = new FakeNeedReplyMessage()
+                    bus.makeLocalServiceId(fmsg, SERVICE_ID)
+                    bus.send(fmsg, new CloudBusCallBack(null) {
+                        @Override
+                        void run(MessageReply reply) {
+                            bus.publish(new APIStartVmInstanceEvent(msg.id))
+                        }
+                    })
+                } else if (msg instanceof FakeNeedReplyMessage) {
+                    thdf.chainSubmit(new ChainTask(null) {
+                        @Override
+                        String getSyncSignature() {
+                            return "message-tracer-case"
+                        }
+
+                        @Override
+                        void run(SyncTaskChain chain) {
+                            bus.reply(msg, new MessageReply())
+                            chain.next()
+                        }
+
+                        @Override
+                        String getName() {
+                            return getSyncSignature()
+                        }
+                    })
+                }
+            }
+
+            @Override
+            String getId() {
+                return bus.makeLocalServiceId(SERVICE_ID)
+            }
+
+            @Override
+            boolean start() {
+                return true
+            }
+
+            @Override
+            boolean stop() {
+                return true
+            }
+        }
+
+        bus.registerService(service)
+    }
+
+    APIStartVmInstanceMsg callApi() {
+        APIStartVmInstanceMsg msg = new APIStartVmInstanceMsg()
+        bus.makeLocalServiceId(msg, SERVICE_ID)
+
+        APIEvent event = null
+        bus.send(msg, new Consumer<APIEvent>() {
+            @Override
+            void accept(APIEvent apiEvent) {
+                event = apiEvent
+            }
+        })
+
+        retryInSecs {
+            assert event != null
+        }
+
+        return msg
+    }
+
+    void testNotSampled() {
+        assert MessageTracer.samplingPercent == 0
+
+        APIStartVmInstanceMsg msg = callApi()
+        assert MessageTracer.getTrace(msg.id).isEmpty()
+    }
+
+    void testTraceApi() {
+        CloudBusGlobalConfig.TRACE_SAMPLING_PERCENT.updateValue(100)
+        assert MessageTracer.samplingPercent == 100
+
+        APIStartVmInstanceMsg msg = callApi()
+
+        TraceSpan api = null
+        TraceSpan child = null
+        TraceSpan task = null
+        retryInSecs {
+            List<TraceSpan> spans = MessageTracer.getTrace(msg.id)
+            api = spans.find { it.spanId == msg.id }
+            child = spans.find { it.name == FakeNeedReplyMessage.class.name }
+            task = spans.find { it.type == MessageTracer.SPAN_TYPE_CHAIN_TASK }
+
+            assert api != null
+            assert child != null
+            assert task != null
+            assert api.hops*.hop.containsAll([MessageTracer.HOP_QUEUE, MessageTracer.HOP_HANDLE, MessageTracer.HOP_PROCESS])
+        }
+
+        assert api.parentSpanId == null
+        assert api.name == APIStartVmInstanceMsg.class.name
+
+        assert child.parentSpanId == msg.id
+        assert child.hops*.hop.containsAll([MessageTracer.HOP_QUEUE, MessageTracer.HOP_HANDLE, MessageTracer.HOP_PROCESS,
+                                            MessageTracer.HOP_REPLY, MessageTracer.HOP_ROUND_TRIP])
+
+        assert task.parentSpanId == child.spanId
+        assert task.hops*.hop == [MessageTracer.HOP_PENDING, MessageTracer.HOP_RUN]
+        assert task.hops.every { it.location == "message-tracer-case" }
+
+        // the API takes longer than its child message
+        long apiTime = api.hops.find { it.hop == MessageTracer.HOP_PROCESS }.durationMicros
+        long childTime = child.hops.find { it.hop == MessageTracer.HOP_ROUND_TRIP }.durationMicros
+        assert apiTime >= childTime
+
+        CloudBusJMX jmx = bean(CloudBusJMX.class)
+        assert jmx.getRecentTraces().contains(msg.id)
+        assert jmx.getMessageTrace(msg.id).size() == MessageTracer.getTrace(msg.id).size()
+    }
+
+    void testGetMessageTrace() {
+        APIStartVmInstanceMsg msg = callApi()
+        retryInSecs {
+            assert MessageTracer.getTrace(msg.id).find { it.spanId == msg.id }?.hops*.hop?.contains(MessageTracer.HOP_PROCESS)
+        }
+
+        SessionInventory session = logInByAccount {
+            accountName = AccountConstant.INITIAL_SYSTEM_ADMIN_NAME
+            password = AccountConstant.INITIAL_SYSTEM_ADMIN_PASSWORD
+        } as SessionInventory
+
+        GetMessageTraceResult result = getMessageTrace {
+            traceId = msg.id
+            sessionId = session.uuid
+        } as GetMessageTraceResult
+
+        assert result.samplingPercent == 100
+        List<org.zstack.sdk.TraceSpan> spans = result.spans.collect { it as org.zstack.sdk.TraceSpan }
+        assert spans.size() == MessageTracer.getTrace(msg.id).size()
+
+        org.zstack.sdk.TraceSpan api = spans.find { it.spanId == msg.id }
+        assert api.traceId == msg.id
+        assert api.parentSpanId == null
+        assert api.name == APIStartVmInstanceMsg.class.name
+        List<org.zstack.sdk.TraceHop> hops = api.hops.collect { it as org.zstack.sdk.TraceHop }
+        assert hops*.hop.containsAll([MessageTracer.HOP_QUEUE, MessageTracer.HOP_HANDLE, MessageTracer.HOP_PROCESS])
+        assert hops.every { it.durationMicros >= 0 }
+
+        org.zstack.sdk.TraceSpan child = spans.find { it.name == FakeNeedReplyMessage.class.name }
+        assert child.parentSpanId == msg.id
+
+        result = getMessageTrace {
+            traceId = Platform.uuid
+            sessionId = session.uuid
+        } as GetMessageTraceResult
+        assert result.spans.isEmpty()
+    }
+}
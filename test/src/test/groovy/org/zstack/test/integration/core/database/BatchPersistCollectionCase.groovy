@@ -0,0 +1,118 @@
+package org.zstack.test.integration.core.database
+
+import org.zstack.core.Platform
+import org.zstack.core.db.DatabaseFacade
+import org.zstack.core.db.Q
+import org.zstack.core.db.SQLBatch
+import org.zstack.header.tag.SystemTagVO
+import org.zstack.header.tag.SystemTagVO_
+import org.zstack.header.tag.TagType
+import org.zstack.header.vm.VmInstanceVO
+import org.zstack.testlib.SubCase
+
+/**
+ * compares the per-row write path with the batched collection APIs, the numbers are logged
+ * for reference. Run with -Dnum=N to change the number of rows
+ */
+class BatchPersistCollectionCase extends SubCase {
+    DatabaseFacade dbf
+    int num
+
+    @Override
+    void setup() {
+    }
+
+    @Override
+    void environment() {
+    }
+
+    @Override
+    void clean() {
+    }
+
+    List<SystemTagVO> makeTags(String resourceUuid) {
+        List<SystemTagVO> tags = []
+        for (int i = 0; i < num; i++) {
+            SystemTagVO vo = new SystemTagVO()
+            vo.uuid = Platform.uuid
+            vo.resourceUuid = resourceUuid
+            vo.resourceType = VmInstanceVO.class.simpleName
+            vo.tag = "batch::tag::$i"
+            vo.type = TagType.System
+            tags.add(vo)
+        }
+
+        return tags
+    }
+
+    long countTags(String resourceUuid) {
+        return Q.New(SystemTagVO.class).eq(SystemTagVO_.resourceUuid, resourceUuid).count()
+    }
+
+    long measure(String name, Closure c) {
+        long start = System.currentTimeMillis()
+        c()
+        long cost = System.currentTimeMillis() - start
+        logger.info("[BENCHMARK] ${name} ${num} rows: ${cost}ms")
+        return cost
+    }
+
+    void testPerRowAndBatchedPersist() {
+        String perRowResource = Platform.uuid
+        List<SystemTagVO> perRow = makeTags(perRowResource)
+        measure("persist one by one") {
+            perRow.each { dbf.persist(it) }
+        }
+        assert countTags(perRowResource) == num
+
+        String batchedResource = Platform.uuid
+        List<SystemTagVO> batched = makeTags(batchedResource)
+        measure("persistCollection") {
+            dbf.persistCollection(batched)
+        }
+        assert countTags(batchedResource) == num
+
+        batched.each { it.tag = it.tag + "::updated" }
+        measure("updateCollection") {
+            dbf.updateCollection(batched)
+        }
+        assert Q.New(SystemTagVO.class).eq(SystemTagVO_.resourceUuid, batchedResource)
+                .like(SystemTagVO_.tag, "%::updated").count() == num
+
+        measure("removeCollection") {
+            dbf.removeCollection(batched, SystemTagVO.class)
+        }
+        assert countTags(batchedResource) == 0
+
+        dbf.removeCollection(perRow, SystemTagVO.class)
+        assert countTags(perRowResource) == 0
+    }
+
+    void testSQLBatchPersistCollection() {
+        String resourceUuid = Platform.uuid
+        List<SystemTagVO> tags = makeTags(resourceUuid)
+        measure("SQLBatch.persistCollection") {
+            new SQLBatch() {
+                @Override
+                protected void scripts() {
+                    persistCollection(tags)
+                    // flushed rows are visible to the following queries of the batch
+                    assert q(SystemTagVO.class).eq(SystemTagVO_.resourceUuid, resourceUuid).count() == num
+                }
+            }.execute()
+        }
+        assert countTags(resourceUuid) == num
+
+        dbf.removeCollection(tags, SystemTagVO.class)
+    }
+
+    @Override
+    void test() {
+        dbf = bean(DatabaseFacade.class)
+        String n = System.getProperty("num")
+        num = n == null ? 1000 : Integer.parseInt(n)
+
+        testPerRowAndBatchedPersist()
+        testSQLBatchPersistCollection()
+    }
+}
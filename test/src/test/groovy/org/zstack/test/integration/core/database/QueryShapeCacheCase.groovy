@@ -0,0 +1,118 @@
+package org.zstack.test.integration.core.database
+
+import org.zstack.core.Platform
+import org.zstack.core.db.DatabaseFacade
+import org.zstack.core.db.Q
+import org.zstack.core.db.QueryShapeStatistics
+import org.zstack.core.db.SQL
+import org.zstack.core.db.SimpleQuery
+import org.zstack.header.tag.SystemTagVO
+import org.zstack.header.tag.SystemTagVO_
+import org.zstack.header.tag.TagType
+import org.zstack.header.vm.VmInstanceVO
+import org.zstack.testlib.SubCase
+
+import javax.persistence.Tuple
+
+class QueryShapeCacheCase extends SubCase {
+    DatabaseFacade dbf
+    String resourceUuid = Platform.uuid
+    List<SystemTagVO> tags = []
+
+    @Override
+    void setup() {
+    }
+
+    @Override
+    void environment() {
+    }
+
+    @Override
+    void clean() {
+        dbf.removeCollection(tags, SystemTagVO.class)
+    }
+
+    void prepareTags() {
+        for (int i = 0; i < 10; i++) {
+            SystemTagVO vo = new SystemTagVO()
+            vo.uuid = Platform.uuid
+            vo.resourceUuid = resourceUuid
+            vo.resourceType = VmInstanceVO.class.simpleName
+            vo.tag = "shape::tag::$i"
+            vo.type = TagType.System
+            vo.inherent = i % 2 == 0
+            tags.add(vo)
+        }
+
+        dbf.persistCollection(tags)
+    }
+
+    void testQueryResults() {
+        assert Q.New(SystemTagVO.class).eq(SystemTagVO_.resourceUuid, resourceUuid).count() == 10
+        assert Q.New(SystemTagVO.class).eq(SystemTagVO_.resourceUuid, resourceUuid).isExists()
+        assert !Q.New(SystemTagVO.class).eq(SystemTagVO_.resourceUuid, Platform.uuid).isExists()
+
+        SystemTagVO vo = Q.New(SystemTagVO.class).eq(SystemTagVO_.uuid, tags[0].uuid).find()
+        assert vo.tag == tags[0].tag
+        assert Q.New(SystemTagVO.class).eq(SystemTagVO_.uuid, Platform.uuid).find() == null
+
+        List<String> uuids = Q.New(SystemTagVO.class).select(SystemTagVO_.uuid)
+                .in(SystemTagVO_.uuid, tags.collect { it.uuid }.subList(0, 3)).listValues()
+        assert uuids.size() == 3
+
+        List<String> sorted = Q.New(SystemTagVO.class).select(SystemTagVO_.tag)
+                .eq(SystemTagVO_.resourceUuid, resourceUuid)
+                .orderBy(SystemTagVO_.tag, SimpleQuery.Od.DESC)
+                .limit(3).start(1).listValues()
+        assert sorted == ["shape::tag::8", "shape::tag::7", "shape::tag::6"]
+
+        assert Q.New(SystemTagVO.class).eq(SystemTagVO_.resourceUuid, resourceUuid)
+                .like(SystemTagVO_.tag, "shape::tag::1%").list().size() == 1
+        assert Q.New(SystemTagVO.class).eq(SystemTagVO_.resourceUuid, resourceUuid)
+                .eq(SystemTagVO_.inherent, true).notNull(SystemTagVO_.tag).count() == 5
+
+        List<Tuple> ts = Q.New(SystemTagVO.class).select(SystemTagVO_.uuid, SystemTagVO_.tag)
+                .eq(SystemTagVO_.resourceUuid, resourceUuid).listTuple()
+        assert ts.size() == 10
+        assert ts.collect { it.get(1, String.class) }.containsAll(tags.collect { it.tag })
+    }
+
+    void testStatisticsCountedPerShape() {
+        QueryShapeStatistics.reset()
+
+        tags.each {
+            assert Q.New(SystemTagVO.class).select(SystemTagVO_.tag).eq(SystemTagVO_.uuid, it.uuid).findValue() == it.tag
+        }
+
+        SQL.New("select vo.uuid from SystemTagVO vo where vo.resourceUuid = :uuid").param("uuid", resourceUuid).list()
+        SQL.New("select vo.uuid from SystemTagVO vo where vo.resourceUuid = :uuid").param("uuid", Platform.uuid).list()
+
+        def top = QueryShapeStatistics.getTopShapes(10)
+        def valueShape = top.find { it.jpql.contains("SELECT vo.tag FROM SystemTagVO vo WHERE vo.uuid = :p0") }
+        assert valueShape != null
+        assert valueShape.count == tags.size()
+        assert valueShape.histogram.sum() == tags.size()
+
+        def sqlShape = top.find { it.jpql == "select vo.uuid from SystemTagVO vo where vo.resourceUuid = :uuid" }
+        assert sqlShape.count == 2
+    }
+
+    void testStatisticsCountedAfterReset() {
+        // the shape stays compiled in the cache, its executions are still counted after a reset
+        QueryShapeStatistics.reset()
+        Q.New(SystemTagVO.class).select(SystemTagVO_.tag).eq(SystemTagVO_.uuid, tags[0].uuid).findValue()
+
+        def valueShape = QueryShapeStatistics.getTopShapes(10).find { it.jpql.contains("SELECT vo.tag FROM SystemTagVO vo WHERE vo.uuid = :p0") }
+        assert valueShape != null
+        assert valueShape.count == 1
+    }
+
+    @Override
+    void test() {
+        dbf = bean(DatabaseFacade.class)
+        prepareTags()
+        testQueryResults()
+        testStatisticsCountedPerShape()
+        testStatisticsCountedAfterReset()
+    }
+}
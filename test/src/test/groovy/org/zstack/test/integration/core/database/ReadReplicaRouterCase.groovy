@@ -0,0 +1,165 @@
+package org.zstack.test.integration.core.database
+
+import com.mchange.v2.c3p0.ComboPooledDataSource
+import org.hibernate.JDBCException
+import org.springframework.transaction.support.TransactionSynchronizationManager
+import org.zstack.core.db.DatabaseGlobalProperty
+import org.zstack.core.db.Q
+import org.zstack.core.db.ReadReplicaRouter
+import org.zstack.core.db.SQLBatch
+import org.zstack.header.exception.CloudRuntimeException
+import org.zstack.header.tag.SystemTagVO
+import org.zstack.test.integration.ZStackTest
+import org.zstack.testlib.SubCase
+
+import java.sql.SQLException
+import java.util.function.Supplier
+
+/**
+ * the read replica is the primary database itself in this case, the routing is checked by the
+ * data source the connection of a transaction is bound to
+ */
+class ReadReplicaRouterCase extends SubCase {
+    ReadReplicaRouter router
+    ComboPooledDataSource primary
+    ComboPooledDataSource replica
+    String replicaJdbcUrl
+
+    @Override
+    void setup() {
+        useSpring(ZStackTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+    }
+
+    @Override
+    void test() {
+        router = bean(ReadReplicaRouter.class)
+        primary = router.primaryDataSource as ComboPooledDataSource
+        replica = router.replicaDataSource as ComboPooledDataSource
+        replicaJdbcUrl = DatabaseGlobalProperty.readReplicaJdbcUrl
+
+        testNoReplica()
+        enableReplica(primary.jdbcUrl)
+        testRouteToReplica()
+        testInTransaction()
+        testFallbackOnSQLFailure()
+        testOtherFailureNotRetried()
+        enableReplica("jdbc:mysql://127.0.0.1:1/zstack")
+        testFallbackOnConnectionFailure()
+    }
+
+    void enableReplica(String jdbcUrl) {
+        replica.jdbcUrl = jdbcUrl
+        replica.user = primary.user
+        replica.password = primary.password
+        replica.acquireRetryAttempts = 1
+        replica.checkoutTimeout = 3000
+        DatabaseGlobalProperty.readReplicaJdbcUrl = jdbcUrl
+        router.replicaHealthy = true
+    }
+
+    // the data sources the connection of the transaction in the batch is bound to
+    List<Object> readInBatch() {
+        List<Object> boundTo = []
+        router.readOnly(new SQLBatch() {
+            @Override
+            protected void scripts() {
+                q(SystemTagVO.class).limit(1).list()
+                boundTo.addAll([primary, replica].findAll { TransactionSynchronizationManager.hasResource(it) })
+            }
+        })
+        return boundTo
+    }
+
+    void testNoReplica() {
+        assert !router.isReplicaEnabled()
+
+        long primaryQueries = router.statistics.primaryQueries as long
+        assert readInBatch() == [primary]
+        assert router.statistics.primaryQueries == primaryQueries + 1
+    }
+
+    void testRouteToReplica() {
+        long replicaQueries = router.statistics.replicaQueries as long
+
+        // bound to the replica only, JdbcTemplate users of the primary data source don't get the replica connection
+        assert readInBatch() == [replica]
+        assert router.statistics.replicaQueries == replicaQueries + 1
+    }
+
+    void testInTransaction() {
+        List<Object> boundTo = []
+        new SQLBatch() {
+            @Override
+            protected void scripts() {
+                boundTo.addAll(readInBatch())
+            }
+        }.execute()
+
+        // the transaction may have writes the replica can't see
+        assert boundTo == [primary]
+    }
+
+    void testFallbackOnSQLFailure() {
+        long failures = router.statistics.replicaFailures as long
+        int calls = 0
+
+        Long count = router.readOnly({
+            calls++
+            if (calls == 1) {
+                // e.g. a table not created on the replica yet
+                throw new JDBCException("table not found", new SQLException("Table 'zstack.SystemTagVO' doesn't exist", "42S02"))
+            }
+
+            return Q.New(SystemTagVO.class).count()
+        } as Supplier<Long>)
+
+        assert calls == 2
+        assert count != null
+        assert router.statistics.replicaFailures == failures + 1
+        // the replica is still available for other queries
+        assert router.statistics.replicaHealthy
+    }
+
+    void testOtherFailureNotRetried() {
+        int calls = 0
+
+        expect(CloudRuntimeException.class) {
+            router.readOnly({
+                calls++
+                throw new CloudRuntimeException("not a database failure")
+            } as Supplier<Void>)
+        }
+
+        assert calls == 1
+        assert router.statistics.replicaHealthy
+    }
+
+    void testFallbackOnConnectionFailure() {
+        long failures = router.statistics.replicaFailures as long
+
+        // the replica is unreachable, the batch is retried on the primary database
+        assert readInBatch() == [primary]
+        assert router.statistics.replicaFailures == failures + 1
+        assert !router.statistics.replicaHealthy
+
+        // routed to the primary database until the replica recovers
+        assert readInBatch() == [primary]
+        assert router.statistics.replicaFailures == failures + 1
+    }
+
+    @Override
+    void clean() {
+        if (router == null) {
+            return
+        }
+
+        DatabaseGlobalProperty.readReplicaJdbcUrl = replicaJdbcUrl
+        router.replicaHealthy = false
+        replica.jdbcUrl = ""
+        replica.hardReset()
+    }
+}
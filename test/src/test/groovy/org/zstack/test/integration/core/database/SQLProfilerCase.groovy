@@ -0,0 +1,193 @@
+package org.zstack.test.integration.core.database
+
+import org.apache.logging.log4j.ThreadContext
+import org.zstack.core.Platform
+import org.zstack.core.db.DatabaseFacade
+import org.zstack.core.db.DatabaseGlobalConfig
+import org.zstack.core.db.Q
+import org.zstack.core.db.SQLBatch
+import org.zstack.core.db.SQLCallSiteStatistic
+import org.zstack.core.db.SQLProfiler
+import org.zstack.core.db.SQLProfilerJMX
+import org.zstack.header.Constants
+import org.zstack.header.identity.APILogInByAccountMsg
+import org.zstack.header.identity.AccountConstant
+import org.zstack.header.tag.SystemTagVO
+import org.zstack.header.tag.SystemTagVO_
+import org.zstack.header.tag.TagType
+import org.zstack.header.vm.APIStartVmInstanceMsg
+import org.zstack.header.vm.VmInstanceVO
+import org.zstack.sdk.GetSQLProfileResult
+import org.zstack.sdk.SessionInventory
+import org.zstack.testlib.SubCase
+
+class SQLProfilerCase extends SubCase {
+    DatabaseFacade dbf
+    String resourceUuid = Platform.uuid
+    List<SystemTagVO> tags = []
+
+    @Override
+    void setup() {
+    }
+
+    @Override
+    void environment() {
+    }
+
+    @Override
+    void clean() {
+        DatabaseGlobalConfig.PROFILER_ENABLED.resetValue()
+        DatabaseGlobalConfig.PROFILER_SLOW_TRANSACTION_THRESHOLD.resetValue()
+        dbf.removeCollection(tags, SystemTagVO.class)
+    }
+
+    @Override
+    void test() {
+        dbf = bean(DatabaseFacade.class)
+        prepareTags()
+
+        testDisabledByDefault()
+        testQueriesAttributedToCallSite()
+        testTransactionsAttributedToCallSite()
+        testAttributedToApi()
+        testGetSQLProfile()
+        testJmx()
+    }
+
+    void prepareTags() {
+        for (int i = 0; i < 5; i++) {
+            SystemTagVO vo = new SystemTagVO()
+            vo.uuid = Platform.uuid
+            vo.resourceUuid = resourceUuid
+            vo.resourceType = VmInstanceVO.class.simpleName
+            vo.tag = "profiler::tag::$i"
+            vo.type = TagType.System
+            tags.add(vo)
+        }
+
+        dbf.persistCollection(tags)
+    }
+
+    // no closure here, the call site of the queries is this method
+    void runQueries() {
+        for (int i = 0; i < 5; i++) {
+            assert Q.New(SystemTagVO.class).eq(SystemTagVO_.resourceUuid, resourceUuid).list().size() == 5
+        }
+    }
+
+    void runBatch() {
+        new SQLBatch() {
+            @Override
+            protected void scripts() {
+                sql(SystemTagVO.class).eq(SystemTagVO_.resourceUuid, resourceUuid).set(SystemTagVO_.inherent, true).update()
+                q(SystemTagVO.class).eq(SystemTagVO_.resourceUuid, resourceUuid).list()
+            }
+        }.execute()
+    }
+
+    static List<SQLCallSiteStatistic> findCallSites(String method) {
+        return SQLProfiler.getTopCallSites(1000, SQLProfiler.SORT_BY_STATEMENTS).findAll {
+            it.callSite.contains("${SQLProfilerCase.class.name}.${method}") || it.callSite.contains("${SQLProfilerCase.class.name}\$") && it.callSite.contains(method)
+        }
+    }
+
+    void testDisabledByDefault() {
+        assert !SQLProfiler.isEnabled()
+        SQLProfiler.reset()
+
+        runQueries()
+        assert SQLProfiler.getTopCallSites(10, SQLProfiler.SORT_BY_QUERY_TIME).isEmpty()
+    }
+
+    void testQueriesAttributedToCallSite() {
+        DatabaseGlobalConfig.PROFILER_ENABLED.updateValue(true)
+        assert SQLProfiler.isEnabled()
+        SQLProfiler.reset()
+
+        runQueries()
+
+        List<SQLCallSiteStatistic> sites = findCallSites("runQueries")
+        assert sites.size() == 1
+        SQLCallSiteStatistic s = sites[0]
+        assert s.queries == 5
+        assert s.rows == 25
+        assert s.statements >= 5
+        assert s.queryLatencyHistogram.sum() == 5
+        assert s.queryLatencyHistogram.length == s.queryLatencyBucketsMs.length + 1
+        assert s.api == "none"
+    }
+
+    void testTransactionsAttributedToCallSite() {
+        DatabaseGlobalConfig.PROFILER_SLOW_TRANSACTION_THRESHOLD.updateValue(0)
+        SQLProfiler.reset()
+        long slow = SQLProfiler.getSlowTransactions()
+
+        runBatch()
+
+        List<SQLCallSiteStatistic> sites = SQLProfiler.getTopCallSites(1000, SQLProfiler.SORT_BY_TRANSACTION_TIME)
+                .findAll { it.transactions > 0 && it.callSite.contains(SQLProfilerCase.class.name) }
+        assert sites.size() == 1
+        assert sites[0].transactions == 1
+        assert sites[0].slowTransactions == 1
+        assert SQLProfiler.getSlowTransactions() >= slow + 1
+
+        // statements of the batch are accounted to the batch in this case
+        assert SQLProfiler.getTopCallSites(1000, SQLProfiler.SORT_BY_STATEMENTS)
+                .findAll { it.callSite.contains(SQLProfilerCase.class.name) }
+                .sum { it.statements } >= 2
+    }
+
+    void testAttributedToApi() {
+        SQLProfiler.reset()
+
+        // the task name changes as the API goes, the statements are accounted to the API message
+        ThreadContext.put(Constants.THREAD_CONTEXT_API, Platform.uuid)
+        ThreadContext.put(Constants.THREAD_CONTEXT_API_NAME, APIStartVmInstanceMsg.class.name)
+        ThreadContext.put(Constants.THREAD_CONTEXT_TASK_NAME, "start-vm-chain-task")
+        try {
+            runQueries()
+        } finally {
+            ThreadContext.remove(Constants.THREAD_CONTEXT_API)
+            ThreadContext.remove(Constants.THREAD_CONTEXT_API_NAME)
+            ThreadContext.remove(Constants.THREAD_CONTEXT_TASK_NAME)
+        }
+
+        List<SQLCallSiteStatistic> sites = findCallSites("runQueries")
+        assert sites.size() == 1
+        assert sites[0].api == APIStartVmInstanceMsg.class.name
+        assert sites[0].queries == 5
+    }
+
+    void testGetSQLProfile() {
+        SessionInventory session = logInByAccount {
+            accountName = AccountConstant.INITIAL_SYSTEM_ADMIN_NAME
+            password = AccountConstant.INITIAL_SYSTEM_ADMIN_PASSWORD
+        } as SessionInventory
+
+        GetSQLProfileResult result = getSQLProfile {
+            sortBy = SQLProfiler.SORT_BY_STATEMENTS
+            limit = 1000
+            sessionId = session.uuid
+        } as GetSQLProfileResult
+
+        assert result.enabled
+        List<org.zstack.sdk.SQLCallSiteStatistic> sites = result.callSites.collect { it as org.zstack.sdk.SQLCallSiteStatistic }
+        assert sites.any { it.callSite.contains("${SQLProfilerCase.class.name}.runQueries") && it.api == APIStartVmInstanceMsg.class.name }
+        // the statements of the login are accounted to its API message
+        assert sites.any { it.api == APILogInByAccountMsg.class.name }
+    }
+
+    void testJmx() {
+        SQLProfilerJMX jmx = bean(SQLProfilerJMX.class)
+        assert jmx.isEnabled()
+        assert !jmx.getTopCallSitesByStatements().isEmpty()
+
+        jmx.reset()
+        assert jmx.getTopCallSitesByQueryTime().isEmpty()
+
+        DatabaseGlobalConfig.PROFILER_ENABLED.updateValue(false)
+        assert !jmx.isEnabled()
+        runQueries()
+        assert jmx.getTopCallSitesByQueryTime().isEmpty()
+    }
+}
@@ -7,6 +7,7 @@ import org.zstack.core.db.DatabaseFacade
 import org.zstack.core.db.SQL
 import org.zstack.core.errorcode.ErrorFacade
 import org.zstack.core.gc.*
+import org.zstack.header.exception.CloudRuntimeException
 import org.zstack.testlib.SubCase
 import org.zstack.utils.Utils
 import org.zstack.utils.logging.CLogger
@@ -23,6 +24,7 @@ class EventBasedGarbageCollectorCase extends SubCase {
     static final String EVENT_PATH = "/test/gc"
     static final String EVENT_PATH2 = "/test/gc2"
     static final String EVENT_PATH3 = "/test/gc3"
+    static final String EVENT_PATH4 = "/test/gc4"
     private final static CLogger logger = Utils.getLogger(EventBasedGarbageCollectorCase.class)
 
     DatabaseFacade dbf
@@ -75,6 +77,51 @@ class EventBasedGarbageCollectorCase extends SubCase {
         }
     }
 
+    class EventBasedGCOnResource extends EventBasedGarbageCollector {
+        String resourceUuid
+        Closure testLogic
+
+        @Override
+        protected void setup() {
+            onEvent(EVENT_PATH4, resourceUuid, { tokens, data ->
+                return true
+            })
+        }
+
+        @Override
+        protected void triggerNow(GCCompletion completion) {
+            testLogic(completion)
+        }
+    }
+
+    class BatchableEventBasedGC extends EventBasedGarbageCollector implements BatchableGarbageCollector {
+        String resourceUuid
+        Closure testLogic
+        Closure batchLogic
+
+        @Override
+        protected void setup() {
+            onEvent(EVENT_PATH4, resourceUuid, { tokens, data ->
+                return true
+            })
+        }
+
+        @Override
+        protected void triggerNow(GCCompletion completion) {
+            testLogic(completion)
+        }
+
+        @Override
+        String getBatchKey() {
+            return resourceUuid
+        }
+
+        @Override
+        void triggerNowInBatch(List<BatchableGarbageCollector.GCBatchItem> items) {
+            batchLogic(items)
+        }
+    }
+
     static Map<String, Closure<EventBasedGCInDbBehavior>> testLogicForJobLoadedFromDbMap = new HashedMap<>()
 
     static enum EventBasedGCInDbBehavior {
@@ -554,12 +601,97 @@ class EventBasedGarbageCollectorCase extends SubCase {
         }
     }
 
+    void testEventBasedGCTriggeredByResource() {
+        int count = 0
+        def gc = new EventBasedGCOnResource()
+        gc.NAME = "testEventBasedGCTriggeredByResource"
+        gc.resourceUuid = Platform.getUuid()
+        gc.testLogic = { GCCompletion completion ->
+            count ++
+            completion.success()
+        }
+        gc.submit()
+
+        // an event about another resource doesn't trigger the job
+        evtf.fire(EVENT_PATH4, Platform.getUuid())
+        TimeUnit.SECONDS.sleep(1)
+        assert count == 0
+        assert dbFindByUuid(gc.uuid, GarbageCollectorVO.class).status == GCStatus.Idle
+
+        evtf.fire(EVENT_PATH4, gc.resourceUuid)
+        retryInSecs {
+            assert count == 1
+            assert dbFindByUuid(gc.uuid, GarbageCollectorVO.class).status == GCStatus.Done
+        }
+    }
+
+    void testEventBasedGCRunInBatch() {
+        String resourceUuid = Platform.getUuid()
+        int singleCount = 0
+        int batchCount = 0
+        int batchSize = 0
+
+        List<BatchableEventBasedGC> gcs = (1..3).collect {
+            def gc = new BatchableEventBasedGC()
+            gc.NAME = "testEventBasedGCRunInBatch"
+            gc.resourceUuid = resourceUuid
+            gc.testLogic = { GCCompletion completion ->
+                singleCount ++
+                completion.success()
+            }
+            gc.batchLogic = { List<BatchableGarbageCollector.GCBatchItem> items ->
+                batchCount ++
+                batchSize = items.size()
+                items.each { it.completion.success() }
+            }
+            gc.submit()
+            return gc
+        }
+
+        evtf.fire(EVENT_PATH4, resourceUuid)
+
+        retryInSecs {
+            assert batchCount == 1
+            assert batchSize == 3
+            assert singleCount == 0
+            gcs.each { assert dbFindByUuid(it.uuid, GarbageCollectorVO.class).status == GCStatus.Done }
+        }
+    }
+
+    void testEventBasedGCExceptionInBatch() {
+        String resourceUuid = Platform.getUuid()
+        int batchCount = 0
+
+        List<BatchableEventBasedGC> gcs = (1..3).collect {
+            def gc = new BatchableEventBasedGC()
+            gc.NAME = "testEventBasedGCExceptionInBatch"
+            gc.resourceUuid = resourceUuid
+            gc.batchLogic = { List<BatchableGarbageCollector.GCBatchItem> items ->
+                batchCount ++
+                items[0].completion.success()
+                throw new CloudRuntimeException("on purpose")
+            }
+            gc.submit()
+            return gc
+        }
+
+        evtf.fire(EVENT_PATH4, resourceUuid)
+
+        retryInSecs {
+            assert batchCount == 1
+            // the completed job isn't failed by the exception
+            assert dbFindByUuid(gcs[0].uuid, GarbageCollectorVO.class).status == GCStatus.Done
+            gcs[1..2].each { assert dbFindByUuid(it.uuid, GarbageCollectorVO.class).status == GCStatus.Idle }
+        }
+    }
+
     @Override
     void test() {
         dbf = bean(DatabaseFacade.class)
         evtf = bean(EventFacade.class)
         errf = bean(ErrorFacade.class)
         gcMgr = bean(GarbageCollectorManagerImpl.class)
+        gcMgr.registerTriggerResourceResolver(EVENT_PATH4, { data -> data as String })
 
         testEventBasedGCSuccess()
         testEventBasedGCFailure()
@@ -573,6 +705,9 @@ class EventBasedGarbageCollectorCase extends SubCase {
         testLoadedOrphanJobScan()
         testLoadedOrphanJobTriggerNow()
         testEventBasedGCCancelByApi()
+        testEventBasedGCTriggeredByResource()
+        testEventBasedGCRunInBatch()
+        testEventBasedGCExceptionInBatch()
     }
 
     @Override
@@ -2,7 +2,10 @@ package org.zstack.test.integration.identity.account
 
 import org.zstack.core.db.DatabaseFacade
 import org.zstack.core.db.DatabaseFacadeImpl
+import org.zstack.core.db.Q
 import org.zstack.header.identity.AccountConstant
+import org.zstack.header.identity.SessionVO
+import org.zstack.header.identity.SessionVO_
 import org.zstack.identity.AccountManagerImpl
 import org.zstack.identity.IdentityGlobalConfig
 import org.zstack.identity.Session
@@ -51,6 +54,7 @@ class SessionCase extends SubCase {
 
             testSession()
             testRenewSession()
+            testRenewalWrittenToDatabase()
             testRenewSessionFail()
             testInvalidSession()
             testValidateSessionApi()
@@ -150,6 +154,33 @@ class SessionCase extends SubCase {
         assert acntMgr.getSessionsCopy().get(sess2.uuid).expiredDate.getTime() <= now.getTime() + TimeUnit.SECONDS.toMillis(3630L)
     }
 
+    void testRenewalWrittenToDatabase() {
+        SessionInventory sess = logInByAccount {
+            accountName = "test1"
+            password = "password1"
+        } as SessionInventory
+
+        renewSession {
+            sessionUuid = sess.uuid
+            duration = 7200L
+            sessionId = sess.uuid
+        }
+
+        Timestamp expiredDate = acntMgr.getSessionsCopy().get(sess.uuid).expiredDate
+        retryInSecs {
+            Timestamp inDb = Q.New(SessionVO.class).eq(SessionVO_.uuid, sess.uuid).select(SessionVO_.expiredDate).findValue()
+            // the database may not keep milliseconds
+            assert Math.abs(inDb.time - expiredDate.time) < 1000
+        }
+
+        logOut {
+            sessionUuid = sess.uuid
+        }
+
+        assert acntMgr.getSessionsCopy().get(sess.uuid) == null
+        assert !Q.New(SessionVO.class).eq(SessionVO_.uuid, sess.uuid).isExists()
+    }
+
     void testRenewSessionFail() {
         SessionInventory sess1 = logInByAccount {
             accountName = "test1"
@@ -0,0 +1,145 @@
+package org.zstack.test.integration.kvm.host
+
+import org.springframework.http.HttpEntity
+import org.zstack.core.Platform
+import org.zstack.core.db.Q
+import org.zstack.core.progress.ProgressReportService
+import org.zstack.header.core.progress.TaskProgressVO
+import org.zstack.header.core.progress.TaskProgressVO_
+import org.zstack.header.core.progress.TaskType
+import org.zstack.header.host.HostVO
+import org.zstack.header.host.HostVO_
+import org.zstack.kvm.KVMAgentCommands
+import org.zstack.kvm.KVMConstant
+import org.zstack.sdk.AddKVMHostsResult
+import org.zstack.sdk.ClusterInventory
+import org.zstack.sdk.HostInventory
+import org.zstack.test.integration.kvm.KvmTest
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.SubCase
+import org.zstack.utils.gson.JSONObjectUtil
+
+class AddKVMHostsCase extends SubCase {
+    EnvSpec env
+    ClusterInventory cluster
+
+    @Override
+    void setup() {
+        useSpring(KvmTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = HostEnv.noHostBasicEnv()
+    }
+
+    @Override
+    void test() {
+        env.create {
+            cluster = env.inventoryByName("cluster") as ClusterInventory
+
+            testAddHostsWithFailedOne()
+            testAddExistingHost()
+            testAddSameHostConcurrently()
+        }
+    }
+
+    void testAddHostsWithFailedOne() {
+        String failedIp = "127.0.0.5"
+        env.afterSimulator(KVMConstant.KVM_CONNECT_PATH) { KVMAgentCommands.AgentResponse rsp, HttpEntity<String> e ->
+            def cmd = JSONObjectUtil.toObject(e.body, KVMAgentCommands.ConnectCmd.class)
+            String ip = Q.New(HostVO.class).select(HostVO_.managementIp).eq(HostVO_.uuid, cmd.hostUuid).findValue()
+            if (ip == failedIp) {
+                rsp.success = false
+                rsp.setError("on purpose")
+            }
+            return rsp
+        }
+
+        def structs = (1..10).collect { [name: "host-${it}".toString(), managementIp: "127.0.0.${it}".toString(), username: "root", password: "password"] }
+
+        // keep the progress of the API after it completes
+        ProgressReportService progRpt = bean(ProgressReportService.class)
+        int deleteDelay = progRpt.getDELETE_DELAY()
+        progRpt.setDELETE_DELAY(1000)
+
+        String apiUuid = Platform.getUuid()
+        AddKVMHostsResult result = addKVMHosts {
+            apiId = apiUuid
+            clusterUuid = cluster.uuid
+            hosts = structs
+        } as AddKVMHostsResult
+
+        assert result.inventories.size() == 9
+        assert result.inventories.every { (it as HostInventory).managementIp != failedIp }
+        assert result.errors.size() == 1
+        assert result.errors.containsKey(failedIp)
+
+        assert Q.New(HostVO.class).count() == 9
+        assert !Q.New(HostVO.class).eq(HostVO_.managementIp, failedIp).isExists()
+
+        // the connect stage is 15-90, each of the 10 hosts, the failed one included, reports its progress
+        List<Integer> expected = (1..10).collect { 15 + (75 * it).intdiv(10) }
+        retryInSecs {
+            List<String> contents = Q.New(TaskProgressVO.class).select(TaskProgressVO_.content)
+                    .eq(TaskProgressVO_.apiId, apiUuid)
+                    .eq(TaskProgressVO_.type, TaskType.Progress)
+                    .listValues()
+            assert contents.collect { Integer.valueOf(it) }.findAll { it > 15 && it <= 90 }.sort() == expected
+        }
+
+        progRpt.setDELETE_DELAY(deleteDelay)
+        env.cleanAfterSimulatorHandlers()
+    }
+
+    void testAddExistingHost() {
+        expect(AssertionError.class) {
+            addKVMHosts {
+                clusterUuid = cluster.uuid
+                hosts = [[managementIp: "127.0.0.1", username: "root", password: "password"],
+                         [managementIp: "127.0.0.20", username: "root", password: "password"]]
+            }
+        }
+
+        assert !Q.New(HostVO.class).eq(HostVO_.managementIp, "127.0.0.20").isExists()
+    }
+
+    // a batch and a single add of the same ip are queued behind each other, only one of them adds the host
+    void testAddSameHostConcurrently() {
+        String ip = "127.0.0.30"
+        env.afterSimulator(KVMConstant.KVM_CONNECT_PATH) { rsp ->
+            sleep(500)
+            return rsp
+        }
+
+        def batch = Thread.start {
+            try {
+                addKVMHosts {
+                    clusterUuid = cluster.uuid
+                    hosts = [[managementIp: ip, username: "root", password: "password"]]
+                }
+            } catch (AssertionError ignored) {
+            }
+        }
+
+        try {
+            addKVMHost {
+                name = "single"
+                managementIp = ip
+                username = "root"
+                password = "password"
+                clusterUuid = cluster.uuid
+            }
+        } catch (AssertionError ignored) {
+        }
+        batch.join()
+
+        assert Q.New(HostVO.class).eq(HostVO_.managementIp, ip).count() == 1
+        env.cleanAfterSimulatorHandlers()
+    }
+
+    @Override
+    void clean() {
+        env.delete()
+    }
+}
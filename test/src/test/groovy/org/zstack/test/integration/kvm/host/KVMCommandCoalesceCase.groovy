@@ -0,0 +1,171 @@
+package org.zstack.test.integration.kvm.host
+
+import org.springframework.http.HttpEntity
+import org.zstack.core.cloudbus.CloudBus
+import org.zstack.header.host.HostConstant
+import org.zstack.header.message.MessageReply
+import org.zstack.kvm.KVMConstant
+import org.zstack.kvm.KVMGlobalConfig
+import org.zstack.kvm.KVMHostAsyncHttpCallMsg
+import org.zstack.kvm.KVMHostAsyncHttpCallReply
+import org.zstack.sdk.HostInventory
+import org.zstack.test.integration.kvm.KvmTest
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.SubCase
+import org.zstack.utils.gson.JSONObjectUtil
+
+class KVMCommandCoalesceCase extends SubCase {
+    EnvSpec env
+    HostInventory host
+
+    static final String ECHO_PATH = "/test/coalesce/echo"
+
+    @Override
+    void clean() {
+        KVMGlobalConfig.COMMAND_COALESCE.resetValue()
+        KVMGlobalConfig.COMMAND_COALESCE_WINDOW.resetValue()
+        env.delete()
+    }
+
+    @Override
+    void setup() {
+        useSpring(KvmTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = makeEnv {
+            zone {
+                name = "zone"
+
+                cluster {
+                    name = "cluster"
+
+                    kvm {
+                        name = "kvm"
+                        managementIp = "127.0.0.1"
+                        username = "root"
+                        password = "password"
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    void test() {
+        env.create {
+            host = env.inventoryByName("kvm") as HostInventory
+
+            env.simulator(ECHO_PATH) { HttpEntity<String> e ->
+                def cmd = JSONObjectUtil.toObject(e.body, LinkedHashMap.class)
+                if (cmd.value == 3) {
+                    return [success: false, error: "on purpose"]
+                }
+                if (cmd.sleep != null) {
+                    sleep(cmd.sleep as long)
+                }
+
+                return [value: cmd.value]
+            }
+
+            testCommandsNotCoalescedByDefault()
+            KVMGlobalConfig.COMMAND_COALESCE.updateValue(true)
+            KVMGlobalConfig.COMMAND_COALESCE_WINDOW.updateValue(500)
+            testCommandsCoalescedInOneBatch()
+            testFullBatchSentAtOnce()
+            testCommandsNotMarkedCoalescibleSentAlone()
+            testCommandsNotCheckingStatusInSameBatch()
+            testEachCommandKeepsItsTimeout()
+        }
+    }
+
+    KVMHostAsyncHttpCallMsg newMsg(Map cmd, boolean coalescible) {
+        KVMHostAsyncHttpCallMsg msg = new KVMHostAsyncHttpCallMsg()
+        msg.hostUuid = host.uuid
+        msg.path = ECHO_PATH
+        msg.command = cmd
+        msg.coalescible = coalescible
+        bean(CloudBus.class).makeTargetServiceIdByResourceUuid(msg, HostConstant.SERVICE_ID, host.uuid)
+        return msg
+    }
+
+    List<MessageReply> send(int num, boolean coalescible) {
+        return bean(CloudBus.class).call((0..<num).collect { i -> newMsg([value: i], coalescible) })
+    }
+
+    void checkReplies(List<MessageReply> replies) {
+        replies.eachWithIndex { MessageReply reply, int i ->
+            assert reply.success
+
+            LinkedHashMap rsp = (reply as KVMHostAsyncHttpCallReply).response
+            if (i == 3) {
+                assert rsp.success == false
+                assert rsp.error == "on purpose"
+            } else {
+                assert rsp.value == i
+            }
+        }
+    }
+
+    void testCommandsNotCoalescedByDefault() {
+        env.resetAllSimulatorSize()
+        checkReplies(send(10, true))
+        assert env.verifySimulator(KVMConstant.KVM_BATCH_COMMAND_PATH, 0)
+        assert env.verifySimulator(ECHO_PATH, 10)
+    }
+
+    void testCommandsCoalescedInOneBatch() {
+        env.resetAllSimulatorSize()
+        checkReplies(send(10, true))
+        assert env.verifySimulator(KVMConstant.KVM_BATCH_COMMAND_PATH, 1)
+        assert env.verifySimulator(ECHO_PATH, 10)
+    }
+
+    void testFullBatchSentAtOnce() {
+        KVMGlobalConfig.COMMAND_COALESCE_MAX_BATCH_SIZE.updateValue(4)
+
+        env.resetAllSimulatorSize()
+        checkReplies(send(10, true))
+        assert env.verifySimulator(KVMConstant.KVM_BATCH_COMMAND_PATH, 3)
+        assert env.verifySimulator(ECHO_PATH, 10)
+
+        KVMGlobalConfig.COMMAND_COALESCE_MAX_BATCH_SIZE.resetValue()
+    }
+
+    void testCommandsNotMarkedCoalescibleSentAlone() {
+        env.resetAllSimulatorSize()
+        checkReplies(send(10, false))
+        assert env.verifySimulator(KVMConstant.KVM_BATCH_COMMAND_PATH, 0)
+        assert env.verifySimulator(ECHO_PATH, 10)
+    }
+
+    void testCommandsNotCheckingStatusInSameBatch() {
+        env.resetAllSimulatorSize()
+        List<KVMHostAsyncHttpCallMsg> msgs = (0..<10).collect { i ->
+            KVMHostAsyncHttpCallMsg msg = newMsg([value: i], true)
+            msg.noStatusCheck = i % 2 == 0
+            return msg
+        }
+
+        checkReplies(bean(CloudBus.class).call(msgs))
+        assert env.verifySimulator(KVMConstant.KVM_BATCH_COMMAND_PATH, 1)
+        assert env.verifySimulator(ECHO_PATH, 10)
+    }
+
+    void testEachCommandKeepsItsTimeout() {
+        env.resetAllSimulatorSize()
+
+        // the first command of the batch has the shortest timeout, it must not cut the others short
+        KVMHostAsyncHttpCallMsg shortOne = newMsg([value: 0], true)
+        shortOne.timeout = 1000
+        KVMHostAsyncHttpCallMsg longOne = newMsg([value: 1, sleep: 3000], true)
+        longOne.timeout = 30000
+
+        List<MessageReply> replies = bean(CloudBus.class).call([shortOne, longOne])
+        assert env.verifySimulator(KVMConstant.KVM_BATCH_COMMAND_PATH, 1)
+        assert !replies[0].success
+        assert replies[1].success
+        assert (replies[1] as KVMHostAsyncHttpCallReply).response.value == 1
+    }
+}
@@ -0,0 +1,119 @@
+package org.zstack.test.integration.kvm.scale
+
+import org.zstack.kvm.KVMConstant
+import org.zstack.sdk.ClusterInventory
+import org.zstack.sdk.HostInventory
+import org.zstack.sdk.ImageInventory
+import org.zstack.sdk.InstanceOfferingInventory
+import org.zstack.sdk.L3NetworkInventory
+import org.zstack.sdk.VmInstanceInventory
+import org.zstack.test.integration.kvm.KvmTest
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.SubCase
+import org.zstack.testlib.scale.AgentProfile
+import org.zstack.testlib.scale.ScaleEnv
+import org.zstack.testlib.scale.ScaleRunResult
+import org.zstack.testlib.scale.ScaleRunner
+import org.zstack.testlib.scale.ScaleWorkloads
+
+/**
+ * Runs the scale workloads on a small environment by default, pass e.g.
+ * -Dscale.hosts=2000 -Dscale.vms=10000 -Dscale.l3Networks=500 -Dscale.concurrency=200
+ * to run them at scale. The report is written to <resultDir>/scale/KvmScaleCase.json.
+ */
+class KvmScaleCase extends SubCase {
+    EnvSpec env
+    ScaleRunner runner = new ScaleRunner()
+
+    int clusterNum = Integer.getInteger("scale.clusters", 2)
+    int hostNum = Integer.getInteger("scale.hosts", 10)
+    int l3Num = Integer.getInteger("scale.l3Networks", 4)
+    int vmNum = Integer.getInteger("scale.vms", 20)
+    int concurrency = Integer.getInteger("scale.concurrency", 10)
+    int agentMinLatencyMs = Integer.getInteger("scale.agentMinLatencyMs", 1)
+    int agentMaxLatencyMs = Integer.getInteger("scale.agentMaxLatencyMs", 5)
+
+    List<HostInventory> hosts
+    List<VmInstanceInventory> vms
+
+    @Override
+    void setup() {
+        useSpring(KvmTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = ScaleEnv.make(clusterNum, l3Num)
+    }
+
+    @Override
+    void test() {
+        env.create {
+            env.agentProfile = new AgentProfile().latency(agentMinLatencyMs, agentMaxLatencyMs)
+
+            testWorkloads()
+            testAgentFailures()
+            writeReport()
+        }
+    }
+
+    static void assertNoFailure(ScaleRunResult ret) {
+        assert ret.failures == 0: "${ret.name} has ${ret.failures} failures, e.g. ${ret.sampleErrors}"
+    }
+
+    void testWorkloads() {
+        ScaleWorkloads workloads = new ScaleWorkloads(runner, adminSession())
+
+        List<String> clusterUuids = (0..<clusterNum).collect { (env.inventoryByName("cluster-$it") as ClusterInventory).uuid }
+        hosts = workloads.addHosts(clusterUuids, hostNum, concurrency)
+        assertNoFailure(runner.results.last())
+        assert hosts.size() == hostNum
+
+        List<String> l3Uuids = (0..<l3Num).collect { (env.inventoryByName("l3-$it") as L3NetworkInventory).uuid }
+        vms = workloads.createVms((env.inventoryByName(ScaleEnv.INSTANCE_OFFERING) as InstanceOfferingInventory).uuid,
+                (env.inventoryByName(ScaleEnv.IMAGE) as ImageInventory).uuid, l3Uuids, vmNum, concurrency)
+        assertNoFailure(runner.results.last())
+        assert vms.size() == vmNum
+
+        List<String> vmUuids = vms.collect { it.uuid }
+        assertNoFailure(workloads.stopVms(vmUuids, concurrency))
+        assertNoFailure(workloads.startVms(vmUuids, concurrency))
+        assertNoFailure(workloads.migrateVms(vmUuids, concurrency))
+        assertNoFailure(workloads.reconnectHosts(hosts.collect { it.uuid }, hostNum))
+        assertNoFailure(workloads.queryVmsBurst(vmNum, concurrency))
+
+        runner.results.each { ScaleRunResult ret ->
+            assert ret.sqlStatements > 0
+            assert ret.latencyP50Ms <= ret.latencyP90Ms
+            assert ret.latencyP90Ms <= ret.latencyP99Ms
+            assert ret.latencyP99Ms <= ret.latencyMaxMs
+        }
+    }
+
+    void testAgentFailures() {
+        ScaleWorkloads workloads = new ScaleWorkloads(runner, adminSession())
+        List<String> vmUuids = vms.take(Math.min(5, vms.size())).collect { it.uuid }
+        assertNoFailure(workloads.stopVms(vmUuids, concurrency))
+
+        env.agentProfile.failure(KVMConstant.KVM_START_VM_PATH, 1)
+        ScaleRunResult ret = workloads.startVms(vmUuids, concurrency)
+        assert ret.failures == vmUuids.size()
+        assert !ret.sampleErrors.isEmpty()
+
+        env.agentProfile.failure(KVMConstant.KVM_START_VM_PATH, 0)
+        assertNoFailure(workloads.startVms(vmUuids, concurrency))
+    }
+
+    void writeReport() {
+        String resultDir = System.getProperty("resultDir", [System.getProperty("user.dir"), "zstack-integration-test-result"].join("/"))
+        File report = new File([resultDir, "scale", "${this.class.simpleName}.json"].join("/"))
+        runner.writeReport(report)
+        assert report.exists()
+    }
+
+    @Override
+    void clean() {
+        env.agentProfile = null
+        env.delete()
+    }
+}
@@ -0,0 +1,71 @@
+package org.zstack.test.integration.kvm.vm
+
+import org.zstack.core.db.SQLStatementCounter
+import org.zstack.sdk.ImageInventory
+import org.zstack.sdk.InstanceOfferingInventory
+import org.zstack.sdk.L3NetworkInventory
+import org.zstack.sdk.VmInstanceInventory
+import org.zstack.test.integration.kvm.Env
+import org.zstack.test.integration.kvm.KvmTest
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.SubCase
+
+class QueryVmSQLStatementCountCase extends SubCase {
+    EnvSpec env
+    int vmNum = 20
+
+    @Override
+    void setup() {
+        useSpring(KvmTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = Env.oneVmBasicEnv()
+    }
+
+    @Override
+    void test() {
+        env.create {
+            createVms()
+            testChildCollectionsLoadedInBatches()
+        }
+    }
+
+    void createVms() {
+        InstanceOfferingInventory instanceOffering = env.inventoryByName("instanceOffering") as InstanceOfferingInventory
+        ImageInventory image = env.inventoryByName("image1") as ImageInventory
+        L3NetworkInventory l3 = env.inventoryByName("l3") as L3NetworkInventory
+
+        vmNum.times { i ->
+            createVmInstance {
+                name = "vm-${i}"
+                instanceOfferingUuid = instanceOffering.uuid
+                imageUuid = image.uuid
+                l3NetworkUuids = [l3.uuid]
+            }
+        }
+    }
+
+    void testChildCollectionsLoadedInBatches() {
+        SQLStatementCounter.reset()
+
+        List<VmInstanceInventory> vms = queryVmInstance {} as List<VmInstanceInventory>
+        assert vms.size() == vmNum + 1
+        vms.each {
+            assert it.vmNics.size() == 1
+            assert it.vmNics[0].usedIps.size() == 1
+            assert !it.allVolumes.isEmpty()
+        }
+
+        SQLStatementCounter.Counter counter = SQLStatementCounter.findCounter("ZQL:VmInstanceInventory")
+        assert counter != null
+        // nics, used IPs, volumes and cdroms are loaded by a few IN queries instead of queries per vm
+        assert counter.maxStatements < vmNum
+    }
+
+    @Override
+    void clean() {
+        env.delete()
+    }
+}
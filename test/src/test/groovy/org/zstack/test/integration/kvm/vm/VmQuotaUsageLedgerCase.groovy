@@ -0,0 +1,286 @@
+package org.zstack.test.integration.kvm.vm
+
+import org.zstack.compute.vm.VmQuotaConstant
+import org.zstack.compute.vm.VmQuotaUsageLedger
+import org.zstack.compute.vm.VmQuotaUtil
+import org.zstack.core.db.SQL
+import org.zstack.core.db.SQLBatch
+import org.zstack.header.exception.CloudRuntimeException
+import org.zstack.header.identity.AccountConstant
+import org.zstack.header.vm.VmInstanceState
+import org.zstack.header.vm.VmInstanceVO
+import org.zstack.header.vm.VmInstanceVO_
+import org.zstack.identity.QuotaUtil
+import org.zstack.sdk.AccountInventory
+import org.zstack.sdk.DiskOfferingInventory
+import org.zstack.sdk.ImageInventory
+import org.zstack.sdk.InstanceOfferingInventory
+import org.zstack.sdk.L3NetworkInventory
+import org.zstack.sdk.SessionInventory
+import org.zstack.sdk.VmInstanceInventory
+import org.zstack.sdk.VolumeInventory
+import org.zstack.test.integration.kvm.KvmTest
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.SubCase
+import org.zstack.utils.data.SizeUnit
+
+class VmQuotaUsageLedgerCase extends SubCase {
+    EnvSpec env
+    AccountInventory account
+    SessionInventory normalSession
+    SessionInventory adminSession
+    VmInstanceInventory vm
+
+    @Override
+    void clean() {
+        env.delete()
+    }
+
+    @Override
+    void setup() {
+        useSpring(KvmTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = makeEnv {
+            instanceOffering {
+                name = "instanceOffering"
+                memory = SizeUnit.GIGABYTE.toByte(2)
+                cpu = 2
+            }
+
+            diskOffering {
+                name = "diskOffering"
+                diskSize = SizeUnit.GIGABYTE.toByte(5)
+            }
+
+            sftpBackupStorage {
+                name = "sftp"
+                url = "/sftp"
+                username = "root"
+                password = "password"
+                hostname = "localhost"
+
+                image {
+                    name = "image"
+                    url = "http://zstack.org/download/test.qcow2"
+                }
+            }
+
+            zone {
+                name = "zone"
+
+                cluster {
+                    name = "cluster"
+                    hypervisorType = "KVM"
+
+                    kvm {
+                        name = "kvm"
+                        managementIp = "localhost"
+                        username = "root"
+                        password = "password"
+                    }
+
+                    attachPrimaryStorage("local")
+                    attachL2Network("l2")
+                }
+
+                localPrimaryStorage {
+                    name = "local"
+                    url = "/local_ps"
+                }
+
+                l2NoVlanNetwork {
+                    name = "l2"
+                    physicalInterface = "eth0"
+
+                    l3Network {
+                        name = "l3"
+                        ip {
+                            startIp = "192.168.100.10"
+                            endIp = "192.168.100.100"
+                            netmask = "255.255.255.0"
+                            gateway = "192.168.100.1"
+                        }
+                    }
+                }
+
+                attachBackupStorage("sftp")
+            }
+        }
+    }
+
+    @Override
+    void test() {
+        env.create {
+            prepare()
+            testUsagesTrackedWithVmLifeCycle()
+            testQuotaPairsEvictedOnQuotaUpdate()
+        }
+    }
+
+    void prepare() {
+        adminSession = logInByAccount {
+            accountName = AccountConstant.INITIAL_SYSTEM_ADMIN_NAME
+            password = AccountConstant.INITIAL_SYSTEM_ADMIN_PASSWORD
+        } as SessionInventory
+
+        account = createAccount {
+            name = "normal"
+            password = "password"
+        } as AccountInventory
+
+        normalSession = logInByAccount {
+            accountName = "normal"
+            password = "password"
+        } as SessionInventory
+
+        shareResource {
+            resourceUuids = [(env.inventoryByName("image") as ImageInventory).uuid,
+                             (env.inventoryByName("l3") as L3NetworkInventory).uuid,
+                             (env.inventoryByName("instanceOffering") as InstanceOfferingInventory).uuid,
+                             (env.inventoryByName("diskOffering") as DiskOfferingInventory).uuid]
+            toPublic = true
+            sessionId = adminSession.uuid
+        }
+    }
+
+    Map<String, Long> trackedUsages() {
+        return bean(VmQuotaUsageLedger.class).getAccountUsages(account.uuid, null).findAll { it.value != 0 }
+    }
+
+    // usages kept up to date by the ledger must be the same as usages reloaded from the database
+    void checkUsages() {
+        Map<String, Long> tracked = trackedUsages()
+        bean(VmQuotaUsageLedger.class).reset()
+        assert tracked == trackedUsages()
+    }
+
+    void testUsagesTrackedWithVmLifeCycle() {
+        assert trackedUsages().isEmpty()
+
+        vm = createVmInstance {
+            name = "vm"
+            imageUuid = (env.inventoryByName("image") as ImageInventory).uuid
+            l3NetworkUuids = [(env.inventoryByName("l3") as L3NetworkInventory).uuid]
+            instanceOfferingUuid = (env.inventoryByName("instanceOffering") as InstanceOfferingInventory).uuid
+            sessionId = normalSession.uuid
+        } as VmInstanceInventory
+
+        Map<String, Long> usages = trackedUsages()
+        assert usages[VmQuotaConstant.VM_RUNNING_NUM] == 1
+        assert usages[VmQuotaConstant.VM_RUNNING_CPU_NUM] == 2
+        assert usages[VmQuotaConstant.VM_RUNNING_MEMORY_SIZE] == SizeUnit.GIGABYTE.toByte(2)
+        assert usages[VmQuotaConstant.VM_TOTAL_NUM] == 1
+        checkUsages()
+
+        VmQuotaUtil.VmQuota quota = new VmQuotaUtil().getUsedVmCpuMemory(account.uuid, vm.uuid)
+        assert quota.runningVmNum == 0
+        assert quota.totalVmNum == 1
+
+        VolumeInventory volume = createDataVolume {
+            name = "data"
+            diskOfferingUuid = (env.inventoryByName("diskOffering") as DiskOfferingInventory).uuid
+            sessionId = normalSession.uuid
+        } as VolumeInventory
+        attachDataVolumeToVm {
+            volumeUuid = volume.uuid
+            vmInstanceUuid = vm.uuid
+            sessionId = normalSession.uuid
+        }
+        assert trackedUsages()[VmQuotaConstant.DATA_VOLUME_NUM] == 1
+        checkUsages()
+
+        stopVmInstance {
+            uuid = vm.uuid
+            sessionId = normalSession.uuid
+        }
+        assert trackedUsages()[VmQuotaConstant.VM_RUNNING_NUM] == null
+        checkUsages()
+
+        startVmInstance {
+            uuid = vm.uuid
+            sessionId = normalSession.uuid
+        }
+        assert trackedUsages()[VmQuotaConstant.VM_RUNNING_NUM] == 1
+        checkUsages()
+
+        testRolledBackChangeIgnored()
+        testBulkUpdateReloadsAccount()
+        testUnrelatedBulkUpdateKeepsAccount()
+
+        destroyVmInstance {
+            uuid = vm.uuid
+            sessionId = normalSession.uuid
+        }
+        assert trackedUsages()[VmQuotaConstant.VM_TOTAL_NUM] == null
+        checkUsages()
+
+        expungeVmInstance {
+            uuid = vm.uuid
+            sessionId = adminSession.uuid
+        }
+        deleteDataVolume {
+            uuid = volume.uuid
+            sessionId = normalSession.uuid
+        }
+        assert trackedUsages()[VmQuotaConstant.DATA_VOLUME_NUM] == null
+        checkUsages()
+    }
+
+    void testRolledBackChangeIgnored() {
+        try {
+            new SQLBatch() {
+                @Override
+                protected void scripts() {
+                    VmInstanceVO vo = findByUuid(vm.uuid, VmInstanceVO.class)
+                    vo.setState(VmInstanceState.Stopped)
+                    merge(vo)
+                    flush()
+                    throw new CloudRuntimeException("on purpose")
+                }
+            }.execute()
+        } catch (Exception ignored) {
+        }
+
+        assert trackedUsages()[VmQuotaConstant.VM_RUNNING_NUM] == 1
+        checkUsages()
+    }
+
+    void testBulkUpdateReloadsAccount() {
+        SQL.New(VmInstanceVO.class).eq(VmInstanceVO_.uuid, vm.uuid).set(VmInstanceVO_.cpuNum, 4).update()
+        assert trackedUsages()[VmQuotaConstant.VM_RUNNING_CPU_NUM] == 4
+
+        SQL.New(VmInstanceVO.class).eq(VmInstanceVO_.uuid, vm.uuid).set(VmInstanceVO_.cpuNum, 2).update()
+        assert trackedUsages()[VmQuotaConstant.VM_RUNNING_CPU_NUM] == 2
+        checkUsages()
+    }
+
+    void testUnrelatedBulkUpdateKeepsAccount() {
+        VmQuotaUsageLedger ledger = bean(VmQuotaUsageLedger.class)
+        trackedUsages()
+        assert ledger.accounts.containsKey(account.uuid)
+
+        // no column the usages are calculated from is set
+        SQL.New(VmInstanceVO.class).eq(VmInstanceVO_.uuid, vm.uuid).set(VmInstanceVO_.description, "updated").update()
+        assert ledger.accounts.containsKey(account.uuid)
+
+        SQL.New(VmInstanceVO.class).eq(VmInstanceVO_.uuid, vm.uuid).set(VmInstanceVO_.memorySize, SizeUnit.GIGABYTE.toByte(2)).update()
+        assert !ledger.accounts.containsKey(account.uuid)
+        checkUsages()
+    }
+
+    void testQuotaPairsEvictedOnQuotaUpdate() {
+        assert new QuotaUtil().makeQuotaPairs(account.uuid)[VmQuotaConstant.VM_TOTAL_NUM].value != 3
+
+        updateQuota {
+            identityUuid = account.uuid
+            name = VmQuotaConstant.VM_TOTAL_NUM
+            value = 3
+            sessionId = adminSession.uuid
+        }
+
+        assert new QuotaUtil().makeQuotaPairs(account.uuid)[VmQuotaConstant.VM_TOTAL_NUM].value == 3
+    }
+}
@@ -0,0 +1,189 @@
+package org.zstack.test.integration.kvm.vm
+
+import org.springframework.http.HttpEntity
+import org.zstack.core.Platform
+import org.zstack.kvm.KVMAgentCommands
+import org.zstack.kvm.KVMConstant
+import org.zstack.rest.AsyncRestApiStore
+import org.zstack.rest.AsyncRestState
+import org.zstack.rest.RestConstants
+import org.zstack.sdk.*
+import org.zstack.test.integration.kvm.Env
+import org.zstack.test.integration.kvm.KvmTest
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.SubCase
+import org.zstack.testlib.WebBeanConstructor
+import org.zstack.utils.gson.JSONObjectUtil
+
+import java.util.concurrent.TimeUnit
+
+class ZSClientLongPollCase extends SubCase {
+    EnvSpec env
+    ZSConfig config
+
+    @Override
+    void setup() {
+        useSpring(KvmTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = Env.oneVmBasicEnv()
+    }
+
+    @Override
+    void test() {
+        env.create {
+            config = ZSClient.config
+
+            // no web hook, the results are polled with a polling interval much longer
+            // than the API takes, only a long-poll request gets the result in time
+            ZSClient.configure(
+                    new ZSConfig.Builder()
+                            .setHostname("localhost")
+                            .setPort(WebBeanConstructor.port)
+                            .setDefaultPollingInterval(5, TimeUnit.SECONDS)
+                            .setDefaultPollingTimeout(1, TimeUnit.MINUTES)
+                            .setJobWaitTime(30, TimeUnit.SECONDS)
+                            .build()
+            )
+
+            env.afterSimulator(KVMConstant.KVM_START_VM_PATH) { rsp, HttpEntity<String> e ->
+                TimeUnit.SECONDS.sleep(1)
+                return rsp
+            }
+
+            testSyncCallWithLongPoll()
+            testAsyncCallWithLongPoll()
+            testStreamJobResults()
+        }
+    }
+
+    CreateVmInstanceAction createVmAction() {
+        InstanceOfferingInventory instanceOffering = env.inventoryByName("instanceOffering") as InstanceOfferingInventory
+        ImageInventory image = env.inventoryByName("image1") as ImageInventory
+        L3NetworkInventory l3 = env.inventoryByName("l3") as L3NetworkInventory
+
+        CreateVmInstanceAction action = new CreateVmInstanceAction()
+        action.name = "test"
+        action.instanceOfferingUuid = instanceOffering.uuid
+        action.imageUuid = image.uuid
+        action.l3NetworkUuids = [l3.uuid]
+        action.sessionId = adminSession()
+        return action
+    }
+
+    void testSyncCallWithLongPoll() {
+        long start = System.currentTimeMillis()
+        CreateVmInstanceAction.Result result = createVmAction().call()
+        long time = System.currentTimeMillis() - start
+
+        assert result.error == null
+        assert result.value.inventory != null
+        assert time >= 1000
+        assert time < 5000
+    }
+
+    void testAsyncCallWithLongPoll() {
+        CreateVmInstanceAction.Result createVmResult = null
+        long start = System.currentTimeMillis()
+        long time = 0
+
+        createVmAction().call(new Completion<CreateVmInstanceAction.Result>() {
+            void complete(CreateVmInstanceAction.Result ret) {
+                time = System.currentTimeMillis() - start
+                createVmResult = ret
+            }
+        })
+
+        retryInSecs(10) {
+            assert createVmResult != null
+        }
+
+        assert createVmResult.error == null
+        assert time < 5000
+    }
+
+    void testStreamJobResults() {
+        // the VMs start in 2, 4 and 6 seconds, the jobs complete in this order
+        List<String> vmUuids = (1..3).collect { Platform.uuid }
+        Map<String, Integer> delays = [:]
+        vmUuids.eachWithIndex { String uuid, int i -> delays[uuid] = (i + 1) * 2 }
+        env.afterSimulator(KVMConstant.KVM_START_VM_PATH) { rsp, HttpEntity<String> e ->
+            KVMAgentCommands.StartVmCmd cmd = JSONObjectUtil.toObject(e.body, KVMAgentCommands.StartVmCmd.class)
+            TimeUnit.SECONDS.sleep(delays[cmd.vmInstanceUuid] ?: 1)
+            return rsp
+        }
+
+        List<String> jobUuids = []
+        Map<String, Long> completedAt = [:]
+        Map<String, CreateVmInstanceAction.Result> results = [:]
+        vmUuids.each { vmUuid ->
+            CreateVmInstanceAction action = createVmAction()
+            action.resourceUuid = vmUuid
+            action.apiId = Platform.uuid
+            jobUuids.add(action.apiId)
+
+            action.call(new Completion<CreateVmInstanceAction.Result>() {
+                void complete(CreateVmInstanceAction.Result ret) {
+                    completedAt[action.apiId] = System.currentTimeMillis()
+                    results[action.apiId] = ret
+                }
+            })
+        }
+
+        // a job unknown to the store is expired, stream the jobs after they are submitted
+        AsyncRestApiStore store = bean(AsyncRestApiStore.class)
+        retryInSecs {
+            assert jobUuids.every { store.query(it).state == AsyncRestState.processing }
+        }
+
+        HttpURLConnection conn = new URL("http://localhost:${WebBeanConstructor.port}${RestConstants.API_VERSION}${RestConstants.ASYNC_JOB_PATH}" +
+                "?${RestConstants.JOB_UUIDS_PARAM}=${jobUuids.join(",")}").openConnection() as HttpURLConnection
+        conn.setRequestProperty(RestConstants.HEADER_JOB_WAIT_SECONDS, "30")
+        conn.readTimeout = 60000
+        assert conn.responseCode == 200
+
+        List<Map> lines = []
+        Map<String, Long> arrivedAt = [:]
+        long closedAt
+        conn.inputStream.withReader { reader ->
+            String line
+            while ((line = reader.readLine()) != null) {
+                Map m = JSONObjectUtil.toObject(line, LinkedHashMap.class)
+                lines.add(m)
+                arrivedAt[m.uuid as String] = System.currentTimeMillis()
+            }
+            closedAt = System.currentTimeMillis()
+        }
+
+        retryInSecs {
+            assert completedAt.size() == 3
+        }
+        assert results.values().every { it.error == null }
+
+        // each job is written once, in the order the jobs complete
+        assert lines*.uuid == jobUuids
+        assert lines.every { (it.statusCode as int) == 200 }
+
+        jobUuids.eachWithIndex { String uuid, int i ->
+            // a line is written when its job completes rather than with the last job
+            assert Math.abs(arrivedAt[uuid] - completedAt[uuid]) < 1500
+            if (i < jobUuids.size() - 1) {
+                assert arrivedAt[uuid] < completedAt[jobUuids[i + 1]]
+            }
+        }
+
+        // the stream is closed once the last job completes
+        assert closedAt - arrivedAt[jobUuids.last()] < 1000
+    }
+
+    @Override
+    void clean() {
+        if (config != null) {
+            ZSClient.configure(config)
+        }
+
+        env.delete()
+    }
+}
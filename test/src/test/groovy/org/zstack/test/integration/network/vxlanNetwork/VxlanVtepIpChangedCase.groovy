@@ -258,6 +258,12 @@ class VxlanVtepIpChangedCase extends SubCase {
             return new VxlanKvmAgentCommands.CreateVxlanBridgesCmd()
         }
 
+        def deleteRecords = [] as SynchronizedList<VxlanKvmAgentCommands.DeleteVxlanNetworksFdbCmd>
+        env.afterSimulator(VxlanNetworkPoolConstant.VXLAN_KVM_DELETE_FDB_L2VXLAN_NETWORKS_PATH) { rsp, HttpEntity<String> e ->
+            deleteRecords.add(JSONObjectUtil.toObject(e.body, VxlanKvmAgentCommands.DeleteVxlanNetworksFdbCmd.class))
+            return rsp
+        }
+
         reconnectHost { uuid = host1.uuid }
 
         vteps = Q.New(VtepVO.class).list() as List<VtepVO>
@@ -269,6 +275,13 @@ class VxlanVtepIpChangedCase extends SubCase {
             assert records[0] == [vxlan.uuid]
         }
 
+        // only the peer of host2 changed, it gets the old vtep ip of host1 removed
+        retryInSecs() {
+            assert deleteRecords.size() == 1
+            assert deleteRecords[0].peers == ["192.168.101.10"]
+            assert deleteRecords[0].networkUuids == [vxlan.uuid]
+        }
+
         assert realizeRecords.size() == 1
         assert realizeRecords.get(0) == vxlan.vni
 
@@ -0,0 +1,202 @@
+package org.zstack.test.integration.networkservice.provider.flat.dhcp
+
+import org.springframework.http.HttpEntity
+import org.zstack.core.cloudbus.CloudBus
+import org.zstack.header.network.service.L3NetworkUpdateDhcpMsg
+import org.zstack.header.network.service.NetworkServiceType
+import org.zstack.network.service.flat.FlatDhcpBackend
+import org.zstack.network.service.flat.FlatNetworkServiceConstant
+import org.zstack.sdk.HostInventory
+import org.zstack.sdk.L3NetworkInventory
+import org.zstack.test.integration.networkservice.provider.NetworkServiceProviderTest
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.SubCase
+import org.zstack.utils.data.SizeUnit
+import org.zstack.utils.gson.JSONObjectUtil
+
+class FlatDhcpIncrementalApplyCase extends SubCase {
+    EnvSpec env
+    HostInventory host
+    L3NetworkInventory l3
+    List<FlatDhcpBackend.ApplyDhcpCmd> cmds = Collections.synchronizedList([])
+
+    @Override
+    void setup() {
+        useSpring(NetworkServiceProviderTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = env {
+            instanceOffering {
+                name = "instanceOffering"
+                memory = SizeUnit.GIGABYTE.toByte(8)
+                cpu = 4
+            }
+
+            sftpBackupStorage {
+                name = "sftp"
+                url = "/sftp"
+                username = "root"
+                password = "password"
+                hostname = "localhost"
+
+                image {
+                    name = "image"
+                    url = "http://zstack.org/download/test.qcow2"
+                }
+            }
+
+            zone {
+                name = "zone"
+
+                cluster {
+                    name = "cluster"
+                    hypervisorType = "KVM"
+
+                    kvm {
+                        name = "kvm"
+                        managementIp = "localhost"
+                        username = "root"
+                        password = "password"
+                    }
+
+                    attachPrimaryStorage("local")
+                    attachL2Network("l2")
+                }
+
+                localPrimaryStorage {
+                    name = "local"
+                    url = "/local_ps"
+                }
+
+                l2NoVlanNetwork {
+                    name = "l2"
+                    physicalInterface = "eth0"
+
+                    l3Network {
+                        name = "l3"
+
+                        service {
+                            provider = FlatNetworkServiceConstant.FLAT_NETWORK_SERVICE_TYPE_STRING
+                            types = [NetworkServiceType.DHCP.toString()]
+                        }
+
+                        ip {
+                            startIp = "192.168.100.10"
+                            endIp = "192.168.100.100"
+                            netmask = "255.255.255.0"
+                            gateway = "192.168.100.1"
+                        }
+                    }
+                }
+
+                attachBackupStorage("sftp")
+            }
+
+            vm {
+                name = "vm1"
+                useImage("image")
+                useL3Networks("l3")
+                useInstanceOffering("instanceOffering")
+            }
+
+            vm {
+                name = "vm2"
+                useImage("image")
+                useL3Networks("l3")
+                useInstanceOffering("instanceOffering")
+            }
+        }
+    }
+
+    @Override
+    void test() {
+        env.create {
+            host = env.inventoryByName("kvm") as HostInventory
+            l3 = env.inventoryByName("l3") as L3NetworkInventory
+
+            env.afterSimulator(FlatDhcpBackend.APPLY_DHCP_PATH) { rsp, HttpEntity<String> e ->
+                cmds.add(JSONObjectUtil.toObject(e.body, FlatDhcpBackend.ApplyDhcpCmd.class))
+                return rsp
+            }
+
+            testUnchangedEntriesNotSent()
+            testChangedEntriesSent()
+            testReconnectHostRebuildsAll()
+            testRecreatedNamespaceGetsAll()
+        }
+    }
+
+    void updateDhcp() {
+        L3NetworkUpdateDhcpMsg msg = new L3NetworkUpdateDhcpMsg()
+        msg.l3NetworkUuid = l3.uuid
+        bean(CloudBus.class).makeTargetServiceIdByResourceUuid(msg, FlatNetworkServiceConstant.SERVICE_ID, l3.uuid)
+        assert bean(CloudBus.class).call(msg).success
+    }
+
+    void testUnchangedEntriesNotSent() {
+        cmds.clear()
+        updateDhcp()
+        assert cmds.isEmpty()
+    }
+
+    void testChangedEntriesSent() {
+        cmds.clear()
+        addDnsToL3Network {
+            l3NetworkUuid = l3.uuid
+            dns = "223.5.5.5"
+        }
+
+        assert cmds.size() == 1
+        assert !cmds[0].rebuild
+        assert cmds[0].dhcp.size() == 2
+        assert cmds[0].dhcp.every { it.dns.contains("223.5.5.5") }
+
+        cmds.clear()
+        updateDhcp()
+        assert cmds.isEmpty()
+    }
+
+    void testReconnectHostRebuildsAll() {
+        cmds.clear()
+        reconnectHost {
+            uuid = host.uuid
+        }
+
+        assert cmds.size() == 1
+        assert cmds[0].rebuild
+        assert cmds[0].dhcp.size() == 2
+
+        cmds.clear()
+        updateDhcp()
+        assert cmds.isEmpty()
+    }
+
+    void testRecreatedNamespaceGetsAll() {
+        // the namespace is gone on the host and created again by the prepare command
+        env.afterSimulator(FlatDhcpBackend.PREPARE_DHCP_PATH) { FlatDhcpBackend.PrepareDhcpRsp rsp, HttpEntity<String> e ->
+            rsp.namespaceExisted = false
+            return rsp
+        }
+
+        cmds.clear()
+        updateDhcp()
+        assert cmds.size() == 1
+        assert cmds[0].dhcp.size() == 2
+
+        env.afterSimulator(FlatDhcpBackend.PREPARE_DHCP_PATH) { rsp, HttpEntity<String> e ->
+            return rsp
+        }
+
+        // all entries are recorded for the recreated namespace
+        cmds.clear()
+        updateDhcp()
+        assert cmds.isEmpty()
+    }
+
+    @Override
+    void clean() {
+        env.delete()
+    }
+}
@@ -0,0 +1,212 @@
+package org.zstack.test.integration.networkservice.provider.flat.dhcp
+
+import org.zstack.core.db.Q
+import org.zstack.header.network.l3.UsedIpVO
+import org.zstack.header.network.l3.UsedIpVO_
+import org.zstack.header.network.service.NetworkServiceType
+import org.zstack.network.service.flat.FlatNetworkServiceConstant
+import org.zstack.network.service.flat.IpStatisticConstants
+import org.zstack.sdk.GetL3NetworkIpStatisticResult
+import org.zstack.sdk.ImageInventory
+import org.zstack.sdk.InstanceOfferingInventory
+import org.zstack.sdk.IpStatisticData
+import org.zstack.sdk.L3NetworkInventory
+import org.zstack.sdk.VmInstanceInventory
+import org.zstack.test.integration.networkservice.provider.NetworkServiceProviderTest
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.SubCase
+import org.zstack.utils.data.SizeUnit
+
+class FlatIpStatisticCase extends SubCase {
+    EnvSpec env
+    L3NetworkInventory l3
+
+    @Override
+    void setup() {
+        useSpring(NetworkServiceProviderTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = env {
+            instanceOffering {
+                name = "instanceOffering"
+                memory = SizeUnit.GIGABYTE.toByte(8)
+                cpu = 4
+            }
+
+            sftpBackupStorage {
+                name = "sftp"
+                url = "/sftp"
+                username = "root"
+                password = "password"
+                hostname = "localhost"
+
+                image {
+                    name = "image"
+                    url = "http://zstack.org/download/test.qcow2"
+                }
+            }
+
+            zone {
+                name = "zone"
+
+                cluster {
+                    name = "cluster"
+                    hypervisorType = "KVM"
+
+                    kvm {
+                        name = "kvm"
+                        managementIp = "localhost"
+                        username = "root"
+                        password = "password"
+                    }
+
+                    attachPrimaryStorage("local")
+                    attachL2Network("l2")
+                }
+
+                localPrimaryStorage {
+                    name = "local"
+                    url = "/local_ps"
+                }
+
+                l2NoVlanNetwork {
+                    name = "l2"
+                    physicalInterface = "eth0"
+
+                    l3Network {
+                        name = "l3"
+
+                        service {
+                            provider = FlatNetworkServiceConstant.FLAT_NETWORK_SERVICE_TYPE_STRING
+                            types = [NetworkServiceType.DHCP.toString()]
+                        }
+
+                        ip {
+                            startIp = "192.168.100.10"
+                            endIp = "192.168.100.100"
+                            netmask = "255.255.255.0"
+                            gateway = "192.168.100.1"
+                        }
+                    }
+                }
+
+                attachBackupStorage("sftp")
+            }
+
+            vm {
+                name = "vm1"
+                useImage("image")
+                useL3Networks("l3")
+                useInstanceOffering("instanceOffering")
+            }
+
+            vm {
+                name = "vm2"
+                useImage("image")
+                useL3Networks("l3")
+                useInstanceOffering("instanceOffering")
+            }
+        }
+    }
+
+    @Override
+    void test() {
+        env.create {
+            l3 = env.inventoryByName("l3") as L3NetworkInventory
+
+            testStatisticAll()
+            testPagination()
+            testFilterByIp()
+            testStatisticVm()
+            testTotalFollowsUsedIps()
+        }
+    }
+
+    GetL3NetworkIpStatisticResult statistic(String type, Integer start = 0, Integer limit = 20, String byIp = null) {
+        return getL3NetworkIpStatistic {
+            l3NetworkUuid = l3.uuid
+            resourceType = type
+            replyWithCount = true
+            delegate.start = start
+            delegate.limit = limit
+            ip = byIp
+        } as GetL3NetworkIpStatisticResult
+    }
+
+    long usedIpCount() {
+        return Q.New(UsedIpVO.class).eq(UsedIpVO_.l3NetworkUuid, l3.uuid).count()
+    }
+
+    String vmIp(String name) {
+        return (env.inventoryByName(name) as VmInstanceInventory).vmNics[0].ip
+    }
+
+    void testStatisticAll() {
+        GetL3NetworkIpStatisticResult res = statistic(IpStatisticConstants.ResourceType.ALL)
+        assert res.total == usedIpCount()
+        assert res.ipStatistics.size() == usedIpCount()
+
+        ["vm1", "vm2"].each { name ->
+            IpStatisticData data = res.ipStatistics.find { it.ip == vmIp(name) } as IpStatisticData
+            assert data.vmInstanceUuid == (env.inventoryByName(name) as VmInstanceInventory).uuid
+            assert data.resourceTypes.contains(IpStatisticConstants.ResourceType.VM)
+        }
+        assert res.ipStatistics.any { (it as IpStatisticData).resourceTypes.contains(IpStatisticConstants.ResourceType.DHCP) }
+    }
+
+    void testPagination() {
+        List<IpStatisticData> all = statistic(IpStatisticConstants.ResourceType.ALL).ipStatistics
+        GetL3NetworkIpStatisticResult res = statistic(IpStatisticConstants.ResourceType.ALL, 1, 1)
+        assert res.total == all.size()
+        assert res.ipStatistics.size() == 1
+        assert (res.ipStatistics[0] as IpStatisticData).ip == all[1].ip
+    }
+
+    void testFilterByIp() {
+        GetL3NetworkIpStatisticResult res = statistic(IpStatisticConstants.ResourceType.ALL, 0, 20, vmIp("vm1"))
+        assert res.total == 1
+        assert res.ipStatistics.size() == 1
+        assert (res.ipStatistics[0] as IpStatisticData).ip == vmIp("vm1")
+
+        // the ip is bound as a parameter rather than concatenated into the SQL
+        res = statistic(IpStatisticConstants.ResourceType.VM, 0, 20, "' or '1'='1")
+        assert res.total == 0
+        assert res.ipStatistics.isEmpty()
+    }
+
+    void testStatisticVm() {
+        GetL3NetworkIpStatisticResult res = statistic(IpStatisticConstants.ResourceType.VM)
+        assert res.total == 2
+        assert res.ipStatistics.size() == 2
+
+        ["vm1", "vm2"].each { name ->
+            IpStatisticData data = res.ipStatistics.find { it.ip == vmIp(name) } as IpStatisticData
+            assert data.vmInstanceUuid == (env.inventoryByName(name) as VmInstanceInventory).uuid
+            assert data.vmDefaultIp == [vmIp(name)]
+        }
+    }
+
+    void testTotalFollowsUsedIps() {
+        VmInstanceInventory vm = createVmInstance {
+            name = "vm3"
+            imageUuid = (env.inventoryByName("image") as ImageInventory).uuid
+            instanceOfferingUuid = (env.inventoryByName("instanceOffering") as InstanceOfferingInventory).uuid
+            l3NetworkUuids = [l3.uuid]
+        } as VmInstanceInventory
+
+        assert statistic(IpStatisticConstants.ResourceType.ALL).total == usedIpCount()
+
+        detachL3NetworkFromVm {
+            vmNicUuid = vm.vmNics[0].uuid
+        }
+
+        assert statistic(IpStatisticConstants.ResourceType.ALL).total == usedIpCount()
+    }
+
+    @Override
+    void clean() {
+        env.delete()
+    }
+}
@@ -2,6 +2,7 @@ package org.zstack.test.integration.rest
 
 import org.zstack.core.db.Q
 import org.zstack.core.db.SQL
+import org.zstack.rest.AsyncRestState
 import org.zstack.rest.AsyncRestVO
 import org.zstack.rest.AsyncRestVO_
 import org.zstack.sdk.KVMHostInventory
@@ -64,9 +65,15 @@ class RestResultAPINoSeeFilterCase extends SubCase {
             password = "test"
         }
 
-        String ret = Q.New(AsyncRestVO.class)
-                .select(AsyncRestVO_.result)
-                .like(AsyncRestVO_.requestData, "%\"apiClassName\":\"org.zstack.kvm.APIUpdateKVMHostMsg\"%").findValue()
+        // the async API records are written to the database asynchronously
+        String ret = null
+        retryInSecs {
+            ret = Q.New(AsyncRestVO.class)
+                    .select(AsyncRestVO_.result)
+                    .eq(AsyncRestVO_.state, AsyncRestState.done)
+                    .like(AsyncRestVO_.requestData, "%\"apiClassName\":\"org.zstack.kvm.APIUpdateKVMHostMsg\"%").findValue()
+            assert ret != null
+        }
 
         // the filed of password won't exists due to @APINoSee annotation
         assert ret.indexOf("password") == -1
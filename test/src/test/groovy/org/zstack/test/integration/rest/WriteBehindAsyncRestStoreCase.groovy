@@ -0,0 +1,129 @@
+package org.zstack.test.integration.rest
+
+import org.zstack.core.db.Q
+import org.zstack.core.db.SQL
+import org.zstack.header.zone.APICreateZoneEvent
+import org.zstack.header.zone.APICreateZoneMsg
+import org.zstack.rest.AsyncRestState
+import org.zstack.rest.AsyncRestVO
+import org.zstack.rest.AsyncRestVO_
+import org.zstack.rest.RequestData
+import org.zstack.rest.WriteBehindAsyncRestStore
+import org.zstack.test.integration.ZStackTest
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.SubCase
+
+class WriteBehindAsyncRestStoreCase extends SubCase {
+    EnvSpec env
+    WriteBehindAsyncRestStore store
+
+    @Override
+    void clean() {
+        env.delete()
+    }
+
+    @Override
+    void setup() {
+        useSpring(ZStackTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = env {
+        }
+    }
+
+    @Override
+    void test() {
+        env.create {
+            store = bean(WriteBehindAsyncRestStore.class)
+
+            testAsyncApiRecordsFlushedInBatch()
+            testCompletedJobInsertedDone()
+            testProcessingJobUpdatedInNextFlush()
+            testResultOfOtherNodeNotWritten()
+        }
+    }
+
+    void testAsyncApiRecordsFlushedInBatch() {
+        SQL.New(AsyncRestVO.class).delete()
+
+        int num = 10
+        num.times { i ->
+            createZone {
+                name = "zone-${i}"
+            }
+        }
+
+        // the jobs are completed in memory and written to the database later
+        retryInSecs {
+            assert Q.New(AsyncRestVO.class)
+                    .eq(AsyncRestVO_.state, AsyncRestState.done)
+                    .like(AsyncRestVO_.requestData, "%\"apiClassName\":\"org.zstack.header.zone.APICreateZoneMsg\"%")
+                    .count() == num
+            assert store.getInMemoryJobCount() == 0
+        }
+
+        List<String> uuids = Q.New(AsyncRestVO.class).select(AsyncRestVO_.uuid).listValues()
+        uuids.each {
+            assert store.query(it).state == AsyncRestState.done
+            assert store.query(it).result != null
+        }
+
+        SQL.New(AsyncRestVO.class).delete()
+    }
+
+    RequestData newRequestData() {
+        RequestData d = new RequestData()
+        d.apiMessage = new APICreateZoneMsg()
+        d.webHook = "http://127.0.0.1:8989/webhook"
+        return d
+    }
+
+    boolean recordExists(RequestData d, AsyncRestState state) {
+        return Q.New(AsyncRestVO.class).eq(AsyncRestVO_.uuid, d.apiMessage.id).eq(AsyncRestVO_.state, state).isExists()
+    }
+
+    void testCompletedJobInsertedDone() {
+        RequestData d = newRequestData()
+        synchronized (store) {
+            // no flush can run here
+            store.save(d)
+            assert !Q.New(AsyncRestVO.class).eq(AsyncRestVO_.uuid, d.apiMessage.id).isExists()
+            assert store.query(d.apiMessage.id).state == AsyncRestState.processing
+
+            assert store.complete(new APICreateZoneEvent(d.apiMessage.id)) != null
+            assert store.query(d.apiMessage.id).state == AsyncRestState.done
+        }
+
+        // completed before its first flush, the job is inserted in done state at once
+        store.flush()
+        assert recordExists(d, AsyncRestState.done)
+        assert store.getInMemoryJobCount() == 0
+
+        SQL.New(AsyncRestVO.class).delete()
+    }
+
+    void testProcessingJobUpdatedInNextFlush() {
+        RequestData d = newRequestData()
+        store.save(d)
+        store.flush()
+        assert recordExists(d, AsyncRestState.processing)
+
+        assert store.complete(new APICreateZoneEvent(d.apiMessage.id)) != null
+        store.flush()
+        assert recordExists(d, AsyncRestState.done)
+        assert store.getInMemoryJobCount() == 0
+
+        SQL.New(AsyncRestVO.class).delete()
+    }
+
+    void testResultOfOtherNodeNotWritten() {
+        // the job is accepted by another management node, which writes its record
+        RequestData d = newRequestData()
+        assert store.complete(new APICreateZoneEvent(d.apiMessage.id)) == null
+        store.flush()
+        assert !Q.New(AsyncRestVO.class).eq(AsyncRestVO_.uuid, d.apiMessage.id).isExists()
+        assert store.getInMemoryJobCount() == 0
+    }
+}
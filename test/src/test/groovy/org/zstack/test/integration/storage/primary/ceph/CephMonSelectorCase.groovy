@@ -0,0 +1,231 @@
+package org.zstack.test.integration.storage.primary.ceph
+
+import org.springframework.http.HttpEntity
+import org.zstack.core.cloudbus.CloudBus
+import org.zstack.core.db.Q
+import org.zstack.header.message.MessageReply
+import org.zstack.header.storage.primary.GetDownloadBitsFromKVMHostProgressMsg
+import org.zstack.header.storage.primary.PrimaryStorageConstant
+import org.zstack.sdk.PrimaryStorageInventory
+import org.zstack.sdk.VmInstanceInventory
+import org.zstack.storage.ceph.CephGlobalConfig
+import org.zstack.storage.ceph.CephMonSelector
+import org.zstack.storage.ceph.primary.CephPrimaryStorageBase
+import org.zstack.storage.ceph.primary.CephPrimaryStorageMonVO
+import org.zstack.storage.ceph.primary.CephPrimaryStorageMonVO_
+import org.zstack.test.integration.storage.StorageTest
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.HttpError
+import org.zstack.testlib.SubCase
+import org.zstack.utils.data.SizeUnit
+import org.zstack.utils.gson.JSONObjectUtil
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class CephMonSelectorCase extends SubCase {
+    EnvSpec env
+    CephMonSelector selector
+    VmInstanceInventory vm
+    PrimaryStorageInventory ps
+    String badMonUuid
+
+    @Override
+    void setup() {
+        useSpring(StorageTest.springSpec)
+    }
+
+    @Override
+    void environment() {
+        env = makeEnv {
+            instanceOffering {
+                name = "instanceOffering"
+                memory = SizeUnit.GIGABYTE.toByte(1)
+                cpu = 1
+            }
+
+            diskOffering {
+                name = "diskOffering"
+                diskSize = SizeUnit.GIGABYTE.toByte(20)
+            }
+
+            zone {
+                name = "zone"
+
+                cluster {
+                    name = "cluster"
+                    hypervisorType = "KVM"
+
+                    kvm {
+                        name = "host"
+                        managementIp = "localhost"
+                        username = "root"
+                        password = "password"
+                    }
+
+                    attachPrimaryStorage("ceph-pri")
+                    attachL2Network("l2")
+                }
+
+                l2NoVlanNetwork {
+                    name = "l2"
+                    physicalInterface = "eth0"
+
+                    l3Network {
+                        name = "l3"
+
+                        ip {
+                            startIp = "192.168.100.10"
+                            endIp = "192.168.100.100"
+                            netmask = "255.255.255.0"
+                            gateway = "192.168.100.1"
+                        }
+                    }
+                }
+
+                cephPrimaryStorage {
+                    name = "ceph-pri"
+                    url = "ceph://pri"
+                    fsid = "7ff218d9-f525-435f-8a40-3618d1772a64"
+                    monUrls = ["root:password@localhost/?monPort=7777", "root:password@127.0.0.1/?monPort=7777"]
+                }
+
+                attachBackupStorage("ceph-bk")
+            }
+
+            cephBackupStorage {
+                name = "ceph-bk"
+                url = "/bk"
+                fsid = "7ff218d9-f525-435f-8a40-3618d1772a64"
+                monUrls = ["root:password@localhost/?monPort=7777"]
+
+                image {
+                    name = "image"
+                    url = "http://zstack.org/download/image.qcow2"
+                }
+            }
+
+            vm {
+                name = "vm"
+                useHost("host")
+                useL3Networks("l3")
+                useInstanceOffering("instanceOffering")
+                useRootDiskOffering("diskOffering")
+                useImage("image")
+            }
+        }
+    }
+
+    @Override
+    void test() {
+        env.create {
+            selector = bean(CephMonSelector.class)
+            vm = env.inventoryByName("vm") as VmInstanceInventory
+            ps = env.inventoryByName("ceph-pri") as PrimaryStorageInventory
+            badMonUuid = Q.New(CephPrimaryStorageMonVO.class)
+                    .select(CephPrimaryStorageMonVO_.uuid)
+                    .eq(CephPrimaryStorageMonVO_.primaryStorageUuid, ps.uuid)
+                    .limit(1)
+                    .findValue()
+
+            CephGlobalConfig.MON_CIRCUIT_BREAKER_OPEN_TIME.updateValue(1)
+
+            testFailingMonIsTriedLast()
+            testSlowMonIsHedged()
+            testFirstErrorReplied()
+        }
+    }
+
+    String monUuidOf(HttpEntity<String> e) {
+        return JSONObjectUtil.toObject(e.body, CephPrimaryStorageBase.GetVolumeSizeCmd.class).monUuid
+    }
+
+    void testFailingMonIsTriedLast() {
+        AtomicInteger badMonCalls = new AtomicInteger(0)
+        env.simulator(CephPrimaryStorageBase.GET_VOLUME_SIZE_PATH) { HttpEntity<String> e ->
+            if (monUuidOf(e) == badMonUuid) {
+                badMonCalls.incrementAndGet()
+                throw new HttpError(500, "on purpose")
+            }
+
+            return new CephPrimaryStorageBase.GetVolumeSizeRsp()
+        }
+
+        int threshold = CephGlobalConfig.MON_CIRCUIT_BREAKER_FAILURE_THRESHOLD.value(Integer.class)
+
+        // every call fails over to the good mon
+        int calls = 0
+        while (badMonCalls.get() < threshold) {
+            syncVolumeSize {
+                uuid = vm.rootVolumeUuid
+            }
+            assert ++calls < 100
+        }
+
+        assert selector.isCircuitOpen(badMonUuid)
+
+        10.times {
+            syncVolumeSize {
+                uuid = vm.rootVolumeUuid
+            }
+        }
+        assert badMonCalls.get() == threshold
+
+        TimeUnit.SECONDS.sleep(2)
+        assert !selector.isCircuitOpen(badMonUuid)
+    }
+
+    void testSlowMonIsHedged() {
+        env.simulator(CephPrimaryStorageBase.GET_VOLUME_SIZE_PATH) { HttpEntity<String> e ->
+            if (monUuidOf(e) == badMonUuid) {
+                TimeUnit.SECONDS.sleep(3)
+            }
+
+            return new CephPrimaryStorageBase.GetVolumeSizeRsp()
+        }
+
+        // the slow mon hasn't replied any read command, it may be tried first, the read is
+        // duplicated to the other mon after the percentile of recent latencies
+        3.times {
+            long start = System.currentTimeMillis()
+            syncVolumeSize {
+                uuid = vm.rootVolumeUuid
+            }
+            assert System.currentTimeMillis() - start < 2000
+        }
+
+        retryInSecs {
+            assert selector.getLatency(badMonUuid) >= 3000
+        }
+    }
+
+    void testFirstErrorReplied() {
+        // both mons reply an error, the next mon is tried for the error of the first one
+        List<String> calledMons = Collections.synchronizedList([])
+        env.simulator(CephPrimaryStorageBase.GET_DOWNLOAD_BITS_FROM_KVM_HOST_PROGRESS_PATH) { HttpEntity<String> e ->
+            String monUuid = JSONObjectUtil.toObject(e.body, CephPrimaryStorageBase.GetDownloadBitsFromKVMHostProgressCmd.class).monUuid
+            calledMons.add(monUuid)
+
+            def rsp = new CephPrimaryStorageBase.GetDownloadBitsFromKVMHostProgressRsp()
+            rsp.success = false
+            rsp.error = "error of mon[${monUuid}]"
+            return rsp
+        }
+
+        GetDownloadBitsFromKVMHostProgressMsg msg = new GetDownloadBitsFromKVMHostProgressMsg()
+        msg.primaryStorageUuid = ps.uuid
+        msg.volumePaths = ["ceph://pri/volume"]
+        CloudBus bus = bean(CloudBus.class)
+        bus.makeTargetServiceIdByResourceUuid(msg, PrimaryStorageConstant.SERVICE_ID, ps.uuid)
+        MessageReply reply = bus.call(msg)
+
+        assert calledMons.size() == 2
+        assert !reply.success
+        assert reply.error.details.contains("error of mon[${calledMons[0]}]")
+    }
+
+    @Override
+    void clean() {
+        env.delete()
+    }
+}
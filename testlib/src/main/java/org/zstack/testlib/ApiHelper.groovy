@@ -1367,6 +1367,33 @@ abstract class ApiHelper {
     }
 
 
+    def addKVMHosts(@DelegatesTo(strategy = Closure.OWNER_FIRST, value = org.zstack.sdk.AddKVMHostsAction.class) Closure c) {
+        def a = new org.zstack.sdk.AddKVMHostsAction()
+        a.sessionId = Test.currentEnvSpec?.session?.uuid
+        c.resolveStrategy = Closure.OWNER_FIRST
+        c.delegate = a
+        c()
+        
+
+        if (System.getProperty("apipath") != null) {
+            if (a.apiId == null) {
+                a.apiId = Platform.uuid
+            }
+    
+            def tracker = new ApiPathTracker(a.apiId)
+            def out = errorOut(a.call())
+            def path = tracker.getApiPath()
+            if (!path.isEmpty()) {
+                Test.apiPaths[a.class.name] = path.join(" --->\n")
+            }
+        
+            return out
+        } else {
+            return errorOut(a.call())
+        }
+    }
+
+
     def addKVMHostFromConfigFile(@DelegatesTo(strategy = Closure.OWNER_FIRST, value = org.zstack.sdk.AddKVMHostFromConfigFileAction.class) Closure c) {
         def a = new org.zstack.sdk.AddKVMHostFromConfigFileAction()
         a.sessionId = Test.currentEnvSpec?.session?.uuid
@@ -16055,6 +16082,33 @@ abstract class ApiHelper {
     }
 
 
+    def getMessageTrace(@DelegatesTo(strategy = Closure.OWNER_FIRST, value = org.zstack.sdk.GetMessageTraceAction.class) Closure c) {
+        def a = new org.zstack.sdk.GetMessageTraceAction()
+        a.sessionId = Test.currentEnvSpec?.session?.uuid
+        c.resolveStrategy = Closure.OWNER_FIRST
+        c.delegate = a
+        c()
+        
+
+        if (System.getProperty("apipath") != null) {
+            if (a.apiId == null) {
+                a.apiId = Platform.uuid
+            }
+    
+            def tracker = new ApiPathTracker(a.apiId)
+            def out = errorOut(a.call())
+            def path = tracker.getApiPath()
+            if (!path.isEmpty()) {
+                Test.apiPaths[a.class.name] = path.join(" --->\n")
+            }
+        
+            return out
+        } else {
+            return errorOut(a.call())
+        }
+    }
+
+
     def getMissedElaboration(@DelegatesTo(strategy = Closure.OWNER_FIRST, value = org.zstack.sdk.GetMissedElaborationAction.class) Closure c) {
         def a = new org.zstack.sdk.GetMissedElaborationAction()
         a.sessionId = Test.currentEnvSpec?.session?.uuid
@@ -16784,6 +16838,33 @@ abstract class ApiHelper {
     }
 
 
+    def getSQLProfile(@DelegatesTo(strategy = Closure.OWNER_FIRST, value = org.zstack.sdk.GetSQLProfileAction.class) Closure c) {
+        def a = new org.zstack.sdk.GetSQLProfileAction()
+        a.sessionId = Test.currentEnvSpec?.session?.uuid
+        c.resolveStrategy = Closure.OWNER_FIRST
+        c.delegate = a
+        c()
+        
+
+        if (System.getProperty("apipath") != null) {
+            if (a.apiId == null) {
+                a.apiId = Platform.uuid
+            }
+    
+            def tracker = new ApiPathTracker(a.apiId)
+            def out = errorOut(a.call())
+            def path = tracker.getApiPath()
+            if (!path.isEmpty()) {
+                Test.apiPaths[a.class.name] = path.join(" --->\n")
+            }
+        
+            return out
+        } else {
+            return errorOut(a.call())
+        }
+    }
+
+
     def getSchedulerExecutionReport(@DelegatesTo(strategy = Closure.OWNER_FIRST, value = org.zstack.sdk.GetSchedulerExecutionReportAction.class) Closure c) {
         def a = new org.zstack.sdk.GetSchedulerExecutionReportAction()
         a.sessionId = Test.currentEnvSpec?.session?.uuid
@@ -52,6 +52,7 @@ import org.zstack.sdk.zwatch.alarm.sns.template.aliyunsms.CreateAliyunSmsSNSText
 import org.zstack.storage.volume.VolumeGlobalConfig
 import org.zstack.testlib.identity.AccountSpec
 import org.zstack.testlib.identity.IdentitySpec
+import org.zstack.testlib.scale.AgentProfile
 import org.zstack.utils.BeanUtils
 import org.zstack.utils.DebugUtils
 import org.zstack.utils.data.Pair
@@ -91,6 +92,8 @@ class EnvSpec extends ApiHelper implements Node  {
     private ConcurrentHashMap<Class, List<Tuple>> defaultMessageHandlers = [:]
     private ConcurrentHashMap<String, List<Tuple>> httpConditionHandlers = [:]
     private ConcurrentHashMap<String, List<Tuple>> defaultHttpConditionHandlers = [:]
+    // latency and failures of the simulated agents, applied before any simulator runs
+    AgentProfile agentProfile
     private static RestTemplate restTemplate
     protected static Set<Class> simulatorClasses = Platform.reflections.getSubTypesOf(Simulator.class)
 
@@ -919,6 +922,22 @@ class EnvSpec extends ApiHelper implements Node  {
         }
 
         try {
+            replyHttpCall(entity, rsp, invokeSimulator(url, handler, entity))
+        } catch (HttpError he) {
+            logger.warn("the simulator[$url] reports a http error[status code:${he.status}, message:${he.message}]", he)
+            rsp.sendError(he.status, he.message)
+        } catch (Throwable t) {
+            logger.warn("error happened when handling $url", t)
+            rsp.sendError(HttpStatus.INTERNAL_SERVER_ERROR.value(), t.message)
+        }
+    }
+
+    private Object invokeSimulator(String url, Closure handler, HttpEntity entity) {
+        try {
+            if (agentProfile != null) {
+                agentProfile.apply(url)
+            }
+
             def ret
             if (handler.maximumNumberOfParameters == 0) {
                 ret = handler()
@@ -944,17 +963,7 @@ class EnvSpec extends ApiHelper implements Node  {
                 }
             }
 
-            if (ret == null) {
-                ret = [:]
-            }
-
-            replyHttpCall(entity, rsp, ret)
-        } catch (HttpError he) {
-            logger.warn("the simulator[$url] reports a http error[status code:${he.status}, message:${he.message}]", he)
-            rsp.sendError(he.status, he.message)
-        } catch (Throwable t) {
-            logger.warn("error happened when handling $url", t)
-            rsp.sendError(HttpStatus.INTERNAL_SERVER_ERROR.value(), t.message)
+            return ret == null ? [:] : ret
         } finally {
             if (httpHandlerCounters[url] == null) {
                 httpHandlerCounters[url] = 1
@@ -964,6 +973,23 @@ class EnvSpec extends ApiHelper implements Node  {
         }
     }
 
+    /**
+     * runs the simulator of the path for a command carried in another command, e.g. a
+     * command of a KVM batch command, and returns the response
+     */
+    Object callSimulator(String path, HttpEntity<String> entity) {
+        Closure handler = httpHandlers[path]
+        if (handler == null && httpConditionHandlers[path] != null) {
+            handler = conditionHandler(httpConditionHandlers[path], entity, null)
+        }
+
+        if (handler == null) {
+            throw new HttpError(HttpStatus.NOT_FOUND.value(), "no handler found for the path $path")
+        }
+
+        return invokeSimulator(path, handler, entity)
+    }
+
     void handleSimulatorHttpRequests(HttpServletRequest req, HttpServletResponse rsp) {
         def url = req.getRequestURI()
         def entity = getEntityFromRequest(req)
@@ -18,7 +18,9 @@ class FlatnetworkSimualtor implements Simulator {
         }
 
         spec.simulator(FlatDhcpBackend.PREPARE_DHCP_PATH) {
-            return new FlatDhcpBackend.PrepareDhcpRsp()
+            def rsp = new FlatDhcpBackend.PrepareDhcpRsp()
+            rsp.namespaceExisted = true
+            return rsp
         }
 
         spec.simulator(FlatDhcpBackend.RESET_DEFAULT_GATEWAY_PATH) {
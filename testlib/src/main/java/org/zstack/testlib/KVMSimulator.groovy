@@ -50,6 +50,24 @@ class KVMSimulator implements Simulator {
             return rsp
         }
 
+        spec.simulator(KVMConstant.KVM_BATCH_COMMAND_PATH) { HttpEntity<String> e, EnvSpec espec ->
+            def cmd = JSONObjectUtil.toObject(e.body, KVMAgentCommands.BatchCommand.class)
+            def rsp = new KVMAgentCommands.BatchResponse()
+            rsp.responses = cmd.commands.collect { KVMAgentCommands.BatchedCommand c ->
+                def ret
+                try {
+                    ret = espec.callSimulator(c.path, new HttpEntity<String>(JSONObjectUtil.toJsonString(c.command), e.headers))
+                } catch (Throwable t) {
+                    ret = new KVMAgentCommands.AgentResponse()
+                    ret.error = t.message
+                }
+
+                return ret instanceof String ? JSONObjectUtil.toObject(ret, LinkedHashMap.class) : JSONObjectUtil.rehashObject(ret, LinkedHashMap.class)
+            }
+
+            return rsp
+        }
+
         spec.simulator(KVMConstant.KVM_HARDEN_CONSOLE_PATH) {
             return new KVMAgentCommands.AgentResponse()
         }
@@ -68,6 +68,10 @@ class L2VxlanNetworkPoolSpec extends L2NetworkSpec implements Simulator {
         env.simulator(VxlanNetworkPoolConstant.VXLAN_KVM_POPULATE_FDB_L2VXLAN_NETWORKS_PATH) { HttpEntity<String> entity, EnvSpec spec ->
             return new VxlanKvmAgentCommands.PopulateVxlanNetworksFdbCmd()
         }
+
+        env.simulator(VxlanNetworkPoolConstant.VXLAN_KVM_DELETE_FDB_L2VXLAN_NETWORKS_PATH) { HttpEntity<String> entity, EnvSpec spec ->
+            return new VxlanKvmAgentCommands.DeleteVxlanNetworksFdbResponse()
+        }
         env.simulator(VxlanNetworkPoolConstant.VXLAN_KVM_REALIZE_L2VXLAN_NETWORKS_PATH) { HttpEntity<String> entity, EnvSpec spec ->
             return new VxlanKvmAgentCommands.CreateVxlanBridgesCmd()
         }
@@ -0,0 +1,80 @@
+package org.zstack.testlib.scale
+
+import org.springframework.http.HttpStatus
+import org.zstack.testlib.HttpError
+
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+
+/**
+ * Latency and failures of simulated agents, by path prefix of their commands. The rule of the
+ * longest prefix matching a command applies, e.g.
+ *
+ *   env.agentProfile = new AgentProfile()
+ *           .latency(5, 20)
+ *           .latency(KVMConstant.KVM_MIGRATE_VM_PATH, 500, 2000)
+ *           .failure("/host/connect", 0.01)
+ *
+ * A failed command gets a HTTP 503, as an agent not reachable.
+ */
+class AgentProfile {
+    static class Rule {
+        String pathPrefix
+        long minLatencyMs
+        long maxLatencyMs
+        double failureRate
+    }
+
+    private final Map<String, Rule> rules = [:]
+
+    private Rule rule(String pathPrefix) {
+        synchronized (rules) {
+            return rules.computeIfAbsent(pathPrefix, { new Rule(pathPrefix: pathPrefix) })
+        }
+    }
+
+    AgentProfile latency(long minMs, long maxMs) {
+        return latency("/", minMs, maxMs)
+    }
+
+    AgentProfile latency(String pathPrefix, long minMs, long maxMs) {
+        assert minMs >= 0 && maxMs >= minMs: "invalid latency [$minMs, $maxMs]"
+        Rule r = rule(pathPrefix)
+        r.minLatencyMs = minMs
+        r.maxLatencyMs = maxMs
+        return this
+    }
+
+    AgentProfile failure(double rate) {
+        return failure("/", rate)
+    }
+
+    AgentProfile failure(String pathPrefix, double rate) {
+        assert rate >= 0 && rate <= 1: "invalid failure rate $rate"
+        rule(pathPrefix).failureRate = rate
+        return this
+    }
+
+    Rule match(String path) {
+        synchronized (rules) {
+            return rules.values().findAll { path.startsWith(it.pathPrefix) }.max { it.pathPrefix.length() }
+        }
+    }
+
+    void apply(String path) {
+        Rule r = match(path)
+        if (r == null) {
+            return
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current()
+        long latency = r.minLatencyMs == r.maxLatencyMs ? r.minLatencyMs : random.nextLong(r.minLatencyMs, r.maxLatencyMs + 1)
+        if (latency > 0) {
+            TimeUnit.MILLISECONDS.sleep(latency)
+        }
+
+        if (r.failureRate > 0 && random.nextDouble() < r.failureRate) {
+            throw new HttpError(HttpStatus.SERVICE_UNAVAILABLE.value(), "simulated failure of agent command $path")
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.zstack.testlib.scale
+
+import org.zstack.testlib.EnvSpec
+import org.zstack.testlib.Test
+import org.zstack.utils.data.SizeUnit
+
+/**
+ * The environment of scale tests: a zone of clusters sharing NFS primary storages and VLAN
+ * L3 networks, with no host. Hosts are added by ScaleWorkloads.addHosts() so adding them is
+ * measured as a workload too.
+ *
+ * Resources are named after their index, e.g. cluster-0, nfs-0, l2-0, l3-0; the instance
+ * offering and the image to create VMs are named scale-instanceOffering and scale-image.
+ */
+class ScaleEnv {
+    static final String INSTANCE_OFFERING = "scale-instanceOffering"
+    static final String IMAGE = "scale-image"
+    static final int MAX_L3_NETWORKS = 4094
+
+    static EnvSpec make(int clusterNum, int l3Num) {
+        assert clusterNum > 0: "clusterNum must be greater than 0"
+        assert l3Num > 0 && l3Num <= MAX_L3_NETWORKS: "l3Num must be in [1, $MAX_L3_NETWORKS], one vlan each"
+
+        return Test.makeEnv {
+            instanceOffering {
+                name = INSTANCE_OFFERING
+                memory = SizeUnit.GIGABYTE.toByte(1)
+                cpu = 1
+            }
+
+            sftpBackupStorage {
+                name = "sftp"
+                url = "/sftp"
+                username = "root"
+                password = "password"
+                hostname = "localhost"
+
+                image {
+                    name = IMAGE
+                    url = "http://zstack.org/download/test.qcow2"
+                }
+            }
+
+            zone {
+                name = "zone"
+
+                clusterNum.times { int i ->
+                    cluster {
+                        name = "cluster-$i"
+                        hypervisorType = "KVM"
+
+                        attachPrimaryStorage("nfs-$i")
+                        l3Num.times { int j -> attachL2Network("l2-$j") }
+                    }
+
+                    nfsPrimaryStorage {
+                        name = "nfs-$i"
+                        url = "/nfs_root_$i"
+                    }
+                }
+
+                l3Num.times { int j ->
+                    // a /16 each: 10.0.0.0/16, 10.1.0.0/16, ..., 11.0.0.0/16, ...
+                    String prefix = "${10 + j.intdiv(256)}.${j % 256}"
+
+                    l2VlanNetwork {
+                        name = "l2-$j"
+                        physicalInterface = "eth0"
+                        vlan = j + 1
+
+                        l3Network {
+                            name = "l3-$j"
+
+                            ip {
+                                startIp = "${prefix}.0.2"
+                                endIp = "${prefix}.255.254"
+                                netmask = "255.255.0.0"
+                                gateway = "${prefix}.0.1"
+                            }
+                        }
+                    }
+                }
+
+                attachBackupStorage("sftp")
+            }
+        }
+    }
+
+    /**
+     * @return the management IP of the index-th simulated host, 127.0.0.2 and up
+     */
+    static String hostIp(int index) {
+        int n = index + 2
+        return "127.${(n >> 16) & 0xff}.${(n >> 8) & 0xff}.${n & 0xff}"
+    }
+}
@@ -0,0 +1,64 @@
+package org.zstack.testlib.scale
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * What a run of a scale workload measured
+ */
+class ScaleRunResult {
+    String name
+    int operations
+    int concurrency
+    int failures
+    List<String> sampleErrors = []
+
+    long durationMs
+    double throughput
+
+    double latencyP50Ms
+    double latencyP90Ms
+    double latencyP99Ms
+    double latencyMaxMs
+
+    long sqlStatements
+    double sqlStatementsPerOperation
+
+    long maxThreadPoolQueuedTasks
+    long maxPendingChainTasks
+    String maxPendingChainTaskSignature
+
+    /**
+     * @param latencies latencies of the operations in nanoseconds, sorted in place
+     */
+    void recordLatencies(long[] latencies) {
+        Arrays.sort(latencies)
+        latencyP50Ms = percentile(latencies, 50)
+        latencyP90Ms = percentile(latencies, 90)
+        latencyP99Ms = percentile(latencies, 99)
+        latencyMaxMs = latencies.length == 0 ? 0 : toMillis(latencies[latencies.length - 1])
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1)
+    }
+
+    // nearest-rank percentile of sorted values
+    private static double percentile(long[] sorted, int p) {
+        if (sorted.length == 0) {
+            return 0
+        }
+
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length)
+        return toMillis(sorted[Math.max(rank, 1) - 1])
+    }
+
+    @Override
+    String toString() {
+        return String.format("[%s] operations: %s, concurrency: %s, failures: %s, duration: %sms, throughput: %.2f/s, " +
+                "latency p50: %.2fms, p90: %.2fms, p99: %.2fms, max: %.2fms, SQL statements: %s (%.2f/op), " +
+                "max thread pool queued tasks: %s, max pending chain tasks: %s (%s)",
+                name, operations, concurrency, failures, durationMs, throughput,
+                latencyP50Ms, latencyP90Ms, latencyP99Ms, latencyMaxMs, sqlStatements, sqlStatementsPerOperation,
+                maxThreadPoolQueuedTasks, maxPendingChainTasks, maxPendingChainTaskSignature)
+    }
+}
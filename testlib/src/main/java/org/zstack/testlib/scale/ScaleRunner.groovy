@@ -0,0 +1,155 @@
+package org.zstack.testlib.scale
+
+import org.zstack.core.Platform
+import org.zstack.core.db.SQLStatementCounter
+import org.zstack.core.thread.ChainTaskStatistic
+import org.zstack.core.thread.ThreadFacade
+import org.zstack.core.thread.ThreadFacadeMXBean
+import org.zstack.utils.Utils
+import org.zstack.utils.gson.JSONObjectUtil
+import org.zstack.utils.logging.CLogger
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Runs operations of a scale workload with a concurrency, and measures throughput, latency
+ * percentiles, SQL statements and the depth of the thread pool queue and of the chain task
+ * queues of the management node while they run.
+ *
+ * An operation fails by throwing.
+ */
+class ScaleRunner {
+    private static final CLogger logger = Utils.getLogger(ScaleRunner.class)
+
+    static final long QUEUE_SAMPLE_INTERVAL_MS = 100
+    static final int MAX_SAMPLE_ERRORS = 10
+
+    final List<ScaleRunResult> results = Collections.synchronizedList([])
+
+    private static class QueueSampler extends Thread {
+        volatile boolean stopped
+        long maxThreadPoolQueuedTasks
+        long maxPendingChainTasks
+        String maxPendingChainTaskSignature
+
+        QueueSampler() {
+            super("scale-test-queue-sampler")
+            setDaemon(true)
+        }
+
+        void sample() {
+            ThreadFacadeMXBean thdf = Platform.getComponentLoader().getComponent(ThreadFacade.class) as ThreadFacadeMXBean
+            maxThreadPoolQueuedTasks = Math.max(maxThreadPoolQueuedTasks, thdf.getThreadPoolStatistic().getQueuedTaskNum())
+
+            long pending = 0
+            ChainTaskStatistic longest = null
+            for (ChainTaskStatistic s : thdf.getChainTaskStatistics().values()) {
+                pending += s.pendingTaskNum
+                if (longest == null || s.pendingTaskNum > longest.pendingTaskNum) {
+                    longest = s
+                }
+            }
+
+            if (pending > maxPendingChainTasks) {
+                maxPendingChainTasks = pending
+                maxPendingChainTaskSignature = longest?.syncSignature
+            }
+        }
+
+        @Override
+        void run() {
+            while (!stopped) {
+                try {
+                    sample()
+                    TimeUnit.MILLISECONDS.sleep(QUEUE_SAMPLE_INTERVAL_MS)
+                } catch (InterruptedException ignored) {
+                    return
+                } catch (Throwable t) {
+                    logger.warn("failed to sample queues", t)
+                }
+            }
+        }
+    }
+
+    /**
+     * @param op called with the index of the operation, from 0 to total - 1
+     */
+    ScaleRunResult run(String name, int total, int concurrency, Closure op) {
+        assert total > 0 && concurrency > 0: "total and concurrency must be greater than 0"
+
+        long[] latencies = new long[total]
+        AtomicInteger failures = new AtomicInteger(0)
+        Queue<String> errors = new ConcurrentLinkedQueue<>()
+        CountDownLatch latch = new CountDownLatch(total)
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(concurrency, total))
+        QueueSampler sampler = new QueueSampler()
+
+        logger.info("scale workload[${name}] starts, operations: ${total}, concurrency: ${concurrency}")
+
+        long statements = SQLStatementCounter.getTotalStatements()
+        long start = System.nanoTime()
+        sampler.start()
+        try {
+            total.times { int i ->
+                pool.submit {
+                    long opStart = System.nanoTime()
+                    try {
+                        op(i)
+                    } catch (Throwable t) {
+                        failures.incrementAndGet()
+                        if (errors.size() < MAX_SAMPLE_ERRORS) {
+                            errors.add(t.message)
+                        }
+                        logger.debug("operation ${i} of scale workload[${name}] failed", t)
+                    } finally {
+                        latencies[i] = System.nanoTime() - opStart
+                        latch.countDown()
+                    }
+                }
+            }
+
+            latch.await()
+        } finally {
+            pool.shutdownNow()
+            sampler.stopped = true
+            sampler.interrupt()
+            sampler.join()
+        }
+
+        long duration = System.nanoTime() - start
+        sampler.sample()
+
+        ScaleRunResult ret = new ScaleRunResult()
+        ret.name = name
+        ret.operations = total
+        ret.concurrency = concurrency
+        ret.failures = failures.get()
+        ret.sampleErrors.addAll(errors)
+        ret.durationMs = TimeUnit.NANOSECONDS.toMillis(duration)
+        ret.throughput = total / (duration / (double) TimeUnit.SECONDS.toNanos(1))
+        ret.recordLatencies(latencies)
+        ret.sqlStatements = SQLStatementCounter.getTotalStatements() - statements
+        ret.sqlStatementsPerOperation = ret.sqlStatements / (double) total
+        ret.maxThreadPoolQueuedTasks = sampler.maxThreadPoolQueuedTasks
+        ret.maxPendingChainTasks = sampler.maxPendingChainTasks
+        ret.maxPendingChainTaskSignature = sampler.maxPendingChainTaskSignature
+
+        results.add(ret)
+        logger.info("scale workload ${ret}")
+        return ret
+    }
+
+    /**
+     * writes the results of all runs as JSON, to compare them between builds
+     */
+    void writeReport(File file) {
+        file.parentFile?.mkdirs()
+        file.text = JSONObjectUtil.toJsonString(results)
+        logger.info("scale test report is written to ${file.absolutePath}")
+    }
+}
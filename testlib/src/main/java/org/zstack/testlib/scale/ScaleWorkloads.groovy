@@ -0,0 +1,117 @@
+package org.zstack.testlib.scale
+
+import org.zstack.sdk.*
+
+import java.util.concurrent.ConcurrentLinkedQueue
+
+/**
+ * Workloads of scale tests, each is a run of the ScaleRunner calling an API per operation.
+ * Created resources are deleted with the environment like resources created by test cases.
+ */
+class ScaleWorkloads {
+    final ScaleRunner runner
+    final String sessionId
+
+    ScaleWorkloads(ScaleRunner runner, String sessionId) {
+        this.runner = runner
+        this.sessionId = sessionId
+    }
+
+    /**
+     * adds hosts to the clusters in turn, the index-th host gets ScaleEnv.hostIp(index)
+     */
+    List<HostInventory> addHosts(List<String> clusterUuids, int num, int concurrency) {
+        Queue<HostInventory> hosts = new ConcurrentLinkedQueue<>()
+        runner.run("add-hosts", num, concurrency) { int i ->
+            AddKVMHostAction a = new AddKVMHostAction()
+            a.name = "host-$i"
+            a.managementIp = ScaleEnv.hostIp(i)
+            a.username = "root"
+            a.password = "password"
+            a.clusterUuid = clusterUuids[i % clusterUuids.size()]
+            a.sessionId = sessionId
+            hosts.add(a.call().throwExceptionIfError().value.inventory)
+        }
+
+        return hosts as List<HostInventory>
+    }
+
+    /**
+     * creates VMs on the L3 networks in turn
+     */
+    List<VmInstanceInventory> createVms(String instanceOfferingUuid, String imageUuid, List<String> l3Uuids, int num, int concurrency) {
+        Queue<VmInstanceInventory> vms = new ConcurrentLinkedQueue<>()
+        runner.run("create-vms", num, concurrency) { int i ->
+            CreateVmInstanceAction a = new CreateVmInstanceAction()
+            a.name = "vm-$i"
+            a.instanceOfferingUuid = instanceOfferingUuid
+            a.imageUuid = imageUuid
+            a.l3NetworkUuids = [l3Uuids[i % l3Uuids.size()]]
+            a.sessionId = sessionId
+            vms.add(a.call().throwExceptionIfError().value.inventory)
+        }
+
+        return vms as List<VmInstanceInventory>
+    }
+
+    ScaleRunResult stopVms(List<String> vmUuids, int concurrency) {
+        return runner.run("stop-vms", vmUuids.size(), concurrency) { int i ->
+            StopVmInstanceAction a = new StopVmInstanceAction()
+            a.uuid = vmUuids[i]
+            a.sessionId = sessionId
+            a.call().throwExceptionIfError()
+        }
+    }
+
+    ScaleRunResult startVms(List<String> vmUuids, int concurrency) {
+        return runner.run("start-vms", vmUuids.size(), concurrency) { int i ->
+            StartVmInstanceAction a = new StartVmInstanceAction()
+            a.uuid = vmUuids[i]
+            a.sessionId = sessionId
+            a.call().throwExceptionIfError()
+        }
+    }
+
+    /**
+     * migrates VMs to hosts chosen by the host allocator
+     */
+    ScaleRunResult migrateVms(List<String> vmUuids, int concurrency) {
+        return runner.run("migrate-vms", vmUuids.size(), concurrency) { int i ->
+            MigrateVmAction a = new MigrateVmAction()
+            a.vmInstanceUuid = vmUuids[i]
+            a.sessionId = sessionId
+            a.call().throwExceptionIfError()
+        }
+    }
+
+    /**
+     * reconnects all the hosts at once, as after a network partition of the management network
+     */
+    ScaleRunResult reconnectHosts(List<String> hostUuids, int concurrency) {
+        return runner.run("reconnect-hosts", hostUuids.size(), concurrency) { int i ->
+            ReconnectHostAction a = new ReconnectHostAction()
+            a.uuid = hostUuids[i]
+            a.sessionId = sessionId
+            a.call().throwExceptionIfError()
+        }
+    }
+
+    /**
+     * @param query called with the index of the query and the session uuid, fails by throwing
+     */
+    ScaleRunResult queryBurst(String name, int num, int concurrency, Closure query) {
+        return runner.run(name, num, concurrency) { int i ->
+            query(i, sessionId)
+        }
+    }
+
+    ScaleRunResult queryVmsBurst(int num, int concurrency) {
+        return queryBurst("query-vms", num, concurrency) { int i, String session ->
+            QueryVmInstanceAction a = new QueryVmInstanceAction()
+            a.limit = 100
+            a.start = 0
+            a.sessionId = session
+            a.call().throwExceptionIfError()
+        }
+    }
+}
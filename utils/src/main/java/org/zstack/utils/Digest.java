@@ -2,11 +2,30 @@ package org.zstack.utils;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by frank on 3/3/2016.
  */
 public class Digest {
+    // a file modified within this time may be modified again in the same mtime tick, don't cache it
+    private static final long MTIME_GRANULARITY = 2000;
+
+    private static final Map<String, CachedMD5> md5Cache = new ConcurrentHashMap<>();
+
+    private static class CachedMD5 {
+        final long lastModified;
+        final long length;
+        final String md5;
+
+        CachedMD5(long lastModified, long length, String md5) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.md5 = md5;
+        }
+    }
+
     public static String getMD5(String filePath) {
         try {
             FileInputStream fis = new FileInputStream(new File(filePath));
@@ -17,4 +36,28 @@ public class Digest {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * same as getMD5() but the digest is cached in memory until the mtime or the size of the file changes
+     */
+    public static String getCachedMD5(String filePath) {
+        File file = new File(filePath);
+        String path = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+
+        CachedMD5 cached = md5Cache.get(path);
+        if (cached != null && cached.lastModified == lastModified && cached.length == length) {
+            return cached.md5;
+        }
+
+        String md5 = getMD5(path);
+        if (lastModified != 0 && System.currentTimeMillis() - lastModified > MTIME_GRANULARITY) {
+            md5Cache.put(path, new CachedMD5(lastModified, length, md5));
+        } else {
+            md5Cache.remove(path);
+        }
+
+        return md5;
+    }
 }
@@ -0,0 +1,165 @@
+package org.zstack.utils.data;
+
+/**
+ * A map from objects to primitive ints, with open addressing and linear probing, so a counter
+ * costs no boxed Integer or entry object. Null keys are not allowed. Not thread safe.
+ */
+public class ObjectIntHashMap<K> {
+    private static final int MIN_CAPACITY = 16;
+
+    private Object[] keys;
+    private int[] values;
+    private int size;
+
+    public ObjectIntHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public ObjectIntHashMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        // keep the load factor under 0.5
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new Object[capacity];
+        values = new int[capacity];
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private int indexOf(Object key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != null) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void resize(int capacity) {
+        Object[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new Object[capacity];
+        values = new int[capacity];
+
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == null) {
+                continue;
+            }
+
+            int i = hash(oldKeys[j]) & mask;
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+
+    public boolean containsKey(K key) {
+        return indexOf(key) != -1;
+    }
+
+    public int get(K key, int defaultValue) {
+        int i = indexOf(key);
+        return i == -1 ? defaultValue : values[i];
+    }
+
+    public void put(K key, int value) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length << 1);
+        }
+
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != null) {
+            if (keys[i].equals(key)) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        size++;
+    }
+
+    /**
+     * adds delta to the value of the key, a missing key is added with the value delta
+     *
+     * @return the new value
+     */
+    public int addTo(K key, int delta) {
+        int i = indexOf(key);
+        if (i == -1) {
+            put(key, delta);
+            return delta;
+        }
+
+        values[i] += delta;
+        return values[i];
+    }
+
+    /**
+     * @return false if the key is missing
+     */
+    public boolean remove(K key) {
+        int i = indexOf(key);
+        if (i == -1) {
+            return false;
+        }
+
+        // shift the following entries of the probe sequence back instead of leaving a tombstone
+        int mask = keys.length - 1;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (keys[j] == null) {
+                break;
+            }
+
+            int home = hash(keys[j]) & mask;
+            // the entry at j can move to i only if its home slot isn't in (i, j]
+            if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+
+        keys[i] = null;
+        values[i] = 0;
+        size--;
+
+        if (keys.length > MIN_CAPACITY && size * 8 < keys.length) {
+            resize(keys.length >> 1);
+        }
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        keys = new Object[MIN_CAPACITY];
+        values = new int[MIN_CAPACITY];
+        size = 0;
+    }
+}
@@ -0,0 +1,68 @@
+package org.zstack.utils.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * A fixed size ring keeping the latest elements added, the oldest ones are overwritten when
+ * it's full. Adding is lock free, a writer claims a slot by incrementing the sequence and
+ * never waits for other writers or readers; readers see a best-effort snapshot.
+ */
+public class OverwritingRingBuffer<E> {
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final AtomicLong sequence = new AtomicLong(0);
+
+    public OverwritingRingBuffer(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    public void add(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+
+        slots.lazySet((int) (sequence.getAndIncrement() & mask), e);
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    /**
+     * @return the number of elements ever added, including the overwritten ones
+     */
+    public long added() {
+        return sequence.get();
+    }
+
+    /**
+     * @return the elements matching the filter, the oldest first
+     */
+    public List<E> collect(Predicate<E> filter) {
+        long end = sequence.get();
+        long start = Math.max(0, end - slots.length());
+        List<E> ret = new ArrayList<>();
+        for (long i = start; i < end; i++) {
+            E e = slots.get((int) (i & mask));
+            if (e != null && filter.test(e)) {
+                ret.add(e);
+            }
+        }
+        return ret;
+    }
+
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, null);
+        }
+    }
+}
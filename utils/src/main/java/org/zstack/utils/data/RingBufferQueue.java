@@ -0,0 +1,121 @@
+package org.zstack.utils.data;
+
+import java.util.*;
+
+/**
+ * A FIFO queue on a circular array. The array doubles when it's full and halves when it's
+ * a quarter used, so a queue busy once doesn't keep a big array. Not thread safe.
+ */
+public class RingBufferQueue<E> extends AbstractQueue<E> {
+    private static final int MIN_CAPACITY = 8;
+
+    private Object[] elements;
+    private int head;
+    private int size;
+
+    public RingBufferQueue() {
+        this(MIN_CAPACITY);
+    }
+
+    public RingBufferQueue(int initialCapacity) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < initialCapacity) {
+            capacity <<= 1;
+        }
+        elements = new Object[capacity];
+    }
+
+    private void resize(int capacity) {
+        Object[] n = new Object[capacity];
+        for (int i = 0; i < size; i++) {
+            n[i] = elements[(head + i) & (elements.length - 1)];
+        }
+        elements = n;
+        head = 0;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+
+        if (size == elements.length) {
+            resize(elements.length << 1);
+        }
+
+        elements[(head + size) & (elements.length - 1)] = e;
+        size++;
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        if (size == 0) {
+            return null;
+        }
+
+        E e = (E) elements[head];
+        elements[head] = null;
+        head = (head + 1) & (elements.length - 1);
+        size--;
+
+        if (elements.length > MIN_CAPACITY && size < elements.length >> 2) {
+            resize(elements.length >> 1);
+        }
+
+        return e;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        return size == 0 ? null : (E) elements[head];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    int capacity() {
+        return elements.length;
+    }
+
+    @Override
+    public void clear() {
+        elements = new Object[MIN_CAPACITY];
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * the iterator doesn't support remove(), removing an element in the middle isn't O(1)
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private final Object[] array = elements;
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (array != elements) {
+                    throw new ConcurrentModificationException();
+                }
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                return (E) array[(head + index++) & (array.length - 1)];
+            }
+        };
+    }
+}
@@ -41,6 +41,11 @@ public class Ssh {
     private boolean closed = false;
     private boolean suppressException = false;
     private ScriptRunner script;
+    private boolean pooled = false;
+    private String poolKey;
+    private boolean reusedSession = false;
+    private boolean channelOpened = false;
+    private boolean sessionBroken = false;
 
     private boolean init = false;
 
@@ -213,6 +218,7 @@ public class Ssh {
                        try (InputStream ins = channel.getInputStream();
                             InputStream errs = channel.getErrStream()) {
                            channel.connect(getTimeoutInMilli(timeout));
+                           channelOpened = true;
 
                            String output = IOUtils.toString(ins, Charsets.UTF_8);
                            String stderr = IOUtils.toString(errs, Charsets.UTF_8);
@@ -229,6 +235,7 @@ public class Ssh {
                        }
                    }
                } catch (Exception e) {
+                   sessionBroken = true;
                    if (e instanceof IOException) {
                        ret.setSshFailure(true);
                    }
@@ -280,6 +287,7 @@ public class Ssh {
                     try {
                         channel = (ChannelSftp) session.openChannel("sftp");
                         channel.connect(getTimeoutInMilli(timeout));
+                        channelOpened = true;
 
                         if (download) {
                             channel.get(src, dst);
@@ -293,6 +301,7 @@ public class Ssh {
                         }
                     }
                 } catch (JSchException | SftpException e) {
+                    sessionBroken = true;
                     if (!suppressException) {
                         logger.warn(String.format("[SCP failed]: %s", cmd), e);
                     }
@@ -320,6 +329,15 @@ public class Ssh {
         };
     }
 
+    /**
+     * reuse an idle session to the same host with the same credentials if there is one, and
+     * give the session back for reuse on close() instead of disconnecting it
+     */
+    public Ssh usePooledSession() {
+        pooled = true;
+        return this;
+    }
+
     public Ssh checkTool(String...toolNames) {
         String tool = StringUtils.join(Arrays.asList(toolNames), " ");
         String cmdstr = s("EXIT (){ echo \"$1\"; exit 1;}; cmds=\"{0}\"; for cmd in $cmds; do which $cmd >/dev/null 2>&1 || EXIT \"Not find command: $cmd\";  done").format(tool);
@@ -368,11 +386,27 @@ public class Ssh {
             return;
         }
 
+        if (pooled) {
+            poolKey = SshSessionPool.makeKey(username, hostname, port, password, privateKey);
+            session = SshSessionPool.borrow(poolKey);
+            reusedSession = session != null;
+        }
+
+        if (session == null) {
+            connect();
+        }
+
+        init = true;
+    }
+
+    private void connect() throws IOException {
         try {
             JSch jSch = new JSch();
-            if (privateKey != null) {
+            if (privateKey != null && privateKeyFile == null) {
                 privateKeyFile = File.createTempFile("zstack", "tmp");
                 FileUtils.writeStringToFile(privateKeyFile, privateKey);
+            }
+            if (privateKeyFile != null) {
                 jSch.addIdentity(privateKeyFile.getAbsolutePath());
             }
 
@@ -386,8 +420,6 @@ public class Ssh {
         } catch (JSchException ex) {
             throw new IOException(ex);
         }
-
-        init = true;
     }
 
     public void close() {
@@ -407,7 +439,15 @@ public class Ssh {
             script.cleanup();
         }
 
-        session.disconnect();
+        if (session == null) {
+            return;
+        }
+
+        if (pooled && !sessionBroken) {
+            SshSessionPool.giveBack(poolKey, session);
+        } else {
+            session.disconnect();
+        }
     }
 
     public SshResult run() {
@@ -439,24 +479,20 @@ public class Ssh {
                 throw new IllegalArgumentException("no hostname specified");
             }
 
-            if (script != null) {
-                if (logger.isTraceEnabled()) {
-                    logger.trace(String.format("run script remotely[ip: %s, port: %s]:\n%s\n", hostname, port, script.scriptContent));
-                }
-                return script.run();
-            } else {
-                SshResult ret = null;
-                for (SshRunner runner : commands) {
-                    ret = runner.run();
-                    if (ret.getReturnCode() != 0) {
-                        return ret;
-                    }
-                }
-
-                return ret;
+            SshResult ret = execute();
+            if (reusedSession && !channelOpened && ret != null && ret.getReturnCode() != 0) {
+                // the idle session may have been closed by the server side, reconnect once
+                logger.debug(String.format("pooled ssh session to %s:%s is not usable, reconnect", hostname, port));
+                session.disconnect();
+                reusedSession = false;
+                sessionBroken = false;
+                connect();
+                ret = execute();
             }
 
+            return ret;
         } catch (IOException e) {
+            sessionBroken = true;
             StringBuilder sb = new StringBuilder("ssh exception\n");
             sb.append(String.format("[host:%s, port:%s, user:%s, timeout:%s]\n", hostname, port, username, timeout));
             if (!suppressException) {
@@ -490,6 +526,25 @@ public class Ssh {
         }
     }
 
+    private SshResult execute() {
+        if (script != null) {
+            if (logger.isTraceEnabled()) {
+                logger.trace(String.format("run script remotely[ip: %s, port: %s]:\n%s\n", hostname, port, script.scriptContent));
+            }
+            return script.run();
+        }
+
+        SshResult ret = null;
+        for (SshRunner runner : commands) {
+            ret = runner.run();
+            if (ret.getReturnCode() != 0) {
+                return ret;
+            }
+        }
+
+        return ret;
+    }
+
     public int getTimeout() {
         return timeout;
     }
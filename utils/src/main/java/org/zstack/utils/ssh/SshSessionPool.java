@@ -0,0 +1,135 @@
+package org.zstack.utils.ssh;
+
+import com.jcraft.jsch.Session;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Idle JSch sessions of Ssh objects created with usePooledSession(), keyed by the target and
+ * the credentials, so consecutive Ssh runs to the same host skip the SSH handshake.
+ *
+ * A session is only reused within IDLE_TIMEOUT after it's returned, which is shorter than
+ * the idle timeout of common sshd configurations; Ssh reconnects once if a reused session
+ * fails to open a channel.
+ */
+class SshSessionPool {
+    private static final CLogger logger = Utils.getLogger(SshSessionPool.class);
+
+    private static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+    private static final int MAX_IDLE_PER_KEY = 2;
+    private static final int MAX_IDLE = 1024;
+
+    private static final Map<String, Deque<IdleSession>> idleSessions = new ConcurrentHashMap<>();
+    private static final AtomicInteger idleCount = new AtomicInteger(0);
+    private static volatile long lastSweep = System.currentTimeMillis();
+
+    private static class IdleSession {
+        final Session session;
+        final long returnTime = System.currentTimeMillis();
+
+        IdleSession(Session session) {
+            this.session = session;
+        }
+
+        boolean isUsable(long now) {
+            return now - returnTime < IDLE_TIMEOUT && session.isConnected();
+        }
+    }
+
+    static String makeKey(String username, String hostname, int port, String password, String privateKey) {
+        String credential = DigestUtils.sha256Hex(String.format("%s\n%s", password, privateKey));
+        return String.format("%s@%s:%s/%s", username, hostname, port, credential);
+    }
+
+    /**
+     * @return an idle session of the key, null if there is no usable one
+     */
+    static Session borrow(String key) {
+        Deque<IdleSession> sessions = idleSessions.get(key);
+        if (sessions == null) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        while (true) {
+            IdleSession idle;
+            synchronized (sessions) {
+                idle = sessions.pollFirst();
+            }
+
+            if (idle == null) {
+                return null;
+            }
+
+            idleCount.decrementAndGet();
+            if (idle.isUsable(now)) {
+                return idle.session;
+            }
+
+            idle.session.disconnect();
+        }
+    }
+
+    static void giveBack(String key, Session session) {
+        if (!session.isConnected()) {
+            return;
+        }
+
+        sweepIfNeeded();
+
+        if (idleCount.get() >= MAX_IDLE) {
+            session.disconnect();
+            return;
+        }
+
+        Deque<IdleSession> sessions = idleSessions.computeIfAbsent(key, k -> new ArrayDeque<>());
+        synchronized (sessions) {
+            if (sessions.size() >= MAX_IDLE_PER_KEY) {
+                session.disconnect();
+                return;
+            }
+
+            sessions.addFirst(new IdleSession(session));
+            idleCount.incrementAndGet();
+        }
+    }
+
+    private static void sweepIfNeeded() {
+        long now = System.currentTimeMillis();
+        if (now - lastSweep < IDLE_TIMEOUT) {
+            return;
+        }
+
+        lastSweep = now;
+
+        int removed = 0;
+        // the empty queues are kept, giveBack() may be adding to them
+        for (Deque<IdleSession> sessions : idleSessions.values()) {
+            synchronized (sessions) {
+                Iterator<IdleSession> sit = sessions.iterator();
+                while (sit.hasNext()) {
+                    IdleSession idle = sit.next();
+                    if (!idle.isUsable(now)) {
+                        sit.remove();
+                        idleCount.decrementAndGet();
+                        idle.session.disconnect();
+                        removed++;
+                    }
+                }
+            }
+        }
+
+        if (removed > 0 && logger.isTraceEnabled()) {
+            logger.trace(String.format("closed %s idle ssh sessions", removed));
+        }
+    }
+}
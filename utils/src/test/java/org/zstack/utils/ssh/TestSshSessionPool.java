@@ -0,0 +1,116 @@
+package org.zstack.utils.ssh;
+
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.Deque;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * sessions are never connected to a server in this test, they are marked as connected
+ * to be taken by the pool
+ */
+public class TestSshSessionPool {
+    private static Session newSession() throws Exception {
+        Session session = new JSch().getSession("root", "127.0.0.1", 22);
+        setField(Session.class, session, "isConnected", true);
+        return session;
+    }
+
+    private static void setField(Class clz, Object obj, String name, Object value) throws Exception {
+        Field f = clz.getDeclaredField(name);
+        f.setAccessible(true);
+        f.set(obj, value);
+    }
+
+    private static String newKey() {
+        return SshSessionPool.makeKey("root", UUID.randomUUID().toString(), 22, "password", null);
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        String key = newKey();
+        Session session = newSession();
+
+        SshSessionPool.giveBack(key, session);
+        assert SshSessionPool.borrow(key) == session;
+        // borrowed sessions are not shared
+        assert SshSessionPool.borrow(key) == null;
+
+        // other credentials don't get the session
+        SshSessionPool.giveBack(key, session);
+        assert SshSessionPool.borrow(newKey()) == null;
+        assert !SshSessionPool.makeKey("root", "127.0.0.1", 22, "password", null)
+                .equals(SshSessionPool.makeKey("root", "127.0.0.1", 22, "password2", null));
+        assert SshSessionPool.borrow(key) == session;
+        session.disconnect();
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        String key = newKey();
+        Session s1 = newSession();
+        Session s2 = newSession();
+        Session s3 = newSession();
+
+        // at most two idle sessions per key, the others are disconnected
+        SshSessionPool.giveBack(key, s1);
+        SshSessionPool.giveBack(key, s2);
+        SshSessionPool.giveBack(key, s3);
+        assert s1.isConnected();
+        assert s2.isConnected();
+        assert !s3.isConnected();
+
+        // idle for longer than the idle timeout
+        Map<String, Deque<Object>> idleSessions = getIdleSessions();
+        for (Object idle : idleSessions.get(key)) {
+            Session s = (Session) getField(idle, "session");
+            if (s == s1) {
+                setField(idle.getClass(), idle, "returnTime", System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1));
+            }
+        }
+
+        assert SshSessionPool.borrow(key) == s2;
+        assert SshSessionPool.borrow(key) == null;
+        assert !s1.isConnected();
+        s2.disconnect();
+    }
+
+    @Test
+    public void testBrokenSessionReplaced() throws Exception {
+        String key = newKey();
+        Session broken = newSession();
+        SshSessionPool.giveBack(key, broken);
+
+        // closed by the server side while idle
+        setField(Session.class, broken, "isConnected", false);
+        assert SshSessionPool.borrow(key) == null;
+
+        // a disconnected session is not taken back
+        SshSessionPool.giveBack(key, broken);
+        assert SshSessionPool.borrow(key) == null;
+
+        // the new session of the reconnect replaces it
+        Session session = newSession();
+        SshSessionPool.giveBack(key, session);
+        assert SshSessionPool.borrow(key) == session;
+        session.disconnect();
+    }
+
+    private static Map<String, Deque<Object>> getIdleSessions() throws Exception {
+        Field f = SshSessionPool.class.getDeclaredField("idleSessions");
+        f.setAccessible(true);
+        return (Map<String, Deque<Object>>) f.get(null);
+    }
+
+    private static Object getField(Object obj, String name) throws Exception {
+        Field f = obj.getClass().getDeclaredField(name);
+        f.setAccessible(true);
+        return f.get(obj);
+    }
+}
@@ -0,0 +1,39 @@
+package org.zstack.utils.test;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.zstack.utils.Digest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+public class TestDigest {
+    @Test
+    public void test() throws IOException {
+        File file = File.createTempFile("zstack", "md5");
+        try {
+            FileUtils.writeStringToFile(file, "hello");
+            long mtime = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(10);
+            assert file.setLastModified(mtime);
+
+            assert Digest.getCachedMD5(file.getAbsolutePath()).equals(DigestUtils.md5Hex("hello"));
+            assert Digest.getCachedMD5(file.getAbsolutePath()).equals(Digest.getMD5(file.getAbsolutePath()));
+
+            // same size, new mtime
+            FileUtils.writeStringToFile(file, "world");
+            assert file.setLastModified(mtime + TimeUnit.MINUTES.toMillis(1));
+            assert Digest.getCachedMD5(file.getAbsolutePath()).equals(DigestUtils.md5Hex("world"));
+
+            // just modified, not cached
+            FileUtils.writeStringToFile(file, "hello world");
+            assert Digest.getCachedMD5(file.getAbsolutePath()).equals(DigestUtils.md5Hex("hello world"));
+            FileUtils.writeStringToFile(file, "world hello");
+            assert file.setLastModified(file.lastModified());
+            assert Digest.getCachedMD5(file.getAbsolutePath()).equals(DigestUtils.md5Hex("world hello"));
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.zstack.utils.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.zstack.utils.data.ObjectIntHashMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class TestObjectIntHashMap {
+    @Test
+    public void testCounter() {
+        ObjectIntHashMap<String> m = new ObjectIntHashMap<>();
+        Assert.assertFalse(m.containsKey("a"));
+        Assert.assertEquals(-1, m.get("a", -1));
+
+        Assert.assertEquals(1, m.addTo("a", 1));
+        Assert.assertEquals(2, m.addTo("a", 1));
+        Assert.assertEquals(-1, m.addTo("b", -1));
+        Assert.assertEquals(2, m.size());
+
+        // a zero value is still a mapping
+        Assert.assertEquals(0, m.addTo("b", 1));
+        Assert.assertTrue(m.containsKey("b"));
+
+        Assert.assertTrue(m.remove("b"));
+        Assert.assertFalse(m.remove("b"));
+        Assert.assertFalse(m.containsKey("b"));
+        Assert.assertEquals(2, m.get("a", 0));
+        Assert.assertEquals(1, m.size());
+    }
+
+    @Test
+    public void testRandomOperations() {
+        ObjectIntHashMap<String> m = new ObjectIntHashMap<>();
+        Map<String, Integer> expected = new HashMap<>();
+        Random random = new Random(1);
+
+        for (int i = 0; i < 100000; i++) {
+            String key = "key-" + random.nextInt(500);
+            switch (random.nextInt(3)) {
+                case 0:
+                    int delta = random.nextInt(5) - 2;
+                    expected.merge(key, delta, Integer::sum);
+                    Assert.assertEquals((int) expected.get(key), m.addTo(key, delta));
+                    break;
+                case 1:
+                    Assert.assertEquals(expected.remove(key) != null, m.remove(key));
+                    break;
+                default:
+                    Assert.assertEquals(expected.containsKey(key), m.containsKey(key));
+                    Assert.assertEquals((int) expected.getOrDefault(key, -100), m.get(key, -100));
+            }
+
+            Assert.assertEquals(expected.size(), m.size());
+        }
+    }
+}
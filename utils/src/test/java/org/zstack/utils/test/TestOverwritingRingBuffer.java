@@ -0,0 +1,69 @@
+package org.zstack.utils.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.zstack.utils.data.OverwritingRingBuffer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class TestOverwritingRingBuffer {
+    @Test
+    public void testCapacityRoundedUp() {
+        Assert.assertEquals(8, new OverwritingRingBuffer<Integer>(5).capacity());
+        Assert.assertEquals(16, new OverwritingRingBuffer<Integer>(16).capacity());
+    }
+
+    @Test
+    public void testKeepLatest() {
+        OverwritingRingBuffer<Integer> buf = new OverwritingRingBuffer<>(8);
+        Assert.assertTrue(buf.collect(i -> true).isEmpty());
+
+        for (int i = 0; i < 5; i++) {
+            buf.add(i);
+        }
+        Assert.assertEquals(IntStream.range(0, 5).boxed().collect(Collectors.toList()), buf.collect(i -> true));
+
+        for (int i = 5; i < 20; i++) {
+            buf.add(i);
+        }
+        Assert.assertEquals(20, buf.added());
+        Assert.assertEquals(IntStream.range(12, 20).boxed().collect(Collectors.toList()), buf.collect(i -> true));
+        Assert.assertEquals(IntStream.of(12, 14, 16, 18).boxed().collect(Collectors.toList()), buf.collect(i -> i % 2 == 0));
+
+        buf.clear();
+        Assert.assertTrue(buf.collect(i -> true).isEmpty());
+    }
+
+    @Test
+    public void testConcurrentAdd() throws InterruptedException {
+        int threads = 4;
+        int num = 10000;
+        OverwritingRingBuffer<Integer> buf = new OverwritingRingBuffer<>(threads * num);
+
+        List<Thread> ts = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int base = t * num;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < num; i++) {
+                    buf.add(base + i);
+                }
+            });
+            ts.add(thread);
+            thread.start();
+        }
+
+        for (Thread t : ts) {
+            t.join();
+        }
+
+        List<Integer> all = buf.collect(i -> true);
+        Assert.assertEquals(threads * num, all.size());
+        Set<Integer> unique = new HashSet<>(all);
+        Assert.assertEquals(threads * num, unique.size());
+    }
+}
@@ -0,0 +1,55 @@
+package org.zstack.utils.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.zstack.utils.data.RingBufferQueue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Random;
+
+public class TestRingBufferQueue {
+    @Test
+    public void testFifo() {
+        RingBufferQueue<Integer> q = new RingBufferQueue<>();
+        Assert.assertNull(q.poll());
+        Assert.assertNull(q.peek());
+
+        for (int i = 0; i < 100; i++) {
+            q.offer(i);
+        }
+        Assert.assertEquals(100, q.size());
+
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(i, (int) q.peek());
+            Assert.assertEquals(i, (int) q.poll());
+        }
+        Assert.assertTrue(q.isEmpty());
+    }
+
+    @Test
+    public void testWrapAround() {
+        RingBufferQueue<Integer> q = new RingBufferQueue<>();
+        ArrayDeque<Integer> expected = new ArrayDeque<>();
+        Random random = new Random(1);
+
+        for (int i = 0; i < 100000; i++) {
+            if (random.nextInt(3) != 0) {
+                q.offer(i);
+                expected.offer(i);
+            } else {
+                Assert.assertEquals(expected.poll(), q.poll());
+            }
+
+            Assert.assertEquals(expected.size(), q.size());
+            if (i % 1000 == 0) {
+                Assert.assertEquals(new ArrayList<>(expected), new ArrayList<>(q));
+            }
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullElement() {
+        new RingBufferQueue<String>().offer(null);
+    }
+}